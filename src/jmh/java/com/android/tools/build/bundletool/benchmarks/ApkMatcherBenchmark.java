@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.benchmarks;
+
+import com.android.bundle.Commands.BuildApksResult;
+import com.android.bundle.Devices.DeviceSpec;
+import com.android.tools.build.bundletool.device.ApkMatcher;
+import com.android.tools.build.bundletool.device.ApkSetIndex;
+import com.google.common.collect.ImmutableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Measures matching many devices against the same APK Set, with and without an index. */
+@State(Scope.Benchmark)
+public class ApkMatcherBenchmark {
+
+  @Param({"1", "20"})
+  public int moduleCount;
+
+  @Param({"5", "20"})
+  public int languageCount;
+
+  @Param({"100"})
+  public int deviceCount;
+
+  private BuildApksResult buildApksResult;
+  private ApkSetIndex apkSetIndex;
+  private ImmutableList<DeviceSpec> devices;
+
+  @Setup
+  public void setUp() {
+    SyntheticBundle bundle =
+        SyntheticBundle.builder()
+            .setModuleCount(moduleCount)
+            .setLanguageCount(languageCount)
+            .setDensityCount(6)
+            .setAbiCount(4)
+            .build();
+    buildApksResult = bundle.createApkSet();
+    apkSetIndex = ApkSetIndex.create(buildApksResult);
+    devices = bundle.createDevices(deviceCount);
+  }
+
+  @Benchmark
+  public void getMatchingApks(Blackhole blackhole) {
+    for (DeviceSpec device : devices) {
+      blackhole.consume(new ApkMatcher(device).getMatchingApks(buildApksResult));
+    }
+  }
+
+  @Benchmark
+  public void getMatchingApksFromIndex(Blackhole blackhole) {
+    for (DeviceSpec device : devices) {
+      blackhole.consume(new ApkMatcher(device).getMatchingApks(apkSetIndex));
+    }
+  }
+
+  @Benchmark
+  public ApkSetIndex createIndex() {
+    return ApkSetIndex.create(buildApksResult);
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.benchmarks;
+
+import static com.android.tools.build.bundletool.model.utils.TargetingProtoUtils.lPlusVariantTargeting;
+
+import com.android.tools.build.bundletool.model.BundleModule;
+import com.android.tools.build.bundletool.model.ModuleSplit;
+import com.android.tools.build.bundletool.model.OptimizationDimension;
+import com.android.tools.build.bundletool.model.version.BundleToolVersion;
+import com.android.tools.build.bundletool.splitters.ApkGenerationConfiguration;
+import com.android.tools.build.bundletool.splitters.ModuleSplitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Measures splitting a module by ABI, screen density and language. */
+@State(Scope.Benchmark)
+public class ModuleSplitterBenchmark {
+
+  @Param({"100", "1000"})
+  public int resourceCount;
+
+  @Param({"1", "10"})
+  public int languageCount;
+
+  @Param({"6"})
+  public int densityCount;
+
+  @Param({"4"})
+  public int abiCount;
+
+  private BundleModule module;
+  private ApkGenerationConfiguration apkGenerationConfiguration;
+
+  @Setup
+  public void setUp() {
+    module =
+        SyntheticBundle.builder()
+            .setResourceCount(resourceCount)
+            .setLanguageCount(languageCount)
+            .setDensityCount(densityCount)
+            .setAbiCount(abiCount)
+            .build()
+            .createModule(0);
+    apkGenerationConfiguration =
+        ApkGenerationConfiguration.builder()
+            .setOptimizationDimensions(
+                ImmutableSet.of(
+                    OptimizationDimension.ABI,
+                    OptimizationDimension.SCREEN_DENSITY,
+                    OptimizationDimension.LANGUAGE))
+            .build();
+  }
+
+  @Benchmark
+  public ImmutableList<ModuleSplit> splitModule() {
+    return ModuleSplitter.createNoStamp(
+            module,
+            BundleToolVersion.getCurrentVersion(),
+            apkGenerationConfiguration,
+            lPlusVariantTargeting(),
+            ImmutableSet.of(module.getName().getName()))
+        .splitModule();
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.benchmarks;
+
+import com.android.aapt.Resources.ResourceTable;
+import com.android.tools.build.bundletool.mergers.ResourceTableMerger;
+import com.google.common.collect.ImmutableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures merging two resource tables that have the same entries, with the string translations
+ * split between them.
+ */
+@State(Scope.Benchmark)
+public class ResourceTableMergerBenchmark {
+
+  @Param({"1000", "10000"})
+  public int resourceCount;
+
+  @Param({"10", "20"})
+  public int languageCount;
+
+  private ResourceTable table1;
+  private ResourceTable table2;
+
+  @Setup
+  public void setUp() {
+    SyntheticBundle bundle =
+        SyntheticBundle.builder()
+            .setResourceCount(resourceCount)
+            .setLanguageCount(languageCount)
+            .build();
+    ImmutableList<String> languages = bundle.getLanguages();
+    table1 = bundle.createResourceTable(0x7f, languages.subList(0, languageCount / 2));
+    table2 =
+        bundle.createResourceTable(0x7f, languages.subList(languageCount / 2, languageCount));
+  }
+
+  @Benchmark
+  public ResourceTable merge() {
+    return new ResourceTableMerger().merge(table1, table2);
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.benchmarks;
+
+import com.android.tools.build.bundletool.model.ModuleSplit;
+import com.android.tools.build.bundletool.model.version.BundleToolVersion;
+import com.android.tools.build.bundletool.splitters.ScreenDensityResourcesSplitter;
+import com.google.common.collect.ImmutableCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Measures splitting the resources of a module by screen density. */
+@State(Scope.Benchmark)
+public class ScreenDensityResourcesSplitterBenchmark {
+
+  @Param({"100", "1000", "10000"})
+  public int resourceCount;
+
+  @Param({"3", "6"})
+  public int densityCount;
+
+  private ModuleSplit resourcesSplit;
+  private ScreenDensityResourcesSplitter splitter;
+
+  @Setup
+  public void setUp() {
+    resourcesSplit =
+        ModuleSplit.forResources(
+            SyntheticBundle.builder()
+                .setResourceCount(resourceCount)
+                .setDensityCount(densityCount)
+                .setLanguageCount(0)
+                .setAbiCount(0)
+                .setAssetCount(0)
+                .build()
+                .createModule(0));
+    splitter =
+        new ScreenDensityResourcesSplitter(
+            BundleToolVersion.getCurrentVersion(),
+            /* pinWholeResourceToMaster= */ resourceId -> false,
+            /* pinLowestBucketOfResourceToMaster= */ resourceId -> false);
+  }
+
+  @Benchmark
+  public ImmutableCollection<ModuleSplit> split() {
+    return splitter.splitInternal(resourcesSplit);
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.benchmarks;
+
+import com.android.tools.build.bundletool.model.InputStreamSupplier;
+import com.android.tools.build.bundletool.model.utils.ZipUtils;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Measures the GZIP size estimation of APK entries. */
+@State(Scope.Benchmark)
+public class SizeEstimationBenchmark {
+
+  @Param({"100", "1000"})
+  public int entryCount;
+
+  @Param({"4096", "262144"})
+  public int entrySize;
+
+  private ImmutableList<InputStreamSupplier> entries;
+
+  @Setup
+  public void setUp() {
+    entries =
+        SyntheticBundle.builder()
+            .setAssetCount(entryCount)
+            .setAssetSize(entrySize)
+            .build()
+            .createAssetContents();
+  }
+
+  @Benchmark
+  public ImmutableList<Long> calculateGZipSizeForEntries() throws IOException {
+    return ZipUtils.calculateGZipSizeForEntries(entries);
+  }
+}
@@ -0,0 +1,485 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.benchmarks;
+
+import static com.android.tools.build.bundletool.model.AndroidManifest.ANDROID_NAMESPACE_URI;
+import static com.android.tools.build.bundletool.model.AndroidManifest.APPLICATION_ELEMENT_NAME;
+import static com.android.tools.build.bundletool.model.AndroidManifest.HAS_CODE_RESOURCE_ID;
+import static com.android.tools.build.bundletool.model.utils.ResourcesUtils.DENSITY_ALIAS_TO_DPI_MAP;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.android.aapt.ConfigurationOuterClass.Configuration;
+import com.android.aapt.Resources;
+import com.android.aapt.Resources.ConfigValue;
+import com.android.aapt.Resources.Entry;
+import com.android.aapt.Resources.EntryId;
+import com.android.aapt.Resources.FileReference;
+import com.android.aapt.Resources.Item;
+import com.android.aapt.Resources.Package;
+import com.android.aapt.Resources.PackageId;
+import com.android.aapt.Resources.ResourceTable;
+import com.android.aapt.Resources.Type;
+import com.android.aapt.Resources.TypeId;
+import com.android.aapt.Resources.Value;
+import com.android.aapt.Resources.XmlNode;
+import com.android.bundle.Commands.ApkDescription;
+import com.android.bundle.Commands.ApkSet;
+import com.android.bundle.Commands.BuildApksResult;
+import com.android.bundle.Commands.DeliveryType;
+import com.android.bundle.Commands.ModuleMetadata;
+import com.android.bundle.Commands.SplitApkMetadata;
+import com.android.bundle.Commands.Variant;
+import com.android.bundle.Config.BundleConfig;
+import com.android.bundle.Config.Bundletool;
+import com.android.bundle.Devices.DeviceSpec;
+import com.android.bundle.Files.NativeLibraries;
+import com.android.bundle.Files.TargetedNativeDirectory;
+import com.android.bundle.Targeting.Abi;
+import com.android.bundle.Targeting.Abi.AbiAlias;
+import com.android.bundle.Targeting.AbiTargeting;
+import com.android.bundle.Targeting.ApkTargeting;
+import com.android.bundle.Targeting.LanguageTargeting;
+import com.android.bundle.Targeting.NativeDirectoryTargeting;
+import com.android.bundle.Targeting.ScreenDensity;
+import com.android.bundle.Targeting.ScreenDensity.DensityAlias;
+import com.android.bundle.Targeting.ScreenDensityTargeting;
+import com.android.tools.build.bundletool.model.AbiName;
+import com.android.tools.build.bundletool.model.BundleModule;
+import com.android.tools.build.bundletool.model.BundleModuleName;
+import com.android.tools.build.bundletool.model.InputStreamSupplier;
+import com.android.tools.build.bundletool.model.InputStreamSuppliers;
+import com.android.tools.build.bundletool.model.ModuleEntry;
+import com.android.tools.build.bundletool.model.ZipPath;
+import com.android.tools.build.bundletool.model.utils.TargetingProtoUtils;
+import com.android.tools.build.bundletool.model.utils.xmlproto.XmlProtoElementBuilder;
+import com.android.tools.build.bundletool.model.utils.xmlproto.XmlProtoNode;
+import com.android.tools.build.bundletool.model.version.BundleToolVersion;
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * Generates synthetic App Bundle modules and APK Sets of a configurable shape for benchmarks.
+ *
+ * <p>The generated data is deterministic: two instances with the same parameters produce equal
+ * modules, resource tables and APK Sets.
+ */
+@AutoValue
+public abstract class SyntheticBundle {
+
+  private static final ImmutableList<String> LANGUAGES =
+      ImmutableList.of(
+          "en", "fr", "de", "es", "it", "ja", "ko", "pt", "ru", "zh", "ar", "hi", "nl", "pl", "sv",
+          "tr", "uk", "vi", "th", "id");
+  private static final ImmutableList<DensityAlias> DENSITIES =
+      ImmutableList.of(
+          DensityAlias.LDPI,
+          DensityAlias.MDPI,
+          DensityAlias.HDPI,
+          DensityAlias.XHDPI,
+          DensityAlias.XXHDPI,
+          DensityAlias.XXXHDPI);
+  private static final ImmutableList<AbiAlias> ABIS =
+      ImmutableList.of(AbiAlias.ARMEABI_V7A, AbiAlias.ARM64_V8A, AbiAlias.X86, AbiAlias.X86_64);
+
+  private static final String PACKAGE_NAME = "com.example.benchmark";
+  private static final int DRAWABLE_TYPE_ID = 1;
+  private static final int STRING_TYPE_ID = 2;
+  private static final int DRAWABLE_SIZE = 512;
+  // Each module gets its own resource package ID, counting down from 0x7f.
+  private static final int MAX_MODULE_COUNT = 0x7f - 0x02;
+  private static final int NATIVE_LIBRARY_SIZE = 16 * 1024;
+
+  /** Number of modules, the first one being the base module. */
+  public abstract int getModuleCount();
+
+  /** Number of drawables, and separately of strings, in the resource table of each module. */
+  public abstract int getResourceCount();
+
+  public abstract int getLanguageCount();
+
+  public abstract int getDensityCount();
+
+  public abstract int getAbiCount();
+
+  /** Number of asset files in each module. */
+  public abstract int getAssetCount();
+
+  /** Size in bytes of each asset file. */
+  public abstract int getAssetSize();
+
+  public static Builder builder() {
+    return new AutoValue_SyntheticBundle.Builder()
+        .setModuleCount(1)
+        .setResourceCount(100)
+        .setLanguageCount(3)
+        .setDensityCount(3)
+        .setAbiCount(2)
+        .setAssetCount(10)
+        .setAssetSize(16 * 1024);
+  }
+
+  /** Builder for {@link SyntheticBundle}. */
+  @AutoValue.Builder
+  public abstract static class Builder {
+    public abstract Builder setModuleCount(int moduleCount);
+
+    public abstract Builder setResourceCount(int resourceCount);
+
+    public abstract Builder setLanguageCount(int languageCount);
+
+    public abstract Builder setDensityCount(int densityCount);
+
+    public abstract Builder setAbiCount(int abiCount);
+
+    public abstract Builder setAssetCount(int assetCount);
+
+    public abstract Builder setAssetSize(int assetSize);
+
+    abstract SyntheticBundle autoBuild();
+
+    public SyntheticBundle build() {
+      SyntheticBundle bundle = autoBuild();
+      checkArgument(
+          bundle.getModuleCount() > 0 && bundle.getModuleCount() <= MAX_MODULE_COUNT,
+          "Between 1 and %s modules are supported.",
+          MAX_MODULE_COUNT);
+      checkArgument(
+          bundle.getLanguageCount() <= LANGUAGES.size(),
+          "At most %s languages are supported.",
+          LANGUAGES.size());
+      checkArgument(
+          bundle.getDensityCount() <= DENSITIES.size(),
+          "At most %s densities are supported.",
+          DENSITIES.size());
+      checkArgument(
+          bundle.getAbiCount() <= ABIS.size(), "At most %s ABIs are supported.", ABIS.size());
+      return bundle;
+    }
+  }
+
+  public ImmutableList<String> getLanguages() {
+    return LANGUAGES.subList(0, getLanguageCount());
+  }
+
+  public ImmutableList<DensityAlias> getDensities() {
+    return DENSITIES.subList(0, getDensityCount());
+  }
+
+  public ImmutableList<AbiAlias> getAbis() {
+    return ABIS.subList(0, getAbiCount());
+  }
+
+  public ImmutableList<String> getModuleNames() {
+    return IntStream.range(0, getModuleCount())
+        .mapToObj(SyntheticBundle::moduleName)
+        .collect(toImmutableList());
+  }
+
+  /** Creates all modules of the bundle. */
+  public ImmutableList<BundleModule> createModules() {
+    return IntStream.range(0, getModuleCount())
+        .mapToObj(this::createModule)
+        .collect(toImmutableList());
+  }
+
+  /** Creates the module with the given index, 0 being the base module. */
+  public BundleModule createModule(int moduleIndex) {
+    String moduleName = moduleName(moduleIndex);
+    Random random = new Random(moduleIndex);
+    BundleModule.Builder module =
+        BundleModule.builder()
+            .setName(BundleModuleName.create(moduleName))
+            .setBundleConfig(
+                BundleConfig.newBuilder()
+                    .setBundletool(
+                        Bundletool.newBuilder()
+                            .setVersion(BundleToolVersion.getCurrentVersion().toString()))
+                    .build())
+            .setAndroidManifestProto(createManifest(moduleIndex))
+            .setResourceTable(createResourceTable(packageId(moduleIndex), getLanguages()));
+
+    try {
+      for (int i = 0; i < getResourceCount(); i++) {
+        for (DensityAlias density : getDensities()) {
+          module.addEntry(
+              createEntry(drawablePath(density, i), createContent(random, DRAWABLE_SIZE)));
+        }
+      }
+      for (int i = 0; i < getAssetCount(); i++) {
+        module.addEntry(
+            createEntry(
+                String.format("assets/data/file_%d.dat", i),
+                createContent(random, getAssetSize())));
+      }
+      NativeLibraries.Builder nativeConfig = NativeLibraries.newBuilder();
+      for (AbiAlias abi : getAbis()) {
+        String directory = "lib/" + AbiName.fromProto(abi).getPlatformName();
+        nativeConfig.addDirectory(
+            TargetedNativeDirectory.newBuilder()
+                .setPath(directory)
+                .setTargeting(
+                    NativeDirectoryTargeting.newBuilder().setAbi(Abi.newBuilder().setAlias(abi))));
+        module.addEntry(
+            createEntry(
+                directory + "/lib" + moduleName + ".so",
+                createContent(random, NATIVE_LIBRARY_SIZE)));
+      }
+      if (getAbiCount() > 0) {
+        module.setNativeConfig(nativeConfig.build());
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return module.build();
+  }
+
+  /**
+   * Creates the resource table of a module, with one value per density for each drawable and one
+   * value per language for each string.
+   */
+  public ResourceTable createResourceTable(int packageId, ImmutableList<String> languages) {
+    Type.Builder drawables =
+        Type.newBuilder()
+            .setTypeId(TypeId.newBuilder().setId(DRAWABLE_TYPE_ID))
+            .setName("drawable");
+    Type.Builder strings =
+        Type.newBuilder().setTypeId(TypeId.newBuilder().setId(STRING_TYPE_ID)).setName("string");
+    for (int i = 0; i < getResourceCount(); i++) {
+      Entry.Builder drawable =
+          Entry.newBuilder().setEntryId(EntryId.newBuilder().setId(i)).setName("img_" + i);
+      for (DensityAlias density : getDensities()) {
+        drawable.addConfigValue(
+            ConfigValue.newBuilder()
+                .setConfig(
+                    Configuration.newBuilder().setDensity(DENSITY_ALIAS_TO_DPI_MAP.get(density)))
+                .setValue(
+                    Value.newBuilder()
+                        .setItem(
+                            Item.newBuilder()
+                                .setFile(
+                                    FileReference.newBuilder()
+                                        .setPath(drawablePath(density, i))
+                                        .setType(FileReference.Type.PNG)))));
+      }
+      drawables.addEntry(drawable);
+
+      Entry.Builder string =
+          Entry.newBuilder().setEntryId(EntryId.newBuilder().setId(i)).setName("text_" + i);
+      string.addConfigValue(stringValue(Configuration.getDefaultInstance(), "text " + i));
+      for (String language : languages) {
+        string.addConfigValue(
+            stringValue(Configuration.newBuilder().setLocale(language).build(), language + i));
+      }
+      strings.addEntry(string);
+    }
+    return ResourceTable.newBuilder()
+        .addPackage(
+            Package.newBuilder()
+                .setPackageId(PackageId.newBuilder().setId(packageId))
+                .setPackageName(PACKAGE_NAME)
+                .addType(drawables)
+                .addType(strings))
+        .build();
+  }
+
+  /**
+   * Creates the table of contents of an APK Set with a master split and one config split per ABI,
+   * density and language for each module.
+   */
+  public BuildApksResult createApkSet() {
+    Variant.Builder variant =
+        Variant.newBuilder().setTargeting(TargetingProtoUtils.lPlusVariantTargeting());
+    for (String moduleName : getModuleNames()) {
+      ApkSet.Builder apkSet =
+          ApkSet.newBuilder()
+              .setModuleMetadata(
+                  ModuleMetadata.newBuilder()
+                      .setName(moduleName)
+                      .setDeliveryType(DeliveryType.INSTALL_TIME))
+              .addApkDescription(
+                  splitApk(moduleName, "master", ApkTargeting.getDefaultInstance(), true));
+      for (AbiAlias abi : getAbis()) {
+        apkSet.addApkDescription(
+            splitApk(
+                moduleName,
+                AbiName.fromProto(abi).getPlatformName(),
+                ApkTargeting.newBuilder()
+                    .setAbiTargeting(
+                        AbiTargeting.newBuilder()
+                            .addValue(Abi.newBuilder().setAlias(abi))
+                            .addAllAlternatives(
+                                alternatives(
+                                    getAbis(), abi, a -> Abi.newBuilder().setAlias(a).build())))
+                    .build(),
+                false));
+      }
+      for (DensityAlias density : getDensities()) {
+        apkSet.addApkDescription(
+            splitApk(
+                moduleName,
+                density.name().toLowerCase(),
+                ApkTargeting.newBuilder()
+                    .setScreenDensityTargeting(
+                        ScreenDensityTargeting.newBuilder()
+                            .addValue(ScreenDensity.newBuilder().setDensityAlias(density))
+                            .addAllAlternatives(
+                                alternatives(
+                                    getDensities(),
+                                    density,
+                                    d -> ScreenDensity.newBuilder().setDensityAlias(d).build())))
+                    .build(),
+                false));
+      }
+      for (String language : getLanguages()) {
+        apkSet.addApkDescription(
+            splitApk(
+                moduleName,
+                language,
+                ApkTargeting.newBuilder()
+                    .setLanguageTargeting(LanguageTargeting.newBuilder().addValue(language))
+                    .build(),
+                false));
+      }
+      variant.addApkSet(apkSet);
+    }
+    return BuildApksResult.newBuilder()
+        .setBundletool(
+            Bundletool.newBuilder().setVersion(BundleToolVersion.getCurrentVersion().toString()))
+        .addVariant(variant)
+        .build();
+  }
+
+  /**
+   * Creates devices going through the combinations of the ABIs, densities and languages of the
+   * bundle, so that all of them are covered as soon as there are as many devices as combinations.
+   *
+   * <p>A dimension that the bundle doesn't target uses its first value for all devices.
+   */
+  public ImmutableList<DeviceSpec> createDevices(int deviceCount) {
+    ImmutableList<AbiAlias> abis = getAbis().isEmpty() ? ABIS.subList(0, 1) : getAbis();
+    ImmutableList<DensityAlias> densities =
+        getDensities().isEmpty() ? DENSITIES.subList(0, 1) : getDensities();
+    ImmutableList<String> languages =
+        getLanguages().isEmpty() ? LANGUAGES.subList(0, 1) : getLanguages();
+    return IntStream.range(0, deviceCount)
+        .mapToObj(
+            i -> {
+              // Digits of the device index in the mixed radix of the dimension sizes.
+              int abiIndex = i % abis.size();
+              int densityIndex = i / abis.size() % densities.size();
+              int languageIndex = i / abis.size() / densities.size() % languages.size();
+              return DeviceSpec.newBuilder()
+                  .setSdkVersion(21 + i % 9)
+                  .addSupportedAbis(AbiName.fromProto(abis.get(abiIndex)).getPlatformName())
+                  .setScreenDensity(DENSITY_ALIAS_TO_DPI_MAP.get(densities.get(densityIndex)))
+                  .addSupportedLocales(languages.get(languageIndex))
+                  .build();
+            })
+        .collect(toImmutableList());
+  }
+
+  /** Creates suppliers of the asset files of a module. */
+  public ImmutableList<InputStreamSupplier> createAssetContents() {
+    Random random = new Random(0);
+    return IntStream.range(0, getAssetCount())
+        .mapToObj(i -> InputStreamSuppliers.fromBytes(createContent(random, getAssetSize())))
+        .collect(toImmutableList());
+  }
+
+  /**
+   * Creates content that compresses roughly like real-world resources, by drawing words from a
+   * small vocabulary.
+   */
+  public static byte[] createContent(Random random, int size) {
+    byte[] content = new byte[size];
+    for (int i = 0; i < size; i++) {
+      content[i] = (byte) ('a' + random.nextInt(random.nextInt(10) == 0 ? 26 : 4));
+    }
+    return content;
+  }
+
+  private XmlNode createManifest(int moduleIndex) {
+    XmlProtoElementBuilder manifest =
+        XmlProtoElementBuilder.create("manifest")
+            .addNamespaceDeclaration("android", ANDROID_NAMESPACE_URI);
+    manifest.getOrCreateAttribute("package").setValueAsString(PACKAGE_NAME);
+    if (moduleIndex > 0) {
+      manifest.getOrCreateAttribute("split").setValueAsString(moduleName(moduleIndex));
+    }
+    manifest
+        .getOrCreateChildElement(APPLICATION_ELEMENT_NAME)
+        .getOrCreateAndroidAttribute("hasCode", HAS_CODE_RESOURCE_ID)
+        .setValueAsBoolean(false);
+    return XmlProtoNode.createElementNode(manifest.build()).getProto();
+  }
+
+  private static ModuleEntry createEntry(String path, byte[] content) {
+    return ModuleEntry.builder()
+        .setPath(ZipPath.create(path))
+        .setContentSupplier(InputStreamSuppliers.fromBytes(content))
+        .build();
+  }
+
+  private static ConfigValue stringValue(Configuration configuration, String value) {
+    return ConfigValue.newBuilder()
+        .setConfig(configuration)
+        .setValue(
+            Value.newBuilder()
+                .setItem(Item.newBuilder().setStr(Resources.String.newBuilder().setValue(value))))
+        .build();
+  }
+
+  private static ApkDescription splitApk(
+      String moduleName, String suffix, ApkTargeting targeting, boolean isMasterSplit) {
+    String splitId = moduleName.equals("base") ? "" : moduleName;
+    if (!isMasterSplit) {
+      splitId = splitId.isEmpty() ? "config." + suffix : splitId + ".config." + suffix;
+    }
+    return ApkDescription.newBuilder()
+        .setPath(String.format("splits/%s-%s.apk", moduleName, suffix))
+        .setTargeting(targeting)
+        .setSplitApkMetadata(
+            SplitApkMetadata.newBuilder().setSplitId(splitId).setIsMasterSplit(isMasterSplit))
+        .build();
+  }
+
+  private static <T, P> ImmutableList<P> alternatives(
+      ImmutableList<T> values, T value, Function<T, P> toProto) {
+    return values.stream()
+        .filter(other -> !other.equals(value))
+        .map(toProto)
+        .collect(toImmutableList());
+  }
+
+  private static String drawablePath(DensityAlias density, int index) {
+    return String.format("res/drawable-%s/img_%d.png", density.name().toLowerCase(), index);
+  }
+
+  private static String moduleName(int moduleIndex) {
+    return moduleIndex == 0 ? "base" : "feature" + moduleIndex;
+  }
+
+  private static int packageId(int moduleIndex) {
+    return 0x7f - moduleIndex;
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.benchmarks;
+
+import com.android.tools.build.bundletool.io.TempDirectory;
+import com.android.tools.build.bundletool.io.ZipBuilder;
+import com.android.tools.build.bundletool.model.ZipPath;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** Measures writing a zip file with in-memory entries. */
+@State(Scope.Benchmark)
+public class ZipBuilderBenchmark {
+
+  @Param({"100", "1000"})
+  public int entryCount;
+
+  @Param({"1024", "65536"})
+  public int entrySize;
+
+  private TempDirectory tempDir;
+  private ZipBuilder zipBuilder;
+  private Path outputFile;
+
+  @Setup
+  public void setUp() {
+    tempDir = new TempDirectory(getClass().getSimpleName());
+    outputFile = tempDir.getPath().resolve("output.zip");
+    zipBuilder = new ZipBuilder();
+    Random random = new Random(0);
+    for (int i = 0; i < entryCount; i++) {
+      zipBuilder.addFileWithContent(
+          ZipPath.create(String.format("entries/entry_%d.dat", i)),
+          SyntheticBundle.createContent(random, entrySize));
+    }
+  }
+
+  @TearDown(Level.Invocation)
+  public void deleteOutputFile() throws IOException {
+    Files.deleteIfExists(outputFile);
+  }
+
+  @TearDown
+  public void tearDown() {
+    tempDir.close();
+  }
+
+  @Benchmark
+  public Path writeTo() throws IOException {
+    return zipBuilder.writeTo(outputFile);
+  }
+}
@@ -19,10 +19,13 @@ import com.android.tools.build.bundletool.commands.BuildApksCommand;
 import com.android.tools.build.bundletool.commands.BuildBundleCommand;
 import com.android.tools.build.bundletool.commands.CommandHelp;
 import com.android.tools.build.bundletool.commands.DumpCommand;
+import com.android.tools.build.bundletool.commands.DumpManifestBatchCommand;
+import com.android.tools.build.bundletool.commands.ExtractApksBatchCommand;
 import com.android.tools.build.bundletool.commands.ExtractApksCommand;
 import com.android.tools.build.bundletool.commands.GetDeviceSpecCommand;
 import com.android.tools.build.bundletool.commands.GetSizeCommand;
 import com.android.tools.build.bundletool.commands.InstallApksCommand;
+import com.android.tools.build.bundletool.commands.ServeCommand;
 import com.android.tools.build.bundletool.commands.ValidateBundleCommand;
 import com.android.tools.build.bundletool.commands.VersionCommand;
 import com.android.tools.build.bundletool.device.AdbServer;
@@ -77,6 +80,9 @@ public class BundleToolMain {
         case ExtractApksCommand.COMMAND_NAME:
           ExtractApksCommand.fromFlags(flags).execute();
           break;
+        case ExtractApksBatchCommand.COMMAND_NAME:
+          ExtractApksBatchCommand.fromFlags(flags).execute();
+          break;
         case GetDeviceSpecCommand.COMMAND_NAME:
           // We have to destroy ddmlib resources at the end of the command.
           try (AdbServer adbServer = DdmlibAdbServer.getInstance()) {
@@ -94,12 +100,20 @@ public class BundleToolMain {
         case DumpCommand.COMMAND_NAME:
           DumpCommand.fromFlags(flags).execute();
           break;
+        case DumpManifestBatchCommand.COMMAND_NAME:
+          DumpManifestBatchCommand.fromFlags(flags).execute();
+          break;
         case GetSizeCommand.COMMAND_NAME:
           GetSizeCommand.fromFlags(flags).execute();
           break;
         case VersionCommand.COMMAND_NAME:
           VersionCommand.fromFlags(flags, System.out).execute();
           break;
+        case ServeCommand.COMMAND_NAME:
+          try (AdbServer adbServer = DdmlibAdbServer.getInstance()) {
+            ServeCommand.fromFlags(flags, adbServer).execute();
+          }
+          break;
         case HELP_CMD:
           if (flags.getSubCommand().isPresent()) {
             help(flags.getSubCommand().get(), runtime);
@@ -132,11 +146,14 @@ public class BundleToolMain {
             BuildBundleCommand.help(),
             BuildApksCommand.help(),
             ExtractApksCommand.help(),
+            ExtractApksBatchCommand.help(),
             GetDeviceSpecCommand.help(),
             InstallApksCommand.help(),
             ValidateBundleCommand.help(),
             DumpCommand.help(),
+            DumpManifestBatchCommand.help(),
             GetSizeCommand.help(),
+            ServeCommand.help(),
             VersionCommand.help());
 
     System.out.println("Synopsis: bundletool <command> ...");
@@ -159,6 +176,9 @@ public class BundleToolMain {
       case ExtractApksCommand.COMMAND_NAME:
         commandHelp = ExtractApksCommand.help();
         break;
+      case ExtractApksBatchCommand.COMMAND_NAME:
+        commandHelp = ExtractApksBatchCommand.help();
+        break;
       case GetDeviceSpecCommand.COMMAND_NAME:
         commandHelp = GetDeviceSpecCommand.help();
         break;
@@ -171,9 +191,15 @@ public class BundleToolMain {
       case DumpCommand.COMMAND_NAME:
         commandHelp = DumpCommand.help();
         break;
+      case DumpManifestBatchCommand.COMMAND_NAME:
+        commandHelp = DumpManifestBatchCommand.help();
+        break;
       case GetSizeCommand.COMMAND_NAME:
         commandHelp = GetSizeCommand.help();
         break;
+      case ServeCommand.COMMAND_NAME:
+        commandHelp = ServeCommand.help();
+        break;
       default:
         System.err.printf("Error: Unrecognized command '%s'.%n%n%n", commandName);
         help();
@@ -28,6 +28,7 @@ import com.android.bundle.Devices.DeviceSpec;
 import com.android.tools.build.bundletool.commands.CommandHelp.CommandDescription;
 import com.android.tools.build.bundletool.commands.CommandHelp.FlagDescription;
 import com.android.tools.build.bundletool.device.AdbServer;
+import com.android.tools.build.bundletool.device.DeviceSpecCache;
 import com.android.tools.build.bundletool.device.DeviceSpecParser;
 import com.android.tools.build.bundletool.flags.Flag;
 import com.android.tools.build.bundletool.flags.ParsedFlags;
@@ -35,6 +36,7 @@ import com.android.tools.build.bundletool.io.TempDirectory;
 import com.android.tools.build.bundletool.model.Aapt2Command;
 import com.android.tools.build.bundletool.model.ApkListener;
 import com.android.tools.build.bundletool.model.ApkModifier;
+import com.android.tools.build.bundletool.model.MetricsListener;
 import com.android.tools.build.bundletool.model.OptimizationDimension;
 import com.android.tools.build.bundletool.model.Password;
 import com.android.tools.build.bundletool.model.SigningConfiguration;
@@ -57,9 +59,11 @@ import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import java.io.PrintStream;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Optional;
 import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /** Command to generate APKs from an Android App Bundle. */
@@ -109,10 +113,17 @@ public abstract class BuildApksCommand {
   private static final Flag<ApkBuildMode> BUILD_MODE_FLAG =
       Flag.enumFlag("mode", ApkBuildMode.class);
   private static final Flag<Boolean> LOCAL_TESTING_MODE_FLAG = Flag.booleanFlag("local-testing");
+  private static final Flag<Boolean> RECORD_DOWNLOAD_SIZES_FLAG =
+      Flag.booleanFlag("record-download-sizes");
+  private static final Flag<Boolean> INDEXED_APK_SET_FLAG = Flag.booleanFlag("indexed-apk-set");
+  private static final Flag<Path> METRICS_OUTPUT_FLAG = Flag.path("metrics-output");
+  private static final Flag<Path> TRACE_OUTPUT_FLAG = Flag.path("trace-output");
 
   private static final Flag<Path> ADB_PATH_FLAG = Flag.path("adb");
   private static final Flag<Boolean> CONNECTED_DEVICE_FLAG = Flag.booleanFlag("connected-device");
   private static final Flag<String> DEVICE_ID_FLAG = Flag.string("device-id");
+  private static final Flag<Integer> DEVICE_SPEC_CACHE_TTL_FLAG =
+      Flag.positiveInteger("device-spec-cache-ttl-minutes");
   private static final String ANDROID_SERIAL_VARIABLE = "ANDROID_SERIAL";
   private static final Flag<ImmutableSet<String>> MODULES_FLAG = Flag.stringSet("modules");
 
@@ -159,10 +170,17 @@ public abstract class BuildApksCommand {
   /** Required when getGenerateOnlyForConnectedDevice is true. */
   public abstract Optional<Path> getAdbPath();
 
+  /** Cache of the spec of the connected device. Used only if getGenerateOnlyForConnectedDevice. */
+  public abstract Optional<DeviceSpecCache> getDeviceSpecCache();
+
   public abstract ApkBuildMode getApkBuildMode();
 
   public abstract boolean getLocalTestingMode();
 
+  public abstract boolean getRecordDownloadSizes();
+
+  public abstract boolean getIndexedApkSet();
+
   public abstract Optional<Aapt2Command> getAapt2Command();
 
   public abstract Optional<SigningConfiguration> getSigningConfiguration();
@@ -182,6 +200,12 @@ public abstract class BuildApksCommand {
 
   public abstract Optional<ApkModifier> getApkModifier();
 
+  public abstract Optional<MetricsListener> getMetricsListener();
+
+  public abstract Optional<Path> getMetricsOutputFile();
+
+  public abstract Optional<Path> getTraceOutputFile();
+
   public abstract ImmutableList<SubValidator> getExtraValidators();
 
   public abstract Optional<Integer> getFirstVariantNumber();
@@ -195,6 +219,8 @@ public abstract class BuildApksCommand {
         .setOverwriteOutput(false)
         .setApkBuildMode(DEFAULT)
         .setLocalTestingMode(false)
+        .setRecordDownloadSizes(false)
+        .setIndexedApkSet(false)
         .setGenerateOnlyForConnectedDevice(false)
         .setCreateApkSetArchive(true)
         .setOptimizationDimensions(ImmutableSet.of())
@@ -238,6 +264,22 @@ public abstract class BuildApksCommand {
      */
     public abstract Builder setLocalTestingMode(boolean enableLocalTesting);
 
+    /**
+     * Sets whether the estimated download sizes of the APKs should be stored in the APK Set, so
+     * that the {@code get-size} command doesn't need to estimate them again.
+     *
+     * <p>Ignored if the APK Set is not written as an archive. The default is {@code false}.
+     */
+    public abstract Builder setRecordDownloadSizes(boolean recordDownloadSizes);
+
+    /**
+     * Sets whether the APK Set is written with the indexed layout: the table of contents first,
+     * followed by a binary index giving the byte range and targeting of each APK, all uncompressed.
+     *
+     * <p>Ignored if the APK Set is not written as an archive. The default is {@code false}.
+     */
+    public abstract Builder setIndexedApkSet(boolean indexedApkSet);
+
     /**
      * Sets if the generated APK Set will contain APKs compatible only with the connected device.
      */
@@ -266,6 +308,12 @@ public abstract class BuildApksCommand {
     /** The caller is responsible for the lifecycle of the {@link AdbServer}. */
     public abstract Builder setAdbServer(AdbServer adbServer);
 
+    /**
+     * Sets a cache of device specs, to skip analysing the connected device when it has been
+     * analysed recently.
+     */
+    public abstract Builder setDeviceSpecCache(DeviceSpecCache deviceSpecCache);
+
     /** Provides a wrapper around the execution of the aapt2 command. */
     public abstract Builder setAapt2Command(Aapt2Command aapt2Command);
 
@@ -325,6 +373,26 @@ public abstract class BuildApksCommand {
      */
     public abstract Builder setApkModifier(ApkModifier apkModifier);
 
+    /**
+     * Provides a {@link MetricsListener} that will be notified of the resources used by each phase
+     * of APK creation and by each APK.
+     *
+     * <p>The {@link MetricsListener} must be thread-safe.
+     */
+    public abstract Builder setMetricsListener(MetricsListener metricsListener);
+
+    /**
+     * Sets the path of a JSON file where the resources used by each phase of APK creation and by
+     * each APK will be written.
+     */
+    public abstract Builder setMetricsOutputFile(Path metricsOutputFile);
+
+    /**
+     * Sets the path of a JSON file in the Chrome trace event format where the steps of serializing
+     * each APK, and the threads they ran on, will be written.
+     */
+    public abstract Builder setTraceOutputFile(Path traceOutputFile);
+
     /** Provides additional {@link SubValidator}s that will be invoked during validation. */
     public abstract Builder setExtraValidators(ImmutableList<SubValidator> extraValidators);
 
@@ -451,6 +519,28 @@ public abstract class BuildApksCommand {
       PrintStream out,
       SystemEnvironmentProvider systemEnvironmentProvider,
       AdbServer adbServer) {
+    return fromFlags(
+        flags,
+        out,
+        systemEnvironmentProvider,
+        adbServer,
+        /* defaultExecutorService= */ Optional.empty(),
+        /* defaultAapt2Command= */ Optional.empty());
+  }
+
+  /**
+   * Parses the flags, falling back to the given executor service and aapt2 when the flags don't
+   * specify them.
+   *
+   * <p>The default executor service is not shut down by the command.
+   */
+  static BuildApksCommand fromFlags(
+      ParsedFlags flags,
+      PrintStream out,
+      SystemEnvironmentProvider systemEnvironmentProvider,
+      AdbServer adbServer,
+      Optional<ListeningExecutorService> defaultExecutorService,
+      Optional<Supplier<Aapt2Command>> defaultAapt2Command) {
     BuildApksCommand.Builder buildApksCommand =
         BuildApksCommand.builder()
             .setBundlePath(BUNDLE_LOCATION_FLAG.getRequiredValue(flags))
@@ -459,14 +549,20 @@ public abstract class BuildApksCommand {
 
     // Optional arguments.
     OVERWRITE_OUTPUT_FLAG.getValue(flags).ifPresent(buildApksCommand::setOverwriteOutput);
-    AAPT2_PATH_FLAG
-        .getValue(flags)
-        .ifPresent(
-            aapt2Path ->
-                buildApksCommand.setAapt2Command(Aapt2Command.createFromExecutablePath(aapt2Path)));
+    Optional<Path> aapt2Path = AAPT2_PATH_FLAG.getValue(flags);
+    if (aapt2Path.isPresent()) {
+      buildApksCommand.setAapt2Command(Aapt2Command.createFromExecutablePath(aapt2Path.get()));
+    } else {
+      defaultAapt2Command.map(Supplier::get).ifPresent(buildApksCommand::setAapt2Command);
+    }
 
     BUILD_MODE_FLAG.getValue(flags).ifPresent(buildApksCommand::setApkBuildMode);
     LOCAL_TESTING_MODE_FLAG.getValue(flags).ifPresent(buildApksCommand::setLocalTestingMode);
+    RECORD_DOWNLOAD_SIZES_FLAG.getValue(flags).ifPresent(buildApksCommand::setRecordDownloadSizes);
+    INDEXED_APK_SET_FLAG.getValue(flags).ifPresent(buildApksCommand::setIndexedApkSet);
+    METRICS_OUTPUT_FLAG.getValue(flags).ifPresent(buildApksCommand::setMetricsOutputFile);
+    TRACE_OUTPUT_FLAG.getValue(flags).ifPresent(buildApksCommand::setTraceOutputFile);
+    defaultExecutorService.ifPresent(buildApksCommand::setExecutorService);
     MAX_THREADS_FLAG
         .getValue(flags)
         .ifPresent(
@@ -493,6 +589,7 @@ public abstract class BuildApksCommand {
     // Applied only when --connected-device flag is set, because we don't want to fail command
     // if ADB cannot be found in a normal mode.
     Optional<Path> adbPathFromFlag = ADB_PATH_FLAG.getValue(flags);
+    Optional<Integer> deviceSpecCacheTtl = DEVICE_SPEC_CACHE_TTL_FLAG.getValue(flags);
     if (connectedDeviceMode) {
       Path adbPath =
           adbPathFromFlag.orElseGet(
@@ -506,6 +603,9 @@ public abstract class BuildApksCommand {
                                       + "flag or define ANDROID_HOME or PATH environment "
                                       + "variable.")));
       buildApksCommand.setAdbPath(adbPath).setAdbServer(adbServer);
+      deviceSpecCacheTtl
+          .map(ttl -> DeviceSpecCache.createInUserHome(Duration.ofMinutes(ttl)))
+          .ifPresent(buildApksCommand::setDeviceSpecCache);
     }
 
     ApkBuildMode apkBuildMode = BUILD_MODE_FLAG.getValue(flags).orElse(DEFAULT);
@@ -536,7 +636,7 @@ public abstract class BuildApksCommand {
     }
   }
 
-  private static Aapt2Command extractAapt2FromJar(Path tempDir) {
+  static Aapt2Command extractAapt2FromJar(Path tempDir) {
     return new SdkToolsLocator()
         .extractAapt2(tempDir)
         .map(Aapt2Command::createFromExecutablePath)
@@ -709,6 +809,17 @@ public abstract class BuildApksCommand {
                         + "device or emulator is connected. Used only if %s flag is set.",
                     ANDROID_SERIAL_VARIABLE, CONNECTED_DEVICE_FLAG)
                 .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(DEVICE_SPEC_CACHE_TTL_FLAG.getName())
+                .setExampleValue("60")
+                .setOptional(true)
+                .setDescription(
+                    "If set, the spec of the connected device is cached on disk for the given "
+                        + "number of minutes, keyed by its serial name and build fingerprint. Used "
+                        + "only if %s flag is set.",
+                    CONNECTED_DEVICE_FLAG)
+                .build())
         .addFlag(
             FlagDescription.builder()
                 .setFlagName(DEVICE_SPEC_FLAG.getName())
@@ -746,6 +857,43 @@ public abstract class BuildApksCommand {
                         + " accessed by the Play Core API.",
                     InstallApksCommand.COMMAND_NAME)
                 .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(RECORD_DOWNLOAD_SIZES_FLAG.getName())
+                .setOptional(true)
+                .setDescription(
+                    "If set, the estimated download size of each APK is stored in the APK Set, "
+                        + "so that `bundletool %s` doesn't need to compute it again.",
+                    GetSizeCommand.COMMAND_NAME)
+                .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(INDEXED_APK_SET_FLAG.getName())
+                .setOptional(true)
+                .setDescription(
+                    "If set, the table of contents is written first in the APK Set, followed by "
+                        + "a binary index of the byte range and targeting of each APK, and all "
+                        + "these files are stored uncompressed. The APKs can then be served "
+                        + "straight from the APK Set, e.g. with HTTP range requests.")
+                .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(METRICS_OUTPUT_FLAG.getName())
+                .setExampleValue("metrics.json")
+                .setOptional(true)
+                .setDescription(
+                    "Path to a JSON file where the wall time, CPU time, allocated bytes and I/O "
+                        + "of each phase of the APK generation and of each APK are written.")
+                .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(TRACE_OUTPUT_FLAG.getName())
+                .setExampleValue("trace.json")
+                .setOptional(true)
+                .setDescription(
+                    "Path to a JSON file where the steps of serializing each APK are written in "
+                        + "the Chrome trace event format, viewable in chrome://tracing.")
+                .build())
         .addFlag(
             FlagDescription.builder()
                 .setFlagName(CREATE_STAMP_FLAG.getName())
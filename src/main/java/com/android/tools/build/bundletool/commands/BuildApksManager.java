@@ -36,6 +36,7 @@ import com.android.tools.build.bundletool.device.ApkMatcher;
 import com.android.tools.build.bundletool.device.DeviceAnalyzer;
 import com.android.tools.build.bundletool.device.IncompatibleDeviceException;
 import com.android.tools.build.bundletool.io.ApkPathManager;
+import com.android.tools.build.bundletool.io.ApkSerializationOptions;
 import com.android.tools.build.bundletool.io.ApkSerializerManager;
 import com.android.tools.build.bundletool.io.ApkSetBuilderFactory;
 import com.android.tools.build.bundletool.io.ApkSetBuilderFactory.ApkSetBuilder;
@@ -50,10 +51,13 @@ import com.android.tools.build.bundletool.model.BundleModule.ModuleDeliveryType;
 import com.android.tools.build.bundletool.model.BundleModuleName;
 import com.android.tools.build.bundletool.model.GeneratedApks;
 import com.android.tools.build.bundletool.model.GeneratedAssetSlices;
+import com.android.tools.build.bundletool.model.MetricsListener;
+import com.android.tools.build.bundletool.model.MetricsRecorder;
 import com.android.tools.build.bundletool.model.ModuleSplit;
 import com.android.tools.build.bundletool.model.OptimizationDimension;
 import com.android.tools.build.bundletool.model.SigningConfiguration;
 import com.android.tools.build.bundletool.model.SourceStamp;
+import com.android.tools.build.bundletool.model.TraceRecorder;
 import com.android.tools.build.bundletool.model.exceptions.CommandExecutionException;
 import com.android.tools.build.bundletool.model.targeting.AlternativeVariantTargetingPopulator;
 import com.android.tools.build.bundletool.model.utils.SplitsXmlInjector;
@@ -75,6 +79,7 @@ import com.android.tools.build.bundletool.validation.AppBundleValidator;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
@@ -93,11 +98,23 @@ final class BuildApksManager {
   private final BuildApksCommand command;
   private final Aapt2Command aapt2Command;
   private final Path tempDir;
+  private final MetricsRecorder metricsRecorder;
+  private final TraceRecorder traceRecorder;
+  private final ListeningExecutorService executorService;
 
   BuildApksManager(BuildApksCommand command, Aapt2Command aapt2Command, Path tempDir) {
     this.command = command;
     this.aapt2Command = aapt2Command;
     this.tempDir = tempDir;
+    this.metricsRecorder =
+        command.getMetricsListener().isPresent() || command.getMetricsOutputFile().isPresent()
+            ? MetricsRecorder.create(command.getMetricsListener().orElse(MetricsListener.NO_OP))
+            : MetricsRecorder.disabled();
+    this.traceRecorder =
+        command.getTraceOutputFile().isPresent()
+            ? TraceRecorder.create()
+            : TraceRecorder.disabled();
+    this.executorService = metricsRecorder.measureTasks(command.getExecutorService());
   }
 
   public Path execute() {
@@ -131,6 +148,9 @@ final class BuildApksManager {
       }
     }
 
+    command.getMetricsOutputFile().ifPresent(metricsRecorder::writeMetrics);
+    command.getTraceOutputFile().ifPresent(traceRecorder::writeTrace);
+
     return command.getOutputFile();
   }
 
@@ -140,11 +160,12 @@ final class BuildApksManager {
     Optional<String> stampSource = sourceStamp.map(SourceStamp::getSource);
     AppBundleValidator bundleValidator = AppBundleValidator.create(command.getExtraValidators());
 
-    bundleValidator.validateFile(bundleZip);
-    AppBundle appBundle = AppBundle.buildFromZip(bundleZip);
-    bundleValidator.validate(appBundle);
-
-    appBundle = applyPreprocessors(appBundle);
+    AppBundle validatedBundle =
+        metricsRecorder.inPhase(
+            "validate-bundle",
+            () -> bundleValidator.validateAndBuildFromZip(bundleZip, executorService));
+    AppBundle appBundle =
+        metricsRecorder.inPhase("preprocess-bundle", () -> applyPreprocessors(validatedBundle));
 
     ImmutableSet<BundleModule> requestedModules =
         command.getModules().isEmpty()
@@ -165,59 +186,60 @@ final class BuildApksManager {
 
     // Split APKs
     if (apksToGenerate.generateSplitApks()) {
-      generatedApksBuilder.setSplitApks(generateSplitApks(appBundle, stampSource));
+      generatedApksBuilder.setSplitApks(
+          metricsRecorder.inPhase(
+              "generate-split-apks", () -> generateSplitApks(appBundle, stampSource)));
     }
 
     // Instant APKs
     if (apksToGenerate.generateInstantApks()) {
-      generatedApksBuilder.setInstantApks(generateInstantApks(appBundle, stampSource));
+      generatedApksBuilder.setInstantApks(
+          metricsRecorder.inPhase(
+              "generate-instant-apks", () -> generateInstantApks(appBundle, stampSource)));
     }
 
     // Standalone APKs
     if (apksToGenerate.generateStandaloneApks()) {
       generatedApksBuilder.setStandaloneApks(
-          generateStandaloneApks(tempDir, appBundle, stampSource));
+          metricsRecorder.inPhase(
+              "generate-standalone-apks",
+              () -> generateStandaloneApks(tempDir, appBundle, stampSource)));
     }
 
     // Universal APK
     if (apksToGenerate.generateUniversalApk()) {
-      // Note: Universal APK is a special type of standalone, with no optimization dimensions.
-      ImmutableList<BundleModule> modulesToFuse =
-          requestedModules.isEmpty()
-              ? modulesToFuse(appBundle.getFeatureModules().values().asList())
-              : requestedModules.asList();
       generatedApksBuilder.setStandaloneApks(
-          new ShardedApksGenerator(
-                  tempDir,
-                  bundleVersion,
-                  /* strip64BitLibrariesFromShards= */ false,
-                  getSuffixStrippings(bundleConfig),
-                  stampSource)
-              .generateSplits(
-                  modulesToFuse,
-                  appBundle.getBundleMetadata(),
-                  ApkOptimizations.getOptimizationsForUniversalApk()));
+          metricsRecorder.inPhase(
+              "generate-universal-apk",
+              () -> generateUniversalApk(appBundle, requestedModules, stampSource)));
     }
 
     // System APKs
     if (apksToGenerate.generateSystemApks()) {
       generatedApksBuilder.setSystemApks(
-          generateSystemApks(appBundle, deviceSpec, requestedModules));
+          metricsRecorder.inPhase(
+              "generate-system-apks",
+              () -> generateSystemApks(appBundle, deviceSpec, requestedModules)));
     }
 
     // Asset Slices
     if (apksToGenerate.generateAssetSlices()) {
-      generatedAssetSlices.setAssetSlices(generateAssetSlices(appBundle));
+      generatedAssetSlices.setAssetSlices(
+          metricsRecorder.inPhase("generate-asset-slices", () -> generateAssetSlices(appBundle)));
     }
 
     // Populate alternative targeting based on variant targeting of all APKs.
-    GeneratedApks generatedApks =
-        AlternativeVariantTargetingPopulator.populateAlternativeVariantTargeting(
-            generatedApksBuilder.build(),
-            appBundle.getBaseModule().getAndroidManifest().getMaxSdkVersion());
+    GeneratedApks targetedApks =
+        metricsRecorder.inPhase(
+            "populate-alternative-targeting",
+            () ->
+                AlternativeVariantTargetingPopulator.populateAlternativeVariantTargeting(
+                    generatedApksBuilder.build(),
+                    appBundle.getBaseModule().getAndroidManifest().getMaxSdkVersion()));
 
-    SplitsXmlInjector splitsXmlInjector = new SplitsXmlInjector();
-    generatedApks = splitsXmlInjector.process(generatedApks);
+    GeneratedApks generatedApks =
+        metricsRecorder.inPhase(
+            "inject-splits-xml", () -> new SplitsXmlInjector().process(targetedApks));
 
     if (deviceSpec.isPresent()) {
       // It is easier to fully check device compatibility once the splits have been generated (in
@@ -242,22 +264,55 @@ final class BuildApksManager {
         new ApkSerializerManager(
             appBundle,
             apkSetBuilder,
-            command.getExecutorService(),
+            executorService,
             command.getApkListener().orElse(ApkListener.NO_OP),
             command.getApkModifier().orElse(ApkModifier.NO_OP),
-            command.getFirstVariantNumber().orElse(0));
-
-    apkSerializerManager.populateApkSetBuilder(
-        generatedApks,
-        generatedAssetSlices.build(),
-        command.getApkBuildMode(),
-        deviceSpec,
-        getLocalTestingInfo(appBundle));
+            command.getFirstVariantNumber().orElse(0),
+            getSerializationOptions());
+
+    metricsRecorder.inPhase(
+        "serialize-apks",
+        () ->
+            apkSerializerManager.populateApkSetBuilder(
+                generatedApks,
+                generatedAssetSlices.build(),
+                command.getApkBuildMode(),
+                deviceSpec,
+                getLocalTestingInfo(appBundle)));
+
+    metricsRecorder.inPhase(
+        "write-apk-set",
+        () ->
+            traceRecorder.inSpan(
+                "write-apk-set",
+                () -> {
+                  if (command.getOverwriteOutput()) {
+                    Files.deleteIfExists(command.getOutputFile());
+                  }
+                  apkSetBuilder.writeTo(command.getOutputFile());
+                }));
+  }
 
-    if (command.getOverwriteOutput()) {
-      Files.deleteIfExists(command.getOutputFile());
-    }
-    apkSetBuilder.writeTo(command.getOutputFile());
+  private ImmutableList<ModuleSplit> generateUniversalApk(
+      AppBundle appBundle,
+      ImmutableSet<BundleModule> requestedModules,
+      Optional<String> stampSource) {
+    // Note: Universal APK is a special type of standalone, with no optimization dimensions.
+    ImmutableList<BundleModule> modulesToFuse =
+        requestedModules.isEmpty()
+            ? modulesToFuse(appBundle.getFeatureModules().values().asList())
+            : requestedModules.asList();
+    BundleConfig bundleConfig = appBundle.getBundleConfig();
+    return new ShardedApksGenerator(
+            tempDir,
+            BundleToolVersion.getVersionFromBundleConfig(bundleConfig),
+            /* strip64BitLibrariesFromShards= */ false,
+            getSuffixStrippings(bundleConfig),
+            stampSource)
+        .generateSplits(
+            modulesToFuse,
+            appBundle.getBundleMetadata(),
+            ApkOptimizations.getOptimizationsForUniversalApk());
   }
 
   private ImmutableList<ModuleSplit> generateStandaloneApks(
@@ -316,7 +371,8 @@ final class BuildApksManager {
       // from crashing too soon (before reaching Application#onCreate), in case when only
       // the base master split is installed.
       apkGenerationConfiguration.setBaseManifestReachableResources(
-          new ResourceAnalyzer(appBundle).findAllAppResourcesReachableFromBaseManifest());
+          new ResourceAnalyzer(appBundle, executorService)
+              .findAllAppResourcesReachableFromBaseManifest());
     }
 
     ImmutableList<BundleModule> featureModules = appBundle.getFeatureModules().values().asList();
@@ -358,7 +414,8 @@ final class BuildApksManager {
     AdbServer adbServer = command.getAdbServer().get();
     adbServer.init(command.getAdbPath().get());
 
-    return new DeviceAnalyzer(adbServer).getDeviceSpec(command.getDeviceId());
+    return new DeviceAnalyzer(adbServer, command.getDeviceSpecCache())
+        .getDeviceSpec(command.getDeviceId());
   }
 
   private ApkSetBuilder createApkSetBuilder(
@@ -376,7 +433,8 @@ final class BuildApksManager {
             signingConfiguration,
             stampSigningConfiguration,
             bundleVersion,
-            compression);
+            compression,
+            getSerializationOptions());
     StandaloneApkSerializer standaloneApkSerializer =
         new StandaloneApkSerializer(
             apkPathmanager,
@@ -384,14 +442,24 @@ final class BuildApksManager {
             signingConfiguration,
             stampSigningConfiguration,
             bundleVersion,
-            compression);
+            compression,
+            getSerializationOptions());
 
     if (!command.getCreateApkSetArchive()) {
       return ApkSetBuilderFactory.createApkSetWithoutArchiveBuilder(
           splitApkSerializer, standaloneApkSerializer, command.getOutputFile());
     }
     return ApkSetBuilderFactory.createApkSetBuilder(
-        splitApkSerializer, standaloneApkSerializer, tempDir);
+        splitApkSerializer, standaloneApkSerializer, tempDir, getSerializationOptions());
+  }
+
+  private ApkSerializationOptions getSerializationOptions() {
+    return ApkSerializationOptions.builder()
+        .setMetricsRecorder(metricsRecorder)
+        .setTraceRecorder(traceRecorder)
+        .setRecordDownloadSizes(command.getRecordDownloadSizes())
+        .setIndexedApkSet(command.getIndexedApkSet())
+        .build();
   }
 
   private ApkGenerationConfiguration.Builder getCommonSplitApkGenerationConfiguration(
@@ -464,6 +532,14 @@ final class BuildApksManager {
       }
     }
 
+    if (command.getMetricsOutputFile().isPresent() && !command.getOverwriteOutput()) {
+      checkFileDoesNotExist(command.getMetricsOutputFile().get());
+    }
+
+    if (command.getTraceOutputFile().isPresent() && !command.getOverwriteOutput()) {
+      checkFileDoesNotExist(command.getTraceOutputFile().get());
+    }
+
     if (command.getGenerateOnlyForConnectedDevice()) {
       checkArgument(
           command.getAdbServer().isPresent(),
@@ -16,6 +16,7 @@
 
 package com.android.tools.build.bundletool.commands;
 
+import static com.android.tools.build.bundletool.model.utils.ConcurrencyUtils.waitForAll;
 import static com.android.tools.build.bundletool.model.utils.files.FilePreconditions.checkFileDoesNotExist;
 import static com.android.tools.build.bundletool.model.utils.files.FilePreconditions.checkFileExistsAndReadable;
 import static com.android.tools.build.bundletool.model.utils.files.FilePreconditions.checkFileHasExtension;
@@ -47,6 +48,8 @@ import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.io.Closer;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.util.JsonFormat;
 import java.io.IOException;
@@ -55,6 +58,7 @@ import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Optional;
+import java.util.concurrent.Executors;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 
@@ -70,6 +74,9 @@ public abstract class BuildBundleCommand {
   private static final Flag<ImmutableMap<ZipPath, Path>> METADATA_FILES_FLAG =
       Flag.mapCollector("metadata-file", ZipPath.class, Path.class);
   private static final Flag<Boolean> UNCOMPRESSED_FLAG = Flag.booleanFlag("uncompressed");
+  private static final Flag<Integer> MAX_THREADS_FLAG = Flag.positiveInteger("max-threads");
+
+  private static final int DEFAULT_THREAD_POOL_SIZE = 4;
 
   public abstract Path getOutputPath();
 
@@ -83,6 +90,12 @@ public abstract class BuildBundleCommand {
 
   abstract boolean getUncompressedBundle();
 
+  /** Returns the executor service provided by the caller, if any. */
+  public abstract Optional<ListeningExecutorService> getExecutorService();
+
+  /** Returns the number of threads to use when no executor service is provided. */
+  public abstract Optional<Integer> getMaxThreads();
+
   public static Builder builder() {
     // By default, everything is compressed.
     return new AutoValue_BuildBundleCommand.Builder().setUncompressedBundle(false);
@@ -160,10 +173,37 @@ public abstract class BuildBundleCommand {
      */
     public abstract Builder setUncompressedBundle(boolean uncompressed);
 
+    /**
+     * Allows to set an executor service for parallelization.
+     *
+     * <p>Optional. The caller is responsible for providing a service that accepts new tasks, and
+     * for shutting it down afterwards.
+     */
+    public abstract Builder setExecutorService(ListeningExecutorService executorService);
+
+    /**
+     * Sets the maximum number of threads used to process the modules, when no executor service is
+     * set.
+     *
+     * <p>Optional. Defaults to 4.
+     */
+    public abstract Builder setMaxThreads(int maxThreads);
+
     public abstract BuildBundleCommand build();
   }
 
   public static BuildBundleCommand fromFlags(ParsedFlags flags) {
+    return fromFlags(flags, /* defaultExecutorService= */ Optional.empty());
+  }
+
+  /**
+   * Parses the flags of the command.
+   *
+   * <p>The default executor service is used unless the number of threads is set on the command
+   * line.
+   */
+  static BuildBundleCommand fromFlags(
+      ParsedFlags flags, Optional<ListeningExecutorService> defaultExecutorService) {
     BuildBundleCommand.Builder builder =
         builder()
             .setOutputPath(OUTPUT_FLAG.getRequiredValue(flags))
@@ -177,6 +217,12 @@ public abstract class BuildBundleCommand {
         .getValue(flags)
         .ifPresent(metadataFiles -> metadataFiles.forEach(builder::addMetadataFileInternal));
     UNCOMPRESSED_FLAG.getValue(flags).ifPresent(builder::setUncompressedBundle);
+    Optional<Integer> maxThreads = MAX_THREADS_FLAG.getValue(flags);
+    if (maxThreads.isPresent()) {
+      builder.setMaxThreads(maxThreads.get());
+    } else {
+      defaultExecutorService.ifPresent(builder::setExecutorService);
+    }
 
     flags.checkNoUnknownFlags();
 
@@ -186,6 +232,13 @@ public abstract class BuildBundleCommand {
   public void execute() {
     validateInput();
 
+    ListeningExecutorService executorService =
+        getExecutorService()
+            .orElseGet(
+                () ->
+                    MoreExecutors.listeningDecorator(
+                        Executors.newFixedThreadPool(
+                            getMaxThreads().orElse(DEFAULT_THREAD_POOL_SIZE))));
     try (Closer closer = Closer.create()) {
       ImmutableList.Builder<ZipFile> moduleZipFilesBuilder = ImmutableList.builder();
       for (Path modulePath : getModulesPaths()) {
@@ -205,29 +258,19 @@ public abstract class BuildBundleCommand {
       }
       ImmutableList<ZipFile> moduleZipFiles = moduleZipFilesBuilder.build();
 
-      ImmutableList<BundleModule> modules = new BundleModulesValidator().validate(moduleZipFiles);
+      ImmutableList<BundleModule> modules =
+          new BundleModulesValidator().validate(moduleZipFiles, executorService);
       checkState(
           moduleZipFiles.size() == modules.size(),
           "Incorrect number of modules parsed (%s != %s).",
           moduleZipFiles.size(),
           modules.size());
 
-      ImmutableList.Builder<BundleModule> modulesWithTargeting = ImmutableList.builder();
-      for (BundleModule module : modules) {
-        BundleModule.Builder moduleWithTargeting = module.toBuilder();
-
-        Optional<Assets> assetsTargeting = generateAssetsTargeting(module);
-        assetsTargeting.ifPresent(moduleWithTargeting::setAssetsConfig);
-
-        Optional<NativeLibraries> nativeLibrariesTargeting =
-            generateNativeLibrariesTargeting(module);
-        nativeLibrariesTargeting.ifPresent(moduleWithTargeting::setNativeConfig);
-
-        Optional<ApexImages> apexImagesTargeting = generateApexImagesTargeting(module);
-        apexImagesTargeting.ifPresent(moduleWithTargeting::setApexConfig);
-
-        modulesWithTargeting.add(moduleWithTargeting.build());
-      }
+      ImmutableList<BundleModule> modulesWithTargeting =
+          waitForAll(
+              modules.stream()
+                  .map(module -> executorService.submit(() -> addTargeting(module)))
+                  .collect(toImmutableList()));
 
       // Read the Bundle Config file if provided by the developer.
       BundleConfig bundleConfig =
@@ -238,15 +281,34 @@ public abstract class BuildBundleCommand {
               .build();
 
       AppBundle appBundle =
-          AppBundle.buildFromModules(
-              modulesWithTargeting.build(), bundleConfig, getBundleMetadata());
+          AppBundle.buildFromModules(modulesWithTargeting, bundleConfig, getBundleMetadata());
 
-      new AppBundleSerializer(getUncompressedBundle()).writeToDisk(appBundle, getOutputPath());
+      new AppBundleSerializer(getUncompressedBundle())
+          .writeToDisk(appBundle, getOutputPath(), executorService);
     } catch (IOException e) {
       throw new UncheckedIOException(e);
+    } finally {
+      if (!getExecutorService().isPresent()) {
+        executorService.shutdownNow();
+      }
     }
   }
 
+  private static BundleModule addTargeting(BundleModule module) {
+    BundleModule.Builder moduleWithTargeting = module.toBuilder();
+
+    Optional<Assets> assetsTargeting = generateAssetsTargeting(module);
+    assetsTargeting.ifPresent(moduleWithTargeting::setAssetsConfig);
+
+    Optional<NativeLibraries> nativeLibrariesTargeting = generateNativeLibrariesTargeting(module);
+    nativeLibrariesTargeting.ifPresent(moduleWithTargeting::setNativeConfig);
+
+    Optional<ApexImages> apexImagesTargeting = generateApexImagesTargeting(module);
+    apexImagesTargeting.ifPresent(moduleWithTargeting::setApexConfig);
+
+    return moduleWithTargeting.build();
+  }
+
   private void validateInput() {
     getModulesPaths()
         .forEach(
@@ -386,6 +448,16 @@ public abstract class BuildBundleCommand {
                         + "the raw data to be stored. The flag can be repeated.")
                 .setOptional(true)
                 .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(MAX_THREADS_FLAG.getName())
+                .setExampleValue("num-threads")
+                .setOptional(true)
+                .setDescription(
+                    "Sets the maximum number of threads used to process the modules and compress "
+                        + "the entries of the App Bundle (default: %d).",
+                    DEFAULT_THREAD_POOL_SIZE)
+                .build())
         .build();
   }
 }
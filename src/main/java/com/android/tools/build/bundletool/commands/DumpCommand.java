@@ -28,10 +28,13 @@ import com.android.tools.build.bundletool.model.ResourceTableEntry;
 import com.android.tools.build.bundletool.model.exceptions.ValidationException;
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.io.PrintStream;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.concurrent.Executors;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -47,6 +50,7 @@ public abstract class DumpCommand {
   private static final Flag<String> XPATH_FLAG = Flag.string("xpath");
   private static final Flag<String> RESOURCE_FLAG = Flag.string("resource");
   private static final Flag<Boolean> VALUES_FLAG = Flag.booleanFlag("values");
+  private static final Flag<Integer> MAX_THREADS_FLAG = Flag.positiveInteger("max-threads");
 
   private static final Pattern RESOURCE_NAME_PATTERN =
       Pattern.compile("(?<type>[^/]+)/(?<name>[^/]+)");
@@ -67,6 +71,9 @@ public abstract class DumpCommand {
 
   public abstract Optional<Boolean> getPrintValues();
 
+  /** Number of threads reading the modules when dumping resources; sequential if absent. */
+  public abstract Optional<Integer> getMaxThreads();
+
   public static Builder builder() {
     return new AutoValue_DumpCommand.Builder().setOutputStream(System.out);
   }
@@ -107,10 +114,22 @@ public abstract class DumpCommand {
     /** Sets whether the values should also be printed when printing the resources. */
     public abstract Builder setPrintValues(boolean printValues);
 
+    /**
+     * Sets the number of threads used to read the resource tables of the modules in parallel.
+     *
+     * <p>By default, the modules are read sequentially and the resources are printed as they are
+     * read.
+     */
+    public abstract Builder setMaxThreads(int maxThreads);
+
     public abstract DumpCommand build();
   }
 
   public static DumpCommand fromFlags(ParsedFlags flags) {
+    return fromFlags(flags, System.out);
+  }
+
+  static DumpCommand fromFlags(ParsedFlags flags, PrintStream outputStream) {
     DumpTarget dumpTarget = parseDumpTarget(flags);
 
     Path bundlePath = BUNDLE_LOCATION_FLAG.getRequiredValue(flags);
@@ -118,13 +137,18 @@ public abstract class DumpCommand {
     Optional<String> xPath = XPATH_FLAG.getValue(flags);
     Optional<String> resource = RESOURCE_FLAG.getValue(flags);
     Optional<Boolean> printValues = VALUES_FLAG.getValue(flags);
+    Optional<Integer> maxThreads = MAX_THREADS_FLAG.getValue(flags);
 
     DumpCommand.Builder dumpCommand =
-        DumpCommand.builder().setBundlePath(bundlePath).setDumpTarget(dumpTarget);
+        DumpCommand.builder()
+            .setBundlePath(bundlePath)
+            .setDumpTarget(dumpTarget)
+            .setOutputStream(outputStream);
 
     moduleName.ifPresent(dumpCommand::setModuleName);
     xPath.ifPresent(dumpCommand::setXPathExpression);
     printValues.ifPresent(dumpCommand::setPrintValues);
+    maxThreads.ifPresent(dumpCommand::setMaxThreads);
     resource.ifPresent(
         r -> {
           try {
@@ -154,8 +178,19 @@ public abstract class DumpCommand {
         break;
 
       case RESOURCES:
-        new DumpManager(getOutputStream(), getBundlePath())
-            .printResources(parseResourcePredicate(), getPrintValues().orElse(false));
+        Optional<ListeningExecutorService> executorService =
+            getMaxThreads()
+                .map(
+                    maxThreads ->
+                        MoreExecutors.listeningDecorator(
+                            Executors.newFixedThreadPool(maxThreads)));
+        try {
+          new DumpManager(getOutputStream(), getBundlePath())
+              .printResources(
+                  parseResourcePredicate(), getPrintValues().orElse(false), executorService);
+        } finally {
+          executorService.ifPresent(ListeningExecutorService::shutdownNow);
+        }
         break;
     }
   }
@@ -182,6 +217,10 @@ public abstract class DumpCommand {
     if (!getDumpTarget().equals(DumpTarget.RESOURCES) && getPrintValues().isPresent()) {
       throw new ValidationException("The --values flag can only be passed when dumping resources.");
     }
+    if (!getDumpTarget().equals(DumpTarget.RESOURCES) && getMaxThreads().isPresent()) {
+      throw new ValidationException(
+          "The --max-threads flag can only be passed when dumping resources.");
+    }
   }
 
   private static DumpTarget parseDumpTarget(ParsedFlags flags) {
@@ -327,6 +366,16 @@ public abstract class DumpCommand {
                         + "Only applies when dumping the resources.")
                 .setOptional(true)
                 .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(MAX_THREADS_FLAG.getName())
+                .setDescription(
+                    "Number of threads reading the resource tables of the modules in parallel. "
+                        + "By default, the modules are read one after the other and the resources "
+                        + "are printed as they are read. Only applies when dumping the resources.")
+                .setExampleValue("4")
+                .setOptional(true)
+                .build())
         .build();
   }
 }
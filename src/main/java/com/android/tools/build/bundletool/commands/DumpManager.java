@@ -15,40 +15,54 @@
  */
 package com.android.tools.build.bundletool.commands;
 
-import static com.android.tools.build.bundletool.model.utils.CollectorUtils.groupingBySortedKeys;
+import static com.android.tools.build.bundletool.model.utils.ConcurrencyUtils.waitForAll;
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSortedSet.toImmutableSortedSet;
+import static com.google.common.util.concurrent.MoreExecutors.newDirectExecutorService;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.android.aapt.ConfigurationOuterClass.Configuration;
 import com.android.aapt.Resources.ConfigValue;
-import com.android.aapt.Resources.ResourceTable;
 import com.android.aapt.Resources.XmlNode;
 import com.android.bundle.Config.BundleConfig;
+import com.android.tools.build.bundletool.io.TempDirectory;
 import com.android.tools.build.bundletool.model.BundleModule.SpecialModuleEntry;
 import com.android.tools.build.bundletool.model.BundleModuleName;
+import com.android.tools.build.bundletool.model.InputStreamSupplier;
+import com.android.tools.build.bundletool.model.InputStreamSuppliers;
 import com.android.tools.build.bundletool.model.ResourceTableEntry;
 import com.android.tools.build.bundletool.model.ZipPath;
 import com.android.tools.build.bundletool.model.exceptions.BundleInvalidZipException;
 import com.android.tools.build.bundletool.model.exceptions.ValidationException;
-import com.android.tools.build.bundletool.model.utils.ResourcesUtils;
 import com.android.tools.build.bundletool.model.utils.ZipUtils;
+import com.android.tools.build.bundletool.model.utils.files.BufferedIo;
 import com.android.tools.build.bundletool.model.utils.xmlproto.XmlProtoNode;
 import com.android.tools.build.bundletool.model.utils.xmlproto.XmlProtoPrintUtils;
 import com.android.tools.build.bundletool.xml.XPathResolver;
 import com.android.tools.build.bundletool.xml.XPathResolver.XPathResult;
 import com.android.tools.build.bundletool.xml.XmlNamespaceContext;
 import com.android.tools.build.bundletool.xml.XmlProtoToXmlConverter;
+import com.android.tools.build.bundletool.xml.XmlProtoXPath;
 import com.android.tools.build.bundletool.xml.XmlUtils;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Ordering;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.protobuf.util.JsonFormat;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Predicate;
+import java.util.stream.IntStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
@@ -64,62 +78,136 @@ final class DumpManager {
   private final Path bundlePath;
 
   DumpManager(OutputStream outputStream, Path bundlePath) {
-    this.printStream = new PrintStream(outputStream);
+    this.printStream = newUtf8PrintStream(outputStream);
     this.bundlePath = bundlePath;
   }
 
   void printManifest(BundleModuleName moduleName, Optional<String> xPathExpression) {
-    // Extract the manifest from the bundle.
-    ZipPath manifestPath =
-        ZipPath.create(moduleName.getName()).resolve(SpecialModuleEntry.ANDROID_MANIFEST.getPath());
-    XmlProtoNode manifestProto =
-        new XmlProtoNode(extractAndParse(bundlePath, manifestPath, XmlNode::parseFrom));
-
-    // Convert the proto to real XML.
-    Document document = XmlProtoToXmlConverter.convert(manifestProto);
-
-    // Select the output.
-    String output;
-    if (xPathExpression.isPresent()) {
-      try {
-        XPath xPath = XPathFactory.newInstance().newXPath();
-        xPath.setNamespaceContext(new XmlNamespaceContext(manifestProto));
-        XPathExpression compiledXPathExpression = xPath.compile(xPathExpression.get());
-        XPathResult xPathResult = XPathResolver.resolve(document, compiledXPathExpression);
-        output = xPathResult.toString();
-      } catch (XPathExpressionException e) {
-        throw new ValidationException("Error in the XPath expression: " + xPathExpression, e);
-      }
-    } else {
-      output = XmlUtils.documentToString(document);
+    XmlProtoNode manifestProto;
+    try (ZipFile zipFile = new ZipFile(bundlePath.toFile())) {
+      manifestProto = readManifest(zipFile, moduleName);
+    } catch (ZipException e) {
+      throw new BundleInvalidZipException(e);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error occurred when trying to open the bundle.", e);
     }
 
-    // Print the output.
-    printStream.println(output.trim());
+    printStream.println(new ManifestQuery(xPathExpression).apply(manifestProto));
   }
 
-  void printResources(Predicate<ResourceTableEntry> resourcePredicate, boolean printValues) {
-    ImmutableList<ResourceTable> resourceTables;
-    try (ZipFile zipFile = new ZipFile(bundlePath.toFile())) {
-      resourceTables =
+  /** Extracts the manifest of the given module from the bundle. */
+  static XmlProtoNode readManifest(ZipFile bundleZip, BundleModuleName moduleName) {
+    ZipPath manifestPath =
+        ZipPath.create(moduleName.getName()).resolve(SpecialModuleEntry.ANDROID_MANIFEST.getPath());
+    return new XmlProtoNode(extractAndParse(bundleZip, manifestPath, XmlNode::parseFrom));
+  }
+
+  /**
+   * Prints the resources of all modules matching the predicate, grouped by package.
+   *
+   * <p>Each resource table is streamed once rather than parsed in full, and the predicate is
+   * evaluated before the entries are parsed: it only sees the IDs and names of the package, type
+   * and entry.
+   *
+   * <p>Packages are printed in alphabetical order, which is only known once all tables are read,
+   * so the entries of each table are printed to one temporary file per package, and the files are
+   * then copied to the output in order. With an executor service, the tables are read in parallel.
+   */
+  void printResources(
+      Predicate<ResourceTableEntry> resourcePredicate,
+      boolean printValues,
+      Optional<ListeningExecutorService> executorService) {
+    ListeningExecutorService executor = executorService.orElse(newDirectExecutorService());
+    try (ZipFile zipFile = new ZipFile(bundlePath.toFile());
+        TempDirectory tempDirectory = new TempDirectory(getClass().getSimpleName())) {
+      ImmutableList<InputStreamSupplier> resourceTableFiles =
           ZipUtils.allFileEntriesPaths(zipFile)
               .filter(path -> path.endsWith(SpecialModuleEntry.RESOURCE_TABLE.getPath()))
-              .map(path -> extractAndParse(zipFile, path, ResourceTable::parseFrom))
+              .map(
+                  path ->
+                      InputStreamSuppliers.fromZipEntry(zipFile.getEntry(path.toString()), zipFile))
               .collect(toImmutableList());
+
+      ImmutableList<ImmutableMap<String, Path>> outputFilesByTable =
+          waitForAll(
+              IntStream.range(0, resourceTableFiles.size())
+                  .mapToObj(
+                      index ->
+                          executor.submit(
+                              () ->
+                                  printEntriesByPackage(
+                                      resourceTableFiles.get(index),
+                                      tempDirectory.getPath().resolve(String.valueOf(index)),
+                                      resourcePredicate,
+                                      printValues)))
+                  .collect(toImmutableList()));
+
+      ImmutableSortedSet<String> packageNames =
+          outputFilesByTable.stream()
+              .flatMap(outputFiles -> outputFiles.keySet().stream())
+              .collect(toImmutableSortedSet(Ordering.natural()));
+      for (String packageName : packageNames) {
+        printStream.printf("Package '%s':%n", packageName);
+        for (ImmutableMap<String, Path> outputFiles : outputFilesByTable) {
+          if (outputFiles.containsKey(packageName)) {
+            // Same charset as printStream, so the bytes are copied as is.
+            Files.copy(outputFiles.get(packageName), printStream);
+          }
+        }
+        printStream.println();
+      }
     } catch (IOException e) {
       throw new ValidationException("Error occurred when reading the bundle.", e);
     }
+  }
 
-    ImmutableListMultimap<String, ResourceTableEntry> entriesByPackageName =
-        resourceTables.stream()
-            .flatMap(ResourcesUtils::entries)
-            .filter(resourcePredicate)
-            .collect(groupingBySortedKeys(entry -> entry.getPackage().getPackageName()));
+  /**
+   * Prints the entries of the table that match the predicate to one file per package in the given
+   * directory, and returns the files by package name, for the packages with matching entries only.
+   */
+  private static ImmutableMap<String, Path> printEntriesByPackage(
+      InputStreamSupplier resourceTable,
+      Path outputDirectory,
+      Predicate<ResourceTableEntry> resourcePredicate,
+      boolean printValues)
+      throws IOException {
+    Files.createDirectories(outputDirectory);
+    Map<String, Path> outputFiles = new HashMap<>();
+    Map<String, PrintStream> outputs = new HashMap<>();
+    try {
+      StreamingResourceTable.forEachEntry(
+          resourceTable,
+          resourcePredicate,
+          entry -> {
+            PrintStream output =
+                outputs.computeIfAbsent(
+                    entry.getPackage().getPackageName(),
+                    packageName -> {
+                      Path outputFile = outputDirectory.resolve(outputFiles.size() + ".txt");
+                      outputFiles.put(packageName, outputFile);
+                      try {
+                        return newUtf8PrintStream(BufferedIo.outputStream(outputFile));
+                      } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                      }
+                    });
+            printEntry(output, entry, printValues);
+          });
+    } finally {
+      outputs.values().forEach(PrintStream::close);
+    }
+    if (outputs.values().stream().anyMatch(PrintStream::checkError)) {
+      throw new IOException("Error occurred when writing the resources to a temporary file.");
+    }
+    return ImmutableMap.copyOf(outputFiles);
+  }
 
-    for (String packageName : entriesByPackageName.keySet()) {
-      printStream.printf("Package '%s':%n", packageName);
-      entriesByPackageName.get(packageName).forEach(entry -> printEntry(entry, printValues));
-      printStream.println();
+  private static PrintStream newUtf8PrintStream(OutputStream outputStream) {
+    try {
+      return new PrintStream(outputStream, /* autoFlush= */ false, UTF_8.name());
+    } catch (UnsupportedEncodingException e) {
+      // UTF-8 is supported by every JVM.
+      throw new IllegalStateException(e);
     }
   }
 
@@ -133,7 +221,8 @@ final class DumpManager {
     }
   }
 
-  private void printEntry(ResourceTableEntry entry, boolean printValues) {
+  private static void printEntry(
+      PrintStream printStream, ResourceTableEntry entry, boolean printValues) {
     printStream.printf(
         "0x%08x - %s/%s%n",
         entry.getResourceId().getFullResourceId(),
@@ -157,17 +246,6 @@ final class DumpManager {
     }
   }
 
-  private static <T> T extractAndParse(
-      Path bundlePath, ZipPath filePath, ProtoParser<T> protoParser) {
-    try (ZipFile zipFile = new ZipFile(bundlePath.toFile())) {
-      return extractAndParse(zipFile, filePath, protoParser);
-    } catch (ZipException e) {
-      throw new BundleInvalidZipException(e);
-    } catch (IOException e) {
-      throw new UncheckedIOException("Error occurred when trying to open the bundle.", e);
-    }
-  }
-
   private static <T> T extractAndParse(
       ZipFile zipFile, ZipPath filePath, ProtoParser<T> protoParser) {
     ZipEntry fileEntry = zipFile.getEntry(filePath.toString());
@@ -185,6 +263,49 @@ final class DumpManager {
     }
   }
 
+  /**
+   * Selects the part of a manifest to print: the whole manifest, or the values matched by an XPath
+   * expression.
+   *
+   * <p>Supported XPath expressions are compiled once and evaluated directly on the manifest proto
+   * (see {@link XmlProtoXPath}). Other expressions are evaluated on the converted XML document, and
+   * compiled for each manifest because the namespace prefixes are resolved against the manifest.
+   *
+   * <p>This class is thread-safe.
+   */
+  static final class ManifestQuery {
+    private final Optional<String> xPathExpression;
+    private final Optional<XmlProtoXPath> xmlProtoXPath;
+
+    ManifestQuery(Optional<String> xPathExpression) {
+      this.xPathExpression = xPathExpression;
+      this.xmlProtoXPath = xPathExpression.flatMap(XmlProtoXPath::compile);
+    }
+
+    /** Returns the selected part of the manifest, without leading or trailing whitespace. */
+    String apply(XmlProtoNode manifestProto) {
+      if (xmlProtoXPath.isPresent()) {
+        return String.join(System.lineSeparator(), xmlProtoXPath.get().evaluate(manifestProto))
+            .trim();
+      }
+
+      // Convert the proto to real XML.
+      Document document = XmlProtoToXmlConverter.convert(manifestProto);
+      if (!xPathExpression.isPresent()) {
+        return XmlUtils.documentToString(document).trim();
+      }
+      try {
+        XPath xPath = XPathFactory.newInstance().newXPath();
+        xPath.setNamespaceContext(new XmlNamespaceContext(manifestProto));
+        XPathExpression compiledXPathExpression = xPath.compile(xPathExpression.get());
+        XPathResult xPathResult = XPathResolver.resolve(document, compiledXPathExpression);
+        return xPathResult.toString().trim();
+      } catch (XPathExpressionException e) {
+        throw new ValidationException("Error in the XPath expression: " + xPathExpression, e);
+      }
+    }
+  }
+
   /** Parser of a compiled proto from an {@link InputStream}. */
   private interface ProtoParser<T> {
     T parse(InputStream is) throws IOException;
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.commands;
+
+import static com.android.tools.build.bundletool.model.utils.ConcurrencyUtils.waitFor;
+import static com.android.tools.build.bundletool.model.utils.files.FilePreconditions.checkFileExistsAndReadable;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.android.tools.build.bundletool.commands.CommandHelp.CommandDescription;
+import com.android.tools.build.bundletool.commands.CommandHelp.FlagDescription;
+import com.android.tools.build.bundletool.commands.DumpManager.ManifestQuery;
+import com.android.tools.build.bundletool.flags.Flag;
+import com.android.tools.build.bundletool.flags.ParsedFlags;
+import com.android.tools.build.bundletool.model.BundleModuleName;
+import com.android.tools.build.bundletool.model.exceptions.ValidationException;
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Prints the manifests, or values extracted from the manifests, of modules of many bundles.
+ *
+ * <p>The XPath expression is compiled once for all the manifests and, when possible, evaluated
+ * directly on the manifest protos. Each bundle is opened once, and the bundles are read in
+ * parallel.
+ *
+ * <p>The output has one JSON object per line and per bundle and module, in the order of the
+ * bundles then of the modules, e.g. {@code {"bundle":"app.aab","module":"base","value":"42"}}. A
+ * module that cannot be read, e.g. because it's not present in the bundle, has an {@code "error"}
+ * instead of a {@code "value"} and doesn't stop the dump of the other modules.
+ */
+@AutoValue
+public abstract class DumpManifestBatchCommand {
+
+  public static final String COMMAND_NAME = "dump-manifest-batch";
+
+  private static final int DEFAULT_THREAD_POOL_SIZE = 4;
+
+  private static final Flag<ImmutableList<Path>> BUNDLES_FLAG = Flag.pathList("bundles");
+  private static final Flag<ImmutableList<String>> MODULES_FLAG = Flag.stringList("modules");
+  private static final Flag<String> XPATH_FLAG = Flag.string("xpath");
+  private static final Flag<Integer> MAX_THREADS_FLAG = Flag.positiveInteger("max-threads");
+
+  public abstract ImmutableList<Path> getBundlePaths();
+
+  public abstract ImmutableList<String> getModuleNames();
+
+  public abstract Optional<String> getXPathExpression();
+
+  public abstract int getMaxThreads();
+
+  public abstract PrintStream getOutputStream();
+
+  public static Builder builder() {
+    return new AutoValue_DumpManifestBatchCommand.Builder()
+        .setModuleNames(ImmutableList.of(BundleModuleName.BASE_MODULE_NAME.getName()))
+        .setMaxThreads(DEFAULT_THREAD_POOL_SIZE)
+        .setOutputStream(System.out);
+  }
+
+  /** Builder for the {@link DumpManifestBatchCommand}. */
+  @AutoValue.Builder
+  public abstract static class Builder {
+    public abstract Builder setBundlePaths(ImmutableList<Path> bundlePaths);
+
+    /**
+     * Sets the modules whose manifest is printed, in each bundle.
+     *
+     * <p>The default is the base module only.
+     */
+    public abstract Builder setModuleNames(ImmutableList<String> moduleNames);
+
+    /** Sets the XPath expression used to extract only part of the manifests. */
+    public abstract Builder setXPathExpression(String xPathExpression);
+
+    /** Sets the number of bundles read in parallel. */
+    public abstract Builder setMaxThreads(int maxThreads);
+
+    /** Sets the output stream where the JSON lines are printed. */
+    public abstract Builder setOutputStream(PrintStream outputStream);
+
+    public abstract DumpManifestBatchCommand build();
+  }
+
+  public static DumpManifestBatchCommand fromFlags(ParsedFlags flags) {
+    return fromFlags(flags, System.out);
+  }
+
+  static DumpManifestBatchCommand fromFlags(ParsedFlags flags, PrintStream outputStream) {
+    ImmutableList<Path> bundlePaths = BUNDLES_FLAG.getRequiredValue(flags);
+    Optional<ImmutableList<String>> moduleNames = MODULES_FLAG.getValue(flags);
+    Optional<String> xPath = XPATH_FLAG.getValue(flags);
+    Optional<Integer> maxThreads = MAX_THREADS_FLAG.getValue(flags);
+    flags.checkNoUnknownFlags();
+
+    DumpManifestBatchCommand.Builder command =
+        builder().setBundlePaths(bundlePaths).setOutputStream(outputStream);
+    moduleNames.ifPresent(command::setModuleNames);
+    xPath.ifPresent(command::setXPathExpression);
+    maxThreads.ifPresent(command::setMaxThreads);
+
+    return command.build();
+  }
+
+  public void execute() {
+    validateInput();
+
+    ManifestQuery manifestQuery = new ManifestQuery(getXPathExpression());
+    ListeningExecutorService executorService =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(getMaxThreads()));
+    try {
+      ImmutableList<ListenableFuture<ImmutableList<JsonObject>>> linesByBundle =
+          getBundlePaths().stream()
+              .map(
+                  bundlePath -> executorService.submit(() -> dumpBundle(bundlePath, manifestQuery)))
+              .collect(toImmutableList());
+      // Print the lines of each bundle as soon as it and all the previous ones are done.
+      for (ListenableFuture<ImmutableList<JsonObject>> lines : linesByBundle) {
+        waitFor(lines).forEach(getOutputStream()::println);
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  private void validateInput() {
+    if (getBundlePaths().isEmpty()) {
+      throw new ValidationException("The list of bundles cannot be empty.");
+    }
+    if (getModuleNames().isEmpty()) {
+      throw new ValidationException("The list of modules cannot be empty.");
+    }
+    for (Path bundlePath : getBundlePaths()) {
+      checkFileExistsAndReadable(bundlePath);
+    }
+  }
+
+  private ImmutableList<JsonObject> dumpBundle(Path bundlePath, ManifestQuery manifestQuery) {
+    ImmutableList.Builder<JsonObject> lines = ImmutableList.builder();
+    try (ZipFile bundleZip = new ZipFile(bundlePath.toFile())) {
+      for (String moduleName : getModuleNames()) {
+        JsonObject line = createLine(bundlePath, moduleName);
+        try {
+          line.addProperty(
+              "value",
+              manifestQuery.apply(
+                  DumpManager.readManifest(bundleZip, BundleModuleName.create(moduleName))));
+        } catch (ValidationException e) {
+          line.addProperty("error", e.getMessage());
+        }
+        lines.add(line);
+      }
+    } catch (ZipException e) {
+      getModuleNames()
+          .forEach(
+              moduleName -> {
+                JsonObject line = createLine(bundlePath, moduleName);
+                line.addProperty("error", "The bundle is not a valid ZIP file.");
+                lines.add(line);
+              });
+    } catch (IOException e) {
+      throw new ValidationException(
+          String.format("Error occurred when reading the bundle '%s'.", bundlePath), e);
+    }
+    return lines.build();
+  }
+
+  private static JsonObject createLine(Path bundlePath, String moduleName) {
+    JsonObject line = new JsonObject();
+    line.addProperty("bundle", bundlePath.toString());
+    line.addProperty("module", moduleName);
+    return line;
+  }
+
+  public static CommandHelp help() {
+    return CommandHelp.builder()
+        .setCommandName(COMMAND_NAME)
+        .setCommandDescription(
+            CommandDescription.builder()
+                .setShortDescription(
+                    "Prints the manifests, or values extracted from the manifests, of modules of "
+                        + "many bundles.")
+                .addAdditionalParagraph(
+                    "The output has one JSON object per line, with the properties 'bundle', "
+                        + "'module' and either 'value' or, if the manifest could not be read, "
+                        + "'error'.")
+                .addAdditionalParagraph("Example:")
+                .addAdditionalParagraph(
+                    String.format(
+                        "Prints the versionCode of the base module of two bundles:%n"
+                            + "$ bundletool %s --bundles=/tmp/app1.aab,/tmp/app2.aab "
+                            + "--xpath=/manifest/@android:versionCode",
+                        COMMAND_NAME))
+                .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(BUNDLES_FLAG.getName())
+                .setDescription("Comma-separated list of paths to Android App Bundles.")
+                .setExampleValue("app1.aab,app2.aab")
+                .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(MODULES_FLAG.getName())
+                .setDescription(
+                    "Comma-separated list of the modules whose manifest is printed, in each "
+                        + "bundle. Defaults to 'base'.")
+                .setExampleValue("base,feature")
+                .setOptional(true)
+                .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(XPATH_FLAG.getName())
+                .setDescription(
+                    "XPath expression to extract the value of attributes from the manifests. See "
+                        + "the '%s manifest' command.",
+                    DumpCommand.COMMAND_NAME)
+                .setExampleValue("/manifest/@android:versionCode")
+                .setOptional(true)
+                .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(MAX_THREADS_FLAG.getName())
+                .setDescription(
+                    "Number of bundles read in parallel. Defaults to %d.", DEFAULT_THREAD_POOL_SIZE)
+                .setExampleValue("8")
+                .setOptional(true)
+                .build())
+        .build();
+  }
+
+  // Don't subclass outside the package. Hide the implicit constructor from IDEs/docs.
+  DumpManifestBatchCommand() {}
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.commands;
+
+import static com.android.tools.build.bundletool.model.utils.files.FilePreconditions.checkFileExistsAndReadable;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.android.bundle.Commands.BuildApksResult;
+import com.android.bundle.Devices.DeviceSpec;
+import com.android.tools.build.bundletool.commands.CommandHelp.CommandDescription;
+import com.android.tools.build.bundletool.commands.CommandHelp.FlagDescription;
+import com.android.tools.build.bundletool.device.ApkMatcher;
+import com.android.tools.build.bundletool.device.ApkSetIndex;
+import com.android.tools.build.bundletool.device.DeviceSpecParser;
+import com.android.tools.build.bundletool.device.IncompatibleDeviceException;
+import com.android.tools.build.bundletool.flags.Flag;
+import com.android.tools.build.bundletool.flags.ParsedFlags;
+import com.android.tools.build.bundletool.model.ZipPath;
+import com.android.tools.build.bundletool.model.exceptions.ValidationException;
+import com.android.tools.build.bundletool.model.utils.ResultUtils;
+import com.android.tools.build.bundletool.model.utils.files.FileUtils;
+import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map.Entry;
+import java.util.Optional;
+
+/**
+ * Extracts from an APK Set the APKs to be installed on each of many devices.
+ *
+ * <p>The table of contents is read once and every APK matched by at least one device is extracted
+ * only once, under the {@value #APKS_DIRECTORY} directory of the output directory and at the same
+ * path as in the APK Set. For each device, a manifest file {@code
+ * <output-dir>/devices/<device>.txt} lists the paths, relative to the output directory, of the APKs
+ * to install on it. Optionally, hard links to those APKs are also created in {@code
+ * <output-dir>/devices/<device>/}, at the same relative paths.
+ *
+ * <p>Devices that are not compatible with the APK Set are reported and skipped.
+ */
+@AutoValue
+public abstract class ExtractApksBatchCommand {
+
+  public static final String COMMAND_NAME = "extract-apks-batch";
+
+  static final String APKS_DIRECTORY = "apks";
+  static final String DEVICES_DIRECTORY = "devices";
+  private static final String MANIFEST_EXTENSION = ".txt";
+
+  private static final Flag<Path> APKS_ARCHIVE_FILE_FLAG = Flag.path("apks");
+  private static final Flag<Path> DEVICE_SPECS_FLAG = Flag.path("device-specs");
+  private static final Flag<Path> OUTPUT_DIRECTORY = Flag.path("output-dir");
+  private static final Flag<ImmutableSet<String>> MODULES_FLAG = Flag.stringSet("modules");
+  private static final Flag<Boolean> INSTANT_FLAG = Flag.booleanFlag("instant");
+  private static final Flag<Boolean> HARD_LINKS_FLAG = Flag.booleanFlag("hard-links");
+
+  public abstract Path getApksArchivePath();
+
+  /** Device specs, indexed by the name used for the output of each device. */
+  public abstract ImmutableMap<String, DeviceSpec> getDeviceSpecs();
+
+  public abstract Path getOutputDirectory();
+
+  public abstract Optional<ImmutableSet<String>> getModules();
+
+  /** Gets whether instant APKs should be extracted. */
+  public abstract boolean getInstant();
+
+  /** Gets whether a directory of hard links to its APKs should be created for each device. */
+  public abstract boolean getCreateHardLinks();
+
+  public static Builder builder() {
+    return new AutoValue_ExtractApksBatchCommand.Builder()
+        .setInstant(false)
+        .setCreateHardLinks(false);
+  }
+
+  /** Builder for the {@link ExtractApksBatchCommand}. */
+  @AutoValue.Builder
+  public abstract static class Builder {
+    public abstract Builder setApksArchivePath(Path apksArchivePath);
+
+    public abstract Builder setDeviceSpecs(ImmutableMap<String, DeviceSpec> deviceSpecs);
+
+    /** @see DeviceSpecParser#parseDeviceSpecs(Path) */
+    public Builder setDeviceSpecs(Path deviceSpecsPath) {
+      return setDeviceSpecs(DeviceSpecParser.parseDeviceSpecs(deviceSpecsPath));
+    }
+
+    public abstract Builder setOutputDirectory(Path outputDirectory);
+
+    public abstract Builder setModules(ImmutableSet<String> modules);
+
+    /**
+     * Sets whether instant APKs should be extracted.
+     *
+     * <p>The default is {@code false}.
+     */
+    public abstract Builder setInstant(boolean instant);
+
+    /**
+     * Sets whether to create, for each device, a directory with hard links to the APKs to install.
+     *
+     * <p>The default is {@code false}, in which case only the manifest files are written.
+     */
+    public abstract Builder setCreateHardLinks(boolean createHardLinks);
+
+    abstract ExtractApksBatchCommand autoBuild();
+
+    /**
+     * Builds the command
+     *
+     * @throws ValidationException if a device spec is invalid. See {@link
+     *     DeviceSpecParser#validateDeviceSpec}
+     */
+    public ExtractApksBatchCommand build() {
+      ExtractApksBatchCommand command = autoBuild();
+      command
+          .getDeviceSpecs()
+          .values()
+          .forEach(
+              deviceSpec ->
+                  DeviceSpecParser.validateDeviceSpec(deviceSpec, /* canSkipFields= */ true));
+      return command;
+    }
+  }
+
+  public static ExtractApksBatchCommand fromFlags(ParsedFlags flags) {
+    Path apksArchivePath = APKS_ARCHIVE_FILE_FLAG.getRequiredValue(flags);
+    Path deviceSpecsPath = DEVICE_SPECS_FLAG.getRequiredValue(flags);
+    Path outputDirectory = OUTPUT_DIRECTORY.getRequiredValue(flags);
+    Optional<ImmutableSet<String>> modules = MODULES_FLAG.getValue(flags);
+    Optional<Boolean> instant = INSTANT_FLAG.getValue(flags);
+    Optional<Boolean> hardLinks = HARD_LINKS_FLAG.getValue(flags);
+    flags.checkNoUnknownFlags();
+
+    ExtractApksBatchCommand.Builder command = builder();
+
+    checkFileExistsAndReadable(apksArchivePath);
+    command.setApksArchivePath(apksArchivePath);
+    command.setDeviceSpecs(deviceSpecsPath);
+    command.setOutputDirectory(outputDirectory);
+    modules.ifPresent(command::setModules);
+    instant.ifPresent(command::setInstant);
+    hardLinks.ifPresent(command::setCreateHardLinks);
+
+    return command.build();
+  }
+
+  /**
+   * Extracts the APKs of all compatible devices.
+   *
+   * @return for each compatible device, the paths of the extracted APKs to install on it
+   */
+  public ImmutableMap<String, ImmutableList<Path>> execute() {
+    return execute(System.out);
+  }
+
+  @VisibleForTesting
+  ImmutableMap<String, ImmutableList<Path>> execute(PrintStream output) {
+    validateInput();
+
+    BuildApksResult toc = ResultUtils.readTableOfContents(getApksArchivePath());
+    ApkSetIndex apkSetIndex = ApkSetIndex.create(toc);
+    Optional<ImmutableSet<String>> requestedModuleNames =
+        getModules().map(modules -> ExtractApksCommand.resolveRequestedModules(modules, toc));
+
+    ImmutableMap.Builder<String, ImmutableList<ZipPath>> matchedApksByDevice =
+        ImmutableMap.builder();
+    for (Entry<String, DeviceSpec> device : getDeviceSpecs().entrySet()) {
+      try {
+        ImmutableList<ZipPath> matchedApks =
+            new ApkMatcher(device.getValue(), requestedModuleNames, getInstant())
+                .getMatchingApks(apkSetIndex);
+        if (matchedApks.isEmpty()) {
+          throw new IncompatibleDeviceException("No compatible APKs found for the device.");
+        }
+        matchedApksByDevice.put(device.getKey(), matchedApks);
+      } catch (IncompatibleDeviceException e) {
+        output.printf("Skipping device '%s': %s%n", device.getKey(), e.getMessage());
+      }
+    }
+
+    ImmutableMap<String, ImmutableList<Path>> extractedApksByDevice =
+        extractMatchedApks(matchedApksByDevice.build());
+    output.printf(
+        "The APKs of %d device(s) have been extracted in the directory: %s%n",
+        extractedApksByDevice.size(), getOutputDirectory());
+    return extractedApksByDevice;
+  }
+
+  private void validateInput() {
+    if (getModules().isPresent() && getModules().get().isEmpty()) {
+      throw new ValidationException("The set of modules cannot be empty.");
+    }
+    checkArgument(
+        !Files.isDirectory(getApksArchivePath()),
+        "File '%s' is a directory, only APK Set archives are supported.",
+        getApksArchivePath());
+    checkFileExistsAndReadable(getApksArchivePath());
+  }
+
+  private ImmutableMap<String, ImmutableList<Path>> extractMatchedApks(
+      ImmutableMap<String, ImmutableList<ZipPath>> matchedApksByDevice) {
+    Path apksDirectory = getOutputDirectory().resolve(APKS_DIRECTORY);
+    Path devicesDirectory = getOutputDirectory().resolve(DEVICES_DIRECTORY);
+    FileUtils.createDirectories(devicesDirectory);
+
+    ImmutableSet<ZipPath> distinctApks =
+        matchedApksByDevice.values().stream()
+            .flatMap(ImmutableList::stream)
+            .collect(toImmutableSet());
+    ImmutableMap<ZipPath, Path> destinationByApk =
+        distinctApks.stream()
+            .collect(toImmutableMap(apk -> apk, apk -> apksDirectory.resolve(apk.toString())));
+    destinationByApk.values().stream()
+        .map(Path::getParent)
+        .distinct()
+        .forEach(FileUtils::createDirectories);
+    ExtractApksCommand.extractApksFromApksArchive(getApksArchivePath(), destinationByApk);
+
+    ImmutableMap.Builder<String, ImmutableList<Path>> extractedApksByDevice =
+        ImmutableMap.builder();
+    matchedApksByDevice.forEach(
+        (deviceName, matchedApks) -> {
+          ImmutableList<Path> extractedApks =
+              matchedApks.stream()
+                  .map(matchedApk -> apksDirectory.resolve(matchedApk.toString()))
+                  .collect(toImmutableList());
+          writeDeviceOutput(devicesDirectory, deviceName, extractedApks);
+          extractedApksByDevice.put(deviceName, extractedApks);
+        });
+    return extractedApksByDevice.build();
+  }
+
+  private void writeDeviceOutput(
+      Path devicesDirectory, String deviceName, ImmutableList<Path> extractedApks) {
+    try {
+      Files.write(
+          devicesDirectory.resolve(deviceName + MANIFEST_EXTENSION),
+          extractedApks.stream()
+              .map(apk -> getOutputDirectory().relativize(apk).toString().replace('\\', '/'))
+              .collect(toImmutableList()),
+          UTF_8);
+      if (getCreateHardLinks()) {
+        Path deviceDirectory = devicesDirectory.resolve(deviceName);
+        FileUtils.createDirectories(deviceDirectory);
+        Path apksDirectory = getOutputDirectory().resolve(APKS_DIRECTORY);
+        for (Path apk : extractedApks) {
+          // Keep the path in the APK Set: APKs of different modules may share a file name.
+          Path link = deviceDirectory.resolve(apksDirectory.relativize(apk).toString());
+          FileUtils.createDirectories(link.getParent());
+          // The output directory may be the one of a previous run.
+          Files.deleteIfExists(link);
+          Files.createLink(link, apk);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(
+          String.format("Error while writing the APKs of device '%s'.", deviceName), e);
+    }
+  }
+
+  public static CommandHelp help() {
+    return CommandHelp.builder()
+        .setCommandName(COMMAND_NAME)
+        .setCommandDescription(
+            CommandDescription.builder()
+                .setShortDescription(
+                    "Extracts from an APK Set the APKs that should be installed on each of many "
+                        + "devices.")
+                .addAdditionalParagraph(
+                    String.format(
+                        "Each APK is extracted once into the '%s' directory of the output "
+                            + "directory. For every compatible device, the file "
+                            + "'%s/<device>%s' lists the APKs to install on it.",
+                        APKS_DIRECTORY, DEVICES_DIRECTORY, MANIFEST_EXTENSION))
+                .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(APKS_ARCHIVE_FILE_FLAG.getName())
+                .setExampleValue("archive.apks")
+                .setDescription(
+                    "Path to the archive file generated by the '%s' command.",
+                    BuildApksCommand.COMMAND_NAME)
+                .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(DEVICE_SPECS_FLAG.getName())
+                .setExampleValue("device-specs/")
+                .setDescription(
+                    "Either a directory of device spec files generated by the '%s' command, each "
+                        + "device being named after its file, or a .jsonl file with one device "
+                        + "spec per line, each device being named after its line number.",
+                    GetDeviceSpecCommand.COMMAND_NAME)
+                .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(OUTPUT_DIRECTORY.getName())
+                .setExampleValue("output-dir")
+                .setDescription("Path to where the matched APKs will be extracted.")
+                .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(MODULES_FLAG.getName())
+                .setExampleValue("base,module1,module2")
+                .setOptional(true)
+                .setDescription(
+                    "List of modules to be extracted, or \"%s\" for all modules. See the '%s' "
+                        + "command.",
+                    ExtractApksCommand.ALL_MODULES_SHORTCUT, ExtractApksCommand.COMMAND_NAME)
+                .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(INSTANT_FLAG.getName())
+                .setOptional(true)
+                .setDescription(
+                    "When set, APKs of the instant modules will be extracted instead of the "
+                        + "installable APKs.")
+                .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(HARD_LINKS_FLAG.getName())
+                .setOptional(true)
+                .setDescription(
+                    "When set, a directory '%s/<device>' with hard links to the APKs of each "
+                        + "device, at the same paths as in the APK Set, is also created. The "
+                        + "output directory must be on a file system that supports hard links.",
+                    DEVICES_DIRECTORY)
+                .build())
+        .build();
+  }
+
+  // Don't subclass outside the package. Hide the implicit constructor from IDEs/docs.
+  ExtractApksBatchCommand() {}
+}
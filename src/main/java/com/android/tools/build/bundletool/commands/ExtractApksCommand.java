@@ -19,8 +19,8 @@ package com.android.tools.build.bundletool.commands;
 import static com.android.tools.build.bundletool.model.utils.files.FilePreconditions.checkDirectoryExists;
 import static com.android.tools.build.bundletool.model.utils.files.FilePreconditions.checkFileExistsAndReadable;
 import static com.google.common.base.Preconditions.checkArgument;
-import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 
 import com.android.bundle.Commands.AssetModuleMetadata;
@@ -35,28 +35,30 @@ import com.android.tools.build.bundletool.device.IncompatibleDeviceException;
 import com.android.tools.build.bundletool.flags.Flag;
 import com.android.tools.build.bundletool.flags.ParsedFlags;
 import com.android.tools.build.bundletool.model.ZipPath;
+import com.android.tools.build.bundletool.model.exceptions.CommandExecutionException;
 import com.android.tools.build.bundletool.model.exceptions.ValidationException;
+import com.android.tools.build.bundletool.model.utils.ConcurrencyUtils;
 import com.android.tools.build.bundletool.model.utils.FileNames;
 import com.android.tools.build.bundletool.model.utils.ResultUtils;
-import com.android.tools.build.bundletool.model.utils.files.BufferedIo;
 import com.android.tools.build.bundletool.model.utils.files.FileUtils;
+import com.android.tools.build.bundletool.model.utils.files.ZipEntryExtractor;
 import com.google.auto.value.AutoValue;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Optional;
+import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 /** Extracts from an APK Set the APKs to be installed on a given device. */
 @AutoValue
@@ -66,6 +68,7 @@ public abstract class ExtractApksCommand {
 
   public static final String COMMAND_NAME = "extract-apks";
   static final String ALL_MODULES_SHORTCUT = "_ALL_";
+  private static final int MAX_EXTRACTION_THREADS = 4;
 
   private static final Flag<Path> APKS_ARCHIVE_FILE_FLAG = Flag.path("apks");
   private static final Flag<Path> DEVICE_SPEC_FLAG = Flag.path("device-spec");
@@ -167,6 +170,24 @@ public abstract class ExtractApksCommand {
     validateInput();
 
     BuildApksResult toc = ResultUtils.readTableOfContents(getApksArchivePath());
+    ImmutableList<ZipPath> matchedApks = getMatchingApks(toc);
+
+    if (Files.isDirectory(getApksArchivePath())) {
+      return matchedApks.stream()
+          .map(matchedApk -> getApksArchivePath().resolve(matchedApk.toString()))
+          .collect(toImmutableList());
+    } else {
+      return extractMatchedApksFromApksArchive(matchedApks);
+    }
+  }
+
+  /**
+   * Returns the paths inside the APK Set of the APKs to be installed on the device, without
+   * extracting them.
+   *
+   * @throws IncompatibleDeviceException if no APK matches the device
+   */
+  ImmutableList<ZipPath> getMatchingApks(BuildApksResult toc) {
     Optional<ImmutableSet<String>> requestedModuleNames =
         getModules().map(modules -> resolveRequestedModules(modules, toc));
 
@@ -176,15 +197,7 @@ public abstract class ExtractApksCommand {
     if (matchedApks.isEmpty()) {
       throw new IncompatibleDeviceException("No compatible APKs found for the device.");
     }
-
-
-    if (Files.isDirectory(getApksArchivePath())) {
-      return matchedApks.stream()
-          .map(matchedApk -> getApksArchivePath().resolve(matchedApk.toString()))
-          .collect(toImmutableList());
-    } else {
-      return extractMatchedApksFromApksArchive(matchedApks);
-    }
+    return matchedApks;
   }
 
   static ImmutableSet<String> resolveRequestedModules(
@@ -231,29 +244,74 @@ public abstract class ExtractApksCommand {
               }
             });
 
-    ImmutableList.Builder<Path> builder = ImmutableList.builder();
-    try (ZipFile apksArchive = new ZipFile(getApksArchivePath().toFile())) {
-      for (ZipPath matchedApk : matchedApkPaths) {
-        ZipEntry entry = apksArchive.getEntry(matchedApk.toString());
-        checkNotNull(entry);
-        Path extractedApkPath = outputDirectoryPath.resolve(matchedApk.getFileName().toString());
-        try (InputStream inputStream = BufferedIo.inputStream(apksArchive, entry);
-            OutputStream outputApk = BufferedIo.outputStream(extractedApkPath)) {
-          ByteStreams.copy(inputStream, outputApk);
-          builder.add(extractedApkPath);
-        } catch (IOException e) {
-          throw new UncheckedIOException(
-              String.format("Error while extracting APK '%s' from the APK Set.", matchedApk), e);
-        }
-      }
+    ImmutableMap<ZipPath, Path> extractedApkPaths =
+        matchedApkPaths.stream()
+            .distinct()
+            .collect(
+                toImmutableMap(
+                    matchedApk -> matchedApk,
+                    matchedApk ->
+                        outputDirectoryPath.resolve(matchedApk.getFileName().toString())));
+    extractApksFromApksArchive(getApksArchivePath(), extractedApkPaths);
+    System.err.printf(
+        "The APKs have been extracted in the directory: %s%n", outputDirectoryPath.toString());
+    return ImmutableList.copyOf(extractedApkPaths.values());
+  }
+
+  /**
+   * Extracts the given APKs from the APK Set archive to their destination paths.
+   *
+   * <p>APKs are extracted concurrently. Those stored uncompressed in the archive, which is the
+   * case of the APKs generated by bundletool, are copied from the archive without decompression.
+   *
+   * @throws CommandExecutionException if several APKs would be extracted to the same path
+   */
+  static void extractApksFromApksArchive(
+      Path apksArchivePath, ImmutableMap<ZipPath, Path> destinationByApk) {
+    // Concurrent extractions to the same file would silently overwrite each other.
+    destinationByApk
+        .asMultimap()
+        .inverse()
+        .asMap()
+        .forEach(
+            (destination, apks) -> {
+              if (apks.size() > 1) {
+                throw CommandExecutionException.builder()
+                    .withMessage(
+                        "Cannot extract the APKs %s to the same file '%s'.", apks, destination)
+                    .build();
+              }
+            });
+
+    int threadCount = Math.min(destinationByApk.size(), MAX_EXTRACTION_THREADS);
+    ListeningExecutorService executorService =
+        threadCount > 1
+            ? MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(threadCount))
+            : MoreExecutors.newDirectExecutorService();
+    try (ZipEntryExtractor apksArchive = ZipEntryExtractor.open(apksArchivePath)) {
+      ImmutableList.Builder<ListenableFuture<Path>> extractions = ImmutableList.builder();
+      destinationByApk.forEach(
+          (apk, destination) ->
+              extractions.add(
+                  executorService.submit(
+                      () -> {
+                        try {
+                          apksArchive.extract(apk.toString(), destination);
+                        } catch (IOException e) {
+                          throw new UncheckedIOException(
+                              String.format(
+                                  "Error while extracting APK '%s' from the APK Set.", apk),
+                              e);
+                        }
+                        return destination;
+                      })));
+      ConcurrencyUtils.waitForAll(extractions.build());
     } catch (IOException e) {
       throw new UncheckedIOException(
-          String.format("Error while processing the APK Set archive '%s'.", getApksArchivePath()),
-          e);
+          String.format("Error while processing the APK Set archive '%s'.", apksArchivePath), e);
+    } finally {
+      executorService.shutdown();
     }
-    System.err.printf(
-        "The APKs have been extracted in the directory: %s%n", outputDirectoryPath.toString());
-    return builder.build();
   }
 
   private static Path createTempDirectory() {
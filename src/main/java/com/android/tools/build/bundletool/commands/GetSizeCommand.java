@@ -18,7 +18,6 @@ package com.android.tools.build.bundletool.commands;
 
 import static com.android.tools.build.bundletool.commands.GetSizeCommand.GetSizeSubcommand.STRING_TO_SUBCOMMAND;
 import static com.android.tools.build.bundletool.commands.GetSizeCommand.GetSizeSubcommand.TOTAL;
-import static com.android.tools.build.bundletool.model.utils.ApkSizeUtils.getCompressedSizeByApkPaths;
 import static com.android.tools.build.bundletool.model.utils.CollectorUtils.combineMaps;
 import static com.android.tools.build.bundletool.model.utils.GetSizeCsvUtils.getSizeTotalOutputInCsv;
 import static com.android.tools.build.bundletool.model.utils.files.FilePreconditions.checkFileExistsAndReadable;
@@ -40,6 +39,7 @@ import com.android.tools.build.bundletool.model.GetSizeRequest;
 import com.android.tools.build.bundletool.model.GetSizeRequest.Dimension;
 import com.android.tools.build.bundletool.model.SizeConfiguration;
 import com.android.tools.build.bundletool.model.exceptions.ValidationException;
+import com.android.tools.build.bundletool.model.utils.ApkSizeUtils;
 import com.android.tools.build.bundletool.model.utils.ResultUtils;
 import com.android.tools.build.bundletool.model.utils.files.FilePreconditions;
 import com.android.tools.build.bundletool.model.version.Version;
@@ -49,10 +49,13 @@ import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.io.PrintStream;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.concurrent.Executors;
 
 /** Gets over-the-wire sizes of APKS that are going to be served from the APK Set. */
 @AutoValue
@@ -99,6 +102,7 @@ public abstract class GetSizeCommand implements GetSizeRequest {
   private static final Flag<ImmutableSet<Dimension>> DIMENSIONS_FLAG =
       Flag.enumSet("dimensions", Dimension.class);
   private static final Joiner COMMA_JOINER = Joiner.on(',');
+  private static final int SIZE_ESTIMATION_THREADS = 4;
 
   @VisibleForTesting
   static final ImmutableSet<Dimension> SUPPORTED_DIMENSIONS =
@@ -203,9 +207,13 @@ public abstract class GetSizeCommand implements GetSizeRequest {
   }
 
   public void execute() {
+    execute(System.out);
+  }
+
+  void execute(PrintStream output) {
     switch (getGetSizeSubCommand()) {
       case TOTAL:
-        getSizeTotal(System.out);
+        getSizeTotal(output);
         break;
     }
   }
@@ -220,8 +228,7 @@ public abstract class GetSizeCommand implements GetSizeRequest {
 
     ImmutableList<Variant> variants =
         new VariantMatcher(getDeviceSpec(), getInstant()).getAllMatchingVariants(buildApksResult);
-    ImmutableMap<String, Long> compressedSizeByApkPaths =
-        getCompressedSizeByApkPaths(variants, getApksArchivePath());
+    ImmutableMap<String, Long> compressedSizeByApkPaths = getCompressedSizeByApkPaths(variants);
 
     ImmutableMap<SizeConfiguration, Long> minSizeConfigurationMap = ImmutableMap.of();
     ImmutableMap<SizeConfiguration, Long> maxSizeConfigurationMap = ImmutableMap.of();
@@ -245,6 +252,17 @@ public abstract class GetSizeCommand implements GetSizeRequest {
     return ConfigurationSizes.create(minSizeConfigurationMap, maxSizeConfigurationMap);
   }
 
+  private ImmutableMap<String, Long> getCompressedSizeByApkPaths(ImmutableList<Variant> variants) {
+    ListeningExecutorService executorService =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(SIZE_ESTIMATION_THREADS));
+    try {
+      return ApkSizeUtils.getCompressedSizeByApkPaths(
+          variants, getApksArchivePath(), executorService);
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
   public static CommandHelp help() {
     return CommandHelp.builder()
         .setCommandName(COMMAND_NAME)
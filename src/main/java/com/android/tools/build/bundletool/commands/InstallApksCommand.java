@@ -22,6 +22,7 @@ import static com.android.tools.build.bundletool.model.utils.files.FilePrecondit
 import static com.android.tools.build.bundletool.model.utils.files.FilePreconditions.checkFileExistsAndExecutable;
 import static com.android.tools.build.bundletool.model.utils.files.FilePreconditions.checkFileExistsAndReadable;
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 
 import com.android.bundle.Commands.AssetModuleMetadata;
@@ -36,21 +37,42 @@ import com.android.tools.build.bundletool.device.AdbServer;
 import com.android.tools.build.bundletool.device.Device;
 import com.android.tools.build.bundletool.device.Device.InstallOptions;
 import com.android.tools.build.bundletool.device.DeviceAnalyzer;
+import com.android.tools.build.bundletool.device.DeviceSpecCache;
 import com.android.tools.build.bundletool.flags.Flag;
 import com.android.tools.build.bundletool.flags.ParsedFlags;
 import com.android.tools.build.bundletool.io.TempDirectory;
+import com.android.tools.build.bundletool.model.ZipPath;
 import com.android.tools.build.bundletool.model.exceptions.CommandExecutionException;
+import com.android.tools.build.bundletool.model.exceptions.ValidationException;
+import com.android.tools.build.bundletool.model.utils.ConcurrencyUtils;
+import com.android.tools.build.bundletool.model.utils.CsvFormatter;
 import com.android.tools.build.bundletool.model.utils.DefaultSystemEnvironmentProvider;
 import com.android.tools.build.bundletool.model.utils.ResultUtils;
 import com.android.tools.build.bundletool.model.utils.SdkToolsLocator;
 import com.android.tools.build.bundletool.model.utils.SystemEnvironmentProvider;
+import com.android.tools.build.bundletool.model.utils.files.FileUtils;
+import com.android.tools.build.bundletool.model.utils.files.ZipEntryExtractor;
 import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 /** Installs APKs on a connected device. */
 @AutoValue
@@ -61,12 +83,25 @@ public abstract class InstallApksCommand {
   private static final Flag<Path> ADB_PATH_FLAG = Flag.path("adb");
   private static final Flag<Path> APKS_ARCHIVE_FILE_FLAG = Flag.path("apks");
   private static final Flag<String> DEVICE_ID_FLAG = Flag.string("device-id");
+  private static final Flag<ImmutableSet<String>> DEVICE_IDS_FLAG = Flag.stringSet("device-ids");
   private static final Flag<ImmutableSet<String>> MODULES_FLAG = Flag.stringSet("modules");
   private static final Flag<Boolean> ALLOW_DOWNGRADE_FLAG = Flag.booleanFlag("allow-downgrade");
   private static final Flag<Boolean> ALLOW_TEST_ONLY_FLAG = Flag.booleanFlag("allow-test-only");
+  private static final Flag<Boolean> SKIP_UNCHANGED_APKS_FLAG =
+      Flag.booleanFlag("skip-unchanged-apks");
+  private static final Flag<Integer> DEVICE_SPEC_CACHE_TTL_FLAG =
+      Flag.positiveInteger("device-spec-cache-ttl-minutes");
 
   private static final String ANDROID_SERIAL_VARIABLE = "ANDROID_SERIAL";
 
+  /** Value of the --device-ids flag selecting all the connected devices. */
+  static final String ALL_DEVICES = "all";
+
+  /** Maximum number of devices analysed and installed concurrently. */
+  private static final int MAX_PARALLEL_DEVICES = 8;
+
+  private static final String APK_NAME_SEPARATOR = ";";
+
   private static final SystemEnvironmentProvider DEFAULT_PROVIDER =
       new DefaultSystemEnvironmentProvider();
 
@@ -76,18 +111,30 @@ public abstract class InstallApksCommand {
 
   public abstract Optional<String> getDeviceId();
 
+  /**
+   * Serial numbers of the devices to install on concurrently, or {@value #ALL_DEVICES} for all the
+   * connected devices.
+   */
+  public abstract Optional<ImmutableSet<String>> getDeviceIds();
+
   public abstract Optional<ImmutableSet<String>> getModules();
 
   public abstract boolean getAllowDowngrade();
 
   public abstract boolean getAllowTestOnly();
 
+  /** Whether APKs already installed on the device with identical content are skipped. */
+  public abstract boolean getSkipUnchangedApks();
+
+  public abstract Optional<DeviceSpecCache> getDeviceSpecCache();
+
   abstract AdbServer getAdbServer();
 
   public static Builder builder() {
     return new AutoValue_InstallApksCommand.Builder()
         .setAllowDowngrade(false)
-        .setAllowTestOnly(false);
+        .setAllowTestOnly(false)
+        .setSkipUnchangedApks(false);
   }
 
   /** Builder for the {@link InstallApksCommand}. */
@@ -99,6 +146,8 @@ public abstract class InstallApksCommand {
 
     public abstract Builder setDeviceId(String deviceId);
 
+    public abstract Builder setDeviceIds(ImmutableSet<String> deviceIds);
+
     public abstract Builder setModules(ImmutableSet<String> modules);
 
     public abstract Builder setAllowDowngrade(boolean allowDowngrade);
@@ -108,7 +157,33 @@ public abstract class InstallApksCommand {
 
     public abstract Builder setAllowTestOnly(boolean allowTestOnly);
 
-    public abstract InstallApksCommand build();
+    /**
+     * Sets whether the APKs already installed on the device with identical content should be
+     * skipped, installing only the changed APKs on top of the installed app when possible.
+     */
+    public abstract Builder setSkipUnchangedApks(boolean skipUnchangedApks);
+
+    /**
+     * Sets a cache of device specs, to skip analysing the devices that have been analysed
+     * recently.
+     */
+    public abstract Builder setDeviceSpecCache(DeviceSpecCache deviceSpecCache);
+
+    abstract InstallApksCommand autoBuild();
+
+    public InstallApksCommand build() {
+      InstallApksCommand command = autoBuild();
+      if (command.getDeviceIds().isPresent()) {
+        if (command.getDeviceId().isPresent()) {
+          throw new ValidationException(
+              "Cannot install on one device and on multiple devices at the same time.");
+        }
+        if (command.getDeviceIds().get().isEmpty()) {
+          throw new ValidationException("The set of device IDs cannot be empty.");
+        }
+      }
+      return command;
+    }
   }
 
   public static InstallApksCommand fromFlags(ParsedFlags flags, AdbServer adbServer) {
@@ -133,34 +208,54 @@ public abstract class InstallApksCommand {
                                         + "variable.")));
 
     Optional<String> deviceSerialName = DEVICE_ID_FLAG.getValue(flags);
-    if (!deviceSerialName.isPresent()) {
+    Optional<ImmutableSet<String>> deviceSerialNames = DEVICE_IDS_FLAG.getValue(flags);
+    if (!deviceSerialName.isPresent() && !deviceSerialNames.isPresent()) {
       deviceSerialName = systemEnvironmentProvider.getVariable(ANDROID_SERIAL_VARIABLE);
     }
 
     Optional<ImmutableSet<String>> modules = MODULES_FLAG.getValue(flags);
     Optional<Boolean> allowDowngrade = ALLOW_DOWNGRADE_FLAG.getValue(flags);
     Optional<Boolean> allowTestOnly = ALLOW_TEST_ONLY_FLAG.getValue(flags);
+    Optional<Boolean> skipUnchangedApks = SKIP_UNCHANGED_APKS_FLAG.getValue(flags);
+    Optional<DeviceSpecCache> deviceSpecCache =
+        DEVICE_SPEC_CACHE_TTL_FLAG
+            .getValue(flags)
+            .map(ttl -> DeviceSpecCache.createInUserHome(Duration.ofMinutes(ttl)));
 
     flags.checkNoUnknownFlags();
 
     InstallApksCommand.Builder command =
         builder().setAdbPath(adbPath).setAdbServer(adbServer).setApksArchivePath(apksArchivePath);
     deviceSerialName.ifPresent(command::setDeviceId);
+    deviceSerialNames.ifPresent(command::setDeviceIds);
     modules.ifPresent(command::setModules);
     allowDowngrade.ifPresent(command::setAllowDowngrade);
     allowTestOnly.ifPresent(command::setAllowTestOnly);
+    skipUnchangedApks.ifPresent(command::setSkipUnchangedApks);
+    deviceSpecCache.ifPresent(command::setDeviceSpecCache);
 
     return command.build();
   }
 
   public void execute() {
+    execute(System.out);
+  }
+
+  @VisibleForTesting
+  void execute(PrintStream output) {
     validateInput();
 
     AdbServer adbServer = getAdbServer();
     adbServer.init(getAdbPath());
 
+    if (getDeviceIds().isPresent()) {
+      installOnDevices(adbServer, output);
+      return;
+    }
+
     try (TempDirectory tempDirectory = new TempDirectory()) {
-      DeviceSpec deviceSpec = new DeviceAnalyzer(adbServer).getDeviceSpec(getDeviceId());
+      DeviceSpec deviceSpec =
+          new DeviceAnalyzer(adbServer, getDeviceSpecCache()).getDeviceSpec(getDeviceId());
       BuildApksResult toc = ResultUtils.readTableOfContents(getApksArchivePath());
 
       final ImmutableList<Path> apksToInstall =
@@ -168,35 +263,50 @@ public abstract class InstallApksCommand {
       final ImmutableList<Path> apksToPush =
           getApksToPushToStorage(toc, deviceSpec, tempDirectory.getPath());
       AdbRunner adbRunner = new AdbRunner(adbServer);
-      InstallOptions installOptions =
-          InstallOptions.builder()
-              .setAllowDowngrade(getAllowDowngrade())
-              .setAllowTestOnly(getAllowTestOnly())
-              .build();
+      InstallOptions installOptions = createInstallOptions(toc);
 
+      Consumer<Device> installAction =
+          device ->
+              printInstalledApks(
+                  device.installApks(apksToInstall, installOptions), apksToInstall, output);
       if (getDeviceId().isPresent()) {
-        adbRunner.run(
-            device -> device.installApks(apksToInstall, installOptions), getDeviceId().get());
+        adbRunner.run(installAction, getDeviceId().get());
       } else {
-        adbRunner.run(device -> device.installApks(apksToInstall, installOptions));
+        adbRunner.run(installAction);
       }
 
       if (!apksToPush.isEmpty()) {
-        pushSplits(apksToPush, toc, adbRunner);
+        pushSplits(apksToPush, toc, adbRunner, output);
       }
     }
   }
 
+  private static void printInstalledApks(
+      ImmutableList<Path> installedApks, ImmutableList<Path> apksToInstall, PrintStream output) {
+    if (installedApks.isEmpty()) {
+      output.println("The APKs are already installed with identical content, skipping.");
+    } else if (installedApks.size() < apksToInstall.size()) {
+      output.printf(
+          "Installed %d changed APK(s) out of %d.%n", installedApks.size(), apksToInstall.size());
+    }
+  }
+
   /** Extracts the apks that will be installed. */
   private ImmutableList<Path> getApksToInstall(
       BuildApksResult toc, DeviceSpec deviceSpec, Path output) {
+    ExtractApksCommand.Builder extractApksCommand = apksToInstallExtraction(toc, deviceSpec);
+    if (!Files.isDirectory(getApksArchivePath())) {
+      extractApksCommand.setOutputDirectory(output);
+    }
+    return extractApksCommand.build().execute();
+  }
+
+  private ExtractApksCommand.Builder apksToInstallExtraction(
+      BuildApksResult toc, DeviceSpec deviceSpec) {
     ExtractApksCommand.Builder extractApksCommand =
         ExtractApksCommand.builder()
             .setApksArchivePath(getApksArchivePath())
             .setDeviceSpec(deviceSpec);
-    if (!Files.isDirectory(getApksArchivePath())) {
-      extractApksCommand.setOutputDirectory(output);
-    }
     ImmutableSet<String> dynamicAssetModules =
         toc.getAssetSliceSetList().stream()
             .map(AssetSliceSet::getAssetModuleMetadata)
@@ -207,7 +317,7 @@ public abstract class InstallApksCommand {
         .map(modules -> ExtractApksCommand.resolveRequestedModules(modules, toc))
         .map(modules -> Sets.difference(modules, dynamicAssetModules).immutableCopy())
         .ifPresent(extractApksCommand::setModules);
-    return extractApksCommand.build().execute();
+    return extractApksCommand;
   }
 
   /**
@@ -227,13 +337,21 @@ public abstract class InstallApksCommand {
     if (!toc.getLocalTestingInfo().getEnabled()) {
       return ImmutableList.of();
     }
+    ExtractApksCommand.Builder extractApksCommand = apksToPushExtraction(toc, deviceSpec);
+    if (!Files.isDirectory(getApksArchivePath())) {
+      extractApksCommand.setOutputDirectory(output);
+    }
+    return extractApksCommand.build().execute().stream()
+        .filter(apk -> !isBaseMasterSplit(apk.getFileName().toString(), toc))
+        .collect(toImmutableList());
+  }
+
+  private ExtractApksCommand.Builder apksToPushExtraction(
+      BuildApksResult toc, DeviceSpec deviceSpec) {
     ExtractApksCommand.Builder extractApksCommand =
         ExtractApksCommand.builder()
             .setApksArchivePath(getApksArchivePath())
             .setDeviceSpec(addAllSupportedLanguages(deviceSpec, toc));
-    if (!Files.isDirectory(getApksArchivePath())) {
-      extractApksCommand.setOutputDirectory(output);
-    }
     ImmutableSet<String> installTimeAssetModules =
         toc.getAssetSliceSetList().stream()
             .map(AssetSliceSet::getAssetModuleMetadata)
@@ -245,30 +363,245 @@ public abstract class InstallApksCommand {
             ImmutableSet.of(ExtractApksCommand.ALL_MODULES_SHORTCUT), toc);
     extractApksCommand.setModules(
         Sets.difference(allModules, installTimeAssetModules).immutableCopy());
-    return extractApksCommand.build().execute().stream()
-        .filter(
-            apk ->
-                !ResultUtils.getAllBaseMasterSplitPaths(toc).contains(apk.getFileName().toString()))
-        .collect(toImmutableList());
+    return extractApksCommand;
+  }
+
+  private static boolean isBaseMasterSplit(String apkFileName, BuildApksResult toc) {
+    return ResultUtils.getAllBaseMasterSplitPaths(toc).contains(apkFileName);
   }
 
-  private void pushSplits(ImmutableList<Path> splits, BuildApksResult toc, AdbRunner adbRunner) {
+  /**
+   * Installs the APK Set on several devices concurrently and prints a summary in CSV format, with
+   * one row per device.
+   *
+   * <p>A failure on one device doesn't stop the installation on the other devices. Each distinct
+   * APK is extracted from the APK Set at most once, however many devices it is installed on.
+   *
+   * @throws CommandExecutionException if the installation failed on any device, after all the
+   *     devices have been processed
+   */
+  private ImmutableList<DeviceInstallResult> installOnDevices(
+      AdbServer adbServer, PrintStream output) {
+    AdbRunner adbRunner = new AdbRunner(adbServer);
+    ImmutableList<Device> devices =
+        getDeviceIds().get().contains(ALL_DEVICES)
+            ? adbRunner.getOnlineDevices()
+            : adbRunner.getDevices(getDeviceIds().get());
+    BuildApksResult toc = ResultUtils.readTableOfContents(getApksArchivePath());
+
+    ImmutableList<DeviceInstallResult> results;
+    ListeningExecutorService executorService =
+        MoreExecutors.listeningDecorator(
+            Executors.newFixedThreadPool(Math.min(devices.size(), MAX_PARALLEL_DEVICES)));
+    try (TempDirectory tempDirectory = new TempDirectory();
+        ApkProvider apkProvider = new ApkProvider(tempDirectory.getPath())) {
+      results =
+          ConcurrencyUtils.waitForAll(
+              devices.stream()
+                  .map(
+                      device ->
+                          executorService.submit(
+                              () -> installOnDevice(device, toc, adbServer, apkProvider)))
+                  .collect(toImmutableList()));
+    } finally {
+      executorService.shutdown();
+    }
+
+    CsvFormatter.Builder summary =
+        CsvFormatter.builder().setHeader(ImmutableList.of("DEVICE_ID", "STATUS", "APKS", "ERROR"));
+    for (DeviceInstallResult result : results) {
+      summary.addRow(
+          ImmutableList.of(
+              result.getDeviceId(),
+              result.isSuccessful() ? "SUCCESS" : "FAILURE",
+              String.join(APK_NAME_SEPARATOR, result.getInstalledApks()),
+              result.getError().orElse("")));
+    }
+    output.print(summary.build().format());
+
+    long failures = results.stream().filter(result -> !result.isSuccessful()).count();
+    if (failures > 0) {
+      throw CommandExecutionException.builder()
+          .withMessage("Installation failed on %d of %d device(s).", failures, results.size())
+          .build();
+    }
+    return results;
+  }
+
+  private DeviceInstallResult installOnDevice(
+      Device device, BuildApksResult toc, AdbServer adbServer, ApkProvider apkProvider) {
+    String deviceId = device.getSerialNumber();
+    try {
+      DeviceSpec deviceSpec =
+          new DeviceAnalyzer(adbServer, getDeviceSpecCache()).getDeviceSpec(device);
+      ImmutableList<ZipPath> apksToInstall =
+          apksToInstallExtraction(toc, deviceSpec).build().getMatchingApks(toc);
+      ImmutableList<Path> installedApks =
+          device.installApks(apkProvider.getApks(apksToInstall), createInstallOptions(toc));
+
+      if (toc.getLocalTestingInfo().getEnabled()) {
+        ImmutableList<ZipPath> apksToPush =
+            apksToPushExtraction(toc, deviceSpec).build().getMatchingApks(toc).stream()
+                .filter(apk -> !isBaseMasterSplit(apk.getFileName().toString(), toc))
+                .collect(toImmutableList());
+        if (!apksToPush.isEmpty()) {
+          device.pushApks(apkProvider.getApks(apksToPush), createPushOptions(toc));
+        }
+      }
+      return DeviceInstallResult.success(
+          deviceId,
+          installedApks.stream()
+              .map(apk -> apk.getFileName().toString())
+              .collect(toImmutableList()));
+    } catch (RuntimeException e) {
+      return DeviceInstallResult.failure(deviceId, e);
+    }
+  }
+
+  private void pushSplits(
+      ImmutableList<Path> splits, BuildApksResult toc, AdbRunner adbRunner, PrintStream output) {
+    Device.PushOptions pushOptions = createPushOptions(toc);
+    Consumer<Device> pushAction =
+        device ->
+            device
+                .pushApks(splits, pushOptions)
+                .forEach(pushedPath -> output.printf("Pushed \"%s\"%n", pushedPath));
+    if (getDeviceId().isPresent()) {
+      adbRunner.run(pushAction, getDeviceId().get());
+    } else {
+      adbRunner.run(pushAction);
+    }
+  }
+
+  private InstallOptions createInstallOptions(BuildApksResult toc) {
+    InstallOptions.Builder installOptions =
+        InstallOptions.builder()
+            .setAllowDowngrade(getAllowDowngrade())
+            .setAllowTestOnly(getAllowTestOnly())
+            .setSkipUnchangedApks(getSkipUnchangedApks())
+            .setSplitNameByApkFileName(getSplitNameByApkFileName(toc));
+    if (!toc.getPackageName().isEmpty()) {
+      installOptions.setPackageName(toc.getPackageName());
+    }
+    return installOptions.build();
+  }
+
+  /**
+   * Returns the split name of the APKs of the APK Set by file name, standalone APKs having the
+   * empty split name of the base APK.
+   */
+  private static ImmutableMap<String, String> getSplitNameByApkFileName(BuildApksResult toc) {
+    return toc.getVariantList().stream()
+        .flatMap(variant -> variant.getApkSetList().stream())
+        .flatMap(apkSet -> apkSet.getApkDescriptionList().stream())
+        .collect(
+            toImmutableMap(
+                apkDescription -> ZipPath.create(apkDescription.getPath()).getFileName().toString(),
+                apkDescription -> apkDescription.getSplitApkMetadata().getSplitId(),
+                (first, second) -> first));
+  }
+
+  private static Device.PushOptions createPushOptions(BuildApksResult toc) {
     String packageName = toc.getPackageName();
     if (packageName.isEmpty()) {
       throw new CommandExecutionException(
           "Unable to determine the package name of the base APK. If your APK set was produced"
               + " using an older version of bundletool, please regenerate it.");
     }
-    Device.PushOptions.Builder pushOptions =
-        Device.PushOptions.builder()
-            .setDestinationPath(toc.getLocalTestingInfo().getLocalTestingPath())
-            .setClearDestinationPath(true)
-            .setPackageName(packageName);
+    return Device.PushOptions.builder()
+        .setDestinationPath(toc.getLocalTestingInfo().getLocalTestingPath())
+        .setClearDestinationPath(true)
+        .setPackageName(packageName)
+        .build();
+  }
+
+  /** Result of the installation of the APK Set on one device, when installing on many devices. */
+  @AutoValue
+  public abstract static class DeviceInstallResult {
+    public abstract String getDeviceId();
+
+    /** File names of the installed APKs. Empty if the installation failed. */
+    public abstract ImmutableList<String> getInstalledApks();
+
+    /** Message of the error that made the installation fail, if it failed. */
+    public abstract Optional<String> getError();
+
+    public boolean isSuccessful() {
+      return !getError().isPresent();
+    }
 
-    if (getDeviceId().isPresent()) {
-      adbRunner.run(device -> device.pushApks(splits, pushOptions.build()), getDeviceId().get());
-    } else {
-      adbRunner.run(device -> device.pushApks(splits, pushOptions.build()));
+    static DeviceInstallResult success(String deviceId, ImmutableList<String> installedApks) {
+      return new AutoValue_InstallApksCommand_DeviceInstallResult(
+          deviceId, installedApks, Optional.empty());
+    }
+
+    static DeviceInstallResult failure(String deviceId, Exception error) {
+      return new AutoValue_InstallApksCommand_DeviceInstallResult(
+          deviceId,
+          ImmutableList.of(),
+          Optional.of(Optional.ofNullable(error.getMessage()).orElse(error.toString())));
+    }
+  }
+
+  /**
+   * Provides the APKs of the APK Set as files, extracting each APK of an APK Set archive at most
+   * once, whichever device asks for it first.
+   */
+  private final class ApkProvider implements AutoCloseable {
+    private final Path outputDirectory;
+    private final Optional<ZipEntryExtractor> apksArchive;
+    private final ConcurrentMap<ZipPath, Supplier<Path>> extractedApks =
+        new ConcurrentHashMap<>();
+
+    ApkProvider(Path outputDirectory) {
+      this.outputDirectory = outputDirectory;
+      try {
+        this.apksArchive =
+            Files.isDirectory(getApksArchivePath())
+                ? Optional.empty()
+                : Optional.of(ZipEntryExtractor.open(getApksArchivePath()));
+      } catch (IOException e) {
+        throw new UncheckedIOException(
+            String.format(
+                "Error while processing the APK Set archive '%s'.", getApksArchivePath()),
+            e);
+      }
+    }
+
+    ImmutableList<Path> getApks(ImmutableList<ZipPath> apks) {
+      return apks.stream().map(this::getApk).collect(toImmutableList());
+    }
+
+    private Path getApk(ZipPath apk) {
+      if (!apksArchive.isPresent()) {
+        return getApksArchivePath().resolve(apk.toString());
+      }
+      return extractedApks
+          .computeIfAbsent(apk, key -> Suppliers.memoize(() -> extract(key)))
+          .get();
+    }
+
+    private Path extract(ZipPath apk) {
+      Path extractedApk = outputDirectory.resolve(apk.toString());
+      FileUtils.createDirectories(extractedApk.getParent());
+      try {
+        apksArchive.get().extract(apk.toString(), extractedApk);
+      } catch (IOException e) {
+        throw new UncheckedIOException(
+            String.format("Error while extracting APK '%s' from the APK Set.", apk), e);
+      }
+      return extractedApk;
+    }
+
+    @Override
+    public void close() {
+      if (apksArchive.isPresent()) {
+        try {
+          apksArchive.get().close();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
     }
   }
 
@@ -330,6 +663,17 @@ public abstract class InstallApksCommand {
                         + "device or emulator is connected.",
                     ANDROID_SERIAL_VARIABLE)
                 .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(DEVICE_IDS_FLAG.getName())
+                .setExampleValue("serial1,serial2|" + ALL_DEVICES)
+                .setOptional(true)
+                .setDescription(
+                    "Serial names of the devices to install on concurrently, or \"%s\" for all "
+                        + "the connected devices. Cannot be used together with --%s. A summary of "
+                        + "the installation on each device is printed in CSV format.",
+                    ALL_DEVICES, DEVICE_ID_FLAG.getName())
+                .build())
         .addFlag(
             FlagDescription.builder()
                 .setFlagName(ALLOW_DOWNGRADE_FLAG.getName())
@@ -350,6 +694,26 @@ public abstract class InstallApksCommand {
                         + "value of this flag is ignored if the device receives a standalone APK.",
                     ExtractApksCommand.ALL_MODULES_SHORTCUT)
                 .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(SKIP_UNCHANGED_APKS_FLAG.getName())
+                .setOptional(true)
+                .setDescription(
+                    "If set, APKs already installed on the device with identical content are not "
+                        + "installed again. When all the installed APKs are still part of the app, "
+                        + "only the other APKs are installed on top of the installed app. "
+                        + "Requires an APK Set that records the package name of the app.")
+                .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(DEVICE_SPEC_CACHE_TTL_FLAG.getName())
+                .setExampleValue("60")
+                .setOptional(true)
+                .setDescription(
+                    "If set, the specs of the devices are cached on disk for the given number of "
+                        + "minutes, keyed by their serial name and build fingerprint, so that a "
+                        + "device isn't analysed again by subsequent installs.")
+                .build())
         .addFlag(
             FlagDescription.builder()
                 .setFlagName(ALLOW_TEST_ONLY_FLAG.getName())
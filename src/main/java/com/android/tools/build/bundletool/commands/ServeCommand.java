@@ -0,0 +1,363 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.commands;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.android.tools.build.bundletool.commands.CommandHelp.CommandDescription;
+import com.android.tools.build.bundletool.commands.CommandHelp.FlagDescription;
+import com.android.tools.build.bundletool.device.AdbServer;
+import com.android.tools.build.bundletool.flags.Flag;
+import com.android.tools.build.bundletool.flags.FlagParser;
+import com.android.tools.build.bundletool.flags.ParsedFlags;
+import com.android.tools.build.bundletool.io.TempDirectory;
+import com.android.tools.build.bundletool.model.Aapt2Command;
+import com.android.tools.build.bundletool.model.exceptions.ValidationException;
+import com.android.tools.build.bundletool.model.utils.DefaultSystemEnvironmentProvider;
+import com.android.tools.build.bundletool.model.utils.SystemEnvironmentProvider;
+import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Runs bundletool commands received on the standard input in a single long-lived process.
+ *
+ * <p>Avoids paying the JVM start-up and class loading costs on every invocation, and lets all
+ * commands share the same thread pool and the same extracted aapt2 binary.
+ */
+@AutoValue
+public abstract class ServeCommand {
+
+  public static final String COMMAND_NAME = "serve";
+
+  private static final int DEFAULT_MAX_CONCURRENT_COMMANDS = 4;
+  private static final int DEFAULT_MAX_THREADS = 4;
+
+  private static final Flag<Integer> MAX_CONCURRENT_COMMANDS_FLAG =
+      Flag.positiveInteger("max-concurrent-commands");
+  private static final Flag<Integer> MAX_THREADS_FLAG = Flag.positiveInteger("max-threads");
+
+  private static final SystemEnvironmentProvider DEFAULT_PROVIDER =
+      new DefaultSystemEnvironmentProvider();
+
+  private static final Splitter REQUEST_ID_SPLITTER = Splitter.on(' ').limit(2);
+
+  public abstract int getMaxConcurrentCommands();
+
+  public abstract int getMaxThreads();
+
+  public abstract AdbServer getAdbServer();
+
+  public static Builder builder() {
+    return new AutoValue_ServeCommand.Builder()
+        .setMaxConcurrentCommands(DEFAULT_MAX_CONCURRENT_COMMANDS)
+        .setMaxThreads(DEFAULT_MAX_THREADS);
+  }
+
+  /** Builder for the {@link ServeCommand}. */
+  @AutoValue.Builder
+  public abstract static class Builder {
+
+    /** Sets the maximum number of commands that are executed at the same time. */
+    public abstract Builder setMaxConcurrentCommands(int maxConcurrentCommands);
+
+    /** Sets the number of threads shared by all commands that generate APKs. */
+    public abstract Builder setMaxThreads(int maxThreads);
+
+    /** Sets the ADB server used by the 'build-apks' command with '--connected-device'. */
+    public abstract Builder setAdbServer(AdbServer adbServer);
+
+    public abstract ServeCommand build();
+  }
+
+  public static ServeCommand fromFlags(ParsedFlags flags, AdbServer adbServer) {
+    ServeCommand.Builder serveCommand = builder().setAdbServer(adbServer);
+    MAX_CONCURRENT_COMMANDS_FLAG.getValue(flags).ifPresent(serveCommand::setMaxConcurrentCommands);
+    MAX_THREADS_FLAG.getValue(flags).ifPresent(serveCommand::setMaxThreads);
+
+    flags.checkNoUnknownFlags();
+
+    return serveCommand.build();
+  }
+
+  /**
+   * Serves requests from the standard input until it is closed.
+   *
+   * <p>The standard output is reserved for responses: anything else the commands print to it is
+   * redirected to the standard error.
+   */
+  public void execute() {
+    PrintStream responses = System.out;
+    System.setOut(System.err);
+    try {
+      serve(System.in, responses);
+    } finally {
+      System.setOut(responses);
+    }
+  }
+
+  /**
+   * Reads one request per line from {@code requests} and writes the responses to {@code
+   * responses}.
+   *
+   * <p>Returns once the end of {@code requests} is reached and all pending commands are finished.
+   */
+  @VisibleForTesting
+  void serve(InputStream requests, PrintStream responses) {
+    ListeningExecutorService commandExecutor =
+        MoreExecutors.listeningDecorator(
+            Executors.newFixedThreadPool(getMaxConcurrentCommands()));
+    ListeningExecutorService sharedExecutor =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(getMaxThreads()));
+    try (TempDirectory tempDir = new TempDirectory(COMMAND_NAME);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(requests, UTF_8))) {
+      Supplier<Aapt2Command> aapt2Command =
+          Suppliers.memoize(() -> BuildApksCommand.extractAapt2FromJar(tempDir.getPath()));
+
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+        List<String> idAndCommand = REQUEST_ID_SPLITTER.splitToList(line.trim());
+        String requestId = idAndCommand.get(0);
+        String commandLine = idAndCommand.size() > 1 ? idAndCommand.get(1) : "";
+        commandExecutor.execute(
+            () ->
+                handleRequest(
+                    requestId, commandLine, responses, sharedExecutor, aapt2Command));
+      }
+
+      commandExecutor.shutdown();
+      commandExecutor.awaitTermination(Long.MAX_VALUE, SECONDS);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error while reading the requests.", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for the pending commands.", e);
+    } finally {
+      commandExecutor.shutdownNow();
+      sharedExecutor.shutdownNow();
+    }
+  }
+
+  private void handleRequest(
+      String requestId,
+      String commandLine,
+      PrintStream responses,
+      ListeningExecutorService sharedExecutor,
+      Supplier<Aapt2Command> aapt2Command) {
+    ByteArrayOutputStream outputBytes = new ByteArrayOutputStream();
+    String status;
+    Optional<VirtualMachineError> fatalError = Optional.empty();
+    try (PrintStream output = new PrintStream(outputBytes, /* autoFlush= */ true, "UTF-8")) {
+      runCommand(commandLine, output, sharedExecutor, aapt2Command);
+      status = "OK";
+    } catch (Throwable e) {
+      // Errors are answered too, otherwise the client would wait forever for this request.
+      String message = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+      status = "ERROR " + message.replaceAll("\\R", " ");
+      if (e instanceof VirtualMachineError) {
+        fatalError = Optional.of((VirtualMachineError) e);
+      }
+    }
+
+    String output = new String(outputBytes.toByteArray(), UTF_8);
+    synchronized (responses) {
+      if (!output.isEmpty()) {
+        for (String outputLine : output.split("\\R")) {
+          responses.println(requestId + " OUT " + outputLine);
+        }
+      }
+      responses.println(requestId + " " + status);
+      responses.flush();
+    }
+    if (fatalError.isPresent()) {
+      throw fatalError.get();
+    }
+  }
+
+  private void runCommand(
+      String commandLine,
+      PrintStream output,
+      ListeningExecutorService sharedExecutor,
+      Supplier<Aapt2Command> aapt2Command) {
+    ParsedFlags flags = new FlagParser().parse(tokenize(commandLine).toArray(new String[0]));
+    String command =
+        flags
+            .getMainCommand()
+            .orElseThrow(() -> new ValidationException("No command specified."));
+    switch (command) {
+      case BuildBundleCommand.COMMAND_NAME:
+        BuildBundleCommand.fromFlags(flags, Optional.of(sharedExecutor)).execute();
+        break;
+      case BuildApksCommand.COMMAND_NAME:
+        BuildApksCommand.fromFlags(
+                flags,
+                output,
+                DEFAULT_PROVIDER,
+                getAdbServer(),
+                Optional.of(sharedExecutor),
+                Optional.of(aapt2Command))
+            .execute();
+        break;
+      case ExtractApksCommand.COMMAND_NAME:
+        ExtractApksCommand.fromFlags(flags).execute(output);
+        break;
+      case ExtractApksBatchCommand.COMMAND_NAME:
+        ExtractApksBatchCommand.fromFlags(flags).execute(output);
+        break;
+      case GetSizeCommand.COMMAND_NAME:
+        GetSizeCommand.fromFlags(flags).execute(output);
+        break;
+      case DumpCommand.COMMAND_NAME:
+        DumpCommand.fromFlags(flags, output).execute();
+        break;
+      case ValidateBundleCommand.COMMAND_NAME:
+        ValidateBundleCommand.fromFlags(flags).execute();
+        break;
+      case VersionCommand.COMMAND_NAME:
+        VersionCommand.fromFlags(flags, output).execute();
+        break;
+      default:
+        throw ValidationException.builder()
+            .withMessage(
+                "Command '%s' is not supported by the '%s' command.", command, COMMAND_NAME)
+            .build();
+    }
+  }
+
+  /**
+   * Splits a command line into arguments.
+   *
+   * <p>Arguments are separated by whitespace. Single and double quotes group characters into one
+   * argument, and a backslash outside of single quotes escapes the next character.
+   */
+  @VisibleForTesting
+  static ImmutableList<String> tokenize(String commandLine) {
+    ImmutableList.Builder<String> tokens = ImmutableList.builder();
+    StringBuilder token = new StringBuilder();
+    boolean inToken = false;
+    char quote = 0;
+    for (int i = 0; i < commandLine.length(); i++) {
+      char c = commandLine.charAt(i);
+      if (c == '\\' && quote != '\'') {
+        if (++i == commandLine.length()) {
+          throw new ValidationException("Dangling escape character at the end of the command.");
+        }
+        token.append(commandLine.charAt(i));
+        inToken = true;
+      } else if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        } else {
+          token.append(c);
+        }
+      } else if (c == '\'' || c == '"') {
+        quote = c;
+        inToken = true;
+      } else if (Character.isWhitespace(c)) {
+        if (inToken) {
+          tokens.add(token.toString());
+          token.setLength(0);
+          inToken = false;
+        }
+      } else {
+        token.append(c);
+        inToken = true;
+      }
+    }
+    if (quote != 0) {
+      throw ValidationException.builder()
+          .withMessage("Unterminated quote %s in the command.", quote)
+          .build();
+    }
+    if (inToken) {
+      tokens.add(token.toString());
+    }
+    return tokens.build();
+  }
+
+  public static CommandHelp help() {
+    return CommandHelp.builder()
+        .setCommandName(COMMAND_NAME)
+        .setCommandDescription(
+            CommandDescription.builder()
+                .setShortDescription(
+                    "Runs bundletool commands read from the standard input in a single process.")
+                .addAdditionalParagraph(
+                    "Each line of the standard input is a request of the form '<id> <command> "
+                        + "<flags>', where the flags use the same syntax as on the command line. "
+                        + "Requests are executed concurrently, and the commands generating APKs "
+                        + "share the same threads and the same aapt2 binary.")
+                .addAdditionalParagraph(
+                    "For each request, the output of the command is written to the standard "
+                        + "output as lines '<id> OUT <line>', followed by either '<id> OK' or "
+                        + "'<id> ERROR <message>'. The process exits once the standard input is "
+                        + "closed and all pending requests are finished.")
+                .addAdditionalParagraph(
+                    String.format(
+                        "Supported commands: %s.",
+                        String.join(
+                            ", ",
+                            BuildBundleCommand.COMMAND_NAME,
+                            BuildApksCommand.COMMAND_NAME,
+                            ExtractApksCommand.COMMAND_NAME,
+                            ExtractApksBatchCommand.COMMAND_NAME,
+                            GetSizeCommand.COMMAND_NAME,
+                            DumpCommand.COMMAND_NAME,
+                            ValidateBundleCommand.COMMAND_NAME,
+                            VersionCommand.COMMAND_NAME)))
+                .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(MAX_CONCURRENT_COMMANDS_FLAG.getName())
+                .setExampleValue("num-commands")
+                .setOptional(true)
+                .setDescription(
+                    "Maximum number of requests executed at the same time. Default: %d.",
+                    DEFAULT_MAX_CONCURRENT_COMMANDS)
+                .build())
+        .addFlag(
+            FlagDescription.builder()
+                .setFlagName(MAX_THREADS_FLAG.getName())
+                .setExampleValue("num-threads")
+                .setOptional(true)
+                .setDescription(
+                    "Number of threads shared by the '%s' requests that don't set their own "
+                        + "'--max-threads' flag. Default: %d.",
+                    BuildApksCommand.COMMAND_NAME, DEFAULT_MAX_THREADS)
+                .build())
+        .build();
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.commands;
+
+import com.android.aapt.Resources.Entry;
+import com.android.aapt.Resources.EntryId;
+import com.android.aapt.Resources.Package;
+import com.android.aapt.Resources.PackageId;
+import com.android.aapt.Resources.ResourceTable;
+import com.android.aapt.Resources.Type;
+import com.android.aapt.Resources.TypeId;
+import com.android.tools.build.bundletool.model.InputStreamSupplier;
+import com.android.tools.build.bundletool.model.ResourceTableEntry;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.WireFormat;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Reads the entries of a serialized {@link ResourceTable} as a stream, without ever holding the
+ * whole table in memory.
+ *
+ * <p>The table is read once, field by field with a {@link CodedInputStream}. Only the entries
+ * that match the given predicate are fully parsed; all other entries are skipped as raw bytes.
+ */
+final class StreamingResourceTable {
+
+  /**
+   * Passes the entries of the table that match the predicate to the consumer, in the order of the
+   * table.
+   *
+   * <p>The predicate is evaluated before the entries are parsed: the {@link ResourceTableEntry}
+   * it gets only has the IDs and names of the package, type and entry. The consumer gets the
+   * fully parsed entry, with the package and type still limited to their IDs and names.
+   */
+  static void forEachEntry(
+      InputStreamSupplier resourceTable,
+      Predicate<ResourceTableEntry> entryPredicate,
+      Consumer<ResourceTableEntry> entryConsumer)
+      throws IOException {
+    try (InputStream inputStream = resourceTable.get()) {
+      CodedInputStream input = CodedInputStream.newInstance(inputStream);
+      for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+        if (isLengthDelimited(tag, ResourceTable.PACKAGE_FIELD_NUMBER)) {
+          int oldLimit = input.pushLimit(input.readRawVarint32());
+          readPackageEntries(input, entryPredicate, entryConsumer);
+          input.popLimit(oldLimit);
+        } else {
+          input.skipField(tag);
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads the entries of a package, parsing only those matching the predicate.
+   *
+   * <p>Types are kept as raw bytes until both the ID and the name of the package have been read,
+   * which only happens if the package was serialized with its fields out of order.
+   */
+  private static void readPackageEntries(
+      CodedInputStream input,
+      Predicate<ResourceTableEntry> entryPredicate,
+      Consumer<ResourceTableEntry> entryConsumer)
+      throws IOException {
+    Package.Builder packageHeader = Package.newBuilder();
+    boolean packageIdRead = false;
+    boolean packageNameRead = false;
+    List<ByteString> pendingTypes = new ArrayList<>();
+    for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+      if (isLengthDelimited(tag, Package.PACKAGE_ID_FIELD_NUMBER)) {
+        PackageId.Builder packageId = packageHeader.getPackageIdBuilder();
+        input.readMessage(packageId, ExtensionRegistryLite.getEmptyRegistry());
+        packageIdRead = true;
+      } else if (isLengthDelimited(tag, Package.PACKAGE_NAME_FIELD_NUMBER)) {
+        packageHeader.setPackageName(input.readStringRequireUtf8());
+        packageNameRead = true;
+      } else if (isLengthDelimited(tag, Package.TYPE_FIELD_NUMBER)) {
+        if (packageIdRead && packageNameRead) {
+          int oldLimit = input.pushLimit(input.readRawVarint32());
+          readTypeEntries(input, packageHeader.build(), entryPredicate, entryConsumer);
+          input.popLimit(oldLimit);
+        } else {
+          pendingTypes.add(input.readBytes());
+        }
+      } else {
+        input.skipField(tag);
+      }
+    }
+    for (ByteString pendingType : pendingTypes) {
+      readTypeEntries(
+          pendingType.newCodedInput(), packageHeader.build(), entryPredicate, entryConsumer);
+    }
+  }
+
+  /**
+   * Reads the entries of a type, parsing only those matching the predicate.
+   *
+   * <p>Entries are kept as raw bytes until both the ID and the name of the type have been read,
+   * which only happens if the type was serialized with its fields out of order.
+   */
+  private static void readTypeEntries(
+      CodedInputStream input,
+      Package packageHeader,
+      Predicate<ResourceTableEntry> entryPredicate,
+      Consumer<ResourceTableEntry> entryConsumer)
+      throws IOException {
+    Type.Builder typeHeader = Type.newBuilder();
+    boolean typeIdRead = false;
+    boolean typeNameRead = false;
+    List<ByteString> pendingEntries = new ArrayList<>();
+    for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+      if (isLengthDelimited(tag, Type.TYPE_ID_FIELD_NUMBER)) {
+        TypeId.Builder typeId = typeHeader.getTypeIdBuilder();
+        input.readMessage(typeId, ExtensionRegistryLite.getEmptyRegistry());
+        typeIdRead = true;
+      } else if (isLengthDelimited(tag, Type.NAME_FIELD_NUMBER)) {
+        typeHeader.setName(input.readStringRequireUtf8());
+        typeNameRead = true;
+      } else if (isLengthDelimited(tag, Type.ENTRY_FIELD_NUMBER)) {
+        pendingEntries.add(input.readBytes());
+        if (typeIdRead && typeNameRead) {
+          readEntries(
+              pendingEntries, packageHeader, typeHeader.build(), entryPredicate, entryConsumer);
+          pendingEntries.clear();
+        }
+      } else {
+        input.skipField(tag);
+      }
+    }
+    readEntries(pendingEntries, packageHeader, typeHeader.build(), entryPredicate, entryConsumer);
+  }
+
+  private static void readEntries(
+      List<ByteString> serializedEntries,
+      Package packageHeader,
+      Type typeHeader,
+      Predicate<ResourceTableEntry> entryPredicate,
+      Consumer<ResourceTableEntry> entryConsumer)
+      throws IOException {
+    for (ByteString serializedEntry : serializedEntries) {
+      if (entryPredicate.test(
+          ResourceTableEntry.create(packageHeader, typeHeader, readEntryHeader(serializedEntry)))) {
+        entryConsumer.accept(
+            ResourceTableEntry.create(packageHeader, typeHeader, Entry.parseFrom(serializedEntry)));
+      }
+    }
+  }
+
+  private static Entry readEntryHeader(ByteString serializedEntry) throws IOException {
+    Entry.Builder entryHeader = Entry.newBuilder();
+    CodedInputStream input = serializedEntry.newCodedInput();
+    for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+      if (isLengthDelimited(tag, Entry.ENTRY_ID_FIELD_NUMBER)) {
+        EntryId.Builder entryId = entryHeader.getEntryIdBuilder();
+        input.readMessage(entryId, ExtensionRegistryLite.getEmptyRegistry());
+      } else if (isLengthDelimited(tag, Entry.NAME_FIELD_NUMBER)) {
+        entryHeader.setName(input.readStringRequireUtf8());
+      } else {
+        input.skipField(tag);
+      }
+    }
+    return entryHeader.build();
+  }
+
+  /** Whether the tag is the one of the given message, string or bytes field. */
+  private static boolean isLengthDelimited(int tag, int fieldNumber) {
+    return WireFormat.getTagFieldNumber(tag) == fieldNumber
+        && WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED;
+  }
+
+  private StreamingResourceTable() {}
+}
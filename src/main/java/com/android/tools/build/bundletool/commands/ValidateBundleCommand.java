@@ -75,9 +75,7 @@ public abstract class ValidateBundleCommand {
     try (ZipFile bundleZip = new ZipFile(getBundlePath().toFile())) {
       AppBundleValidator bundleValidator = AppBundleValidator.create();
 
-      bundleValidator.validateFile(bundleZip);
-      AppBundle appBundle = AppBundle.buildFromZip(bundleZip);
-      bundleValidator.validate(appBundle);
+      AppBundle appBundle = bundleValidator.validateAndBuildFromZip(bundleZip);
 
       if (getPrintOutput()) {
         printBundleSummary(appBundle);
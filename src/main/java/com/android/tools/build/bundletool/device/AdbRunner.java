@@ -18,11 +18,16 @@ package com.android.tools.build.bundletool.device;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
 
+import com.android.ddmlib.IDevice.DeviceState;
 import com.android.tools.build.bundletool.model.exceptions.CommandExecutionException;
 import com.android.tools.build.bundletool.model.exceptions.DeviceNotFoundException;
 import com.android.tools.build.bundletool.model.exceptions.DeviceNotFoundException.TooManyDevicesMatchedException;
 import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
@@ -66,6 +71,46 @@ public class AdbRunner {
     }
   }
 
+  /** Returns all the connected devices that are online. */
+  public ImmutableList<Device> getOnlineDevices() {
+    ImmutableList<Device> onlineDevices =
+        getDevices(device -> device.getState().equals(DeviceState.ONLINE));
+    if (onlineDevices.isEmpty()) {
+      throw new CommandExecutionException("No connected online devices found.");
+    }
+    return onlineDevices;
+  }
+
+  /**
+   * Returns the connected devices with the given serial numbers, in the order of the serial
+   * numbers.
+   */
+  public ImmutableList<Device> getDevices(ImmutableSet<String> deviceIds) {
+    ImmutableMap<String, Device> devicesById =
+        Maps.uniqueIndex(
+            getDevices(device -> deviceIds.contains(device.getSerialNumber())),
+            Device::getSerialNumber);
+    ImmutableSet<String> missingDeviceIds =
+        Sets.difference(deviceIds, devicesById.keySet()).immutableCopy();
+    if (!missingDeviceIds.isEmpty()) {
+      throw CommandExecutionException.builder()
+          .withMessage("Unable to find connected devices with serial numbers %s.", missingDeviceIds)
+          .build();
+    }
+    return deviceIds.stream().map(devicesById::get).collect(toImmutableList());
+  }
+
+  private ImmutableList<Device> getDevices(Predicate<Device> deviceFilter) {
+    try {
+      return adbServer.getDevices().stream().filter(deviceFilter).collect(toImmutableList());
+    } catch (TimeoutException e) {
+      throw CommandExecutionException.builder()
+          .withCause(e)
+          .withMessage("Timed out while waiting for ADB.")
+          .build();
+    }
+  }
+
   private void run(Consumer<Device> deviceAction, Predicate<Device> deviceFilter) {
     try {
       ImmutableList<Device> matchedDevices =
@@ -17,21 +17,20 @@
 package com.android.tools.build.bundletool.device;
 
 import static com.android.tools.build.bundletool.model.utils.ModuleDependenciesUtils.addModuleDependencies;
-import static com.android.tools.build.bundletool.model.utils.ModuleDependenciesUtils.buildAdjacencyMap;
 import static com.android.tools.build.bundletool.model.version.VersionGuardedFeature.NEW_DELIVERY_TYPE_MANIFEST_TAG;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 
 import com.android.bundle.Commands.ApkDescription;
-import com.android.bundle.Commands.ApkSet;
-import com.android.bundle.Commands.AssetModuleMetadata;
-import com.android.bundle.Commands.AssetSliceSet;
 import com.android.bundle.Commands.BuildApksResult;
 import com.android.bundle.Commands.DeliveryType;
 import com.android.bundle.Commands.ModuleMetadata;
 import com.android.bundle.Commands.Variant;
 import com.android.bundle.Devices.DeviceSpec;
 import com.android.bundle.Targeting.ApkTargeting;
+import com.android.tools.build.bundletool.device.ApkSetIndex.ApkTargetingDimension;
+import com.android.tools.build.bundletool.device.ApkSetIndex.IndexedApk;
+import com.android.tools.build.bundletool.device.ApkSetIndex.IndexedVariant;
 import com.android.tools.build.bundletool.model.ModuleSplit;
 import com.android.tools.build.bundletool.model.ZipPath;
 import com.android.tools.build.bundletool.model.exceptions.CommandExecutionException;
@@ -40,9 +39,13 @@ import com.android.tools.build.bundletool.model.version.Version;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.protobuf.Message;
 import java.util.HashSet;
 import java.util.Optional;
 import java.util.Set;
@@ -50,7 +53,7 @@ import java.util.Set;
 /** Calculates whether a given device can be served an APK generated by the bundle tool. */
 public class ApkMatcher {
 
-  private final ImmutableList<? extends TargetingDimensionMatcher<?>> apkMatchers;
+  private final ImmutableMap<ApkTargetingDimension, TargetingDimensionMatcher<?>> apkMatchers;
 
   private final Optional<ImmutableSet<String>> requestedModuleNames;
   private final boolean matchInstant;
@@ -82,13 +85,14 @@ public class ApkMatcher {
         new TextureCompressionFormatMatcher(deviceSpec);
 
     this.apkMatchers =
-        ImmutableList.of(
-            sdkVersionMatcher,
-            abiMatcher,
-            multiAbiMatcher,
-            screenDensityMatcher,
-            languageMatcher,
-            textureCompressionFormatMatcher);
+        ImmutableMap.<ApkTargetingDimension, TargetingDimensionMatcher<?>>builder()
+            .put(ApkTargetingDimension.SDK_VERSION, sdkVersionMatcher)
+            .put(ApkTargetingDimension.ABI, abiMatcher)
+            .put(ApkTargetingDimension.MULTI_ABI, multiAbiMatcher)
+            .put(ApkTargetingDimension.SCREEN_DENSITY, screenDensityMatcher)
+            .put(ApkTargetingDimension.LANGUAGE, languageMatcher)
+            .put(ApkTargetingDimension.TEXTURE_COMPRESSION_FORMAT, textureCompressionFormatMatcher)
+            .build();
     this.requestedModuleNames = requestedModuleNames;
     this.matchInstant = matchInstant;
     this.moduleMatcher = new ModuleMatcher(sdkVersionMatcher, deviceFeatureMatcher);
@@ -109,50 +113,90 @@ public class ApkMatcher {
    * @return paths of the matching APKs as represented by {@link ApkDescription#getPath()}
    */
   public ImmutableList<ZipPath> getMatchingApks(BuildApksResult buildApksResult) {
-    Optional<Variant> matchingVariant = variantMatcher.getMatchingVariant(buildApksResult);
+    return getMatchingApks(ApkSetIndex.create(buildApksResult));
+  }
+
+  /**
+   * Returns all APKs that should be installed on a device.
+   *
+   * <p>Prefer this method over {@link #getMatchingApks(BuildApksResult)} when matching several
+   * devices against the same APK Set, since the index can be built once and shared.
+   *
+   * @param apkSetIndex index of the APKs produced by the BundleTool
+   * @return paths of the matching APKs as represented by {@link ApkDescription#getPath()}
+   */
+  public ImmutableList<ZipPath> getMatchingApks(ApkSetIndex apkSetIndex) {
+    Optional<IndexedVariant> matchingVariant = variantMatcher.getMatchingVariant(apkSetIndex);
 
     if (matchingVariant.isPresent()) {
-      validateVariant(matchingVariant.get(), buildApksResult);
+      validateVariant(matchingVariant.get(), apkSetIndex);
     }
 
+    ApkTargetingMatches apkTargetingMatches = new ApkTargetingMatches(apkSetIndex);
     ImmutableList<ZipPath> variantApks =
         matchingVariant.isPresent()
             ? getMatchingApksFromVariant(
-                matchingVariant.get(), Version.of(buildApksResult.getBundletool().getVersion()))
+                matchingVariant.get(), apkSetIndex.getBundleVersion(), apkTargetingMatches)
             : ImmutableList.of();
 
-    ImmutableList<ZipPath> assetModuleApks = getMatchingApksFromAssetModules(buildApksResult);
+    ImmutableList<ZipPath> assetModuleApks =
+        getMatchingApksFromAssetModules(apkSetIndex, apkTargetingMatches);
 
     return ImmutableList.<ZipPath>builder().addAll(variantApks).addAll(assetModuleApks).build();
   }
 
+  /**
+   * Returns the APKs of the given variant that should be installed on a device.
+   *
+   * <p>Prefer {@link #getMatchingApksFromVariant(ApkSetIndex)} when matching the same variant
+   * against several devices, since the index can be built once and shared.
+   */
   public ImmutableList<ZipPath> getMatchingApksFromVariant(Variant variant, Version bundleVersion) {
-    ImmutableList.Builder<ZipPath> matchedApksBuilder = ImmutableList.builder();
+    return getMatchingApksFromVariant(ApkSetIndex.forVariant(variant, bundleVersion));
+  }
 
-    Predicate<String> moduleNameMatcher = getModuleNameMatcher(variant, bundleVersion);
+  /** Returns the APKs of the only variant of the given index that should be installed. */
+  ImmutableList<ZipPath> getMatchingApksFromVariant(ApkSetIndex variantIndex) {
+    return getMatchingApksFromVariant(
+        Iterables.getOnlyElement(variantIndex.getVariants()),
+        variantIndex.getBundleVersion(),
+        new ApkTargetingMatches(variantIndex));
+  }
 
-    for (ApkSet apkSet : variant.getApkSetList()) {
-      String moduleName = apkSet.getModuleMetadata().getName();
+  /**
+   * Returns the split APKs of the only variant of the given index that belong to modules matched by
+   * this matcher, i.e. the APKs that are installed whenever their targeting matches the device.
+   */
+  ImmutableSet<ZipPath> getSplitApksOfMatchingModules(ApkSetIndex variantIndex) {
+    IndexedVariant indexedVariant = Iterables.getOnlyElement(variantIndex.getVariants());
+    Predicate<String> moduleNameMatcher =
+        getModuleNameMatcher(indexedVariant, variantIndex.getBundleVersion());
+    return indexedVariant.getApks().stream()
+        .filter(apk -> apk.isSplit() && moduleNameMatcher.test(apk.getModuleName()))
+        .map(IndexedApk::getPath)
+        .collect(toImmutableSet());
+  }
 
-      for (ApkDescription apkDescription : apkSet.getApkDescriptionList()) {
-        ApkTargeting apkTargeting = apkDescription.getTargeting();
-        boolean isSplit =
-            !apkDescription.hasStandaloneApkMetadata() && !apkDescription.hasApexApkMetadata();
+  private ImmutableList<ZipPath> getMatchingApksFromVariant(
+      IndexedVariant variant, Version bundleVersion, ApkTargetingMatches apkTargetingMatches) {
+    ImmutableList.Builder<ZipPath> matchedApksBuilder = ImmutableList.builder();
 
-        checkCompatibleWithApkTargeting(apkTargeting);
+    Predicate<String> moduleNameMatcher = getModuleNameMatcher(variant, bundleVersion);
 
-        if (matchesApk(apkTargeting, isSplit, moduleName, moduleNameMatcher)) {
-          matchedApksBuilder.add(ZipPath.create(apkDescription.getPath()));
-        }
+    for (IndexedApk apk : variant.getApks()) {
+      apkTargetingMatches.checkCompatible(apk.getTargetingIndex());
+
+      if (matchesApk(apk, moduleNameMatcher, apkTargetingMatches)) {
+        matchedApksBuilder.add(apk.getPath());
       }
     }
 
     return matchedApksBuilder.build();
   }
 
-  private Predicate<String> getModuleNameMatcher(Variant variant, Version bundleVersion) {
+  private Predicate<String> getModuleNameMatcher(IndexedVariant variant, Version bundleVersion) {
     if (requestedModuleNames.isPresent()) {
-      ImmutableMultimap<String, String> moduleDependenciesMap = buildAdjacencyMap(variant);
+      ImmutableMultimap<String, String> moduleDependenciesMap = variant.getModuleDependencies();
 
       HashSet<String> dependencyModules = new HashSet<>(requestedModuleNames.get());
       for (String requestedModuleName : requestedModuleNames.get()) {
@@ -177,18 +221,10 @@ public class ApkMatcher {
     }
   }
 
-  private void validateVariant(Variant variant, BuildApksResult buildApksResult) {
+  private void validateVariant(IndexedVariant variant, ApkSetIndex apkSetIndex) {
     if (requestedModuleNames.isPresent()) {
       Set<String> availableModules =
-          Sets.union(
-              variant.getApkSetList().stream()
-                  .map(ApkSet::getModuleMetadata)
-                  .map(ModuleMetadata::getName)
-                  .collect(toImmutableSet()),
-              buildApksResult.getAssetSliceSetList().stream()
-                  .map(AssetSliceSet::getAssetModuleMetadata)
-                  .map(AssetModuleMetadata::getName)
-                  .collect(toImmutableSet()));
+          Sets.union(variant.getModuleNames(), apkSetIndex.getAssetModuleNames());
       Set<String> unknownModules = Sets.difference(requestedModuleNames.get(), availableModules);
       if (!unknownModules.isEmpty()) {
         throw ValidationException.builder()
@@ -201,11 +237,10 @@ public class ApkMatcher {
 
   /** Builds a list of modules that will be delivered on installation. */
   private ImmutableSet<String> buildModulesDeliveredInstallTime(
-      Variant variant, Version bundleVersion) {
+      IndexedVariant variant, Version bundleVersion) {
     // Module dependency resolution can be skipped because install-time modules can't depend on
     // on-demand modules.
-    return variant.getApkSetList().stream()
-        .map(ApkSet::getModuleMetadata)
+    return variant.getModuleMetadata().stream()
         .filter(moduleMetadata -> willBeDeliveredInstallTime(moduleMetadata, bundleVersion))
         .map(ModuleMetadata::getName)
         .collect(toImmutableSet());
@@ -222,14 +257,13 @@ public class ApkMatcher {
 
   /** Returns whether a given APK generated by the Bundle Tool should be installed on a device. */
   private boolean matchesApk(
-      ApkTargeting apkTargeting,
-      boolean isSplit,
-      String moduleName,
-      Predicate<String> moduleNameMatcher) {
-    boolean matchesTargeting = matchesApkTargeting(apkTargeting);
-
-    if (isSplit) {
-      return matchesTargeting && moduleNameMatcher.test(moduleName);
+      IndexedApk apk,
+      Predicate<String> moduleNameMatcher,
+      ApkTargetingMatches apkTargetingMatches) {
+    boolean matchesTargeting = apkTargetingMatches.matches(apk.getTargetingIndex());
+
+    if (apk.isSplit()) {
+      return matchesTargeting && moduleNameMatcher.test(apk.getModuleName());
     } else {
       if (matchesTargeting && requestedModuleNames.isPresent()) {
         throw CommandExecutionException.builder()
@@ -241,7 +275,7 @@ public class ApkMatcher {
   }
 
   private boolean matchesApkTargeting(ApkTargeting apkTargeting) {
-    return apkMatchers.stream()
+    return apkMatchers.values().stream()
         .allMatch(matcher -> matcher.getApkTargetingPredicate().test(apkTargeting));
   }
 
@@ -270,7 +304,9 @@ public class ApkMatcher {
   }
 
   private void checkCompatibleWithApkTargeting(ApkTargeting apkTargeting) {
-    apkMatchers.forEach(matcher -> checkCompatibleWithApkTargetingHelper(matcher, apkTargeting));
+    apkMatchers
+        .values()
+        .forEach(matcher -> checkCompatibleWithApkTargetingHelper(matcher, apkTargeting));
   }
 
   private <T> void checkCompatibleWithApkTargetingHelper(
@@ -278,40 +314,117 @@ public class ApkMatcher {
     matcher.checkDeviceCompatible(matcher.getTargetingValue(apkTargeting));
   }
 
-  private ImmutableList<ZipPath> getMatchingApksFromAssetModules(BuildApksResult buildApksResult) {
+  private ImmutableList<ZipPath> getMatchingApksFromAssetModules(
+      ApkSetIndex apkSetIndex, ApkTargetingMatches apkTargetingMatches) {
     ImmutableList.Builder<ZipPath> matchedApksBuilder = ImmutableList.builder();
 
-    Predicate<String> assetModuleNameMatcher = getAssetModuleNameMatcher(buildApksResult);
+    Predicate<String> assetModuleNameMatcher = getAssetModuleNameMatcher(apkSetIndex);
 
-    for (AssetSliceSet sliceSet : buildApksResult.getAssetSliceSetList()) {
-      String moduleName = sliceSet.getAssetModuleMetadata().getName();
-      for (ApkDescription apkDescription : sliceSet.getApkDescriptionList()) {
-        ApkTargeting apkTargeting = apkDescription.getTargeting();
-
-        if (matchesApk(apkTargeting, /*isSplit=*/ true, moduleName, assetModuleNameMatcher)) {
-          matchedApksBuilder.add(ZipPath.create(apkDescription.getPath()));
-        }
+    for (IndexedApk apk : apkSetIndex.getAssetSliceApks()) {
+      if (matchesApk(apk, assetModuleNameMatcher, apkTargetingMatches)) {
+        matchedApksBuilder.add(apk.getPath());
       }
     }
     return matchedApksBuilder.build();
   }
 
-  private Predicate<String> getAssetModuleNameMatcher(BuildApksResult buildApksResult) {
+  private Predicate<String> getAssetModuleNameMatcher(ApkSetIndex apkSetIndex) {
     if (requestedModuleNames.isPresent()) {
       return requestedModuleNames.get()::contains;
     }
+    return apkSetIndex.getInstallTimeAssetModuleNames()::contains;
+  }
+
+  @SuppressWarnings("unchecked") // The index extracts the values the matcher expects.
+  private static <T> boolean matchesTargetingValue(
+      TargetingDimensionMatcher<T> matcher, Message targetingValue) {
+    return matcher.matchesTargeting((T) targetingValue);
+  }
+
+  @SuppressWarnings("unchecked") // The index extracts the values the matcher expects.
+  private static <T> void checkDeviceCompatible(
+      TargetingDimensionMatcher<T> matcher, Message targetingValue) {
+    matcher.checkDeviceCompatible((T) targetingValue);
+  }
+
+  /**
+   * Results of matching the APK targetings of an {@link ApkSetIndex} against the device, computed
+   * on first use.
+   *
+   * <p>Each distinct value of each targeting dimension is matched once, and an APK targeting
+   * matches if the values of all its dimensions do.
+   */
+  private final class ApkTargetingMatches {
+    private static final byte UNKNOWN = 0;
+    private static final byte MATCHES = 1;
+    private static final byte DOES_NOT_MATCH = 2;
+
+    private final ApkSetIndex apkSetIndex;
+    private final byte[] matches;
+    private final boolean[] checkedCompatible;
+    private final ImmutableMap<ApkTargetingDimension, byte[]> valueMatches;
+    private final ImmutableMap<ApkTargetingDimension, boolean[]> checkedCompatibleValues;
+
+    ApkTargetingMatches(ApkSetIndex apkSetIndex) {
+      this.apkSetIndex = apkSetIndex;
+      this.matches = new byte[apkSetIndex.getApkTargetingCount()];
+      this.checkedCompatible = new boolean[apkSetIndex.getApkTargetingCount()];
+      this.valueMatches =
+          Maps.toMap(
+              apkMatchers.keySet(),
+              dimension -> new byte[apkSetIndex.getDimensionValues(dimension).size()]);
+      this.checkedCompatibleValues =
+          Maps.toMap(
+              apkMatchers.keySet(),
+              dimension -> new boolean[apkSetIndex.getDimensionValues(dimension).size()]);
+    }
 
-    ImmutableSet<String> upfrontAssetModuleNames =
-        buildApksResult.getAssetSliceSetList().stream()
-            .filter(
-                sliceSet ->
-                    sliceSet
-                        .getAssetModuleMetadata()
-                        .getDeliveryType()
-                        .equals(DeliveryType.INSTALL_TIME))
-            .map(sliceSet -> sliceSet.getAssetModuleMetadata().getName())
-            .collect(toImmutableSet());
-
-    return upfrontAssetModuleNames::contains;
+    boolean matches(int targetingIndex) {
+      if (matches[targetingIndex] == UNKNOWN) {
+        boolean allDimensionsMatch = true;
+        for (ApkTargetingDimension dimension : apkMatchers.keySet()) {
+          int valueIndex = apkSetIndex.getDimensionValueIndex(targetingIndex, dimension);
+          if (!matchesValue(dimension, valueIndex)) {
+            allDimensionsMatch = false;
+            break;
+          }
+        }
+        matches[targetingIndex] = allDimensionsMatch ? MATCHES : DOES_NOT_MATCH;
+      }
+      return matches[targetingIndex] == MATCHES;
+    }
+
+    /** @throws IncompatibleDeviceException */
+    void checkCompatible(int targetingIndex) {
+      if (!checkedCompatible[targetingIndex]) {
+        for (ApkTargetingDimension dimension : apkMatchers.keySet()) {
+          checkCompatibleValue(
+              dimension, apkSetIndex.getDimensionValueIndex(targetingIndex, dimension));
+        }
+        checkedCompatible[targetingIndex] = true;
+      }
+    }
+
+    private boolean matchesValue(ApkTargetingDimension dimension, int valueIndex) {
+      byte[] dimensionMatches = valueMatches.get(dimension);
+      if (dimensionMatches[valueIndex] == UNKNOWN) {
+        dimensionMatches[valueIndex] =
+            matchesTargetingValue(
+                    apkMatchers.get(dimension),
+                    apkSetIndex.getDimensionValues(dimension).get(valueIndex))
+                ? MATCHES
+                : DOES_NOT_MATCH;
+      }
+      return dimensionMatches[valueIndex] == MATCHES;
+    }
+
+    private void checkCompatibleValue(ApkTargetingDimension dimension, int valueIndex) {
+      boolean[] dimensionCheckedCompatible = checkedCompatibleValues.get(dimension);
+      if (!dimensionCheckedCompatible[valueIndex]) {
+        checkDeviceCompatible(
+            apkMatchers.get(dimension), apkSetIndex.getDimensionValues(dimension).get(valueIndex));
+        dimensionCheckedCompatible[valueIndex] = true;
+      }
+    }
   }
 }
@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.device;
+
+import static com.android.tools.build.bundletool.model.utils.ModuleDependenciesUtils.buildAdjacencyMap;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+
+import com.android.bundle.Commands.ApkDescription;
+import com.android.bundle.Commands.ApkSet;
+import com.android.bundle.Commands.AssetSliceSet;
+import com.android.bundle.Commands.BuildApksResult;
+import com.android.bundle.Commands.DeliveryType;
+import com.android.bundle.Commands.ModuleMetadata;
+import com.android.bundle.Commands.Variant;
+import com.android.bundle.Targeting.ApkTargeting;
+import com.android.tools.build.bundletool.model.ZipPath;
+import com.android.tools.build.bundletool.model.version.Version;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.protobuf.Message;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Index over the table of contents of an APK Set, built once to match many devices against it.
+ *
+ * <p>Everything that doesn't depend on the device is computed up front: APK paths are parsed,
+ * module dependencies are collected and APKs with equal targeting share a single targeting index.
+ * The distinct values of each {@link ApkTargetingDimension} are indexed as well, so that {@link
+ * ApkMatcher#getMatchingApks(ApkSetIndex)} matches each distinct value of a dimension only once per
+ * device, however many APKs share it.
+ *
+ * <p>Instances are immutable and can be shared between threads.
+ */
+public final class ApkSetIndex {
+
+  /** Dimensions of the APK targeting, each matched independently against the device. */
+  enum ApkTargetingDimension {
+    SDK_VERSION(ApkTargeting::getSdkVersionTargeting),
+    ABI(ApkTargeting::getAbiTargeting),
+    MULTI_ABI(ApkTargeting::getMultiAbiTargeting),
+    SCREEN_DENSITY(ApkTargeting::getScreenDensityTargeting),
+    LANGUAGE(ApkTargeting::getLanguageTargeting),
+    TEXTURE_COMPRESSION_FORMAT(ApkTargeting::getTextureCompressionFormatTargeting);
+
+    private final Function<ApkTargeting, Message> valueExtractor;
+
+    ApkTargetingDimension(Function<ApkTargeting, Message> valueExtractor) {
+      this.valueExtractor = valueExtractor;
+    }
+
+    Message getValue(ApkTargeting apkTargeting) {
+      return valueExtractor.apply(apkTargeting);
+    }
+  }
+
+  private final BuildApksResult buildApksResult;
+  private final Supplier<Version> bundleVersion;
+  private final int apkTargetingCount;
+  private final ImmutableMap<ApkTargetingDimension, ImmutableList<Message>> dimensionValues;
+  private final int[][] dimensionValueIndices;
+  private final ImmutableList<IndexedVariant> variants;
+  private final ImmutableList<IndexedApk> assetSliceApks;
+  private final ImmutableSet<String> assetModuleNames;
+  private final ImmutableSet<String> installTimeAssetModuleNames;
+
+  private ApkSetIndex(BuildApksResult buildApksResult, Supplier<Version> bundleVersion) {
+    Map<ApkTargeting, Integer> targetingIndices = new HashMap<>();
+
+    this.buildApksResult = buildApksResult;
+    this.bundleVersion = bundleVersion;
+    this.variants =
+        buildApksResult.getVariantList().stream()
+            .map(variant -> new IndexedVariant(variant, targetingIndices))
+            .collect(toImmutableList());
+    this.assetSliceApks =
+        buildApksResult.getAssetSliceSetList().stream()
+            .flatMap(
+                sliceSet ->
+                    sliceSet.getApkDescriptionList().stream()
+                        .map(
+                            apkDescription ->
+                                new IndexedApk(
+                                    sliceSet.getAssetModuleMetadata().getName(),
+                                    apkDescription,
+                                    targetingIndices)))
+            .collect(toImmutableList());
+    this.assetModuleNames =
+        buildApksResult.getAssetSliceSetList().stream()
+            .map(sliceSet -> sliceSet.getAssetModuleMetadata().getName())
+            .collect(toImmutableSet());
+    this.installTimeAssetModuleNames =
+        buildApksResult.getAssetSliceSetList().stream()
+            .map(AssetSliceSet::getAssetModuleMetadata)
+            .filter(metadata -> metadata.getDeliveryType().equals(DeliveryType.INSTALL_TIME))
+            .map(metadata -> metadata.getName())
+            .collect(toImmutableSet());
+
+    this.apkTargetingCount = targetingIndices.size();
+    this.dimensionValueIndices = new int[apkTargetingCount][ApkTargetingDimension.values().length];
+    ImmutableMap.Builder<ApkTargetingDimension, ImmutableList<Message>> dimensionValues =
+        ImmutableMap.builder();
+    for (ApkTargetingDimension dimension : ApkTargetingDimension.values()) {
+      Map<Message, Integer> valueIndices = new LinkedHashMap<>();
+      targetingIndices.forEach(
+          (targeting, targetingIndex) ->
+              dimensionValueIndices[targetingIndex][dimension.ordinal()] =
+                  valueIndices.computeIfAbsent(
+                      dimension.getValue(targeting), value -> valueIndices.size()));
+      dimensionValues.put(dimension, ImmutableList.copyOf(valueIndices.keySet()));
+    }
+    this.dimensionValues = dimensionValues.build();
+  }
+
+  /** Indexes the given table of contents of an APK Set. */
+  public static ApkSetIndex create(BuildApksResult buildApksResult) {
+    // The version is only needed, and thus validated, once a variant matches.
+    return new ApkSetIndex(
+        buildApksResult,
+        Suppliers.memoize(() -> Version.of(buildApksResult.getBundletool().getVersion())));
+  }
+
+  /** Indexes a single variant produced by the given version of bundletool. */
+  static ApkSetIndex forVariant(Variant variant, Version bundleVersion) {
+    return new ApkSetIndex(
+        BuildApksResult.newBuilder().addVariant(variant).build(),
+        Suppliers.ofInstance(bundleVersion));
+  }
+
+  public BuildApksResult getBuildApksResult() {
+    return buildApksResult;
+  }
+
+  Version getBundleVersion() {
+    return bundleVersion.get();
+  }
+
+  /** Number of distinct APK targetings, addressed by {@link IndexedApk#getTargetingIndex()}. */
+  int getApkTargetingCount() {
+    return apkTargetingCount;
+  }
+
+  /** Distinct values of the given dimension among the targetings of all APKs. */
+  ImmutableList<Message> getDimensionValues(ApkTargetingDimension dimension) {
+    return dimensionValues.get(dimension);
+  }
+
+  /**
+   * Returns the index in {@link #getDimensionValues} of the value of the given dimension in the
+   * targeting with the given index.
+   */
+  int getDimensionValueIndex(int targetingIndex, ApkTargetingDimension dimension) {
+    return dimensionValueIndices[targetingIndex][dimension.ordinal()];
+  }
+
+  ImmutableList<IndexedVariant> getVariants() {
+    return variants;
+  }
+
+  ImmutableList<IndexedApk> getAssetSliceApks() {
+    return assetSliceApks;
+  }
+
+  ImmutableSet<String> getAssetModuleNames() {
+    return assetModuleNames;
+  }
+
+  ImmutableSet<String> getInstallTimeAssetModuleNames() {
+    return installTimeAssetModuleNames;
+  }
+
+  private static int indexOfTargeting(
+      ApkTargeting apkTargeting, Map<ApkTargeting, Integer> targetingIndices) {
+    return targetingIndices.computeIfAbsent(apkTargeting, targeting -> targetingIndices.size());
+  }
+
+  /** A variant together with the device-independent data needed to match its APKs. */
+  static final class IndexedVariant {
+    private final Variant variant;
+    private final boolean instant;
+    private final ImmutableList<IndexedApk> apks;
+    private final ImmutableList<ModuleMetadata> moduleMetadata;
+    private final ImmutableSet<String> moduleNames;
+    private final ImmutableMultimap<String, String> moduleDependencies;
+
+    private IndexedVariant(Variant variant, Map<ApkTargeting, Integer> targetingIndices) {
+      this.variant = variant;
+      this.apks =
+          variant.getApkSetList().stream()
+              .flatMap(
+                  apkSet ->
+                      apkSet.getApkDescriptionList().stream()
+                          .map(
+                              apkDescription ->
+                                  new IndexedApk(
+                                      apkSet.getModuleMetadata().getName(),
+                                      apkDescription,
+                                      targetingIndices)))
+              .collect(toImmutableList());
+      this.instant = VariantMatcher.isVariantInstant(variant);
+      this.moduleMetadata =
+          variant.getApkSetList().stream()
+              .map(ApkSet::getModuleMetadata)
+              .collect(toImmutableList());
+      this.moduleNames =
+          moduleMetadata.stream().map(ModuleMetadata::getName).collect(toImmutableSet());
+      this.moduleDependencies = buildAdjacencyMap(variant);
+    }
+
+    Variant getVariant() {
+      return variant;
+    }
+
+    boolean isInstant() {
+      return instant;
+    }
+
+    ImmutableList<IndexedApk> getApks() {
+      return apks;
+    }
+
+    ImmutableList<ModuleMetadata> getModuleMetadata() {
+      return moduleMetadata;
+    }
+
+    ImmutableSet<String> getModuleNames() {
+      return moduleNames;
+    }
+
+    ImmutableMultimap<String, String> getModuleDependencies() {
+      return moduleDependencies;
+    }
+  }
+
+  /** An APK of the APK Set, with its path parsed and its targeting replaced by an index. */
+  static final class IndexedApk {
+    private final String moduleName;
+    private final ZipPath path;
+    private final boolean split;
+    private final int targetingIndex;
+
+    private IndexedApk(
+        String moduleName,
+        ApkDescription apkDescription,
+        Map<ApkTargeting, Integer> targetingIndices) {
+      this.moduleName = moduleName;
+      this.path = ZipPath.create(apkDescription.getPath());
+      this.split =
+          !apkDescription.hasStandaloneApkMetadata() && !apkDescription.hasApexApkMetadata();
+      this.targetingIndex = indexOfTargeting(apkDescription.getTargeting(), targetingIndices);
+    }
+
+    String getModuleName() {
+      return moduleName;
+    }
+
+    ZipPath getPath() {
+      return path;
+    }
+
+    boolean isSplit() {
+      return split;
+    }
+
+    int getTargetingIndex() {
+      return targetingIndex;
+    }
+  }
+}
@@ -29,6 +29,7 @@ import com.android.ddmlib.ShellCommandUnresponsiveException;
 import com.android.ddmlib.SyncException;
 import com.android.ddmlib.TimeoutException;
 import com.android.sdklib.AndroidVersion;
+import com.android.tools.build.bundletool.device.PartialInstallPlanner.InstallPlan;
 import com.android.tools.build.bundletool.model.exceptions.CommandExecutionException;
 import com.android.tools.build.bundletool.model.exceptions.InstallationException;
 import com.google.common.collect.ImmutableList;
@@ -113,8 +114,7 @@ public class DdmlibDevice extends Device {
   }
 
   @Override
-  public void installApks(ImmutableList<Path> apks, InstallOptions installOptions) {
-    ImmutableList<File> apkFiles = apks.stream().map(Path::toFile).collect(toImmutableList());
+  public ImmutableList<Path> installApks(ImmutableList<Path> apks, InstallOptions installOptions) {
     ImmutableList.Builder<String> extraArgs = ImmutableList.builder();
     if (installOptions.getAllowDowngrade()) {
       extraArgs.add("-d");
@@ -123,9 +123,30 @@ public class DdmlibDevice extends Device {
       extraArgs.add("-t");
     }
 
+    boolean splitInstallSupported =
+        getVersion()
+            .isGreaterOrEqualThan(AndroidVersion.ALLOW_SPLIT_APK_INSTALLATION.getApiLevel());
+    ImmutableList<Path> apksToInstall = apks;
+    if (installOptions.getSkipUnchangedApks()
+        && installOptions.getPackageName().isPresent()
+        && splitInstallSupported) {
+      String packageName = installOptions.getPackageName().get();
+      InstallPlan installPlan =
+          new PartialInstallPlanner(this)
+              .plan(packageName, apks, installOptions.getSplitNameByApkFileName());
+      if (installPlan.isUpToDate()) {
+        return ImmutableList.of();
+      }
+      if (installPlan.isPartial()) {
+        extraArgs.add("-p", packageName);
+      }
+      apksToInstall = installPlan.getApksToInstall();
+    }
+    ImmutableList<File> apkFiles =
+        apksToInstall.stream().map(Path::toFile).collect(toImmutableList());
+
     try {
-      if (getVersion()
-          .isGreaterOrEqualThan(AndroidVersion.ALLOW_SPLIT_APK_INSTALLATION.getApiLevel())) {
+      if (splitInstallSupported) {
         device.installPackages(
             apkFiles,
             installOptions.getAllowReinstall(),
@@ -144,10 +165,11 @@ public class DdmlibDevice extends Device {
           .withMessage("Installation of the app failed.")
           .build();
     }
+    return apksToInstall;
   }
 
   @Override
-  public void pushApks(ImmutableList<Path> apks, PushOptions pushOptions) {
+  public ImmutableList<String> pushApks(ImmutableList<Path> apks, PushOptions pushOptions) {
     String splitsPath = pushOptions.getDestinationPath();
     checkArgument(!splitsPath.isEmpty(), "Splits path cannot be empty.");
 
@@ -183,13 +205,13 @@ public class DdmlibDevice extends Device {
           "mkdir -p %s && rmdir %s && mkdir -p %s", splitsPath, splitsPath, splitsPath);
 
       // Try to push files normally. Will fail if ADB shell doesn't have permission to write.
+      ImmutableList.Builder<String> pushedPaths = ImmutableList.builder();
       for (Path path : apks) {
-        device.pushFile(
-            path.toFile().getAbsolutePath(),
-            joinUnixPaths(splitsPath, path.getFileName().toString()));
-        System.err.printf(
-            "Pushed \"%s\"%n", joinUnixPaths(splitsPath, path.getFileName().toString()));
+        String pushedPath = joinUnixPaths(splitsPath, path.getFileName().toString());
+        device.pushFile(path.toFile().getAbsolutePath(), pushedPath);
+        pushedPaths.add(pushedPath);
       }
+      return pushedPaths.build();
     } catch (IOException
         | TimeoutException
         | SyncException
@@ -24,6 +24,7 @@ import com.android.ddmlib.TimeoutException;
 import com.android.sdklib.AndroidVersion;
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.errorprone.annotations.Immutable;
 import java.io.IOException;
 import java.nio.file.Path;
@@ -61,9 +62,22 @@ public abstract class Device {
       throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException,
           IOException;
 
-  public abstract void installApks(ImmutableList<Path> apks, InstallOptions installOptions);
-
-  public abstract void pushApks(ImmutableList<Path> apks, PushOptions installOptions);
+  /**
+   * Installs the given APKs.
+   *
+   * @return the APKs actually installed, which exclude the unchanged APKs when {@link
+   *     InstallOptions#getSkipUnchangedApks()} is set
+   */
+  public abstract ImmutableList<Path> installApks(
+      ImmutableList<Path> apks, InstallOptions installOptions);
+
+  /**
+   * Pushes the given APKs to the storage of the device.
+   *
+   * @return the paths of the pushed APKs on the device
+   */
+  public abstract ImmutableList<String> pushApks(
+      ImmutableList<Path> apks, PushOptions installOptions);
 
   /** Options related to APK installation. */
   @Immutable
@@ -79,12 +93,29 @@ public abstract class Device {
 
     public abstract Duration getTimeout();
 
+    /**
+     * Whether the APKs already installed on the device with identical content are kept instead of
+     * being installed again. Requires the package name.
+     */
+    public abstract boolean getSkipUnchangedApks();
+
+    public abstract Optional<String> getPackageName();
+
+    /**
+     * Split names of the APKs to install by file name, the base APK having an empty split name.
+     *
+     * <p>Used to match the APKs to install with the installed APKs when skipping unchanged APKs.
+     */
+    public abstract ImmutableMap<String, String> getSplitNameByApkFileName();
+
     public static Builder builder() {
       return new AutoValue_Device_InstallOptions.Builder()
+          .setSplitNameByApkFileName(ImmutableMap.of())
           .setTimeout(DEFAULT_ADB_TIMEOUT)
           .setAllowReinstall(true)
           .setAllowDowngrade(false)
-          .setAllowTestOnly(false);
+          .setAllowTestOnly(false)
+          .setSkipUnchangedApks(false);
     }
 
     /** Builder for {@link InstallOptions}. */
@@ -98,6 +129,13 @@ public abstract class Device {
 
       public abstract Builder setAllowTestOnly(boolean allowTestOnly);
 
+      public abstract Builder setSkipUnchangedApks(boolean skipUnchangedApks);
+
+      public abstract Builder setPackageName(String packageName);
+
+      public abstract Builder setSplitNameByApkFileName(
+          ImmutableMap<String, String> splitNameByApkFileName);
+
       public abstract InstallOptions build();
     }
   }
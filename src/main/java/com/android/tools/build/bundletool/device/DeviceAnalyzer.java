@@ -22,15 +22,21 @@ import com.android.bundle.Devices.DeviceSpec;
 import com.android.ddmlib.IDevice.DeviceState;
 import com.android.tools.build.bundletool.device.activitymanager.ActivityManagerRunner;
 import com.android.tools.build.bundletool.model.exceptions.CommandExecutionException;
+import com.android.tools.build.bundletool.model.utils.ConcurrencyUtils;
 import com.android.tools.build.bundletool.model.utils.Versions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.util.Optional;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeoutException;
 
 /** Computes the device specs. */
 public class DeviceAnalyzer {
 
   private final AdbServer adb;
+  private final Optional<DeviceSpecCache> deviceSpecCache;
 
   // For API M+.
   private static final String LOCALE_PROPERTY_SYS = "persist.sys.locale";
@@ -38,6 +44,10 @@ public class DeviceAnalyzer {
   // Older APIs.
   private static final String LEGACY_LANGUAGE_PROPERTY = "ro.product.locale.language";
   private static final String LEGACY_REGION_PROPERTY = "ro.product.locale.region";
+  private static final String BUILD_FINGERPRINT_PROPERTY = "ro.build.fingerprint";
+
+  /** Number of shell commands that are run concurrently to analyse a device. */
+  private static final int SHELL_COMMAND_THREADS = 3;
 
   /**
    * Creates the instance of the class.
@@ -45,42 +55,23 @@ public class DeviceAnalyzer {
    * @param adb AdbServer facade, initialized.
    */
   public DeviceAnalyzer(AdbServer adb) {
+    this(adb, Optional.empty());
+  }
+
+  /**
+   * Creates the instance of the class.
+   *
+   * @param adb AdbServer facade, initialized.
+   * @param deviceSpecCache cache of the specs of previously analysed devices, if any
+   */
+  public DeviceAnalyzer(AdbServer adb, Optional<DeviceSpecCache> deviceSpecCache) {
     this.adb = adb;
+    this.deviceSpecCache = deviceSpecCache;
   }
 
   public DeviceSpec getDeviceSpec(Optional<String> deviceId) {
     try {
-      Device device = getAndValidateDevice(deviceId);
-
-      // device.getVersion().getApiLevel() returns 1 in case of failure.
-      int deviceSdkVersion = device.getVersion().getApiLevel();
-      checkState(deviceSdkVersion > 1, "Error retrieving device SDK version. Please try again.");
-      int deviceDensity = device.getDensity();
-      checkState(deviceDensity > 0, "Error retrieving device density. Please try again.");
-      ImmutableList<String> deviceFeatures = device.getDeviceFeatures();
-      ImmutableList<String> glExtensions = device.getGlExtensions();
-
-      ActivityManagerRunner activityManagerRunner = new ActivityManagerRunner(device);
-      ImmutableList<String> deviceLocales = activityManagerRunner.getDeviceLocales();
-      if (deviceLocales.isEmpty()) {
-        // Fallback using properties.
-        deviceLocales = ImmutableList.of(getMainLocaleViaProperties(device));
-      }
-      ImmutableList<String> supportedAbis = activityManagerRunner.getDeviceAbis();
-      if (supportedAbis.isEmpty()) {
-        // Fallback using properties.
-        supportedAbis = device.getAbis();
-      }
-      checkState(!supportedAbis.isEmpty(), "Error retrieving device ABIs. Please try again.");
-
-      return DeviceSpec.newBuilder()
-          .setSdkVersion(deviceSdkVersion)
-          .addAllSupportedAbis(supportedAbis)
-          .addAllSupportedLocales(deviceLocales)
-          .setScreenDensity(deviceDensity)
-          .addAllDeviceFeatures(deviceFeatures)
-          .addAllGlExtensions(glExtensions)
-          .build();
+      return getDeviceSpec(getAndValidateDevice(deviceId));
     } catch (TimeoutException e) {
       throw CommandExecutionException.builder()
           .withCause(e)
@@ -89,6 +80,83 @@ public class DeviceAnalyzer {
     }
   }
 
+  /** Computes the device spec of a given online device. */
+  public DeviceSpec getDeviceSpec(Device device) {
+    checkState(
+        device.getState().equals(DeviceState.ONLINE),
+        "Device '%s' is not online (device state: '%s').",
+        device.getSerialNumber(),
+        device.getState().name());
+
+    Optional<String> buildFingerprint =
+        deviceSpecCache.isPresent()
+            ? device.getProperty(BUILD_FINGERPRINT_PROPERTY)
+            : Optional.empty();
+    if (buildFingerprint.isPresent()) {
+      Optional<DeviceSpec> cachedDeviceSpec =
+          deviceSpecCache.get().get(device.getSerialNumber(), buildFingerprint.get());
+      if (cachedDeviceSpec.isPresent()) {
+        return cachedDeviceSpec.get();
+      }
+    }
+
+    DeviceSpec deviceSpec = analyzeDevice(device);
+    buildFingerprint.ifPresent(
+        fingerprint ->
+            deviceSpecCache.get().put(device.getSerialNumber(), fingerprint, deviceSpec));
+    return deviceSpec;
+  }
+
+  private DeviceSpec analyzeDevice(Device device) {
+    // device.getVersion().getApiLevel() returns 1 in case of failure.
+    int deviceSdkVersion = device.getVersion().getApiLevel();
+    checkState(deviceSdkVersion > 1, "Error retrieving device SDK version. Please try again.");
+    int deviceDensity = device.getDensity();
+    checkState(deviceDensity > 0, "Error retrieving device density. Please try again.");
+
+    // Each of these runs a shell command on the device, and they don't depend on each other.
+    ActivityManagerRunner activityManagerRunner = new ActivityManagerRunner(device);
+    ListeningExecutorService executorService =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(SHELL_COMMAND_THREADS));
+    ImmutableList<String> deviceFeatures;
+    ImmutableList<String> glExtensions;
+    ImmutableList<String> deviceLocales;
+    try {
+      ListenableFuture<ImmutableList<String>> deviceFeaturesFuture =
+          executorService.submit(device::getDeviceFeatures);
+      ListenableFuture<ImmutableList<String>> glExtensionsFuture =
+          executorService.submit(device::getGlExtensions);
+      ListenableFuture<ImmutableList<String>> deviceLocalesFuture =
+          executorService.submit(activityManagerRunner::getDeviceLocales);
+      deviceFeatures = ConcurrencyUtils.waitFor(deviceFeaturesFuture);
+      glExtensions = ConcurrencyUtils.waitFor(glExtensionsFuture);
+      deviceLocales = ConcurrencyUtils.waitFor(deviceLocalesFuture);
+    } finally {
+      executorService.shutdownNow();
+    }
+
+    if (deviceLocales.isEmpty()) {
+      // Fallback using properties.
+      deviceLocales = ImmutableList.of(getMainLocaleViaProperties(device));
+    }
+    // The output of the activity manager has been fetched along with the locales.
+    ImmutableList<String> supportedAbis = activityManagerRunner.getDeviceAbis();
+    if (supportedAbis.isEmpty()) {
+      // Fallback using properties.
+      supportedAbis = device.getAbis();
+    }
+    checkState(!supportedAbis.isEmpty(), "Error retrieving device ABIs. Please try again.");
+
+    return DeviceSpec.newBuilder()
+        .setSdkVersion(deviceSdkVersion)
+        .addAllSupportedAbis(supportedAbis)
+        .addAllSupportedLocales(deviceLocales)
+        .setScreenDensity(deviceDensity)
+        .addAllDeviceFeatures(deviceFeatures)
+        .addAllGlExtensions(glExtensions)
+        .build();
+  }
+
   private String getMainLocaleViaProperties(Device device) {
     Optional<String> locale = Optional.empty();
 
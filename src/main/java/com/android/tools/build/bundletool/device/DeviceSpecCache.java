@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.device;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.android.bundle.Devices.DeviceSpec;
+import com.google.auto.value.AutoValue;
+import com.google.common.hash.Hashing;
+import com.google.errorprone.annotations.Immutable;
+import com.google.protobuf.util.JsonFormat;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+/**
+ * On-disk cache of the specs of connected devices, so that a device is analysed again only when
+ * its system image changes or when its cached spec expires.
+ *
+ * <p>Specs are keyed by the serial number and the build fingerprint of the device. The cache is
+ * best effort: failing to read or write an entry is treated as a cache miss.
+ */
+@Immutable
+@AutoValue
+@AutoValue.CopyAnnotations
+public abstract class DeviceSpecCache {
+
+  private static final Logger logger = Logger.getLogger(DeviceSpecCache.class.getName());
+
+  private static final String CACHE_FILE_EXTENSION = ".json";
+
+  @SuppressWarnings("Immutable") // Path is immutable.
+  public abstract Path getDirectory();
+
+  /** How long a cached spec remains valid after it has been written. */
+  public abstract Duration getTimeToLive();
+
+  /** Creates a cache stored in the given directory, which is created if needed. */
+  public static DeviceSpecCache create(Path directory, Duration timeToLive) {
+    checkArgument(!timeToLive.isNegative(), "The time to live must not be negative.");
+    return new AutoValue_DeviceSpecCache(directory, timeToLive);
+  }
+
+  /** Creates a cache stored in the home directory of the user. */
+  public static DeviceSpecCache createInUserHome(Duration timeToLive) {
+    return create(
+        Paths.get(System.getProperty("user.home"), ".bundletool", "device-spec-cache"),
+        timeToLive);
+  }
+
+  /** Returns the cached spec of the device, unless it is missing or has expired. */
+  public Optional<DeviceSpec> get(String serialNumber, String buildFingerprint) {
+    Path cacheFile = getCacheFile(serialNumber, buildFingerprint);
+    try {
+      Instant expiry = Files.getLastModifiedTime(cacheFile).toInstant().plus(getTimeToLive());
+      if (expiry.isBefore(Instant.now())) {
+        return Optional.empty();
+      }
+      DeviceSpec.Builder deviceSpec = DeviceSpec.newBuilder();
+      JsonFormat.parser().merge(new String(Files.readAllBytes(cacheFile), UTF_8), deviceSpec);
+      return Optional.of(deviceSpec.build());
+    } catch (NoSuchFileException e) {
+      return Optional.empty();
+    } catch (IOException e) {
+      logger.warning(
+          String.format("Ignoring unreadable cached device spec '%s': %s", cacheFile, e));
+      return Optional.empty();
+    }
+  }
+
+  /** Stores the spec of the device, replacing any previously cached spec. */
+  public void put(String serialNumber, String buildFingerprint, DeviceSpec deviceSpec) {
+    Path cacheFile = getCacheFile(serialNumber, buildFingerprint);
+    try {
+      Files.createDirectories(getDirectory());
+      // Write to a temporary file first so that concurrent readers never see a partial spec.
+      Path tempFile = Files.createTempFile(getDirectory(), "device-spec", ".tmp");
+      try {
+        Files.write(tempFile, JsonFormat.printer().print(deviceSpec).getBytes(UTF_8));
+        Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+      } finally {
+        Files.deleteIfExists(tempFile);
+      }
+    } catch (IOException e) {
+      logger.warning(String.format("Unable to cache the device spec in '%s': %s", cacheFile, e));
+    }
+  }
+
+  private Path getCacheFile(String serialNumber, String buildFingerprint) {
+    String key =
+        Hashing.sha256()
+            .newHasher()
+            .putString(serialNumber, UTF_8)
+            .putByte((byte) 0)
+            .putString(buildFingerprint, UTF_8)
+            .hash()
+            .toString();
+    return getDirectory().resolve(key + CACHE_FILE_EXTENSION);
+  }
+
+  // Don't subclass outside the package. Hide the implicit constructor from IDEs/docs.
+  DeviceSpecCache() {}
+}
@@ -19,12 +19,17 @@ package com.android.tools.build.bundletool.device;
 import com.android.bundle.Devices.DeviceSpec;
 import com.android.tools.build.bundletool.model.exceptions.ValidationException;
 import com.android.tools.build.bundletool.model.utils.files.BufferedIo;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.io.MoreFiles;
 import com.google.protobuf.util.JsonFormat;
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.StringReader;
 import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.stream.Stream;
 
 /**
  * Parses the device spec JSON files. This supports two types of parsings, either a full device spec
@@ -34,6 +39,7 @@ import java.nio.file.Path;
 public class DeviceSpecParser {
 
   private static final String JSON_EXTENSION = "json";
+  private static final String JSON_LINES_EXTENSION = "jsonl";
 
   public static DeviceSpec parseDeviceSpec(Path deviceSpecFile) {
     return parseDeviceSpecInternal(deviceSpecFile, /* canSkipFields= */ false);
@@ -51,6 +57,61 @@ public class DeviceSpecParser {
     return parseDeviceSpecInternal(deviceSpecReader, /* canSkipFields= */ true);
   }
 
+  /**
+   * Parses many full device specs at once, indexed by a name identifying each device.
+   *
+   * <p>The path is either a directory, in which case every {@code .json} file directly inside it is
+   * a device spec named after the file (without extension), or a JSON-lines file ({@code .jsonl})
+   * with one device spec per non-blank line, named {@code device-<line number>}.
+   */
+  public static ImmutableMap<String, DeviceSpec> parseDeviceSpecs(Path deviceSpecsPath) {
+    ImmutableMap.Builder<String, DeviceSpec> deviceSpecs = ImmutableMap.builder();
+    if (Files.isDirectory(deviceSpecsPath)) {
+      try (Stream<Path> files = Files.list(deviceSpecsPath)) {
+        files
+            .filter(file -> JSON_EXTENSION.equals(MoreFiles.getFileExtension(file)))
+            .sorted()
+            .forEach(
+                file ->
+                    deviceSpecs.put(
+                        MoreFiles.getNameWithoutExtension(file), parseDeviceSpec(file)));
+      } catch (IOException e) {
+        throw new UncheckedIOException(
+            String.format("Error while listing the device spec files in '%s'.", deviceSpecsPath),
+            e);
+      }
+    } else {
+      if (!JSON_LINES_EXTENSION.equals(MoreFiles.getFileExtension(deviceSpecsPath))) {
+        throw ValidationException.builder()
+            .withMessage(
+                "Expected a directory or a file with .jsonl extension for the device specs but "
+                    + "found '%s'.",
+                deviceSpecsPath.getFileName())
+            .build();
+      }
+      try (BufferedReader reader = BufferedIo.reader(deviceSpecsPath)) {
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+          lineNumber++;
+          if (!line.trim().isEmpty()) {
+            deviceSpecs.put("device-" + lineNumber, parseDeviceSpec(new StringReader(line)));
+          }
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(
+            String.format("Error while reading the device specs file '%s'.", deviceSpecsPath), e);
+      }
+    }
+    ImmutableMap<String, DeviceSpec> result = deviceSpecs.build();
+    if (result.isEmpty()) {
+      throw ValidationException.builder()
+          .withMessage("No device specs found in '%s'.", deviceSpecsPath)
+          .build();
+    }
+    return result;
+  }
+
   private static DeviceSpec parseDeviceSpecInternal(Path deviceSpecFile, boolean canSkipFields) {
     if (!JSON_EXTENSION.equals(MoreFiles.getFileExtension(deviceSpecFile))) {
       throw ValidationException.builder()
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.device;
+
+import static com.android.tools.build.bundletool.device.AdbServer.ADB_TIMEOUT_MS;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.util.stream.Collectors.joining;
+
+import com.android.tools.build.bundletool.device.DdmlibDevice.RemoteCommandExecutor;
+import com.android.tools.build.bundletool.model.exceptions.CommandExecutionException;
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Compares the APKs to install with the APKs of the app already installed on a device, so that
+ * only the APKs whose content changed need to be installed.
+ *
+ * <p>Installed APKs are listed with {@code pm path} and hashed on the device with {@code
+ * sha256sum}. The package manager stores the base APK as {@code base.apk} and each split as {@code
+ * split_<split name>.apk}, so each installed APK is compared with the APK to install that has the
+ * same split name. A partial install session then replaces the APKs that are new or changed, and
+ * keeps the others.
+ *
+ * <p>A partial install session can't remove APKs, so the plan falls back to a full installation if
+ * an installed split isn't part of the APKs to install anymore. It also does if the split names
+ * aren't all known, or if the device can't answer.
+ */
+final class PartialInstallPlanner {
+
+  private static final Logger logger = Logger.getLogger(PartialInstallPlanner.class.getName());
+
+  private static final String PACKAGE_PATH_PREFIX = "package:";
+  private static final String BASE_APK_FILE_NAME = "base.apk";
+  private static final String SPLIT_APK_FILE_PREFIX = "split_";
+  private static final String APK_FILE_SUFFIX = ".apk";
+  private static final Splitter WHITESPACE_SPLITTER =
+      Splitter.onPattern("\\s+").omitEmptyStrings().limit(2);
+
+  private final Device device;
+
+  PartialInstallPlanner(Device device) {
+    this.device = device;
+  }
+
+  /** APKs to install, and whether they are installed on top of the APKs already installed. */
+  @AutoValue
+  abstract static class InstallPlan {
+    abstract ImmutableList<Path> getApksToInstall();
+
+    /**
+     * Whether the APKs are installed with a partial install session, which keeps the installed
+     * APKs that aren't replaced.
+     */
+    abstract boolean isPartial();
+
+    /** Whether all the APKs are already installed, so that nothing needs to be installed. */
+    boolean isUpToDate() {
+      return getApksToInstall().isEmpty();
+    }
+
+    static InstallPlan fullInstall(ImmutableList<Path> apks) {
+      return new AutoValue_PartialInstallPlanner_InstallPlan(apks, /* partial= */ false);
+    }
+
+    static InstallPlan partialInstall(ImmutableList<Path> changedApks) {
+      return new AutoValue_PartialInstallPlanner_InstallPlan(changedApks, /* partial= */ true);
+    }
+  }
+
+  /**
+   * Plans the installation of the given APKs.
+   *
+   * @param splitNameByApkFileName split name of the APKs to install by file name, the base APK
+   *     having an empty split name
+   */
+  InstallPlan plan(
+      String packageName,
+      ImmutableList<Path> apks,
+      ImmutableMap<String, String> splitNameByApkFileName) {
+    Optional<ImmutableMap<String, Path>> apkBySplitName =
+        getApkBySplitName(apks, splitNameByApkFileName);
+    if (!apkBySplitName.isPresent()) {
+      return InstallPlan.fullInstall(apks);
+    }
+    ImmutableList<String> installedApkPaths = getInstalledApkPaths(packageName);
+    if (installedApkPaths.isEmpty()) {
+      return InstallPlan.fullInstall(apks);
+    }
+    Optional<ImmutableMap<String, String>> installedApkHashes =
+        getInstalledApkHashes(installedApkPaths);
+    if (!installedApkHashes.isPresent()) {
+      return InstallPlan.fullInstall(apks);
+    }
+
+    ImmutableMap.Builder<String, String> installedHashBySplitName = ImmutableMap.builder();
+    for (Map.Entry<String, String> pathAndHash : installedApkHashes.get().entrySet()) {
+      Optional<String> splitName = getInstalledSplitName(pathAndHash.getKey());
+      // Installed splits that aren't replaced would be kept by a partial install.
+      if (!splitName.isPresent() || !apkBySplitName.get().containsKey(splitName.get())) {
+        return InstallPlan.fullInstall(apks);
+      }
+      installedHashBySplitName.put(splitName.get(), pathAndHash.getValue());
+    }
+    ImmutableMap<String, String> installedHashes = installedHashBySplitName.build();
+
+    return InstallPlan.partialInstall(
+        apkBySplitName.get().entrySet().stream()
+            .filter(
+                splitNameAndApk ->
+                    !computeHash(splitNameAndApk.getValue())
+                        .equals(installedHashes.get(splitNameAndApk.getKey())))
+            .map(Map.Entry::getValue)
+            .collect(toImmutableList()));
+  }
+
+  /** Returns the APKs by split name, or empty if a split name is missing or duplicated. */
+  private static Optional<ImmutableMap<String, Path>> getApkBySplitName(
+      ImmutableList<Path> apks, ImmutableMap<String, String> splitNameByApkFileName) {
+    Map<String, Path> apkBySplitName = new LinkedHashMap<>();
+    for (Path apk : apks) {
+      String splitName = splitNameByApkFileName.get(apk.getFileName().toString());
+      if (splitName == null || apkBySplitName.put(splitName, apk) != null) {
+        return Optional.empty();
+      }
+    }
+    return Optional.of(ImmutableMap.copyOf(apkBySplitName));
+  }
+
+  /** Returns the split name of an installed APK, from the name given by the package manager. */
+  private static Optional<String> getInstalledSplitName(String installedApkPath) {
+    String fileName = installedApkPath.substring(installedApkPath.lastIndexOf('/') + 1);
+    if (fileName.equals(BASE_APK_FILE_NAME)) {
+      return Optional.of("");
+    }
+    if (fileName.startsWith(SPLIT_APK_FILE_PREFIX) && fileName.endsWith(APK_FILE_SUFFIX)) {
+      return Optional.of(
+          fileName.substring(
+              SPLIT_APK_FILE_PREFIX.length(), fileName.length() - APK_FILE_SUFFIX.length()));
+    }
+    return Optional.empty();
+  }
+
+  private ImmutableList<String> getInstalledApkPaths(String packageName) {
+    return new AdbShellCommandTask(
+            device, "pm path " + RemoteCommandExecutor.escapeAndSingleQuote(packageName))
+        .execute(ADB_TIMEOUT_MS, TimeUnit.MILLISECONDS).stream()
+        .map(String::trim)
+        .filter(line -> line.startsWith(PACKAGE_PATH_PREFIX))
+        .map(line -> line.substring(PACKAGE_PATH_PREFIX.length()))
+        .collect(toImmutableList());
+  }
+
+  /**
+   * Returns the SHA-256 of each installed APK by path, or empty if they couldn't all be computed.
+   */
+  private Optional<ImmutableMap<String, String>> getInstalledApkHashes(
+      ImmutableList<String> installedApkPaths) {
+    String command =
+        "sha256sum "
+            + installedApkPaths.stream()
+                .map(RemoteCommandExecutor::escapeAndSingleQuote)
+                .collect(joining(" "));
+    ImmutableList<String> output;
+    try {
+      output =
+          new AdbShellCommandTask(device, command).execute(ADB_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    } catch (CommandExecutionException e) {
+      logger.warning("Unable to compute the checksums of the installed APKs: " + e.getMessage());
+      return Optional.empty();
+    }
+
+    ImmutableMap.Builder<String, String> hashes = ImmutableMap.builder();
+    for (String line : output) {
+      List<String> hashAndPath = WHITESPACE_SPLITTER.splitToList(line.trim());
+      if (hashAndPath.size() == 2 && isSha256(hashAndPath.get(0))) {
+        hashes.put(hashAndPath.get(1), hashAndPath.get(0));
+      }
+    }
+    ImmutableMap<String, String> hashesByPath = hashes.build();
+    if (!hashesByPath.keySet().equals(ImmutableSet.copyOf(installedApkPaths))) {
+      return Optional.empty();
+    }
+    return Optional.of(hashesByPath);
+  }
+
+  private static boolean isSha256(String value) {
+    return value.length() == 64 && value.chars().allMatch(c -> Character.digit(c, 16) >= 0);
+  }
+
+  private static String computeHash(Path apk) {
+    try {
+      return MoreFiles.asByteSource(apk).hash(Hashing.sha256()).toString();
+    } catch (IOException e) {
+      throw new UncheckedIOException(String.format("Unable to read the APK '%s'.", apk), e);
+    }
+  }
+}
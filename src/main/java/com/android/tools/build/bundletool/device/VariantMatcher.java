@@ -17,17 +17,20 @@
 package com.android.tools.build.bundletool.device;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.util.function.Function.identity;
 
 import com.android.bundle.Commands.ApkDescription;
 import com.android.bundle.Commands.BuildApksResult;
 import com.android.bundle.Commands.Variant;
 import com.android.bundle.Devices.DeviceSpec;
 import com.android.bundle.Targeting.VariantTargeting;
+import com.android.tools.build.bundletool.device.ApkSetIndex.IndexedVariant;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.MoreCollectors;
+import java.util.List;
 import java.util.Optional;
-import java.util.function.Supplier;
-import java.util.stream.Stream;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /** Calculates whether a given device matched variant generated by the bundle tool. */
 public class VariantMatcher {
@@ -75,18 +78,18 @@ public class VariantMatcher {
    * can match a full device-spec (generated from device-spec command).
    */
   public ImmutableList<Variant> getAllMatchingVariants(BuildApksResult buildApksResult) {
-    Supplier<Stream<Variant>> variantsToMatch =
-        () ->
-            buildApksResult.getVariantList().stream()
-                .filter(variant -> isVariantInstant(variant) == matchInstant);
-
-    // Check if the device is compatible with the variants.
-    variantsToMatch.get().forEach(this::checkCompatibleWithVariant);
+    return getAllMatchingVariants(
+        buildApksResult.getVariantList(), identity(), VariantMatcher::isVariantInstant);
+  }
 
-    return variantsToMatch
-        .get()
-        .filter(variant -> matchesVariantTargeting(variant.getTargeting()))
-        .collect(toImmutableList());
+  /**
+   * Returns all variants of an indexed APK Set matching a (partial or full) device-spec.
+   *
+   * @see #getAllMatchingVariants(BuildApksResult)
+   */
+  ImmutableList<IndexedVariant> getAllMatchingVariants(ApkSetIndex apkSetIndex) {
+    return getAllMatchingVariants(
+        apkSetIndex.getVariants(), IndexedVariant::getVariant, IndexedVariant::isInstant);
   }
 
   /**
@@ -98,6 +101,15 @@ public class VariantMatcher {
     return getAllMatchingVariants(buildApksResult).stream().collect(MoreCollectors.toOptional());
   }
 
+  /**
+   * Returns a single variant of an indexed APK Set matching a full device-spec.
+   *
+   * @throws IllegalArgumentException if multiple variants are matched.
+   */
+  Optional<IndexedVariant> getMatchingVariant(ApkSetIndex apkSetIndex) {
+    return getAllMatchingVariants(apkSetIndex).stream().collect(MoreCollectors.toOptional());
+  }
+
   public void checkCompatibleWithVariant(Variant variant) {
     checkCompatibleWithVariantTargeting(variant.getTargeting());
   }
@@ -112,7 +124,22 @@ public class VariantMatcher {
         .allMatch(matcher -> matcher.getVariantTargetingPredicate().test(variantTargeting));
   }
 
-  private static boolean isVariantInstant(Variant variant) {
+  private <T> ImmutableList<T> getAllMatchingVariants(
+      List<T> variants, Function<T, Variant> toVariant, Predicate<T> isInstant) {
+    ImmutableList<T> variantsToMatch =
+        variants.stream()
+            .filter(variant -> isInstant.test(variant) == matchInstant)
+            .collect(toImmutableList());
+
+    // Check if the device is compatible with the variants.
+    variantsToMatch.forEach(variant -> checkCompatibleWithVariant(toVariant.apply(variant)));
+
+    return variantsToMatch.stream()
+        .filter(variant -> matchesVariantTargeting(toVariant.apply(variant).getTargeting()))
+        .collect(toImmutableList());
+  }
+
+  static boolean isVariantInstant(Variant variant) {
     return variant.getApkSetList().stream()
         .flatMap(apkSet -> apkSet.getApkDescriptionList().stream())
         .allMatch(ApkDescription::hasInstantApkMetadata);
@@ -27,7 +27,9 @@ import static com.android.tools.build.bundletool.model.GetSizeRequest.Dimension.
 import static com.android.tools.build.bundletool.model.utils.ResultUtils.isStandaloneApkVariant;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static java.util.function.Function.identity;
 
 import com.android.bundle.Commands.ApkDescription;
 import com.android.bundle.Commands.Variant;
@@ -51,6 +53,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -98,8 +101,18 @@ public class VariantTotalSizeAggregator {
     ImmutableSet<ScreenDensityTargeting> screenDensityTargetingOptions =
         getAllScreenDensityTargetings(apkDescriptions);
 
+    // Indexed once, and shared by the matchers of all the configurations.
+    ApkSetIndex variantIndex = ApkSetIndex.forVariant(variant, bundleVersion);
+    if (apkDescriptions.stream().allMatch(VariantTotalSizeAggregator::isSplitApk)) {
+      return getSizesPerConfigurationFromIndex(
+          variantIndex,
+          apkDescriptions,
+          abiTargetingOptions,
+          languageTargetingOptions,
+          screenDensityTargetingOptions);
+    }
     return getSizesPerConfiguration(
-        abiTargetingOptions, languageTargetingOptions, screenDensityTargetingOptions);
+        variantIndex, abiTargetingOptions, languageTargetingOptions, screenDensityTargetingOptions);
   }
 
   private ConfigurationSizes getSizeStandaloneVariant() {
@@ -196,7 +209,148 @@ public class VariantTotalSizeAggregator {
         : languageTargetingOptions.build();
   }
 
+  /**
+   * Computes the same sizes as {@link #getSizesPerConfiguration} without matching every
+   * configuration against the whole variant.
+   *
+   * <p>Each targeting dimension is matched by a matcher that only looks at that dimension of the
+   * device spec. The APKs matching each ABI, screen density and language option are thus indexed
+   * once as bitsets, and the APKs of a configuration are the intersection of the bitsets of its
+   * options with the APKs matching the dimensions that are the same for all configurations.
+   */
+  private ConfigurationSizes getSizesPerConfigurationFromIndex(
+      ApkSetIndex variantIndex,
+      ImmutableList<ApkDescription> apkDescriptions,
+      ImmutableSet<AbiTargeting> abiTargetingOptions,
+      ImmutableSet<LanguageTargeting> languageTargetingOptions,
+      ImmutableSet<ScreenDensityTargeting> screenDensityTargetingOptions) {
+    DeviceSpec deviceSpec = getSizeRequest.getDeviceSpec();
+    SdkVersionTargeting sdkVersionTargeting = variant.getTargeting().getSdkVersionTargeting();
+    long[] apkSizes =
+        apkDescriptions.stream()
+            .mapToLong(apkDescription -> sizeByApkPaths.get(apkDescription.getPath()))
+            .toArray();
+
+    DeviceSpec deviceSpecWithSdk =
+        new DeviceSpecFromTargetingBuilder(deviceSpec).setSdkVersion(sdkVersionTargeting).build();
+    BitSet commonMatches =
+        getMatchingApks(
+            apkDescriptions,
+            new SdkVersionMatcher(deviceSpecWithSdk),
+            new TextureCompressionFormatMatcher(deviceSpecWithSdk));
+    ImmutableSet<ZipPath> apksOfMatchingModules =
+        new ApkMatcher(deviceSpecWithSdk, getSizeRequest.getModules(), getSizeRequest.getInstant())
+            .getSplitApksOfMatchingModules(variantIndex);
+    for (int i = 0; i < apkDescriptions.size(); i++) {
+      if (!apksOfMatchingModules.contains(ZipPath.create(apkDescriptions.get(i).getPath()))) {
+        commonMatches.clear(i);
+      }
+    }
+
+    ImmutableMap<AbiTargeting, BitSet> abiMatches =
+        abiTargetingOptions.stream()
+            .collect(
+                toImmutableMap(
+                    identity(),
+                    abiTargeting -> {
+                      DeviceSpec abiDeviceSpec =
+                          new DeviceSpecFromTargetingBuilder(deviceSpec)
+                              .setSupportedAbis(abiTargeting)
+                              .build();
+                      return getMatchingApks(
+                          apkDescriptions,
+                          new AbiMatcher(abiDeviceSpec),
+                          new MultiAbiMatcher(abiDeviceSpec));
+                    }));
+    ImmutableMap<ScreenDensityTargeting, BitSet> screenDensityMatches =
+        screenDensityTargetingOptions.stream()
+            .collect(
+                toImmutableMap(
+                    identity(),
+                    screenDensityTargeting ->
+                        getMatchingApks(
+                            apkDescriptions,
+                            new ScreenDensityMatcher(
+                                new DeviceSpecFromTargetingBuilder(deviceSpec)
+                                    .setScreenDensity(screenDensityTargeting)
+                                    .build()))));
+    ImmutableMap<LanguageTargeting, BitSet> languageMatches =
+        languageTargetingOptions.stream()
+            .collect(
+                toImmutableMap(
+                    identity(),
+                    languageTargeting ->
+                        getMatchingApks(
+                            apkDescriptions,
+                            new LanguageMatcher(
+                                new DeviceSpecFromTargetingBuilder(deviceSpec)
+                                    .setSupportedLocales(languageTargeting)
+                                    .build()))));
+
+    Map<SizeConfiguration, Long> minSizeByConfiguration = new HashMap<>();
+    Map<SizeConfiguration, Long> maxSizeByConfiguration = new HashMap<>();
+    BitSet matches = new BitSet(apkDescriptions.size());
+    for (AbiTargeting abiTargeting : abiTargetingOptions) {
+      for (ScreenDensityTargeting screenDensityTargeting : screenDensityTargetingOptions) {
+        for (LanguageTargeting languageTargeting : languageTargetingOptions) {
+          SizeConfiguration configuration =
+              mergeWithDeviceSpec(
+                  getSizeConfiguration(
+                      sdkVersionTargeting, abiTargeting, screenDensityTargeting, languageTargeting),
+                  deviceSpec);
+
+          matches.clear();
+          matches.or(commonMatches);
+          matches.and(abiMatches.get(abiTargeting));
+          matches.and(screenDensityMatches.get(screenDensityTargeting));
+          matches.and(languageMatches.get(languageTargeting));
+          long compressedSize = 0;
+          for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+            compressedSize += apkSizes[i];
+          }
+
+          minSizeByConfiguration.merge(configuration, compressedSize, Math::min);
+          maxSizeByConfiguration.merge(configuration, compressedSize, Math::max);
+        }
+      }
+    }
+
+    return ConfigurationSizes.create(
+        /* minSizeConfigurationMap= */ ImmutableMap.copyOf(minSizeByConfiguration),
+        /* maxSizeConfigurationMap= */ ImmutableMap.copyOf(maxSizeByConfiguration));
+  }
+
+  /**
+   * Returns the indices of the APKs whose targeting matches all the given matchers.
+   *
+   * @throws IncompatibleDeviceException if the device can't support the targeting of an APK
+   */
+  private static BitSet getMatchingApks(
+      ImmutableList<ApkDescription> apkDescriptions, TargetingDimensionMatcher<?>... matchers) {
+    BitSet matchingApks = new BitSet(apkDescriptions.size());
+    for (int i = 0; i < apkDescriptions.size(); i++) {
+      ApkTargeting apkTargeting = apkDescriptions.get(i).getTargeting();
+      boolean matches = true;
+      for (TargetingDimensionMatcher<?> matcher : matchers) {
+        checkDeviceCompatible(matcher, apkTargeting);
+        matches &= matcher.getApkTargetingPredicate().test(apkTargeting);
+      }
+      matchingApks.set(i, matches);
+    }
+    return matchingApks;
+  }
+
+  private static <T> void checkDeviceCompatible(
+      TargetingDimensionMatcher<T> matcher, ApkTargeting apkTargeting) {
+    matcher.checkDeviceCompatible(matcher.getTargetingValue(apkTargeting));
+  }
+
+  private static boolean isSplitApk(ApkDescription apkDescription) {
+    return !apkDescription.hasStandaloneApkMetadata() && !apkDescription.hasApexApkMetadata();
+  }
+
   private ConfigurationSizes getSizesPerConfiguration(
+      ApkSetIndex variantIndex,
       ImmutableSet<AbiTargeting> abiTargetingOptions,
       ImmutableSet<LanguageTargeting> languageTargetingOptions,
       ImmutableSet<ScreenDensityTargeting> screenDensityTargetingOptions) {
@@ -225,7 +379,7 @@ public class VariantTotalSizeAggregator {
                               languageTargeting),
                           getSizeRequest.getModules(),
                           getSizeRequest.getInstant())
-                      .getMatchingApksFromVariant(variant, bundleVersion));
+                      .getMatchingApksFromVariant(variantIndex));
 
           minSizeByConfiguration.merge(configuration, compressedSize, Math::min);
           maxSizeByConfiguration.merge(configuration, compressedSize, Math::max);
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.io;
+
+import com.android.tools.build.bundletool.model.MetricsRecorder;
+import com.android.tools.build.bundletool.model.TraceRecorder;
+import com.google.auto.value.AutoValue;
+
+/**
+ * Optional behaviours of the serialization of APKs and of the APK Set archive.
+ *
+ * <p>Shared by the {@link ApkSerializerManager}, the APK serializers and the {@link
+ * ApkSetBuilderFactory.ApkSetBuilder}, each using the options relevant to it.
+ */
+@AutoValue
+public abstract class ApkSerializationOptions {
+
+  /** Recorder of the resources used to serialize the APKs. */
+  public abstract MetricsRecorder getMetricsRecorder();
+
+  /** Recorder of the spans of serializing each APK. */
+  public abstract TraceRecorder getTraceRecorder();
+
+  /**
+   * Whether the download sizes of the APKs are estimated as they are added and stored in the APK
+   * Set archive, so that they don't have to be estimated again later.
+   */
+  public abstract boolean getRecordDownloadSizes();
+
+  /**
+   * Whether the APK Set archive is written with the indexed layout, see {@code
+   * ApkSetArchiveIndex}.
+   */
+  public abstract boolean getIndexedApkSet();
+
+  /** Options with nothing recorded and the default layout of the APK Set archive. */
+  public static ApkSerializationOptions defaults() {
+    return builder().build();
+  }
+
+  public static Builder builder() {
+    return new AutoValue_ApkSerializationOptions.Builder()
+        .setMetricsRecorder(MetricsRecorder.disabled())
+        .setTraceRecorder(TraceRecorder.disabled())
+        .setRecordDownloadSizes(false)
+        .setIndexedApkSet(false);
+  }
+
+  /** Builder for {@link ApkSerializationOptions}. */
+  @AutoValue.Builder
+  public abstract static class Builder {
+    public abstract Builder setMetricsRecorder(MetricsRecorder metricsRecorder);
+
+    public abstract Builder setTraceRecorder(TraceRecorder traceRecorder);
+
+    public abstract Builder setRecordDownloadSizes(boolean recordDownloadSizes);
+
+    public abstract Builder setIndexedApkSet(boolean indexedApkSet);
+
+    public abstract ApkSerializationOptions build();
+  }
+}
@@ -44,6 +44,7 @@ import com.android.tools.build.bundletool.model.BundleModule.SpecialModuleEntry;
 import com.android.tools.build.bundletool.model.ModuleEntry;
 import com.android.tools.build.bundletool.model.ModuleSplit;
 import com.android.tools.build.bundletool.model.SigningConfiguration;
+import com.android.tools.build.bundletool.model.TraceRecorder;
 import com.android.tools.build.bundletool.model.WearApkLocator;
 import com.android.tools.build.bundletool.model.ZipPath;
 import com.android.tools.build.bundletool.model.exceptions.ValidationException;
@@ -118,14 +119,17 @@ final class ApkSerializerHelper {
   private final Optional<SigningConfiguration> signingConfig;
   private final Optional<SigningConfiguration> stampSigningConfig;
   private final ImmutableList<PathMatcher> uncompressedPathMatchers;
+  private final TraceRecorder traceRecorder;
 
   ApkSerializerHelper(
       Aapt2Command aapt2Command,
       Optional<SigningConfiguration> signingConfig,
       Optional<SigningConfiguration> stampSigningConfig,
       Version bundleVersion,
-      Compression compression) {
+      Compression compression,
+      TraceRecorder traceRecorder) {
     this.aapt2Command = aapt2Command;
+    this.traceRecorder = traceRecorder;
     this.bundleVersion = bundleVersion;
     this.signingConfig = signingConfig;
     this.stampSigningConfig = stampSigningConfig;
@@ -149,15 +153,45 @@ final class ApkSerializerHelper {
 
     // Write a Proto-APK with only files that aapt2 requires as part of the convert command.
     Path partialProtoApk = tempDir.resolve("proto.apk");
-    writeProtoApk(split, partialProtoApk, tempDir);
+    traceRecorder.inSpan("write-proto-apk", () -> writeProtoApk(split, partialProtoApk, tempDir));
 
     // Have aapt2 convert the Proto-APK to a Binary-APK.
     Path binaryApk = tempDir.resolve("binary.apk");
-    aapt2Command.convertApkProtoToBinary(partialProtoApk, binaryApk);
+    traceRecorder.inSpan(
+        "aapt2-convert", () -> aapt2Command.convertApkProtoToBinary(partialProtoApk, binaryApk));
     checkState(Files.exists(binaryApk), "No APK created by aapt2 convert command.");
 
     // Create a new APK that includes files processed by aapt2 and the other ones.
     Path unsignedApkPath = tempDir.resolve("apk-unsigned.apk");
+    traceRecorder.inSpan("merge-apk", () -> mergeApk(split, binaryApk, unsignedApkPath, tempDir));
+
+    // Sign APK.
+    boolean signWithV1 =
+        split.getAndroidManifest().getEffectiveMinSdkVersion() < Versions.ANDROID_N_API_VERSION
+            || !VersionGuardedFeature.NO_V1_SIGNING_WHEN_POSSIBLE.enabledForVersion(bundleVersion);
+    int minSdkVersion = split.getAndroidManifest().getEffectiveMinSdkVersion();
+    if (signingConfig.isPresent()) {
+      traceRecorder.inSpan(
+          "sign-apk",
+          () ->
+              signApk(
+                  unsignedApkPath,
+                  outputPath,
+                  signingConfig.get(),
+                  stampSigningConfig,
+                  signWithV1,
+                  minSdkVersion));
+    } else {
+      try {
+        Files.move(unsignedApkPath, outputPath);
+      } catch (IOException e) {
+        throw new UncheckedIOException(
+            String.format("Failed to write APK file '%s'.", outputPath), e);
+      }
+    }
+  }
+
+  private void mergeApk(ModuleSplit split, Path binaryApk, Path unsignedApkPath, Path tempDir) {
     try (ZFile zOutputApk =
             ZFiles.apk(
                 unsignedApkPath.toFile(),
@@ -182,35 +216,14 @@ final class ApkSerializerHelper {
       throw new UncheckedIOException(
           String.format("Failed to write APK file '%s'.", unsignedApkPath), e);
     }
-
-    // Sign APK.
-    boolean signWithV1 =
-        split.getAndroidManifest().getEffectiveMinSdkVersion() < Versions.ANDROID_N_API_VERSION
-            || !VersionGuardedFeature.NO_V1_SIGNING_WHEN_POSSIBLE.enabledForVersion(bundleVersion);
-    int minSdkVersion = split.getAndroidManifest().getEffectiveMinSdkVersion();
-    if (signingConfig.isPresent()) {
-      signApk(
-          unsignedApkPath,
-          outputPath,
-          signingConfig.get(),
-          stampSigningConfig,
-          signWithV1,
-          minSdkVersion);
-    } else {
-      try {
-        Files.move(unsignedApkPath, outputPath);
-      } catch (IOException e) {
-        throw new UncheckedIOException(
-            String.format("Failed to write APK file '%s'.", outputPath), e);
-      }
-    }
   }
 
   Path writeCompressedApkToZipFile(ModuleSplit split, Path outputPath) {
     try (TempDirectory tempDirectory = new TempDirectory()) {
       Path tempApkOutputPath = tempDirectory.getPath().resolve("output.apk");
       writeToZipFile(split, tempApkOutputPath, tempDirectory.getPath());
-      writeCompressedApkToZipFile(tempApkOutputPath, outputPath);
+      traceRecorder.inSpan(
+          "compress-apk", () -> writeCompressedApkToZipFile(tempApkOutputPath, outputPath));
     }
     return outputPath;
   }
@@ -15,8 +15,8 @@
  */
 package com.android.tools.build.bundletool.io;
 
-import static com.android.tools.build.bundletool.io.ConcurrencyUtils.waitForAll;
 import static com.android.tools.build.bundletool.model.utils.CollectorUtils.groupingBySortedKeys;
+import static com.android.tools.build.bundletool.model.utils.ConcurrencyUtils.waitForAll;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Predicates.alwaysTrue;
@@ -25,6 +25,7 @@ import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.collectingAndThen;
 import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.mapping;
 
 import com.android.bundle.Commands.ApkDescription;
@@ -52,9 +53,12 @@ import com.android.tools.build.bundletool.model.BundleModuleName;
 import com.android.tools.build.bundletool.model.GeneratedApks;
 import com.android.tools.build.bundletool.model.GeneratedAssetSlices;
 import com.android.tools.build.bundletool.model.ManifestDeliveryElement;
+import com.android.tools.build.bundletool.model.MetricsRecorder;
 import com.android.tools.build.bundletool.model.ModuleSplit;
 import com.android.tools.build.bundletool.model.ModuleSplit.SplitType;
+import com.android.tools.build.bundletool.model.TraceRecorder;
 import com.android.tools.build.bundletool.model.VariantKey;
+import com.android.tools.build.bundletool.model.utils.ConcurrencyUtils;
 import com.android.tools.build.bundletool.model.version.BundleToolVersion;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
@@ -74,6 +78,8 @@ public class ApkSerializerManager {
   private final ListeningExecutorService executorService;
   private final ApkListener apkListener;
   private final ApkModifier apkModifier;
+  private final MetricsRecorder metricsRecorder;
+  private final TraceRecorder traceRecorder;
   private final int firstVariantNumber;
   private final AppBundle appBundle;
   private final ApkSetBuilder apkSetBuilder;
@@ -85,11 +91,31 @@ public class ApkSerializerManager {
       ApkListener apkListener,
       ApkModifier apkModifier,
       int firstVariantNumber) {
+    this(
+        appBundle,
+        apkSetBuilder,
+        executorService,
+        apkListener,
+        apkModifier,
+        firstVariantNumber,
+        ApkSerializationOptions.defaults());
+  }
+
+  public ApkSerializerManager(
+      AppBundle appBundle,
+      ApkSetBuilder apkSetBuilder,
+      ListeningExecutorService executorService,
+      ApkListener apkListener,
+      ApkModifier apkModifier,
+      int firstVariantNumber,
+      ApkSerializationOptions options) {
     this.appBundle = appBundle;
     this.apkSetBuilder = apkSetBuilder;
     this.executorService = executorService;
     this.apkListener = apkListener;
     this.apkModifier = apkModifier;
+    this.metricsRecorder = options.getMetricsRecorder();
+    this.traceRecorder = options.getTraceRecorder();
     this.firstVariantNumber = firstVariantNumber;
   }
 
@@ -371,6 +397,21 @@ public class ApkSerializerManager {
     }
 
     public ImmutableList<ApkDescription> serialize(ModuleSplit split) {
+      try (TraceRecorder.Span span =
+          traceRecorder
+              .startSpan("serialize-apk")
+              .putArg("module", split.getModuleName().getName())
+              .putArg("split-type", split.getSplitType().name())) {
+        ImmutableList<ApkDescription> apkDescriptions = serializeAndNotify(split);
+        span.putArg(
+            "path",
+            apkDescriptions.stream().map(ApkDescription::getPath).collect(joining(",")));
+        return apkDescriptions;
+      }
+    }
+
+    private ImmutableList<ApkDescription> serializeAndNotify(ModuleSplit split) {
+      MetricsRecorder.ApkSerialization apkSerialization = metricsRecorder.startApkSerialization();
       ImmutableList<ApkDescription> apkDescriptions;
       switch (split.getSplitType()) {
         case INSTANT:
@@ -404,6 +445,7 @@ public class ApkSerializerManager {
 
       // Notify apk listener.
       apkDescriptions.forEach(apkListener::onApkFinalized);
+      apkSerialization.finish(apkDescriptions);
       return apkDescriptions;
     }
   }
@@ -16,22 +16,36 @@
 
 package com.android.tools.build.bundletool.io;
 
+import static com.android.tools.build.bundletool.model.utils.FileNames.APK_SET_ARCHIVE_INDEX_FILE;
+import static com.android.tools.build.bundletool.model.utils.FileNames.APK_SET_SIZES_FILE;
 import static com.android.tools.build.bundletool.model.utils.FileNames.TABLE_OF_CONTENTS_FILE;
 import static com.android.tools.build.bundletool.model.utils.files.FilePreconditions.checkFileExistsAndReadable;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.util.concurrent.MoreExecutors.newDirectExecutorService;
 
 import com.android.bundle.Commands.ApkDescription;
 import com.android.bundle.Commands.BuildApksResult;
+import com.android.bundle.SizesOuterClass.ApkSetSizes;
 import com.android.tools.build.bundletool.io.ZipBuilder.EntryOption;
+import com.android.tools.build.bundletool.model.ApkSetArchiveIndex;
 import com.android.tools.build.bundletool.model.ModuleSplit;
 import com.android.tools.build.bundletool.model.ZipPath;
+import com.android.tools.build.bundletool.model.utils.ApkSizeUtils;
 import com.android.tools.build.bundletool.model.utils.files.BufferedIo;
 import com.google.common.collect.ImmutableList;
 import com.google.protobuf.Message;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /** Factory for {@link ApkSetBuilder}. */
 public final class ApkSetBuilderFactory {
@@ -73,7 +87,20 @@ public final class ApkSetBuilderFactory {
       SplitApkSerializer splitApkSerializer,
       StandaloneApkSerializer standaloneApkSerializer,
       Path tempDir) {
-    return new ApkSetArchiveBuilder(splitApkSerializer, standaloneApkSerializer, tempDir);
+    return createApkSetBuilder(
+        splitApkSerializer, standaloneApkSerializer, tempDir, ApkSerializationOptions.defaults());
+  }
+
+  /**
+   * Creates a builder of an APK Set archive, recording the download sizes of the APKs and using
+   * the layout of the archive as set in the given options.
+   */
+  public static ApkSetBuilder createApkSetBuilder(
+      SplitApkSerializer splitApkSerializer,
+      StandaloneApkSerializer standaloneApkSerializer,
+      Path tempDir,
+      ApkSerializationOptions options) {
+    return new ApkSetArchiveBuilder(splitApkSerializer, standaloneApkSerializer, tempDir, options);
   }
 
   public static ApkSetBuilder createApkSetWithoutArchiveBuilder(
@@ -89,14 +116,35 @@ public final class ApkSetBuilderFactory {
     private final StandaloneApkSerializer standaloneApkSerializer;
     private final ZipBuilder apkSetZipBuilder;
     private final Path tempDirectory;
+    private final boolean recordDownloadSizes;
+    private final boolean indexed;
+    private final ConcurrentMap<String, Long> downloadSizeByApkPath = new ConcurrentHashMap<>();
+    /** APKs added to the archive, in the indexed layout only. */
+    private final ConcurrentMap<String, Path> apkFileByApkPath = new ConcurrentHashMap<>();
+    /** Table of contents, in the indexed layout only. */
+    private volatile Optional<BuildApksResult> tableOfContents = Optional.empty();
 
     public ApkSetArchiveBuilder(
         SplitApkSerializer splitApkSerializer,
         StandaloneApkSerializer standaloneApkSerializer,
         Path tempDirectory) {
+      this(
+          splitApkSerializer,
+          standaloneApkSerializer,
+          tempDirectory,
+          ApkSerializationOptions.defaults());
+    }
+
+    public ApkSetArchiveBuilder(
+        SplitApkSerializer splitApkSerializer,
+        StandaloneApkSerializer standaloneApkSerializer,
+        Path tempDirectory,
+        ApkSerializationOptions options) {
       this.splitApkSerializer = splitApkSerializer;
       this.standaloneApkSerializer = standaloneApkSerializer;
       this.tempDirectory = tempDirectory;
+      this.recordDownloadSizes = options.getRecordDownloadSizes();
+      this.indexed = options.getIndexedApkSet();
       this.apkSetZipBuilder = new ZipBuilder();
     }
 
@@ -157,25 +205,151 @@ public final class ApkSetBuilderFactory {
     private void addToApkSetArchive(String relativeApkPath) {
       Path fullApkPath = tempDirectory.resolve(relativeApkPath);
       checkFileExistsAndReadable(fullApkPath);
-      apkSetZipBuilder.addFileFromDisk(
-          ZipPath.create(relativeApkPath), fullApkPath.toFile(), EntryOption.UNCOMPRESSED);
+      if (indexed) {
+        // The APKs are laid out once the table of contents is known.
+        apkFileByApkPath.put(relativeApkPath, fullApkPath);
+      } else {
+        apkSetZipBuilder.addFileFromDisk(
+            ZipPath.create(relativeApkPath), fullApkPath.toFile(), EntryOption.UNCOMPRESSED);
+      }
+      if (recordDownloadSizes) {
+        // APKs are added from the serialization tasks, so the estimation runs in parallel too.
+        downloadSizeByApkPath.put(relativeApkPath, calculateDownloadSize(fullApkPath));
+      }
+    }
+
+    private static long calculateDownloadSize(Path apkPath) {
+      try (InputStream apkContent = BufferedIo.inputStream(apkPath)) {
+        return ApkSizeUtils.calculateDownloadSize(apkContent, Files.size(apkPath));
+      } catch (IOException e) {
+        throw new UncheckedIOException(
+            String.format("Error while estimating the download size of '%s'.", apkPath), e);
+      }
     }
 
     @Override
     public void setTableOfContentsFile(BuildApksResult tableOfContentsProto) {
-      apkSetZipBuilder.addFileWithProtoContent(
-          ZipPath.create(TABLE_OF_CONTENTS_FILE), tableOfContentsProto);
+      if (indexed) {
+        tableOfContents = Optional.of(tableOfContentsProto);
+      } else {
+        apkSetZipBuilder.addFileWithProtoContent(
+            ZipPath.create(TABLE_OF_CONTENTS_FILE), tableOfContentsProto);
+      }
     }
 
     @Override
     public void writeTo(Path destinationPath) {
+      if (indexed) {
+        addIndexedEntries();
+      } else if (recordDownloadSizes) {
+        apkSetZipBuilder.addFileWithProtoContent(
+            ZipPath.create(APK_SET_SIZES_FILE),
+            ApkSetSizes.newBuilder().putAllDownloadSizeByApkPath(downloadSizeByApkPath).build());
+      }
       try {
-        apkSetZipBuilder.writeTo(destinationPath);
+        if (indexed) {
+          // The offsets in the index rely on the local headers written by the ZipWriter.
+          apkSetZipBuilder.writeTo(destinationPath, newDirectExecutorService());
+        } else {
+          apkSetZipBuilder.writeTo(destinationPath);
+        }
       } catch (IOException e) {
         throw new UncheckedIOException(
             String.format("Error while writing the APK Set archive to '%s'.", destinationPath), e);
       }
     }
+
+    /**
+     * Adds all entries of the indexed layout: the table of contents, the index, the APKs in the
+     * order of the table of contents and the download sizes, all uncompressed so that the index
+     * can give their exact byte range in the archive.
+     *
+     * <p>Being uncompressed, the APKs are streamed from disk when the archive is written.
+     */
+    private void addIndexedEntries() {
+      checkState(tableOfContents.isPresent(), "The table of contents must be set.");
+      BuildApksResult toc = tableOfContents.get();
+
+      Map<String, Long> targetingMaskByApkPath = new LinkedHashMap<>();
+      toc.getVariantList().stream()
+          .flatMap(variant -> variant.getApkSetList().stream())
+          .flatMap(apkSet -> apkSet.getApkDescriptionList().stream())
+          .filter(apkDescription -> apkFileByApkPath.containsKey(apkDescription.getPath()))
+          .forEach(
+              apkDescription ->
+                  targetingMaskByApkPath.putIfAbsent(
+                      apkDescription.getPath(),
+                      ApkSetArchiveIndex.getTargetingMask(apkDescription.getTargeting())));
+      apkFileByApkPath.keySet().stream()
+          .sorted()
+          .forEach(apkPath -> targetingMaskByApkPath.putIfAbsent(apkPath, 0L));
+
+      byte[] tocBytes = toc.toByteArray();
+      Optional<byte[]> sizesBytes =
+          recordDownloadSizes
+              ? Optional.of(
+                  ApkSetSizes.newBuilder()
+                      .putAllDownloadSizeByApkPath(downloadSizeByApkPath)
+                      .build()
+                      .toByteArray())
+              : Optional.empty();
+
+      // Every entry but the index itself, in the order they are written.
+      Map<String, Long> sizeByPath = new LinkedHashMap<>();
+      sizeByPath.put(TABLE_OF_CONTENTS_FILE, (long) tocBytes.length);
+      targetingMaskByApkPath
+          .keySet()
+          .forEach(apkPath -> sizeByPath.put(apkPath, fileSize(apkFileByApkPath.get(apkPath))));
+      sizesBytes.ifPresent(bytes -> sizeByPath.put(APK_SET_SIZES_FILE, (long) bytes.length));
+      long indexSize =
+          ApkSetArchiveIndex.getSerializedSize(ImmutableList.copyOf(sizeByPath.keySet()));
+
+      ImmutableList.Builder<ApkSetArchiveIndex.Entry> indexEntries = ImmutableList.builder();
+      long offset = 0;
+      for (Map.Entry<String, Long> pathAndSize : sizeByPath.entrySet()) {
+        String path = pathAndSize.getKey();
+        long size = pathAndSize.getValue();
+        long dataOffset = offset + ZipWriter.getLocalHeaderSize(path, size, size);
+        indexEntries.add(
+            ApkSetArchiveIndex.Entry.create(
+                path, dataOffset, size, targetingMaskByApkPath.getOrDefault(path, 0L)));
+        offset = dataOffset + size;
+        if (path.equals(TABLE_OF_CONTENTS_FILE)) {
+          // The index directly follows the table of contents.
+          offset +=
+              ZipWriter.getLocalHeaderSize(APK_SET_ARCHIVE_INDEX_FILE, indexSize, indexSize)
+                  + indexSize;
+        }
+      }
+
+      apkSetZipBuilder.addFileWithContent(
+          ZipPath.create(TABLE_OF_CONTENTS_FILE), tocBytes, EntryOption.UNCOMPRESSED);
+      apkSetZipBuilder.addFileWithContent(
+          ZipPath.create(APK_SET_ARCHIVE_INDEX_FILE),
+          ApkSetArchiveIndex.serialize(indexEntries.build()),
+          EntryOption.UNCOMPRESSED);
+      targetingMaskByApkPath
+          .keySet()
+          .forEach(
+              apkPath ->
+                  apkSetZipBuilder.addFileFromDisk(
+                      ZipPath.create(apkPath),
+                      apkFileByApkPath.get(apkPath).toFile(),
+                      EntryOption.UNCOMPRESSED));
+      sizesBytes.ifPresent(
+          bytes ->
+              apkSetZipBuilder.addFileWithContent(
+                  ZipPath.create(APK_SET_SIZES_FILE), bytes, EntryOption.UNCOMPRESSED));
+    }
+
+    private static long fileSize(Path path) {
+      try {
+        return Files.size(path);
+      } catch (IOException e) {
+        throw new UncheckedIOException(
+            String.format("Error while reading the size of '%s'.", path), e);
+      }
+    }
   }
 
   /** ApkSet builder that stores the generated APKs directly in the output directory. */
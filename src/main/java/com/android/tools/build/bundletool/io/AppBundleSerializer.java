@@ -18,6 +18,7 @@ package com.android.tools.build.bundletool.io;
 
 import static com.android.tools.build.bundletool.model.AppBundle.BUNDLE_CONFIG_FILE_NAME;
 import static com.android.tools.build.bundletool.model.AppBundle.METADATA_DIRECTORY;
+import static com.google.common.util.concurrent.MoreExecutors.newDirectExecutorService;
 
 import com.android.tools.build.bundletool.io.ZipBuilder.EntryOption;
 import com.android.tools.build.bundletool.model.AppBundle;
@@ -26,6 +27,7 @@ import com.android.tools.build.bundletool.model.BundleModule.SpecialModuleEntry;
 import com.android.tools.build.bundletool.model.InputStreamSupplier;
 import com.android.tools.build.bundletool.model.ModuleEntry;
 import com.android.tools.build.bundletool.model.ZipPath;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Map.Entry;
@@ -46,6 +48,16 @@ public class AppBundleSerializer {
 
   /** Writes the App Bundle on disk at the given location. */
   public void writeToDisk(AppBundle bundle, Path pathOnDisk) throws IOException {
+    writeToDisk(bundle, pathOnDisk, newDirectExecutorService());
+  }
+
+  /**
+   * Writes the App Bundle on disk at the given location, compressing the entries in parallel on the
+   * given executor.
+   */
+  public void writeToDisk(
+      AppBundle bundle, Path pathOnDisk, ListeningExecutorService executorService)
+      throws IOException {
     ZipBuilder zipBuilder = new ZipBuilder();
 
     EntryOption[] compression =
@@ -112,6 +124,6 @@ public class AppBundleSerializer {
                       compression));
     }
 
-    zipBuilder.writeTo(pathOnDisk);
+    zipBuilder.writeTo(pathOnDisk, executorService);
   }
 }
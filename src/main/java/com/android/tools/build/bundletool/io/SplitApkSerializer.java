@@ -44,10 +44,33 @@ public class SplitApkSerializer {
       Optional<SigningConfiguration> stampSigningConfig,
       Version bundleVersion,
       Compression compression) {
+    this(
+        apkPathManager,
+        aapt2Command,
+        signingConfig,
+        stampSigningConfig,
+        bundleVersion,
+        compression,
+        ApkSerializationOptions.defaults());
+  }
+
+  public SplitApkSerializer(
+      ApkPathManager apkPathManager,
+      Aapt2Command aapt2Command,
+      Optional<SigningConfiguration> signingConfig,
+      Optional<SigningConfiguration> stampSigningConfig,
+      Version bundleVersion,
+      Compression compression,
+      ApkSerializationOptions options) {
     this.apkPathManager = apkPathManager;
     this.apkSerializerHelper =
         new ApkSerializerHelper(
-            aapt2Command, signingConfig, stampSigningConfig, bundleVersion, compression);
+            aapt2Command,
+            signingConfig,
+            stampSigningConfig,
+            bundleVersion,
+            compression,
+            options.getTraceRecorder());
   }
 
   /** Writes the installable split to disk. */
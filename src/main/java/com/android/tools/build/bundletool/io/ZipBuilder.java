@@ -18,13 +18,23 @@ package com.android.tools.build.bundletool.io;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Throwables.throwIfInstanceOf;
+import static com.google.common.base.Throwables.throwIfUnchecked;
+import static com.google.common.util.concurrent.Futures.getDone;
+import static com.google.common.util.concurrent.Uninterruptibles.getUninterruptibly;
 
+import com.android.tools.build.bundletool.io.ZipWriter.EncodedEntry;
 import com.android.tools.build.bundletool.model.InputStreamSupplier;
+import com.android.tools.build.bundletool.model.InputStreamSuppliers;
+import com.android.tools.build.bundletool.model.ZipEntryInputStreamSupplier;
 import com.android.tools.build.bundletool.model.ZipPath;
 import com.android.tools.build.bundletool.model.utils.files.BufferedIo;
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteSource;
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.errorprone.annotations.Immutable;
 import com.google.protobuf.MessageLite;
 import java.io.ByteArrayInputStream;
@@ -34,10 +44,15 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
 import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -52,6 +67,9 @@ import java.util.zip.ZipOutputStream;
 public final class ZipBuilder {
   private static final Long EPOCH = 0L;
 
+  /** Maximum number of compressed entries waiting for the previous ones to be written. */
+  private static final int MAX_PENDING_ENTRIES = 32;
+
   /** Entries to be output. */
   private final Map<ZipPath, Entry> entries = new LinkedHashMap<>();
 
@@ -118,6 +136,155 @@ public final class ZipBuilder {
     return target;
   }
 
+  /**
+   * Writes the data into a zip file, reading and compressing the entries on the given executor.
+   *
+   * <p>Unlike {@link #writeTo(Path)}, the entries are written by a {@link ZipWriter}: entries
+   * copied from another zip file with the same compression method aren't recompressed, and the
+   * local header of each entry has the size given by {@link ZipWriter#getLocalHeaderSize}.
+   *
+   * <p>Entries are still written in the order they were added. At most {@link
+   * #MAX_PENDING_ENTRIES} compressed entries wait for the previous ones to be written, each keeping
+   * at most {@link ZipWriter#MAX_IN_MEMORY_DATA_SIZE} bytes in memory and the rest in a temporary
+   * file.
+   *
+   * <p>It is an error if the <code>target</code> file already exists.
+   *
+   * @return The path the .zip file was written to (ie. <code>target</code>).
+   * @throws IOException When an I/O error occurs.
+   */
+  public synchronized Path writeTo(Path target, ListeningExecutorService executorService)
+      throws IOException {
+    // Create temp file and move to requested location when completely written. If the command
+    // fails, this prevents us from generating partial output at the user-specified location.
+    Path tempFile = Files.createTempFile("ZipBuilder-", ".zip.tmp");
+
+    Map<String, ZipEntryDataLocator> dataLocators = new HashMap<>();
+    Deque<ListenableFuture<EncodedEntry>> pendingEntries = new ArrayDeque<>();
+    try {
+      try (ZipWriter zipWriter = new ZipWriter(BufferedIo.outputStream(tempFile))) {
+        for (ZipPath path : entries.keySet()) {
+          Entry entry = entries.get(path);
+          pendingEntries.add(executorService.submit(() -> encode(path, entry, dataLocators)));
+          // Write the entries that are ready, and wait for the oldest one if too many are pending.
+          while (!pendingEntries.isEmpty()
+              && (pendingEntries.peek().isDone()
+                  || pendingEntries.size() > MAX_PENDING_ENTRIES)) {
+            zipWriter.write(getEncodedEntry(pendingEntries.poll()));
+          }
+        }
+        while (!pendingEntries.isEmpty()) {
+          zipWriter.write(getEncodedEntry(pendingEntries.poll()));
+        }
+      }
+
+      // Fails if the target file exists.
+      Files.move(tempFile, target);
+
+    } catch (IOException | RuntimeException e) {
+      for (ListenableFuture<EncodedEntry> pendingEntry : pendingEntries) {
+        // Entries already encoded are never written, so their data can be released.
+        if (!pendingEntry.cancel(/* mayInterruptIfRunning= */ true)) {
+          releaseQuietly(pendingEntry);
+        }
+      }
+      Files.deleteIfExists(tempFile);
+      throw e;
+    } finally {
+      synchronized (dataLocators) {
+        for (ZipEntryDataLocator dataLocator : dataLocators.values()) {
+          dataLocator.close();
+        }
+      }
+    }
+
+    return target;
+  }
+
+  /**
+   * Compresses the content of the given entry.
+   *
+   * <p>Entries copied from another zip file with the same compression method are not recompressed:
+   * their compressed data is copied as is, and only their local header is written anew. The content
+   * of other uncompressed entries is streamed from their source when written.
+   */
+  private static EncodedEntry encode(
+      ZipPath path, Entry entry, Map<String, ZipEntryDataLocator> dataLocators)
+      throws IOException {
+    if (entry.getIsDirectory()) {
+      // For directories, we append "/" at the end of the file path since that's what the zip
+      // format relies on. Directories are represented as having empty content.
+      return EncodedEntry.directory(path + "/");
+    }
+    InputStreamSupplier inputStreamSupplier = entry.getInputStreamSupplier().get();
+    int method = entry.hasOption(EntryOption.UNCOMPRESSED) ? ZipEntry.STORED : ZipEntry.DEFLATED;
+    if (inputStreamSupplier instanceof ZipEntryInputStreamSupplier) {
+      ZipEntryInputStreamSupplier zipEntrySupplier =
+          (ZipEntryInputStreamSupplier) inputStreamSupplier;
+      ZipEntry zipEntry = zipEntrySupplier.getZipEntry();
+      if (zipEntry.getMethod() == method) {
+        Optional<ByteSource> compressedData =
+            getDataLocator(dataLocators, zipEntrySupplier.getZipFile())
+                .getCompressedData(zipEntry);
+        if (compressedData.isPresent()) {
+          return EncodedEntry.create(
+              path.toString(),
+              method,
+              zipEntry.getCrc(),
+              zipEntry.getSize(),
+              zipEntry.getCompressedSize(),
+              compressedData.get());
+        }
+      }
+    }
+    if (method == ZipEntry.STORED) {
+      return EncodedEntry.stored(path.toString(), asByteSource(inputStreamSupplier));
+    }
+    try (InputStream content = inputStreamSupplier.get()) {
+      return EncodedEntry.deflated(path.toString(), content);
+    }
+  }
+
+  private static ByteSource asByteSource(InputStreamSupplier inputStreamSupplier) {
+    return new ByteSource() {
+      @Override
+      public InputStream openStream() throws IOException {
+        return inputStreamSupplier.get();
+      }
+    };
+  }
+
+  private static ZipEntryDataLocator getDataLocator(
+      Map<String, ZipEntryDataLocator> dataLocators, ZipFile zipFile) throws IOException {
+    synchronized (dataLocators) {
+      ZipEntryDataLocator dataLocator = dataLocators.get(zipFile.getName());
+      if (dataLocator == null) {
+        dataLocator = ZipEntryDataLocator.open(Paths.get(zipFile.getName()));
+        dataLocators.put(zipFile.getName(), dataLocator);
+      }
+      return dataLocator;
+    }
+  }
+
+  private static EncodedEntry getEncodedEntry(ListenableFuture<EncodedEntry> pendingEntry)
+      throws IOException {
+    try {
+      return getUninterruptibly(pendingEntry);
+    } catch (ExecutionException e) {
+      throwIfInstanceOf(e.getCause(), IOException.class);
+      throwIfUnchecked(e.getCause());
+      throw new IOException(e.getCause());
+    }
+  }
+
+  private static void releaseQuietly(ListenableFuture<EncodedEntry> pendingEntry) {
+    try {
+      getDone(pendingEntry).release();
+    } catch (ExecutionException | IOException e) {
+      // Nothing to release, or the temporary file is deleted on finalization instead.
+    }
+  }
+
   /**
    * Lazily creates an entry at the specified path and with the given content.
    *
@@ -140,11 +307,14 @@ public final class ZipBuilder {
   /**
    * Lazily creates a file at the specified path containing the given proto message in binary form.
    *
+   * <p>The message is serialized only once even if it is added to several zip files, see {@link
+   * InputStreamSuppliers#fromProto}.
+   *
    * <p>Will throw an exception if the path is already taken.
    */
   public ZipBuilder addFileWithProtoContent(
       ZipPath toPath, MessageLite protoMsg, EntryOption... options) {
-    return addFile(toPath, () -> new ByteArrayInputStream(protoMsg.toByteArray()), options);
+    return addFile(toPath, InputStreamSuppliers.fromProto(protoMsg), options);
   }
 
   /**
@@ -154,7 +324,7 @@ public final class ZipBuilder {
    */
   public ZipBuilder addFileFromZip(
       ZipPath toPath, ZipFile fromZipFile, ZipEntry zipEntry, EntryOption... options) {
-    return addFile(toPath, BufferedIo.inputStreamSupplier(fromZipFile, zipEntry), options);
+    return addFile(toPath, InputStreamSuppliers.fromZipEntry(zipEntry, fromZipFile), options);
   }
 
   /**
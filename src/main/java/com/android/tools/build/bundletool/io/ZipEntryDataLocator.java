@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.io;
+
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+
+import com.android.tools.build.bundletool.model.utils.files.ZipHeaderReader;
+import com.android.tools.build.bundletool.model.utils.files.ZipHeaderReader.CentralDirectoryEntry;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteSource;
+import com.google.common.io.MoreFiles;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+
+/**
+ * Locates the compressed data of the entries of a zip file, so that it can be copied as is into
+ * another zip file.
+ *
+ * <p>Entries of zip files using features that aren't supported here (ZIP64, encryption) are never
+ * located; their content must be read through a {@link java.util.zip.ZipFile} instead.
+ *
+ * <p>The zip file is kept open until the locator is closed, and can be read from several threads.
+ */
+final class ZipEntryDataLocator implements Closeable {
+
+  private final Path zipPath;
+  /** Only used for positional reads, which don't change its position and can run concurrently. */
+  private final FileChannel channel;
+  /** Offset of the local header of the supported entries, by name. */
+  private final ImmutableMap<String, Long> localHeaderOffsets;
+
+  private ZipEntryDataLocator(
+      Path zipPath, FileChannel channel, ImmutableMap<String, Long> localHeaderOffsets) {
+    this.zipPath = zipPath;
+    this.channel = channel;
+    this.localHeaderOffsets = localHeaderOffsets;
+  }
+
+  /** Opens the given zip file and reads its central directory. */
+  static ZipEntryDataLocator open(Path zipPath) throws IOException {
+    FileChannel channel = FileChannel.open(zipPath, StandardOpenOption.READ);
+    try {
+      return new ZipEntryDataLocator(zipPath, channel, readLocalHeaderOffsets(channel));
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the compressed data of the given entry of the zip file, or an empty {@link Optional}
+   * if the entry can't be located.
+   */
+  Optional<ByteSource> getCompressedData(ZipEntry zipEntry) throws IOException {
+    Long localHeaderOffset = localHeaderOffsets.get(zipEntry.getName());
+    if (localHeaderOffset == null || zipEntry.getCompressedSize() < 0) {
+      return Optional.empty();
+    }
+
+    return ZipHeaderReader.readLocalFileHeader(channel, localHeaderOffset)
+        .map(
+            localHeader ->
+                MoreFiles.asByteSource(zipPath)
+                    .slice(localHeader.getDataOffset(), zipEntry.getCompressedSize()));
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * Reads the central directory and returns the offsets of the entries that can be located, or no
+   * offset at all if the zip file uses a format this class doesn't handle.
+   */
+  private static ImmutableMap<String, Long> readLocalHeaderOffsets(FileChannel channel)
+      throws IOException {
+    return ZipHeaderReader.readCentralDirectory(channel).values().stream()
+        .filter(entry -> !entry.isEncrypted())
+        .collect(
+            toImmutableMap(
+                CentralDirectoryEntry::getName, CentralDirectoryEntry::getLocalHeaderOffset));
+  }
+}
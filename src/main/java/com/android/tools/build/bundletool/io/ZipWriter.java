@@ -0,0 +1,439 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.io;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.io.FileBackedOutputStream;
+import com.google.errorprone.annotations.Immutable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes a zip file out of entries whose content has already been encoded, i.e. compressed and
+ * checksummed.
+ *
+ * <p>Unlike {@link java.util.zip.ZipOutputStream}, the data of the entries is written as is, so
+ * entries can be compressed ahead of time on several threads. Zip64 extensions are used when the
+ * sizes, offsets or number of entries don't fit in the original format.
+ *
+ * <p>Since the checksum and sizes of an entry are known before its data is written, they are stored
+ * in its local header rather than in a data descriptor after the data, as {@link
+ * java.util.zip.ZipOutputStream} does.
+ *
+ * <p>All entries are written with a last modification time of 0, like {@link ZipBuilder} does.
+ */
+final class ZipWriter implements Closeable {
+
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE = 0x07064b50;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+
+  private static final int LOCAL_HEADER_SIZE = 30;
+  private static final int CENTRAL_HEADER_SIZE = 46;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE = 56;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE = 20;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+
+  private static final int VERSION_STORED = 10;
+  private static final int VERSION_DEFLATED = 20;
+  private static final int VERSION_ZIP64 = 45;
+
+  /** General purpose flag telling that the entry names are encoded in UTF-8. */
+  private static final int FLAG_UTF8 = 0x800;
+
+  /** Value of a 32-bit field whose actual value is in the Zip64 extra field. */
+  private static final long ZIP64_MAGIC_VALUE = 0xFFFFFFFFL;
+
+  /** Value of a 16-bit entry count whose actual value is in the Zip64 end of central directory. */
+  private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+  private static final short ZIP64_EXTRA_FIELD_ID = 0x0001;
+
+  /**
+   * Extended timestamp extra field holding a last modification time of 0, which is what {@link
+   * java.util.zip.ZipOutputStream} writes for entries whose time is set to 0.
+   */
+  private static final byte[] EXTENDED_TIMESTAMP_EXTRA_FIELD = {
+    0x55, 0x54, /* size= */ 5, 0, /* flags= */ 1, /* mtime= */ 0, 0, 0, 0
+  };
+
+  /** DOS time and date of the earliest time that can be represented, i.e. 1980-01-01 00:00. */
+  private static final int DOS_TIME = 0;
+
+  private static final int DOS_DATE = (1 << 5) | 1;
+
+  /**
+   * Maximum size of the compressed data of an entry kept in memory until the entry is written.
+   * Larger data is spilled to a temporary file.
+   */
+  static final int MAX_IN_MEMORY_DATA_SIZE = 1 << 20;
+
+  private static final int DEFLATER_BUFFER_SIZE = 8192;
+
+  private final CountingOutputStream out;
+  private final List<CentralDirectoryRecord> centralDirectory = new ArrayList<>();
+  private boolean closed = false;
+
+  ZipWriter(OutputStream out) {
+    this.out = new CountingOutputStream(out);
+  }
+
+  /** Appends the given entry to the zip file, then releases the buffer holding its data. */
+  void write(EncodedEntry entry) throws IOException {
+    try {
+      writeEntry(entry);
+    } finally {
+      entry.release();
+    }
+  }
+
+  private void writeEntry(EncodedEntry entry) throws IOException {
+    checkState(!closed, "Zip writer is already closed.");
+    byte[] name = entry.getName().getBytes(UTF_8);
+    long offset = out.getCount();
+    boolean zip64Sizes = needsZip64Sizes(entry.getSize(), entry.getCompressedSize());
+    byte[] extra = localExtraField(entry.getSize(), entry.getCompressedSize());
+    ByteBuffer header = newBuffer(LOCAL_HEADER_SIZE + name.length + extra.length);
+    header
+        .putInt(LOCAL_HEADER_SIGNATURE)
+        .putShort((short) versionNeeded(entry.getMethod(), zip64Sizes))
+        .putShort((short) FLAG_UTF8)
+        .putShort((short) entry.getMethod())
+        .putShort((short) DOS_TIME)
+        .putShort((short) DOS_DATE)
+        .putInt((int) entry.getCrc())
+        .putInt((int) (zip64Sizes ? ZIP64_MAGIC_VALUE : entry.getCompressedSize()))
+        .putInt((int) (zip64Sizes ? ZIP64_MAGIC_VALUE : entry.getSize()))
+        .putShort((short) name.length)
+        .putShort((short) extra.length)
+        .put(name)
+        .put(extra);
+    out.write(header.array());
+
+    long dataOffset = out.getCount();
+    entry.getData().copyTo(out);
+    checkState(
+        out.getCount() - dataOffset == entry.getCompressedSize(),
+        "Entry '%s' has %s bytes of data instead of %s.",
+        entry.getName(),
+        out.getCount() - dataOffset,
+        entry.getCompressedSize());
+
+    centralDirectory.add(new CentralDirectoryRecord(entry, name, offset));
+  }
+
+  /**
+   * Returns the size of the local header written before the data of an entry, which is the offset
+   * of the data from the start of the entry.
+   */
+  static int getLocalHeaderSize(String name, long size, long compressedSize) {
+    return LOCAL_HEADER_SIZE
+        + name.getBytes(UTF_8).length
+        + localExtraField(size, compressedSize).length;
+  }
+
+  private static boolean needsZip64Sizes(long size, long compressedSize) {
+    return size >= ZIP64_MAGIC_VALUE || compressedSize >= ZIP64_MAGIC_VALUE;
+  }
+
+  private static byte[] localExtraField(long size, long compressedSize) {
+    return needsZip64Sizes(size, compressedSize)
+        ? concat(zip64ExtraField(size, compressedSize), EXTENDED_TIMESTAMP_EXTRA_FIELD)
+        : EXTENDED_TIMESTAMP_EXTRA_FIELD;
+  }
+
+  /** Writes the central directory and closes the underlying stream. */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      long centralDirectoryOffset = out.getCount();
+      for (CentralDirectoryRecord record : centralDirectory) {
+        out.write(record.toBytes());
+      }
+      long centralDirectorySize = out.getCount() - centralDirectoryOffset;
+      writeEndOfCentralDirectory(centralDirectoryOffset, centralDirectorySize);
+    } finally {
+      out.close();
+    }
+  }
+
+  private void writeEndOfCentralDirectory(long centralDirectoryOffset, long centralDirectorySize)
+      throws IOException {
+    long entryCount = centralDirectory.size();
+    boolean zip64 =
+        entryCount >= ZIP64_MAGIC_COUNT
+            || centralDirectoryOffset >= ZIP64_MAGIC_VALUE
+            || centralDirectorySize >= ZIP64_MAGIC_VALUE;
+
+    if (zip64) {
+      long zip64EndOffset = out.getCount();
+      ByteBuffer zip64End =
+          newBuffer(
+              ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE + ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE);
+      zip64End
+          .putInt(ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE)
+          // Size of the record, excluding the signature and this field.
+          .putLong(ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE - 12)
+          .putShort((short) VERSION_ZIP64)
+          .putShort((short) VERSION_ZIP64)
+          .putInt(0) // Number of this disk.
+          .putInt(0) // Disk where the central directory starts.
+          .putLong(entryCount)
+          .putLong(entryCount)
+          .putLong(centralDirectorySize)
+          .putLong(centralDirectoryOffset)
+          .putInt(ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE)
+          .putInt(0) // Disk where the Zip64 end of central directory is.
+          .putLong(zip64EndOffset)
+          .putInt(1); // Total number of disks.
+      out.write(zip64End.array());
+    }
+
+    ByteBuffer end = newBuffer(END_OF_CENTRAL_DIRECTORY_SIZE);
+    end.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE)
+        .putShort((short) 0) // Number of this disk.
+        .putShort((short) 0) // Disk where the central directory starts.
+        .putShort((short) Math.min(entryCount, ZIP64_MAGIC_COUNT))
+        .putShort((short) Math.min(entryCount, ZIP64_MAGIC_COUNT))
+        .putInt((int) Math.min(centralDirectorySize, ZIP64_MAGIC_VALUE))
+        .putInt((int) Math.min(centralDirectoryOffset, ZIP64_MAGIC_VALUE))
+        .putShort((short) 0); // Comment length.
+    out.write(end.array());
+  }
+
+  private static int versionNeeded(int method, boolean zip64) {
+    if (zip64) {
+      return VERSION_ZIP64;
+    }
+    return method == ZipEntry.STORED ? VERSION_STORED : VERSION_DEFLATED;
+  }
+
+  /** Creates a Zip64 extra field with the given values, which must be in the order of the spec. */
+  private static byte[] zip64ExtraField(long... values) {
+    ByteBuffer extra = newBuffer(4 + 8 * values.length);
+    extra.putShort(ZIP64_EXTRA_FIELD_ID).putShort((short) (8 * values.length));
+    for (long value : values) {
+      extra.putLong(value);
+    }
+    return extra.array();
+  }
+
+  private static byte[] concat(byte[] first, byte[] second) {
+    return ByteBuffer.allocate(first.length + second.length).put(first).put(second).array();
+  }
+
+  private static ByteBuffer newBuffer(int size) {
+    return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /** The part of an entry that is kept until the central directory is written. */
+  private static final class CentralDirectoryRecord {
+    private final byte[] name;
+    private final int method;
+    private final long crc;
+    private final long size;
+    private final long compressedSize;
+    private final long offset;
+
+    CentralDirectoryRecord(EncodedEntry entry, byte[] name, long offset) {
+      this.name = name;
+      this.method = entry.getMethod();
+      this.crc = entry.getCrc();
+      this.size = entry.getSize();
+      this.compressedSize = entry.getCompressedSize();
+      this.offset = offset;
+    }
+
+    byte[] toBytes() {
+      // Only the values that overflow are stored in the Zip64 extra field, in this order.
+      List<Long> zip64Values = new ArrayList<>();
+      if (size >= ZIP64_MAGIC_VALUE) {
+        zip64Values.add(size);
+      }
+      if (compressedSize >= ZIP64_MAGIC_VALUE) {
+        zip64Values.add(compressedSize);
+      }
+      if (offset >= ZIP64_MAGIC_VALUE) {
+        zip64Values.add(offset);
+      }
+      boolean zip64 = !zip64Values.isEmpty();
+      byte[] extra =
+          zip64
+              ? concat(
+                  zip64ExtraField(zip64Values.stream().mapToLong(Long::longValue).toArray()),
+                  EXTENDED_TIMESTAMP_EXTRA_FIELD)
+              : EXTENDED_TIMESTAMP_EXTRA_FIELD;
+
+      int version = versionNeeded(method, zip64);
+      ByteBuffer record = newBuffer(CENTRAL_HEADER_SIZE + name.length + extra.length);
+      record
+          .putInt(CENTRAL_HEADER_SIGNATURE)
+          .putShort((short) version) // Version made by.
+          .putShort((short) version) // Version needed to extract.
+          .putShort((short) FLAG_UTF8)
+          .putShort((short) method)
+          .putShort((short) DOS_TIME)
+          .putShort((short) DOS_DATE)
+          .putInt((int) crc)
+          .putInt((int) Math.min(compressedSize, ZIP64_MAGIC_VALUE))
+          .putInt((int) Math.min(size, ZIP64_MAGIC_VALUE))
+          .putShort((short) name.length)
+          .putShort((short) extra.length)
+          .putShort((short) 0) // Comment length.
+          .putShort((short) 0) // Disk where the entry starts.
+          .putShort((short) 0) // Internal attributes.
+          .putInt(0) // External attributes.
+          .putInt((int) Math.min(offset, ZIP64_MAGIC_VALUE))
+          .put(name)
+          .put(extra);
+      return record.array();
+    }
+  }
+
+  /** Entry of a zip file whose data is ready to be written. */
+  @Immutable
+  @AutoValue
+  @AutoValue.CopyAnnotations
+  abstract static class EncodedEntry {
+    /** Path of the entry in the zip file; directories end with a "/". */
+    abstract String getName();
+
+    /** Either {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}. */
+    abstract int getMethod();
+
+    abstract long getCrc();
+
+    /** Size of the uncompressed content. */
+    abstract long getSize();
+
+    /** Size of {@link #getData()}. */
+    abstract long getCompressedSize();
+
+    /** The content, compressed with {@link #getMethod()}. */
+    @SuppressWarnings("Immutable") // The sources are never written to.
+    abstract ByteSource getData();
+
+    /** Buffer backing {@link #getData()}, if the data was compressed into one. */
+    @SuppressWarnings("Immutable") // Only reset once the data is no longer needed.
+    abstract Optional<FileBackedOutputStream> getDataBuffer();
+
+    /** Frees the memory or deletes the temporary file holding the data, if any. */
+    void release() throws IOException {
+      if (getDataBuffer().isPresent()) {
+        getDataBuffer().get().reset();
+      }
+    }
+
+    static EncodedEntry create(
+        String name, int method, long crc, long size, long compressedSize, ByteSource data) {
+      return create(name, method, crc, size, compressedSize, data, Optional.empty());
+    }
+
+    private static EncodedEntry create(
+        String name,
+        int method,
+        long crc,
+        long size,
+        long compressedSize,
+        ByteSource data,
+        Optional<FileBackedOutputStream> dataBuffer) {
+      checkArgument(
+          method == ZipEntry.STORED || method == ZipEntry.DEFLATED,
+          "Unsupported compression method %s for entry '%s'.",
+          method,
+          name);
+      return new AutoValue_ZipWriter_EncodedEntry(
+          name, method, crc, size, compressedSize, data, dataBuffer);
+    }
+
+    /** Creates an empty directory entry. */
+    static EncodedEntry directory(String name) {
+      checkArgument(name.endsWith("/"), "Directory name '%s' must end with '/'.", name);
+      return create(name, ZipEntry.STORED, /* crc= */ 0, /* size= */ 0, 0, ByteSource.empty());
+    }
+
+    /**
+     * Creates an uncompressed entry out of the given content, which is read once to compute its
+     * checksum and read again when the entry is written.
+     */
+    static EncodedEntry stored(String name, ByteSource content) throws IOException {
+      CRC32 crc = new CRC32();
+      long size;
+      try (InputStream checkedContent = new CheckedInputStream(content.openStream(), crc)) {
+        size = ByteStreams.exhaust(checkedContent);
+      }
+      return create(name, ZipEntry.STORED, crc.getValue(), size, size, content);
+    }
+
+    /**
+     * Reads the given content fully and creates an entry out of its deflated bytes.
+     *
+     * <p>The deflated bytes are kept in memory up to {@link #MAX_IN_MEMORY_DATA_SIZE}, and in a
+     * temporary file beyond, until the entry is written.
+     */
+    static EncodedEntry deflated(String name, InputStream content) throws IOException {
+      CheckedInputStream checkedContent = new CheckedInputStream(content, new CRC32());
+      FileBackedOutputStream compressed =
+          new FileBackedOutputStream(MAX_IN_MEMORY_DATA_SIZE, /* resetOnFinalize= */ true);
+      Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, /* nowrap= */ true);
+      long size;
+      CountingOutputStream compressedCounter = new CountingOutputStream(compressed);
+      try (DeflaterOutputStream deflaterStream =
+          new DeflaterOutputStream(compressedCounter, deflater, DEFLATER_BUFFER_SIZE)) {
+        size = ByteStreams.copy(checkedContent, deflaterStream);
+      } catch (IOException | RuntimeException e) {
+        compressed.reset();
+        throw e;
+      } finally {
+        deflater.end();
+      }
+      return create(
+          name,
+          ZipEntry.DEFLATED,
+          checkedContent.getChecksum().getValue(),
+          size,
+          compressedCounter.getCount(),
+          compressed.asByteSource(),
+          Optional.of(compressed));
+    }
+  }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model;
+
+import static com.android.tools.build.bundletool.model.utils.FileNames.APK_SET_ARCHIVE_INDEX_FILE;
+import static com.android.tools.build.bundletool.model.utils.FileNames.TABLE_OF_CONTENTS_FILE;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.android.bundle.Targeting.Abi;
+import com.android.bundle.Targeting.ApkTargeting;
+import com.android.bundle.Targeting.ScreenDensity;
+import com.android.bundle.Targeting.ScreenDensity.DensityOneofCase;
+import com.android.bundle.Targeting.TextureCompressionFormat;
+import com.android.tools.build.bundletool.model.exceptions.ValidationException;
+import com.android.tools.build.bundletool.model.utils.files.ZipHeaderReader;
+import com.android.tools.build.bundletool.model.utils.files.ZipHeaderReader.LocalFileHeader;
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.UnsignedBytes;
+import com.google.errorprone.annotations.Immutable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Binary index of the files of an APK Set archive, giving the byte range of each file in the
+ * archive and a compact representation of the targeting of the APKs.
+ *
+ * <p>In the indexed layout of APK Sets, the first entry of the archive is the table of contents
+ * and the second one is the index, both uncompressed, and all APKs are uncompressed. A reader can
+ * therefore locate any APK by reading the start of the archive only, and serve it with a plain
+ * byte range read, e.g. an HTTP range request.
+ *
+ * <p>The index is made of little-endian values, so that it can be memory-mapped and queried in
+ * place:
+ *
+ * <ul>
+ *   <li>A header of 16 bytes: the magic number "AIDX", the version of the format, the number of
+ *       entries and the offset of the names from the start of the index, all 32-bit.
+ *   <li>One record of 32 bytes per entry, sorted by the UTF-8 bytes of the entry names: the offset
+ *       of the data in the archive, the length of the data and the targeting mask, all 64-bit, then
+ *       the offset of the name relative to the start of the names and the length of the name, both
+ *       32-bit.
+ *   <li>The UTF-8 encoded names of the entries.
+ * </ul>
+ *
+ * <p>The targeting mask has one bit set per targeted value of the enumerable dimensions: bit
+ * {@code ABI_SHIFT + alias} for each {@link Abi.AbiAlias}, {@code SCREEN_DENSITY_SHIFT + alias}
+ * for each {@link ScreenDensity.DensityAlias} and {@code TEXTURE_COMPRESSION_FORMAT_SHIFT + alias}
+ * for each {@link TextureCompressionFormat.TextureCompressionFormatAlias}. Other dimensions, such
+ * as languages or SDK versions, can only be matched with the table of contents.
+ */
+@Immutable
+public final class ApkSetArchiveIndex {
+
+  public static final int ABI_SHIFT = 0;
+  public static final int SCREEN_DENSITY_SHIFT = 16;
+  public static final int TEXTURE_COMPRESSION_FORMAT_SHIFT = 32;
+  private static final int DIMENSION_BITS = 16;
+
+  /** "AIDX" read as a little-endian integer. */
+  private static final int MAGIC = 0x58444941;
+
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 16;
+  private static final int RECORD_SIZE = 32;
+
+  @SuppressWarnings("Immutable") // Never written to.
+  private final ByteBuffer buffer;
+
+  private final int entryCount;
+  private final int namesOffset;
+
+  private ApkSetArchiveIndex(ByteBuffer buffer, int entryCount, int namesOffset) {
+    this.buffer = buffer;
+    this.entryCount = entryCount;
+    this.namesOffset = namesOffset;
+  }
+
+  /**
+   * Creates an index backed by the given buffer, which isn't copied and must not be modified.
+   *
+   * @throws ValidationException if the buffer doesn't hold a valid index
+   */
+  public static ApkSetArchiveIndex wrap(ByteBuffer buffer) {
+    ByteBuffer index = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    if (index.limit() < HEADER_SIZE || index.getInt(0) != MAGIC) {
+      throw ValidationException.builder().withMessage("Invalid APK Set index.").build();
+    }
+    int version = index.getInt(4);
+    if (version != VERSION) {
+      throw ValidationException.builder()
+          .withMessage("Unsupported version %d of the APK Set index.", version)
+          .build();
+    }
+    int entryCount = index.getInt(8);
+    int namesOffset = index.getInt(12);
+    if (entryCount < 0
+        || namesOffset != HEADER_SIZE + (long) entryCount * RECORD_SIZE
+        || namesOffset > index.limit()) {
+      throw ValidationException.builder().withMessage("Corrupted APK Set index.").build();
+    }
+    return new ApkSetArchiveIndex(index, entryCount, namesOffset);
+  }
+
+  /**
+   * Reads the index of the given APK Set archive, if the archive has the indexed layout.
+   *
+   * <p>Only the table of contents and the index are read, not the rest of the archive.
+   */
+  public static Optional<ApkSetArchiveIndex> readFromApkSet(Path apkSetPath) throws IOException {
+    try (FileChannel channel = FileChannel.open(apkSetPath, StandardOpenOption.READ)) {
+      Optional<Entry> tableOfContents =
+          readUncompressedEntryLocation(channel, /* headerOffset= */ 0, TABLE_OF_CONTENTS_FILE);
+      if (!tableOfContents.isPresent()) {
+        return Optional.empty();
+      }
+      long indexHeaderOffset =
+          tableOfContents.get().getOffset() + tableOfContents.get().getLength();
+      Optional<Entry> index =
+          readUncompressedEntryLocation(channel, indexHeaderOffset, APK_SET_ARCHIVE_INDEX_FILE);
+      if (!index.isPresent()) {
+        return Optional.empty();
+      }
+      return Optional.of(
+          wrap(
+              ZipHeaderReader.readFully(
+                  channel, index.get().getOffset(), index.get().getLength())));
+    }
+  }
+
+  /** Serializes the given entries into an index. */
+  public static byte[] serialize(Collection<Entry> entries) {
+    ImmutableList<Entry> sortedEntries =
+        entries.stream()
+            .sorted(
+                Comparator.comparing(
+                    entry -> entry.getPath().getBytes(UTF_8),
+                    UnsignedBytes.lexicographicalComparator()))
+            .collect(toImmutableList());
+    int namesOffset = HEADER_SIZE + sortedEntries.size() * RECORD_SIZE;
+    ByteBuffer index =
+        ByteBuffer.allocate(
+                getSerializedSize(
+                    sortedEntries.stream().map(Entry::getPath).collect(toImmutableList())))
+            .order(ByteOrder.LITTLE_ENDIAN);
+    index.putInt(MAGIC).putInt(VERSION).putInt(sortedEntries.size()).putInt(namesOffset);
+
+    int nameOffset = 0;
+    for (Entry entry : sortedEntries) {
+      int nameLength = entry.getPath().getBytes(UTF_8).length;
+      index
+          .putLong(entry.getOffset())
+          .putLong(entry.getLength())
+          .putLong(entry.getTargetingMask())
+          .putInt(nameOffset)
+          .putInt(nameLength);
+      nameOffset += nameLength;
+    }
+    for (Entry entry : sortedEntries) {
+      index.put(entry.getPath().getBytes(UTF_8));
+    }
+    return index.array();
+  }
+
+  /** Returns the size of the index of entries with the given paths. */
+  public static int getSerializedSize(List<String> paths) {
+    return HEADER_SIZE
+        + paths.size() * RECORD_SIZE
+        + paths.stream().mapToInt(path -> path.getBytes(UTF_8).length).sum();
+  }
+
+  /** Returns the targeting mask of an APK with the given targeting. */
+  public static long getTargetingMask(ApkTargeting targeting) {
+    long mask = 0;
+    for (Abi abi : targeting.getAbiTargeting().getValueList()) {
+      mask |= dimensionBit(ABI_SHIFT, abi.getAliasValue());
+    }
+    for (ScreenDensity density : targeting.getScreenDensityTargeting().getValueList()) {
+      if (density.getDensityOneofCase().equals(DensityOneofCase.DENSITY_ALIAS)) {
+        mask |= dimensionBit(SCREEN_DENSITY_SHIFT, density.getDensityAliasValue());
+      }
+    }
+    for (TextureCompressionFormat format :
+        targeting.getTextureCompressionFormatTargeting().getValueList()) {
+      mask |= dimensionBit(TEXTURE_COMPRESSION_FORMAT_SHIFT, format.getAliasValue());
+    }
+    return mask;
+  }
+
+  private static long dimensionBit(int shift, int alias) {
+    return alias > 0 && alias < DIMENSION_BITS ? 1L << (shift + alias) : 0;
+  }
+
+  public int getEntryCount() {
+    return entryCount;
+  }
+
+  /** Returns the entries of the index, sorted by path. */
+  public ImmutableList<Entry> getEntries() {
+    return IntStream.range(0, entryCount).mapToObj(this::getEntry).collect(toImmutableList());
+  }
+
+  /** Finds the entry with the given path, with a binary search on the index. */
+  public Optional<Entry> findEntry(String path) {
+    byte[] name = path.getBytes(UTF_8);
+    int low = 0;
+    int high = entryCount - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int comparison =
+          UnsignedBytes.lexicographicalComparator().compare(getName(middle), name);
+      if (comparison < 0) {
+        low = middle + 1;
+      } else if (comparison > 0) {
+        high = middle - 1;
+      } else {
+        return Optional.of(getEntry(middle));
+      }
+    }
+    return Optional.empty();
+  }
+
+  private Entry getEntry(int position) {
+    int recordOffset = HEADER_SIZE + position * RECORD_SIZE;
+    return Entry.create(
+        new String(getName(position), UTF_8),
+        buffer.getLong(recordOffset),
+        buffer.getLong(recordOffset + 8),
+        buffer.getLong(recordOffset + 16));
+  }
+
+  private byte[] getName(int position) {
+    int recordOffset = HEADER_SIZE + position * RECORD_SIZE;
+    int nameOffset = namesOffset + buffer.getInt(recordOffset + 24);
+    int nameLength = buffer.getInt(recordOffset + 28);
+    if (nameOffset < namesOffset || nameLength < 0 || nameOffset + nameLength > buffer.limit()) {
+      throw ValidationException.builder().withMessage("Corrupted APK Set index.").build();
+    }
+    byte[] name = new byte[nameLength];
+    ByteBuffer nameBuffer = buffer.duplicate();
+    nameBuffer.position(nameOffset);
+    nameBuffer.get(name);
+    return name;
+  }
+
+  /**
+   * Returns the location of the data of the uncompressed entry with the given name whose local
+   * header is at the given offset, or an empty {@link Optional} if there is no such entry.
+   */
+  private static Optional<Entry> readUncompressedEntryLocation(
+      FileChannel channel, long headerOffset, String entryName) throws IOException {
+    Optional<LocalFileHeader> header = ZipHeaderReader.readLocalFileHeader(channel, headerOffset);
+    if (!header.isPresent()
+        || !header.get().getName().equals(entryName)
+        || (header.get().getFlags() & ZipHeaderReader.DATA_DESCRIPTOR_FLAG) != 0
+        || header.get().getCompressionMethod() != ZipEntry.STORED
+        || !header.get().getCompressedSize().isPresent()) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        Entry.create(
+            entryName,
+            header.get().getDataOffset(),
+            header.get().getCompressedSize().get(),
+            /* targetingMask= */ 0));
+  }
+
+  /** Location of a file in the APK Set archive. */
+  @Immutable
+  @AutoValue
+  public abstract static class Entry {
+    /** Path of the file in the archive. */
+    public abstract String getPath();
+
+    /** Offset of the data of the file from the start of the archive. */
+    public abstract long getOffset();
+
+    /** Length of the data of the file, which is stored uncompressed. */
+    public abstract long getLength();
+
+    /** Targeting mask of the APK, or 0 if the file isn't an APK or isn't targeted. */
+    public abstract long getTargetingMask();
+
+    public static Entry create(String path, long offset, long length, long targetingMask) {
+      return new AutoValue_ApkSetArchiveIndex_Entry(path, offset, length, targetingMask);
+    }
+  }
+}
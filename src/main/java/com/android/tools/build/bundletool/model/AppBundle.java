@@ -16,10 +16,12 @@
 
 package com.android.tools.build.bundletool.model;
 
+import static com.android.tools.build.bundletool.model.utils.ConcurrencyUtils.waitForAll;
 import static com.android.tools.build.bundletool.model.version.VersionGuardedFeature.ABI_SANITIZER_DISABLED;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static com.google.common.util.concurrent.MoreExecutors.newDirectExecutorService;
 import static java.util.function.Function.identity;
 
 import com.android.bundle.Config.BundleConfig;
@@ -38,15 +40,19 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.errorprone.annotations.Immutable;
 import com.google.protobuf.InvalidProtocolBufferException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -68,11 +74,50 @@ public abstract class AppBundle {
 
   /** Builds an {@link AppBundle} from an App Bundle on disk. */
   public static AppBundle buildFromZip(ZipFile bundleFile) {
+    return buildFromZip(bundleFile, zipEntry -> {});
+  }
+
+  /**
+   * Builds an {@link AppBundle} from an App Bundle on disk, handing every zip entry to the given
+   * visitor as it is read.
+   *
+   * @see #buildFromZip(ZipFile, Consumer, ListeningExecutorService)
+   */
+  public static AppBundle buildFromZip(ZipFile bundleFile, Consumer<ZipEntry> zipEntryVisitor) {
+    return buildFromZip(bundleFile, zipEntryVisitor, newDirectExecutorService());
+  }
+
+  /**
+   * Builds an {@link AppBundle} from an App Bundle on disk, handing every zip entry to the given
+   * visitor as it is read.
+   *
+   * <p>Modules and bundle metadata are extracted in a single pass over the entries of the zip
+   * file, so the visitor can be used to run zip-entry checks without traversing the bundle again.
+   * The visitor is invoked for all entries, including directories and entries that don't belong to
+   * any module.
+   *
+   * <p>Each module is then built and sanitized as a separate task on the given executor.
+   */
+  public static AppBundle buildFromZip(
+      ZipFile bundleFile,
+      Consumer<ZipEntry> zipEntryVisitor,
+      ListeningExecutorService executorService) {
     BundleConfig bundleConfig = readBundleConfig(bundleFile);
-    return buildFromModules(
-        sanitize(extractModules(bundleFile, bundleConfig), bundleConfig),
-        bundleConfig,
-        readBundleMetadata(bundleFile));
+    BundleMetadata.Builder bundleMetadata = BundleMetadata.builder();
+    Map<BundleModuleName, List<ZipEntry>> moduleZipEntries =
+        extractModuleZipEntriesAndMetadata(bundleFile, bundleMetadata, zipEntryVisitor);
+
+    ImmutableList<BundleModule> modules =
+        waitForAll(
+            moduleZipEntries.entrySet().stream()
+                .map(
+                    module ->
+                        executorService.submit(
+                            () ->
+                                buildModule(
+                                    module.getKey(), module.getValue(), bundleFile, bundleConfig)))
+                .collect(toImmutableList()));
+    return buildFromModules(modules, bundleConfig, bundleMetadata.build());
   }
 
   public static AppBundle buildFromModules(
@@ -212,25 +257,48 @@ public abstract class AppBundle {
     return new AutoValue_AppBundle.Builder();
   }
 
-  private static ImmutableList<BundleModule> extractModules(
-      ZipFile bundleFile, BundleConfig bundleConfig) {
-    Map<BundleModuleName, BundleModule.Builder> moduleBuilders = new HashMap<>();
+  /**
+   * Reads the bundle metadata and groups the zip entries of the modules by module name, without
+   * reading the content of the module entries.
+   */
+  private static Map<BundleModuleName, List<ZipEntry>> extractModuleZipEntriesAndMetadata(
+      ZipFile bundleFile,
+      BundleMetadata.Builder bundleMetadata,
+      Consumer<ZipEntry> zipEntryVisitor) {
+    Map<BundleModuleName, List<ZipEntry>> moduleZipEntries = new HashMap<>();
     Enumeration<? extends ZipEntry> entries = bundleFile.entries();
     while (entries.hasMoreElements()) {
       ZipEntry entry = entries.nextElement();
+      zipEntryVisitor.accept(entry);
       if (entry.isDirectory()) {
         continue;
       }
 
-      Optional<BundleModuleName> moduleName = extractModuleName(entry);
-      if (!moduleName.isPresent()) {
+      ZipPath bundlePath = ZipPath.create(entry.getName());
+      if (bundlePath.startsWith(METADATA_DIRECTORY)) {
+        // Strip the top-level metadata directory.
+        bundleMetadata.addFile(
+            bundlePath.subpath(1, bundlePath.getNameCount()),
+            BufferedIo.inputStreamSupplier(bundleFile, entry));
         continue;
       }
 
-      BundleModule.Builder moduleBuilder =
-          moduleBuilders.computeIfAbsent(
-              moduleName.get(),
-              name -> BundleModule.builder().setName(name).setBundleConfig(bundleConfig));
+      Optional<BundleModuleName> moduleName = extractModuleName(entry);
+      if (moduleName.isPresent()) {
+        moduleZipEntries.computeIfAbsent(moduleName.get(), name -> new ArrayList<>()).add(entry);
+      }
+    }
+    return moduleZipEntries;
+  }
+
+  private static BundleModule buildModule(
+      BundleModuleName moduleName,
+      List<ZipEntry> zipEntries,
+      ZipFile bundleFile,
+      BundleConfig bundleConfig) {
+    BundleModule.Builder moduleBuilder =
+        BundleModule.builder().setName(moduleName).setBundleConfig(bundleConfig);
+    for (ZipEntry entry : zipEntries) {
       try {
         moduleBuilder.addEntry(
             ModuleEntry.builder()
@@ -241,14 +309,11 @@ public abstract class AppBundle {
         throw ValidationException.builder()
             .withCause(e)
             .withMessage(
-                "Error processing zip entry '%s' of module '%s'.",
-                entry.getName(), moduleName.get())
+                "Error processing zip entry '%s' of module '%s'.", entry.getName(), moduleName)
             .build();
       }
     }
-    return moduleBuilders.values().stream()
-        .map(module -> module.build())
-        .collect(toImmutableList());
+    return sanitize(moduleBuilder.build(), bundleConfig);
   }
 
   private static BundleConfig readBundleConfig(ZipFile bundleFile) {
@@ -274,33 +339,15 @@ public abstract class AppBundle {
     }
   }
 
-  private static BundleMetadata readBundleMetadata(ZipFile bundleFile) {
-    BundleMetadata.Builder metadata = BundleMetadata.builder();
-    ZipUtils.allFileEntries(bundleFile)
-        .filter(entry -> ZipPath.create(entry.getName()).startsWith(METADATA_DIRECTORY))
-        .forEach(
-            zipEntry -> {
-              ZipPath bundlePath = ZipPath.create(zipEntry.getName());
-              // Strip the top-level metadata directory.
-              ZipPath metadataPath = bundlePath.subpath(1, bundlePath.getNameCount());
-              metadata.addFile(metadataPath, BufferedIo.inputStreamSupplier(bundleFile, zipEntry));
-            });
-    return metadata.build();
-  }
-
   @CheckReturnValue
-  private static ImmutableList<BundleModule> sanitize(
-      ImmutableList<BundleModule> modules, BundleConfig bundleConfig) {
+  private static BundleModule sanitize(BundleModule module, BundleConfig bundleConfig) {
     Version bundleVersion = BundleToolVersion.getVersionFromBundleConfig(bundleConfig);
     if (!ABI_SANITIZER_DISABLED.enabledForVersion(bundleVersion)) {
       // This is a temporary fix to cope with inconsistent ABIs.
-      modules = modules.stream().map(new ModuleAbiSanitizer()::sanitize).collect(toImmutableList());
+      module = new ModuleAbiSanitizer().sanitize(module);
     }
     // This is a temporary fix to work around a bug in gradle that creates a file named classes1.dex
-    modules =
-        modules.stream().map(new ClassesDexNameSanitizer()::sanitize).collect(toImmutableList());
-
-    return modules;
+    return new ClassesDexNameSanitizer().sanitize(module);
   }
 
   /** Builder for App Bundle object */
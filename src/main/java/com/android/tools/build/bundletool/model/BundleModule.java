@@ -45,7 +45,6 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.errorprone.annotations.Immutable;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Optional;
@@ -111,7 +110,11 @@ public abstract class BundleModule {
   /** The version of Bundletool that built this module, taken from BundleConfig. */
   public abstract BundleConfig getBundleConfig();
 
-  abstract XmlNode getAndroidManifestProto();
+  abstract LazyProto<XmlNode> getAndroidManifestProtoSupplier();
+
+  XmlNode getAndroidManifestProto() {
+    return getAndroidManifestProtoSupplier().get();
+  }
 
   @Memoized
   public AndroidManifest getAndroidManifest() {
@@ -119,13 +122,32 @@ public abstract class BundleModule {
         getAndroidManifestProto(), BundleToolVersion.getVersionFromBundleConfig(getBundleConfig()));
   }
 
-  public abstract Optional<ResourceTable> getResourceTable();
+  // The special module files are parsed only when first accessed, so that the potentially large
+  // protos of modules that a command doesn't need are never deserialized.
+
+  abstract Optional<LazyProto<ResourceTable>> getResourceTableSupplier();
+
+  abstract Optional<LazyProto<Assets>> getAssetsConfigSupplier();
+
+  abstract Optional<LazyProto<NativeLibraries>> getNativeConfigSupplier();
+
+  abstract Optional<LazyProto<ApexImages>> getApexConfigSupplier();
 
-  public abstract Optional<Assets> getAssetsConfig();
+  public Optional<ResourceTable> getResourceTable() {
+    return getResourceTableSupplier().map(LazyProto::get);
+  }
+
+  public Optional<Assets> getAssetsConfig() {
+    return getAssetsConfigSupplier().map(LazyProto::get);
+  }
 
-  public abstract Optional<NativeLibraries> getNativeConfig();
+  public Optional<NativeLibraries> getNativeConfig() {
+    return getNativeConfigSupplier().map(LazyProto::get);
+  }
 
-  public abstract Optional<ApexImages> getApexConfig();
+  public Optional<ApexImages> getApexConfig() {
+    return getApexConfigSupplier().map(LazyProto::get);
+  }
 
   /**
    * Returns entries of the module, indexed by their module path.
@@ -269,7 +291,12 @@ public abstract class BundleModule {
    * entries.
    */
   public Stream<ModuleEntry> findEntriesUnderPath(ZipPath path) {
-    return findEntries(p -> p.startsWith(path));
+    return getEntryPathIndex().findEntriesUnderPath(path);
+  }
+
+  @Memoized
+  ModuleEntryPathIndex getEntryPathIndex() {
+    return ModuleEntryPathIndex.create(getEntries());
   }
 
   /** Returns entry with the given relative module path, if it exists. */
@@ -312,19 +339,39 @@ public abstract class BundleModule {
 
     public abstract Builder setBundleConfig(BundleConfig value);
 
-    public abstract Builder setResourceTable(ResourceTable resourceTable);
+    public Builder setResourceTable(ResourceTable resourceTable) {
+      return setResourceTableSupplier(LazyProto.of(resourceTable));
+    }
 
     public Builder setAndroidManifest(AndroidManifest androidManifest) {
       return setAndroidManifestProto(androidManifest.getManifestRoot().getProto());
     }
 
-    public abstract Builder setAndroidManifestProto(XmlNode manifestProto);
+    public Builder setAndroidManifestProto(XmlNode manifestProto) {
+      return setAndroidManifestProtoSupplier(LazyProto.of(manifestProto));
+    }
+
+    public Builder setAssetsConfig(Assets assetsConfig) {
+      return setAssetsConfigSupplier(LazyProto.of(assetsConfig));
+    }
+
+    public Builder setNativeConfig(NativeLibraries nativeConfig) {
+      return setNativeConfigSupplier(LazyProto.of(nativeConfig));
+    }
+
+    public Builder setApexConfig(ApexImages apexConfig) {
+      return setApexConfigSupplier(LazyProto.of(apexConfig));
+    }
+
+    abstract Builder setResourceTableSupplier(LazyProto<ResourceTable> resourceTable);
+
+    abstract Builder setAndroidManifestProtoSupplier(LazyProto<XmlNode> manifestProto);
 
-    public abstract Builder setAssetsConfig(Assets assetsConfig);
+    abstract Builder setAssetsConfigSupplier(LazyProto<Assets> assetsConfig);
 
-    public abstract Builder setNativeConfig(NativeLibraries nativeConfig);
+    abstract Builder setNativeConfigSupplier(LazyProto<NativeLibraries> nativeConfig);
 
-    public abstract Builder setApexConfig(ApexImages apexConfig);
+    abstract Builder setApexConfigSupplier(LazyProto<ApexImages> apexConfig);
 
     abstract ImmutableMap.Builder<ZipPath, ModuleEntry> entryMapBuilder();
 
@@ -359,18 +406,17 @@ public abstract class BundleModule {
     /**
      * Adds the given entry to the module.
      *
-     * <p>Certain files (eg. AndroidManifest.xml and several module meta-data files) are immediately
-     * parsed and stored in dedicated class fields instead of as entries.
+     * <p>Certain files (eg. AndroidManifest.xml and several module meta-data files) are stored in
+     * dedicated class fields instead of as entries. They are parsed when first accessed, at which
+     * point a {@link ValidationException} is thrown if their contents are invalid.
      *
-     * @throws IOException when the entry cannot be read or has invalid contents
+     * @throws IOException when the entry cannot be read
      */
     public Builder addEntry(ModuleEntry moduleEntry) throws IOException {
       Optional<SpecialModuleEntry> specialEntry =
           SpecialModuleEntry.getSpecialEntry(moduleEntry.getPath());
       if (specialEntry.isPresent()) {
-        try (InputStream inputStream = moduleEntry.getContent()) {
-          specialEntry.get().addToModule(this, inputStream);
-        }
+        specialEntry.get().addToModule(this, moduleEntry);
       } else {
         entryMapBuilder().put(moduleEntry.getPath(), moduleEntry);
       }
@@ -389,32 +435,32 @@ public abstract class BundleModule {
   public enum SpecialModuleEntry {
     ANDROID_MANIFEST("manifest/AndroidManifest.xml") {
       @Override
-      void addToModule(BundleModule.Builder module, InputStream inputStream) throws IOException {
-        module.setAndroidManifestProto(XmlNode.parseFrom(inputStream));
+      void addToModule(BundleModule.Builder module, ModuleEntry entry) {
+        module.setAndroidManifestProtoSupplier(LazyProto.parseLazily(entry, XmlNode.parser()));
       }
     },
     RESOURCE_TABLE("resources.pb") {
       @Override
-      void addToModule(BundleModule.Builder module, InputStream inputStream) throws IOException {
-        module.setResourceTable(ResourceTable.parseFrom(inputStream));
+      void addToModule(BundleModule.Builder module, ModuleEntry entry) {
+        module.setResourceTableSupplier(LazyProto.parseLazily(entry, ResourceTable.parser()));
       }
     },
     ASSETS_TABLE("assets.pb") {
       @Override
-      void addToModule(BundleModule.Builder module, InputStream inputStream) throws IOException {
-        module.setAssetsConfig(Assets.parseFrom(inputStream));
+      void addToModule(BundleModule.Builder module, ModuleEntry entry) {
+        module.setAssetsConfigSupplier(LazyProto.parseLazily(entry, Assets.parser()));
       }
     },
     NATIVE_LIBS_TABLE("native.pb") {
       @Override
-      void addToModule(BundleModule.Builder module, InputStream inputStream) throws IOException {
-        module.setNativeConfig(NativeLibraries.parseFrom(inputStream));
+      void addToModule(BundleModule.Builder module, ModuleEntry entry) {
+        module.setNativeConfigSupplier(LazyProto.parseLazily(entry, NativeLibraries.parser()));
       }
     },
     APEX_TABLE("apex.pb") {
       @Override
-      void addToModule(BundleModule.Builder module, InputStream inputStream) throws IOException {
-        module.setApexConfig(ApexImages.parseFrom(inputStream));
+      void addToModule(BundleModule.Builder module, ModuleEntry entry) {
+        module.setApexConfigSupplier(LazyProto.parseLazily(entry, ApexImages.parser()));
       }
     };
 
@@ -422,8 +468,7 @@ public abstract class BundleModule {
         Arrays.stream(SpecialModuleEntry.values())
             .collect(toImmutableMap(SpecialModuleEntry::getPath, identity()));
 
-    abstract void addToModule(BundleModule.Builder module, InputStream inputStream)
-        throws IOException;
+    abstract void addToModule(BundleModule.Builder module, ModuleEntry entry);
 
     /**
      * Returns the {@link SpecialModuleEntry} instance associated with the given path, or an empty
@@ -17,8 +17,10 @@
 package com.android.tools.build.bundletool.model;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.android.tools.build.bundletool.model.utils.files.BufferedIo;
+import com.google.protobuf.MessageLite;
 import java.io.ByteArrayInputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -40,7 +42,7 @@ public final class InputStreamSuppliers {
     checkArgument(!zipEntry.getName().isEmpty(), "Path is empty");
     checkArgument(
         !zipEntry.isDirectory(), "Expected file, found directory: %s", zipEntry.getName());
-    return BufferedIo.inputStreamSupplier(zipFile, zipEntry);
+    return new ZipEntryInputStreamSupplier(zipFile, zipEntry);
   }
 
   /** Create an in-memory {@link InputStreamSupplier} from {@code contents}. */
@@ -49,6 +51,27 @@ public final class InputStreamSuppliers {
     return () -> new ByteArrayInputStream(contentsCopy);
   }
 
+  /**
+   * Creates an in-memory {@link InputStreamSupplier} from {@code contents}, without copying them.
+   *
+   * <p>Only for arrays that the caller owns and never modifies afterwards, e.g. freshly serialized
+   * data.
+   */
+  public static InputStreamSupplier fromBytesNoCopy(byte[] contents) {
+    return () -> new ByteArrayInputStream(contents);
+  }
+
+  /**
+   * Creates an in-memory {@link InputStreamSupplier} of the given message in binary form.
+   *
+   * <p>The message is serialized lazily, and the serialized bytes are shared by all the suppliers
+   * of the same message instance.
+   */
+  public static InputStreamSupplier fromProto(MessageLite message) {
+    checkNotNull(message);
+    return () -> new ByteArrayInputStream(SerializedProtoCache.toByteArray(message));
+  }
+
   /**
    * Creates an {@link InputStreamSupplier} which points to a file located on the filesystem.
    *
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.android.tools.build.bundletool.model.exceptions.ValidationException;
+import com.google.errorprone.annotations.Immutable;
+import com.google.errorprone.annotations.concurrent.LazyInit;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * Supplies a protocol buffer message of a module, parsing it from the module entry only when it is
+ * first requested.
+ *
+ * <p>The parsed message is memoized, so the entry is parsed at most once. Two instances are equal if
+ * they supply equal messages, so comparing or hashing them parses the entries.
+ */
+@Immutable(containerOf = "T")
+final class LazyProto<T extends MessageLite> implements Supplier<T> {
+
+  @Nullable private final ModuleEntry moduleEntry;
+
+  @SuppressWarnings("Immutable") // Parsers are stateless.
+  @Nullable
+  private final Parser<T> parser;
+
+  @LazyInit @Nullable private volatile T message;
+
+  private LazyProto(@Nullable ModuleEntry moduleEntry, @Nullable Parser<T> parser, T message) {
+    this.moduleEntry = moduleEntry;
+    this.parser = parser;
+    this.message = message;
+  }
+
+  /** Wraps a message that has already been parsed. */
+  static <T extends MessageLite> LazyProto<T> of(T message) {
+    return new LazyProto<>(/* moduleEntry= */ null, /* parser= */ null, checkNotNull(message));
+  }
+
+  /** Creates a supplier that parses the content of the given entry on first access. */
+  static <T extends MessageLite> LazyProto<T> parseLazily(
+      ModuleEntry moduleEntry, Parser<T> parser) {
+    return new LazyProto<>(checkNotNull(moduleEntry), checkNotNull(parser), /* message= */ null);
+  }
+
+  /**
+   * Returns the message, parsing it if it hasn't been parsed yet.
+   *
+   * @throws ValidationException if the entry doesn't contain a valid message
+   */
+  @Override
+  public T get() {
+    T result = message;
+    if (result == null) {
+      synchronized (this) {
+        result = message;
+        if (result == null) {
+          result = parse();
+          message = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  private T parse() {
+    try (InputStream inputStream = moduleEntry.getContent()) {
+      return parser.parseFrom(inputStream);
+    } catch (InvalidProtocolBufferException e) {
+      throw ValidationException.builder()
+          .withCause(e)
+          .withMessage("Module file '%s' could not be parsed.", moduleEntry.getPath())
+          .build();
+    } catch (IOException e) {
+      throw new UncheckedIOException(
+          String.format("Error reading module file '%s'.", moduleEntry.getPath()), e);
+    }
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this) {
+      return true;
+    }
+    if (!(obj instanceof LazyProto)) {
+      return false;
+    }
+    return get().equals(((LazyProto<?>) obj).get());
+  }
+
+  @Override
+  public int hashCode() {
+    return get().hashCode();
+  }
+
+  @Override
+  public String toString() {
+    T result = message;
+    return result != null ? result.toString() : "<not parsed: " + moduleEntry.getPath() + ">";
+  }
+}
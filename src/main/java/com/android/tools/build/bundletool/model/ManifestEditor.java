@@ -47,39 +47,48 @@ import static com.android.tools.build.bundletool.model.AndroidManifest.VERSION_C
 import static com.android.tools.build.bundletool.model.AndroidManifest.VERSION_NAME_ATTRIBUTE_NAME;
 import static com.android.tools.build.bundletool.model.AndroidManifest.VERSION_NAME_RESOURCE_ID;
 import static com.android.tools.build.bundletool.model.utils.xmlproto.XmlProtoAttributeBuilder.createAndroidAttribute;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.MoreCollectors.toOptional;
 import static java.util.stream.Collectors.joining;
 
+import com.android.aapt.Resources.XmlAttribute;
+import com.android.aapt.Resources.XmlElement;
+import com.android.aapt.Resources.XmlNode;
 import com.android.tools.build.bundletool.model.utils.xmlproto.XmlProtoAttributeBuilder;
 import com.android.tools.build.bundletool.model.utils.xmlproto.XmlProtoElement;
-import com.android.tools.build.bundletool.model.utils.xmlproto.XmlProtoElementBuilder;
 import com.android.tools.build.bundletool.model.utils.xmlproto.XmlProtoNode;
-import com.android.tools.build.bundletool.model.utils.xmlproto.XmlProtoNodeBuilder;
 import com.android.tools.build.bundletool.model.version.Version;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
 import javax.annotation.CheckReturnValue;
 
-/** Modifies the manifest in the protocol buffer format. */
+/**
+ * Modifies the manifest in the protocol buffer format.
+ *
+ * <p>The manifest protos are immutable and never copied as a whole: an edit only re-creates the
+ * elements on the path from the root to the modified element, and the other elements are shared
+ * with the original manifest. Edits that don't change anything keep the original elements.
+ */
 public class ManifestEditor {
 
   private static final ImmutableList<String> SPLIT_NAME_ELEMENT_NAMES =
       ImmutableList.of(ACTIVITY_ELEMENT_NAME, SERVICE_ELEMENT_NAME, PROVIDER_ELEMENT_NAME);
 
-  private final XmlProtoNodeBuilder rootNode;
-  private final XmlProtoElementBuilder manifestElement;
+  private final XmlProtoNode rootNode;
   private final Version bundleToolVersion;
+  private XmlElement manifestElement;
 
   public ManifestEditor(XmlProtoNode rootNode, Version bundleToolVersion) {
-    this.rootNode = rootNode.toBuilder();
-    this.manifestElement = this.rootNode.getElement();
+    this.rootNode = rootNode;
     this.bundleToolVersion = bundleToolVersion;
-  }
-
-  public XmlProtoElementBuilder getRawProto() {
-    return manifestElement;
+    this.manifestElement = rootNode.getProto().getElement();
   }
 
   /** Sets the minSdkVersion attribute. */
@@ -103,61 +112,83 @@ public class ManifestEditor {
   /** Sets split id and related manifest entries for feature/master split. */
   public ManifestEditor setSplitIdForFeatureSplit(String splitId) {
     if (isBaseSplit(splitId)) {
-      manifestElement.removeAttribute(NO_NAMESPACE_URI, "split");
-      manifestElement.removeAttribute(ANDROID_NAMESPACE_URI, "isFeatureSplit");
+      manifestElement = removeAttribute(manifestElement, NO_NAMESPACE_URI, "split");
+      manifestElement = removeAttribute(manifestElement, ANDROID_NAMESPACE_URI, "isFeatureSplit");
     } else {
-      manifestElement.getOrCreateAttribute("split").setValueAsString(splitId);
-      manifestElement
-          .getOrCreateAndroidAttribute("isFeatureSplit", IS_FEATURE_SPLIT_RESOURCE_ID)
-          .setValueAsBoolean(true);
+      manifestElement =
+          setAttribute(manifestElement, "split", attribute -> attribute.setValueAsString(splitId));
+      manifestElement =
+          setAndroidAttribute(
+              manifestElement,
+              "isFeatureSplit",
+              IS_FEATURE_SPLIT_RESOURCE_ID,
+              attribute -> attribute.setValueAsBoolean(true));
     }
-    manifestElement.removeAttribute(NO_NAMESPACE_URI, "configForSplit");
+    manifestElement = removeAttribute(manifestElement, NO_NAMESPACE_URI, "configForSplit");
     return this;
   }
 
   public ManifestEditor setHasCode(boolean value) {
     // Stamp hasCode="false" on the Application element in the Manifest.
     // This attribute's default is "true" even if absent.
-    manifestElement
-        .getOrCreateChildElement(APPLICATION_ELEMENT_NAME)
-        .getOrCreateAndroidAttribute("hasCode", HAS_CODE_RESOURCE_ID)
-        .setValueAsBoolean(value);
-    return this;
+    return updateApplicationElement(
+        application ->
+            setAndroidAttribute(
+                application,
+                "hasCode",
+                HAS_CODE_RESOURCE_ID,
+                attribute -> attribute.setValueAsBoolean(value)));
   }
 
   public ManifestEditor setPackage(String packageName) {
-    manifestElement.getOrCreateAttribute("package").setValueAsString(packageName);
+    manifestElement =
+        setAttribute(
+            manifestElement, "package", attribute -> attribute.setValueAsString(packageName));
     return this;
   }
 
   public ManifestEditor setVersionCode(int versionCode) {
-    manifestElement
-        .getOrCreateAndroidAttribute("versionCode", VERSION_CODE_RESOURCE_ID)
-        .setValueAsDecimalInteger(versionCode);
+    manifestElement =
+        setAndroidAttribute(
+            manifestElement,
+            "versionCode",
+            VERSION_CODE_RESOURCE_ID,
+            attribute -> attribute.setValueAsDecimalInteger(versionCode));
     return this;
   }
 
   public ManifestEditor setVersionName(String versionName) {
-    manifestElement
-        .getOrCreateAndroidAttribute(VERSION_NAME_ATTRIBUTE_NAME, VERSION_NAME_RESOURCE_ID)
-        .setValueAsString(versionName);
+    manifestElement =
+        setAndroidAttribute(
+            manifestElement,
+            VERSION_NAME_ATTRIBUTE_NAME,
+            VERSION_NAME_RESOURCE_ID,
+            attribute -> attribute.setValueAsString(versionName));
     return this;
   }
 
   public ManifestEditor setConfigForSplit(String featureSplitId) {
-    manifestElement.getOrCreateAttribute("configForSplit").setValueAsString(featureSplitId);
+    manifestElement =
+        setAttribute(
+            manifestElement,
+            "configForSplit",
+            attribute -> attribute.setValueAsString(featureSplitId));
     return this;
   }
 
   public ManifestEditor setSplitId(String splitId) {
-    manifestElement.getOrCreateAttribute("split").setValueAsString(splitId);
+    manifestElement =
+        setAttribute(manifestElement, "split", attribute -> attribute.setValueAsString(splitId));
     return this;
   }
 
   public ManifestEditor setTargetSandboxVersion(int version) {
-    manifestElement
-        .getOrCreateAndroidAttribute("targetSandboxVersion", TARGET_SANDBOX_VERSION_RESOURCE_ID)
-        .setValueAsDecimalInteger(version);
+    manifestElement =
+        setAndroidAttribute(
+            manifestElement,
+            "targetSandboxVersion",
+            TARGET_SANDBOX_VERSION_RESOURCE_ID,
+            attribute -> attribute.setValueAsDecimalInteger(version));
     return this;
   }
 
@@ -177,14 +208,8 @@ public class ManifestEditor {
   }
 
   private ManifestEditor addMetaDataValue(String key, XmlProtoAttributeBuilder valueAttribute) {
-    manifestElement
-        .getOrCreateChildElement(APPLICATION_ELEMENT_NAME)
-        .addChildElement(
-            XmlProtoElementBuilder.create("meta-data")
-                .addAttribute(
-                    createAndroidAttribute("name", NAME_RESOURCE_ID).setValueAsString(key))
-                .addAttribute(valueAttribute));
-    return this;
+    return updateApplicationElement(
+        application -> addChildElement(application, createMetadataElement(key, valueAttribute)));
   }
 
   /**
@@ -193,12 +218,13 @@ public class ManifestEditor {
    * <p>Note: the {@code application} tag is created if not found.
    */
   public ManifestEditor setExtractNativeLibsValue(boolean value) {
-    manifestElement
-        .getOrCreateChildElement(APPLICATION_ELEMENT_NAME)
-        .getOrCreateAndroidAttribute(
-            EXTRACT_NATIVE_LIBS_ATTRIBUTE_NAME, EXTRACT_NATIVE_LIBS_RESOURCE_ID)
-        .setValueAsBoolean(value);
-    return this;
+    return updateApplicationElement(
+        application ->
+            setAndroidAttribute(
+                application,
+                EXTRACT_NATIVE_LIBS_ATTRIBUTE_NAME,
+                EXTRACT_NATIVE_LIBS_RESOURCE_ID,
+                attribute -> attribute.setValueAsBoolean(value)));
   }
 
   /**
@@ -233,19 +259,18 @@ public class ManifestEditor {
         META_DATA_KEY_SPLITS_REQUIRED,
         createAndroidAttribute("value", VALUE_RESOURCE_ID).setValueAsBoolean(value));
 
-    manifestElement
-        .getOrCreateChildElement(APPLICATION_ELEMENT_NAME)
-        .getOrCreateAndroidAttribute(
-            IS_SPLIT_REQUIRED_ATTRIBUTE_NAME, IS_SPLIT_REQUIRED_RESOURCE_ID)
-        .setValueAsBoolean(value);
-
-    return this;
+    return updateApplicationElement(
+        application ->
+            setAndroidAttribute(
+                application,
+                IS_SPLIT_REQUIRED_ATTRIBUTE_NAME,
+                IS_SPLIT_REQUIRED_RESOURCE_ID,
+                attribute -> attribute.setValueAsBoolean(value)));
   }
 
   /** Adds an empty {@code <application>} element in the manifest if none is present. */
   public ManifestEditor addApplicationElementIfMissing() {
-    manifestElement.getOrCreateChildElement(APPLICATION_ELEMENT_NAME);
-    return this;
+    return updateApplicationElement(UnaryOperator.identity());
   }
 
   /**
@@ -254,12 +279,12 @@ public class ManifestEditor {
    * <p>This is useful for converting between install and instant splits.
    */
   public ManifestEditor removeSplitName() {
-    manifestElement
-        .getOrCreateChildElement(APPLICATION_ELEMENT_NAME)
-        .getChildrenElements(el -> SPLIT_NAME_ELEMENT_NAMES.contains(el.getName()))
-        .forEach(element -> element.removeAndroidAttribute(SPLIT_NAME_RESOURCE_ID));
-
-    return this;
+    return updateApplicationElement(
+        application ->
+            updateChildrenElements(
+                application,
+                element -> SPLIT_NAME_ELEMENT_NAMES.contains(element.getName()),
+                element -> removeAndroidAttribute(element, SPLIT_NAME_RESOURCE_ID)));
   }
 
   /**
@@ -268,21 +293,21 @@ public class ManifestEditor {
    * <p>This is useful for converting between install and instant splits.
    */
   public ManifestEditor removeUnknownSplitComponents(ImmutableSet<String> allModuleNames) {
-    Optional<XmlProtoElementBuilder> applicationElement =
-        manifestElement.getOptionalChildElement(APPLICATION_ELEMENT_NAME);
-    if (!applicationElement.isPresent()) {
+    if (!new XmlProtoElement(manifestElement)
+        .getOptionalChildElement(APPLICATION_ELEMENT_NAME)
+        .isPresent()) {
       return this;
     }
-    applicationElement
-        .get()
-        .removeChildrenElementsIf(
-            el ->
-                el.isElement()
-                    && el.getElement()
-                        .getAndroidAttribute(SPLIT_NAME_RESOURCE_ID)
-                        .filter(attr -> !allModuleNames.contains(attr.getValueAsString()))
-                        .isPresent());
-    return this;
+    return updateApplicationElement(
+        application ->
+            removeChildrenIf(
+                application,
+                node ->
+                    node.isElement()
+                        && node.getElement()
+                            .getAndroidAttribute(SPLIT_NAME_RESOURCE_ID)
+                            .filter(attr -> !allModuleNames.contains(attr.getValueAsString()))
+                            .isPresent()));
   }
 
   /**
@@ -294,60 +319,254 @@ public class ManifestEditor {
       return this;
     }
 
-    XmlProtoElementBuilder app = manifestElement.getOrCreateChildElement(APPLICATION_ELEMENT_NAME);
-    app.removeChildrenElementsIf(
-        el ->
-            el.isElement()
-                && ACTIVITY_ELEMENT_NAME.equals(el.getElement().getName())
-                && el.getElement()
+    Predicate<XmlProtoNode> isReplacedActivity =
+        node ->
+            node.isElement()
+                && ACTIVITY_ELEMENT_NAME.equals(node.getElement().getName())
+                && node.getElement()
                     .getAndroidAttribute(NAME_RESOURCE_ID)
                     .filter(name -> activitiesByClassName.containsKey(name.getValueAsString()))
-                    .isPresent());
-    activitiesByClassName.values().forEach(activity -> app.addChildElement(activity.toBuilder()));
-    return this;
+                    .isPresent();
+    return updateApplicationElement(
+        application -> {
+          XmlElement.Builder newApplication =
+              removeChildrenIf(application, isReplacedActivity).toBuilder();
+          for (XmlProtoElement activity : activitiesByClassName.values()) {
+            newApplication.addChild(XmlNode.newBuilder().setElement(activity.getProto()));
+          }
+          return newApplication.build();
+        });
   }
 
   /** Generates the modified manifest. */
   @CheckReturnValue
   public AndroidManifest save() {
-    return AndroidManifest.create(rootNode.build(), bundleToolVersion);
+    XmlNode rootNodeProto = rootNode.getProto();
+    if (manifestElement == rootNodeProto.getElement()) {
+      return AndroidManifest.create(rootNode, bundleToolVersion);
+    }
+    return AndroidManifest.create(
+        new XmlProtoNode(rootNodeProto.toBuilder().setElement(manifestElement).build()),
+        bundleToolVersion);
   }
 
   private ManifestEditor setMetadataValue(String name, XmlProtoAttributeBuilder valueAttr) {
-    XmlProtoElementBuilder applicationEl =
-        manifestElement.getOrCreateChildElement(APPLICATION_ELEMENT_NAME);
-
-    Optional<XmlProtoElementBuilder> existingMetadataEl =
-        applicationEl
-            .getChildrenElements(META_DATA_ELEMENT_NAME)
-            .filter(
-                metadataEl ->
-                    metadataEl
-                        .getAndroidAttribute(NAME_RESOURCE_ID)
-                        .map(nameAttr -> name.equals(nameAttr.getValueAsString()))
-                        .orElse(false))
-            .collect(toOptional());
-
-    if (existingMetadataEl.isPresent()) {
-      existingMetadataEl.get().removeAndroidAttribute(VALUE_RESOURCE_ID).addAttribute(valueAttr);
-    } else {
-      applicationEl.addChildElement(
-          XmlProtoElementBuilder.create(META_DATA_ELEMENT_NAME)
-              .addAttribute(createAndroidAttribute("name", NAME_RESOURCE_ID).setValueAsString(name))
-              .addAttribute(valueAttr));
-    }
+    XmlAttribute valueAttribute = valueAttr.getProto().build();
+    return updateApplicationElement(
+        application -> {
+          Optional<Integer> existingMetadataIndex =
+              IntStream.range(0, application.getChildCount())
+                  .filter(
+                      index ->
+                          isMetadataElementWithName(
+                              new XmlProtoNode(application.getChild(index)), name))
+                  .boxed()
+                  .collect(toOptional());
+
+          if (!existingMetadataIndex.isPresent()) {
+            return addChildElement(application, createMetadataElement(name, valueAttr));
+          }
+          XmlElement existingMetadata =
+              application.getChild(existingMetadataIndex.get()).getElement();
+          XmlElement newMetadata =
+              removeAndroidAttribute(existingMetadata, VALUE_RESOURCE_ID).toBuilder()
+                  .addAttribute(valueAttribute)
+                  .build();
+          if (newMetadata.equals(existingMetadata)) {
+            return application;
+          }
+          return setChildElement(
+              application, existingMetadataIndex.get(), existingMetadata, newMetadata);
+        });
+  }
 
-    return this;
+  private static boolean isMetadataElementWithName(XmlProtoNode node, String name) {
+    return node.isElement()
+        && node.getElement().getName().equals(META_DATA_ELEMENT_NAME)
+        && node.getElement().getNamespaceUri().equals(NO_NAMESPACE_URI)
+        && node.getElement()
+            .getAndroidAttribute(NAME_RESOURCE_ID)
+            .map(nameAttr -> name.equals(nameAttr.getValueAsString()))
+            .orElse(false);
+  }
+
+  private static XmlElement createMetadataElement(
+      String name, XmlProtoAttributeBuilder valueAttribute) {
+    return XmlElement.newBuilder()
+        .setName(META_DATA_ELEMENT_NAME)
+        .addAttribute(
+            createAndroidAttribute("name", NAME_RESOURCE_ID).setValueAsString(name).getProto())
+        .addAttribute(valueAttribute.getProto())
+        .build();
   }
 
   private ManifestEditor setUsesSdkAttribute(String attributeName, int attributeResId, int value) {
-    manifestElement
-        .getOrCreateChildElement(USES_SDK_ELEMENT_NAME)
-        .getOrCreateAndroidAttribute(attributeName, attributeResId)
-        .setValueAsDecimalInteger(value);
+    manifestElement =
+        updateChildElement(
+            manifestElement,
+            USES_SDK_ELEMENT_NAME,
+            usesSdk ->
+                setAndroidAttribute(
+                    usesSdk,
+                    attributeName,
+                    attributeResId,
+                    attribute -> attribute.setValueAsDecimalInteger(value)));
     return this;
   }
 
+  /** Applies the update to the {@code <application>} element, which is created if not found. */
+  private ManifestEditor updateApplicationElement(UnaryOperator<XmlElement> update) {
+    manifestElement = updateChildElement(manifestElement, APPLICATION_ELEMENT_NAME, update);
+    return this;
+  }
+
+  /**
+   * Applies the update to the unique child element with the given name and an empty namespace URI,
+   * which is created if not found.
+   */
+  private static XmlElement updateChildElement(
+      XmlElement element, String name, UnaryOperator<XmlElement> update) {
+    Optional<XmlProtoElement> child = new XmlProtoElement(element).getOptionalChildElement(name);
+    if (!child.isPresent()) {
+      XmlElement newChild =
+          update.apply(
+              XmlElement.newBuilder().setName(name).setNamespaceUri(NO_NAMESPACE_URI).build());
+      return addChildElement(element, newChild);
+    }
+    XmlElement existingChild = child.get().getProto();
+    int childIndex =
+        IntStream.range(0, element.getChildCount())
+            .filter(index -> element.getChild(index).getElement() == existingChild)
+            .findFirst()
+            .getAsInt();
+    return setChildElement(element, childIndex, existingChild, update.apply(existingChild));
+  }
+
+  /** Applies the update to all the direct children elements matching the predicate. */
+  private static XmlElement updateChildrenElements(
+      XmlElement element, Predicate<XmlElement> predicate, UnaryOperator<XmlElement> update) {
+    XmlElement.Builder newElement = null;
+    for (int i = 0; i < element.getChildCount(); i++) {
+      XmlNode child = element.getChild(i);
+      if (!child.hasElement() || !predicate.test(child.getElement())) {
+        continue;
+      }
+      XmlElement newChild = update.apply(child.getElement());
+      if (newChild != child.getElement()) {
+        if (newElement == null) {
+          newElement = element.toBuilder();
+        }
+        newElement.setChild(i, child.toBuilder().setElement(newChild));
+      }
+    }
+    return newElement == null ? element : newElement.build();
+  }
+
+  /**
+   * Replaces the child element at the given index, unless the update returned the same instance.
+   */
+  private static XmlElement setChildElement(
+      XmlElement element, int index, XmlElement existingChild, XmlElement newChild) {
+    if (newChild == existingChild) {
+      return element;
+    }
+    return element.toBuilder()
+        .setChild(index, element.getChild(index).toBuilder().setElement(newChild))
+        .build();
+  }
+
+  private static XmlElement addChildElement(XmlElement element, XmlElement newChild) {
+    return element.toBuilder().addChild(XmlNode.newBuilder().setElement(newChild)).build();
+  }
+
+  /** Removes the direct children matching the predicate. */
+  private static XmlElement removeChildrenIf(XmlElement element, Predicate<XmlProtoNode> filter) {
+    ImmutableList<XmlNode> keptChildren =
+        element.getChildList().stream()
+            .filter(child -> !filter.test(new XmlProtoNode(child)))
+            .collect(toImmutableList());
+    if (keptChildren.size() == element.getChildCount()) {
+      return element;
+    }
+    return element.toBuilder().clearChild().addAllChild(keptChildren).build();
+  }
+
+  /** Sets the value of the attribute with an empty namespace URI, which is created if not found. */
+  private static XmlElement setAttribute(
+      XmlElement element, String name, Consumer<XmlProtoAttributeBuilder> valueSetter) {
+    return setAttributeInternal(
+        element,
+        /* attributePredicate= */ attr ->
+            attr.getName().equals(name) && attr.getNamespaceUri().equals(NO_NAMESPACE_URI),
+        /* attributeFactory= */ () -> XmlProtoAttributeBuilder.create(name),
+        valueSetter);
+  }
+
+  /** Sets the value of the Android attribute, which is created if not found. */
+  private static XmlElement setAndroidAttribute(
+      XmlElement element,
+      String name,
+      int resourceId,
+      Consumer<XmlProtoAttributeBuilder> valueSetter) {
+    return setAttributeInternal(
+        element,
+        /* attributePredicate= */ attr ->
+            attr.getName().equals(name)
+                && attr.getNamespaceUri().equals(ANDROID_NAMESPACE_URI)
+                && attr.getResourceId() == resourceId,
+        /* attributeFactory= */ () -> createAndroidAttribute(name, resourceId),
+        valueSetter);
+  }
+
+  private static XmlElement setAttributeInternal(
+      XmlElement element,
+      Predicate<XmlAttribute> attributePredicate,
+      Supplier<XmlProtoAttributeBuilder> attributeFactory,
+      Consumer<XmlProtoAttributeBuilder> valueSetter) {
+    for (int i = 0; i < element.getAttributeCount(); i++) {
+      XmlAttribute existingAttribute = element.getAttribute(i);
+      if (attributePredicate.test(existingAttribute)) {
+        XmlProtoAttributeBuilder newAttribute =
+            new XmlProtoAttributeBuilder(existingAttribute.toBuilder());
+        valueSetter.accept(newAttribute);
+        XmlAttribute newAttributeProto = newAttribute.getProto().build();
+        if (newAttributeProto.equals(existingAttribute)) {
+          return element;
+        }
+        return element.toBuilder().setAttribute(i, newAttributeProto).build();
+      }
+    }
+    XmlProtoAttributeBuilder newAttribute = attributeFactory.get();
+    valueSetter.accept(newAttribute);
+    return element.toBuilder().addAttribute(newAttribute.getProto()).build();
+  }
+
+  private static XmlElement removeAttribute(XmlElement element, String namespaceUri, String name) {
+    return removeAttributeInternal(
+        element,
+        attribute ->
+            attribute.getName().equals(name) && attribute.getNamespaceUri().equals(namespaceUri));
+  }
+
+  private static XmlElement removeAndroidAttribute(XmlElement element, int resourceId) {
+    return removeAttributeInternal(
+        element,
+        attribute ->
+            attribute.getResourceId() == resourceId
+                && attribute.getNamespaceUri().equals(ANDROID_NAMESPACE_URI));
+  }
+
+  /** Removes the first attribute matching the predicate, if any. */
+  private static XmlElement removeAttributeInternal(
+      XmlElement element, Predicate<XmlAttribute> attributePredicate) {
+    for (int i = 0; i < element.getAttributeCount(); i++) {
+      if (attributePredicate.test(element.getAttribute(i))) {
+        return element.toBuilder().removeAttribute(i).build();
+      }
+    }
+    return element;
+  }
+
   private static boolean isBaseSplit(String splitId) {
     return splitId.isEmpty();
   }
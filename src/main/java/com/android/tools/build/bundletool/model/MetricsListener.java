@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model;
+
+import com.android.bundle.Metrics.ApkMetrics;
+import com.android.bundle.Metrics.PhaseMetrics;
+
+/** Allows to be notified about the resources used by the stages of APK creation. */
+public class MetricsListener {
+
+  public static final MetricsListener NO_OP = new MetricsListener() {};
+
+  /** Invoked when a phase of the APK generation has finished. */
+  public void onPhaseFinished(PhaseMetrics phaseMetrics) {
+    // no-op by default
+  }
+
+  /** Invoked when APKs have been serialized, after the {@link ApkListener} was notified. */
+  public void onApksSerialized(ApkMetrics apkMetrics) {
+    // no-op by default
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.android.bundle.Commands.ApkDescription;
+import com.android.bundle.Metrics.ApkMetrics;
+import com.android.bundle.Metrics.BuildApksMetrics;
+import com.android.bundle.Metrics.PhaseMetrics;
+import com.android.tools.build.bundletool.model.utils.ResourceCounters;
+import com.android.tools.build.bundletool.model.utils.ThrowingRunnable;
+import com.android.tools.build.bundletool.model.utils.ThrowingSupplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.AbstractListeningExecutorService;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.protobuf.util.JsonFormat;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Records the resources used by each phase of APK creation and by each serialized APK.
+ *
+ * <p>Every measurement is passed to the {@link MetricsListener} as soon as it is taken, and all of
+ * them are collected into a {@link BuildApksMetrics} report.
+ *
+ * <p>The memory allocated during a phase is the one of the thread running the phase, plus the one
+ * of the tasks that it runs on executors returned by {@link #measureTasks}. Tasks are measured on
+ * the threads that run them, so their allocations are counted even if these threads die.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class MetricsRecorder {
+
+  private static final MetricsRecorder DISABLED =
+      new MetricsRecorder(MetricsListener.NO_OP, /* enabled= */ false);
+
+  private final MetricsListener listener;
+  private final boolean enabled;
+
+  @GuardedBy("this")
+  private final List<PhaseMetrics> phases = new ArrayList<>();
+
+  @GuardedBy("this")
+  private final List<ApkMetrics> apks = new ArrayList<>();
+
+  /** Bytes allocated by the tasks run through {@link #measureTasks}. */
+  private final LongAdder taskAllocatedBytes = new LongAdder();
+
+  /**
+   * Whether the allocations of the current thread are already measured, by a phase or by an
+   * enclosing task, so that tasks run on the same thread aren't counted twice.
+   */
+  private final ThreadLocal<Boolean> measuringCurrentThread = ThreadLocal.withInitial(() -> false);
+
+  private MetricsRecorder(MetricsListener listener, boolean enabled) {
+    this.listener = checkNotNull(listener);
+    this.enabled = enabled;
+  }
+
+  /** Creates a recorder that notifies the given listener of every measurement. */
+  public static MetricsRecorder create(MetricsListener listener) {
+    return new MetricsRecorder(listener, /* enabled= */ true);
+  }
+
+  /** Returns a recorder that doesn't measure anything, for when nobody consumes the metrics. */
+  public static MetricsRecorder disabled() {
+    return DISABLED;
+  }
+
+  /**
+   * Runs the given work, measuring it as a phase with the given name, and returns its result.
+   *
+   * <p>Phases are measured process-wide, so they are expected to run one after the other.
+   */
+  public <T, E extends Exception> T inPhase(String name, ThrowingSupplier<T, E> work) throws E {
+    Phase phase = startPhase(name);
+    try {
+      return work.get();
+    } finally {
+      phase.finish();
+    }
+  }
+
+  /**
+   * Runs the given work, measuring it as a phase with the given name.
+   *
+   * <p>Phases are measured process-wide, so they are expected to run one after the other.
+   */
+  public <E extends Exception> void inPhase(String name, ThrowingRunnable<E> work) throws E {
+    Phase phase = startPhase(name);
+    try {
+      work.run();
+    } finally {
+      phase.finish();
+    }
+  }
+
+  private Phase startPhase(String name) {
+    if (!enabled) {
+      return new Phase(name, /* start= */ null, /* measuredBefore= */ false);
+    }
+    boolean measuredBefore = measuringCurrentThread.get();
+    measuringCurrentThread.set(true);
+    return new Phase(name, ResourceCounters.ofProcess(taskAllocatedBytes.sum()), measuredBefore);
+  }
+
+  /**
+   * Returns an executor running its tasks on the given one, measuring the memory that they
+   * allocate for the phase during which they run.
+   */
+  public ListeningExecutorService measureTasks(ListeningExecutorService executorService) {
+    return enabled ? new TaskMeasuringExecutorService(executorService) : executorService;
+  }
+
+  /** Starts measuring the serialization of APKs on the current thread. */
+  public ApkSerialization startApkSerialization() {
+    return new ApkSerialization(enabled ? ResourceCounters.ofCurrentThread() : null);
+  }
+
+  /** Returns the report of all the measurements taken so far. */
+  public synchronized BuildApksMetrics getMetrics() {
+    return BuildApksMetrics.newBuilder().addAllPhase(phases).addAllApk(apks).build();
+  }
+
+  /** Writes the report of all the measurements taken so far to the given file, as JSON. */
+  public void writeMetrics(Path outputFile) {
+    try {
+      Files.write(outputFile, JsonFormat.printer().print(getMetrics()).getBytes(UTF_8));
+    } catch (IOException e) {
+      throw new UncheckedIOException(
+          String.format("Error while writing the metrics to '%s'.", outputFile), e);
+    }
+  }
+
+  private void recordPhase(PhaseMetrics phaseMetrics) {
+    synchronized (this) {
+      phases.add(phaseMetrics);
+    }
+    listener.onPhaseFinished(phaseMetrics);
+  }
+
+  private void recordApks(ApkMetrics apkMetrics) {
+    synchronized (this) {
+      apks.add(apkMetrics);
+    }
+    listener.onApksSerialized(apkMetrics);
+  }
+
+  private void runMeasured(Runnable task) {
+    if (measuringCurrentThread.get()) {
+      task.run();
+      return;
+    }
+    measuringCurrentThread.set(true);
+    long startAllocatedBytes = ResourceCounters.getCurrentThreadAllocatedBytes();
+    try {
+      task.run();
+    } finally {
+      taskAllocatedBytes.add(
+          ResourceCounters.getCurrentThreadAllocatedBytes() - startAllocatedBytes);
+      measuringCurrentThread.set(false);
+    }
+  }
+
+  /** Measurement of a phase, recorded when finished. */
+  private final class Phase {
+    private final String name;
+    @Nullable private final ResourceCounters start;
+    private final boolean measuredBefore;
+
+    private Phase(String name, @Nullable ResourceCounters start, boolean measuredBefore) {
+      this.name = name;
+      this.start = start;
+      this.measuredBefore = measuredBefore;
+    }
+
+    void finish() {
+      if (start != null) {
+        ResourceCounters end = ResourceCounters.ofProcess(taskAllocatedBytes.sum());
+        measuringCurrentThread.set(measuredBefore);
+        recordPhase(
+            PhaseMetrics.newBuilder().setName(name).setUsage(end.usageSince(start)).build());
+      }
+    }
+  }
+
+  /** Executor measuring the memory allocated by each task on the thread running it. */
+  private final class TaskMeasuringExecutorService extends AbstractListeningExecutorService {
+    private final ListeningExecutorService delegate;
+
+    private TaskMeasuringExecutorService(ListeningExecutorService delegate) {
+      this.delegate = checkNotNull(delegate);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+      delegate.execute(() -> runMeasured(task));
+    }
+
+    @Override
+    public void shutdown() {
+      delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+      return delegate.awaitTermination(timeout, unit);
+    }
+  }
+
+  /** Measurement of the serialization of APKs, recorded when finished. */
+  public final class ApkSerialization {
+    @Nullable private final ResourceCounters start;
+
+    private ApkSerialization(@Nullable ResourceCounters start) {
+      this.start = start;
+    }
+
+    /** Records the serialization of the given APKs, which must happen on the starting thread. */
+    public void finish(ImmutableList<ApkDescription> apkDescriptions) {
+      if (start != null) {
+        ApkMetrics.Builder apkMetrics =
+            ApkMetrics.newBuilder().setUsage(ResourceCounters.ofCurrentThread().usageSince(start));
+        apkDescriptions.forEach(apkDescription -> apkMetrics.addPath(apkDescription.getPath()));
+        recordApks(apkMetrics.build());
+      }
+    }
+  }
+}
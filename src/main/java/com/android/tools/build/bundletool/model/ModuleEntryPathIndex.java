@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.errorprone.annotations.Immutable;
+import java.util.stream.Stream;
+
+/**
+ * Index of module entries by each of the paths they are under, so that the entries under a given
+ * path can be found without looking at any other entry.
+ *
+ * <p>This is a flattened path trie: every non-root prefix of an entry path is a key, and maps to
+ * the entries under it in the order in which they were indexed.
+ */
+@Immutable
+final class ModuleEntryPathIndex {
+
+  private final ImmutableList<ModuleEntry> allEntries;
+  private final ImmutableListMultimap<ZipPath, ModuleEntry> entriesByPathPrefix;
+
+  private ModuleEntryPathIndex(
+      ImmutableList<ModuleEntry> allEntries,
+      ImmutableListMultimap<ZipPath, ModuleEntry> entriesByPathPrefix) {
+    this.allEntries = allEntries;
+    this.entriesByPathPrefix = entriesByPathPrefix;
+  }
+
+  static ModuleEntryPathIndex create(Iterable<ModuleEntry> entries) {
+    ImmutableListMultimap.Builder<ZipPath, ModuleEntry> entriesByPathPrefix =
+        ImmutableListMultimap.builder();
+    for (ModuleEntry entry : entries) {
+      for (ZipPath path = entry.getPath(); path.getNameCount() > 0; path = path.getParent()) {
+        entriesByPathPrefix.put(path, entry);
+      }
+    }
+    return new ModuleEntryPathIndex(ImmutableList.copyOf(entries), entriesByPathPrefix.build());
+  }
+
+  /**
+   * Returns the entries whose path starts with the given path, in the order in which they were
+   * indexed.
+   */
+  Stream<ModuleEntry> findEntriesUnderPath(ZipPath path) {
+    if (path.getNameCount() == 0) {
+      return allEntries.stream();
+    }
+    return entriesByPathPrefix.get(path).stream();
+  }
+}
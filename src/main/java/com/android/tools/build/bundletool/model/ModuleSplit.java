@@ -547,27 +547,20 @@ public abstract class ModuleSplit {
     return getEntriesByDirectory().get(directory).stream();
   }
 
-  /**
-   * Returns all {@link ModuleEntry} that have a relative module path under a given path.
-   *
-   * <p>Note: Consider using {@link #getEntriesByDirectory()} for performance, unless a recursive
-   * search is truly needed.
-   */
+  /** Returns all {@link ModuleEntry} that have a relative module path under a given path. */
   public Stream<ModuleEntry> findEntriesUnderPath(String path) {
     ZipPath zipPath = ZipPath.create(path);
     return findEntriesUnderPath(zipPath);
   }
 
-  /**
-   * Returns all {@link ModuleEntry} that have a relative module path under a given path.
-   *
-   * <p>Note: Consider using {@link #getEntriesByDirectory()} for performance, unless a recursive
-   * search is truly needed.
-   */
+  /** Returns all {@link ModuleEntry} that have a relative module path under a given path. */
   public Stream<ModuleEntry> findEntriesUnderPath(ZipPath zipPath) {
-    return getEntriesByDirectory().asMap().entrySet().stream()
-        .filter(dirAndEntries -> dirAndEntries.getKey().startsWith(zipPath))
-        .flatMap(dirAndEntries -> dirAndEntries.getValue().stream());
+    return getEntryPathIndex().findEntriesUnderPath(zipPath);
+  }
+
+  @Memoized
+  ModuleEntryPathIndex getEntryPathIndex() {
+    return ModuleEntryPathIndex.create(getEntries());
   }
 
   /** Returns the {@link ModuleEntry} associated with the given path, or empty if not found. */
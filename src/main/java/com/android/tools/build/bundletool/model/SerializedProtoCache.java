@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.protobuf.MessageLite;
+
+/**
+ * Serialized form of protocol buffer messages, computed once per message instance.
+ *
+ * <p>The same message instance is often written many times, e.g. the resource table or the
+ * manifest of a split that is part of several variants. Messages are compared by identity and
+ * weakly referenced, so an entry goes away with its message. The serialized bytes are softly
+ * referenced, so they can be reclaimed under memory pressure and serialized again if needed.
+ *
+ * <p>The returned arrays are shared: they must never be modified nor leak outside of this package.
+ */
+final class SerializedProtoCache {
+
+  private static final LoadingCache<MessageLite, byte[]> SERIALIZED_MESSAGES =
+      CacheBuilder.newBuilder()
+          .weakKeys()
+          .softValues()
+          .build(CacheLoader.from(MessageLite::toByteArray));
+
+  static byte[] toByteArray(MessageLite message) {
+    return SERIALIZED_MESSAGES.getUnchecked(message);
+  }
+
+  // Do not instantiate.
+  private SerializedProtoCache() {}
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.android.bundle.Metrics.Trace;
+import com.android.bundle.Metrics.TraceEvent;
+import com.android.tools.build.bundletool.model.utils.ThrowingRunnable;
+import com.android.tools.build.bundletool.model.utils.ThrowingSupplier;
+import com.google.common.base.Ticker;
+import com.google.protobuf.util.JsonFormat;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Records the spans of work done on each thread, e.g. the steps of serializing an APK, as a {@link
+ * Trace} in the Chrome trace event format.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class TraceRecorder {
+
+  private static final TraceRecorder DISABLED = new TraceRecorder(/* ticker= */ null);
+
+  private static final String COMPLETE_EVENT = "X";
+  private static final String METADATA_EVENT = "M";
+
+  @Nullable private final Ticker ticker;
+  private final long startNanos;
+
+  @GuardedBy("this")
+  private final List<TraceEvent> events = new ArrayList<>();
+
+  @GuardedBy("this")
+  private final Set<Long> namedThreadIds = new HashSet<>();
+
+  private TraceRecorder(@Nullable Ticker ticker) {
+    this.ticker = ticker;
+    this.startNanos = ticker != null ? ticker.read() : 0;
+  }
+
+  /** Creates a recorder whose timestamps are relative to its creation. */
+  public static TraceRecorder create() {
+    return create(Ticker.systemTicker());
+  }
+
+  static TraceRecorder create(Ticker ticker) {
+    return new TraceRecorder(ticker);
+  }
+
+  /** Returns a recorder that doesn't record anything, for when nobody consumes the trace. */
+  public static TraceRecorder disabled() {
+    return DISABLED;
+  }
+
+  /** Runs the given work in a span with the given name, and returns its result. */
+  public <T, E extends Exception> T inSpan(String name, ThrowingSupplier<T, E> work) throws E {
+    Span span = startSpan(name);
+    try {
+      return work.get();
+    } finally {
+      span.close();
+    }
+  }
+
+  /** Runs the given work in a span with the given name. */
+  public <E extends Exception> void inSpan(String name, ThrowingRunnable<E> work) throws E {
+    Span span = startSpan(name);
+    try {
+      work.run();
+    } finally {
+      span.close();
+    }
+  }
+
+  /**
+   * Starts a span on the current thread, until the returned {@link Span} is closed.
+   *
+   * <p>Prefer {@link #inSpan} unless the work adds arguments to the span.
+   */
+  public Span startSpan(String name) {
+    return new Span(name, ticker != null ? ticker.read() : 0);
+  }
+
+  /** Returns the trace of all the spans closed so far. */
+  public synchronized Trace getTrace() {
+    return Trace.newBuilder().addAllTraceEvents(events).build();
+  }
+
+  /** Writes the trace of all the spans closed so far to the given file, as JSON. */
+  public void writeTrace(Path outputFile) {
+    try {
+      // Trace viewers expect every field of an event, even when zero.
+      Files.write(
+          outputFile,
+          JsonFormat.printer().includingDefaultValueFields().print(getTrace()).getBytes(UTF_8));
+    } catch (IOException e) {
+      throw new UncheckedIOException(
+          String.format("Error while writing the trace to '%s'.", outputFile), e);
+    }
+  }
+
+  private void recordSpan(TraceEvent.Builder event, long startNanos, long endNanos) {
+    Thread thread = Thread.currentThread();
+    event
+        .setPh(COMPLETE_EVENT)
+        .setTs(toMicros(startNanos - this.startNanos))
+        .setDur(toMicros(endNanos - startNanos))
+        .setTid((int) thread.getId());
+    synchronized (this) {
+      if (namedThreadIds.add(thread.getId())) {
+        events.add(
+            TraceEvent.newBuilder()
+                .setName("thread_name")
+                .setPh(METADATA_EVENT)
+                .setTid((int) thread.getId())
+                .putArgs("name", thread.getName())
+                .build());
+      }
+      events.add(event.build());
+    }
+  }
+
+  private static double toMicros(long nanos) {
+    return nanos / (double) TimeUnit.MICROSECONDS.toNanos(1);
+  }
+
+  /** Span of work on a thread, recorded when closed on that same thread. */
+  public final class Span implements AutoCloseable {
+    private final TraceEvent.Builder event;
+    private final long startNanos;
+
+    private Span(String name, long startNanos) {
+      this.event = TraceEvent.newBuilder().setName(name);
+      this.startNanos = startNanos;
+    }
+
+    /** Attaches a value to the span, shown next to it by trace viewers. */
+    public Span putArg(String key, String value) {
+      event.putArgs(key, value);
+      return this;
+    }
+
+    @Override
+    public void close() {
+      if (ticker != null) {
+        recordSpan(event, startNanos, ticker.read());
+      }
+    }
+  }
+}
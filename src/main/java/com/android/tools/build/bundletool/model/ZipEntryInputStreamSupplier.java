@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model;
+
+import com.android.tools.build.bundletool.model.utils.files.BufferedIo;
+import com.google.errorprone.annotations.Immutable;
+import com.google.errorprone.annotations.MustBeClosed;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * {@link InputStreamSupplier} of the content of a zip file entry.
+ *
+ * <p>Exposes the entry it reads from, so that writers can copy its compressed data as is instead of
+ * inflating and deflating it again.
+ */
+@Immutable
+public final class ZipEntryInputStreamSupplier implements InputStreamSupplier {
+
+  @SuppressWarnings("Immutable") // The zip file is required to stay unchanged.
+  private final ZipFile zipFile;
+
+  @SuppressWarnings("Immutable") // Never modified.
+  private final ZipEntry zipEntry;
+
+  ZipEntryInputStreamSupplier(ZipFile zipFile, ZipEntry zipEntry) {
+    this.zipFile = zipFile;
+    this.zipEntry = zipEntry;
+  }
+
+  public ZipFile getZipFile() {
+    return zipFile;
+  }
+
+  public ZipEntry getZipEntry() {
+    return zipEntry;
+  }
+
+  @Override
+  @MustBeClosed
+  public InputStream get() throws IOException {
+    return BufferedIo.inputStream(zipFile, zipEntry);
+  }
+}
@@ -18,6 +18,7 @@ package com.android.tools.build.bundletool.model;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 
 import com.google.auto.value.AutoValue;
 import com.google.auto.value.extension.memoized.Memoized;
@@ -26,6 +27,8 @@ import com.google.common.base.Splitter;
 import com.google.common.collect.Comparators;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.errorprone.annotations.Immutable;
 import java.util.Comparator;
 import javax.annotation.CheckReturnValue;
@@ -46,6 +49,12 @@ public abstract class ZipPath implements Comparable<ZipPath> {
   private static final Joiner JOINER = Joiner.on(SEPARATOR);
   private static final ImmutableSet<String> FORBIDDEN_NAMES = ImmutableSet.of("", ".", "..");
 
+  /**
+   * Names are shared between paths, so that the same directory names repeated across thousands of
+   * entries are stored once and compared by reference in most cases.
+   */
+  private static final Interner<String> NAME_INTERNER = Interners.newWeakInterner();
+
   public static final ZipPath ROOT = ZipPath.create("");
 
   // Constructor with restricted visibility to avoid subclassing and ensure immutability.
@@ -60,7 +69,8 @@ public abstract class ZipPath implements Comparable<ZipPath> {
 
   public static ZipPath create(String path) {
     checkNotNull(path, "Path cannot be null.");
-    return create(ImmutableList.copyOf(SPLITTER.splitToList(path)));
+    return create(
+        SPLITTER.splitToList(path).stream().map(NAME_INTERNER::intern).collect(toImmutableList()));
   }
 
   public static ZipPath create(ImmutableList<String> names) {
@@ -176,6 +186,11 @@ public abstract class ZipPath implements Comparable<ZipPath> {
         .compare(getNames(), other.getNames());
   }
 
+  // Paths are used as keys of large maps and hashed repeatedly.
+  @Memoized
+  @Override
+  public abstract int hashCode();
+
   /** Returns the path as used in the zip file. */
   @Override
   public final String toString() {
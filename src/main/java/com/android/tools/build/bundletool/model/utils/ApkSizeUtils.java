@@ -16,20 +16,30 @@
 
 package com.android.tools.build.bundletool.model.utils;
 
+import static com.android.tools.build.bundletool.model.utils.FileNames.APK_SET_SIZES_FILE;
 import static com.android.tools.build.bundletool.model.utils.ZipUtils.calculateGzipCompressedSize;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
+import static com.google.common.util.concurrent.MoreExecutors.newDirectExecutorService;
+import static java.util.function.Function.identity;
 
 import com.android.bundle.Commands.ApkDescription;
 import com.android.bundle.Commands.Variant;
+import com.android.bundle.SizesOuterClass.ApkSetSizes;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.nio.file.Path;
+import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import javax.annotation.WillNotClose;
 
 /** Utils for calculating APK sizes inside APK Sets. */
 public class ApkSizeUtils {
@@ -40,6 +50,20 @@ public class ApkSizeUtils {
    */
   public static ImmutableMap<String, Long> getCompressedSizeByApkPaths(
       ImmutableList<Variant> variants, Path apksArchive) {
+    return getCompressedSizeByApkPaths(variants, apksArchive, newDirectExecutorService());
+  }
+
+  /**
+   * Returns a map of APK Paths inside the APK Set with the sizes, for all APKs in variants
+   * provided.
+   *
+   * <p>Sizes recorded in the APK Set when it was built are returned as is. The sizes of the other
+   * APKs are estimated in parallel on the given executor.
+   */
+  public static ImmutableMap<String, Long> getCompressedSizeByApkPaths(
+      ImmutableList<Variant> variants,
+      Path apksArchive,
+      ListeningExecutorService executorService) {
     ImmutableList<String> apkPaths =
         variants.stream()
             .flatMap(variant -> variant.getApkSetList().stream())
@@ -47,21 +71,52 @@ public class ApkSizeUtils {
             .map(ApkDescription::getPath)
             .distinct()
             .collect(toImmutableList());
-    ImmutableMap.Builder<String, Long> sizeByApkPath = ImmutableMap.builder();
     try (ZipFile apksZip = new ZipFile(apksArchive.toFile())) {
-      for (String apkPath : apkPaths) {
-        ZipEntry entry = checkNotNull(apksZip.getEntry(apkPath));
-        // It's possible that the compressed size is larger than the uncompressed one, but the
-        // smallest APK is the one that is actually served.
-        try (InputStream inputStream = apksZip.getInputStream(entry)) {
-          long size = Math.min(entry.getSize(), calculateGzipCompressedSize(inputStream));
-          sizeByApkPath.put(apkPath, size);
-        }
-      }
+      Map<String, Long> recordedSizeByApkPath =
+          readApkSetSizes(apksZip).getDownloadSizeByApkPathMap();
+      ImmutableMap<String, ListenableFuture<Long>> sizeByApkPath =
+          apkPaths.stream()
+              .collect(
+                  toImmutableMap(
+                      identity(),
+                      apkPath ->
+                          recordedSizeByApkPath.containsKey(apkPath)
+                              ? immediateFuture(recordedSizeByApkPath.get(apkPath))
+                              : executorService.submit(
+                                  () -> calculateDownloadSize(apksZip, apkPath))));
+      // Wait before the archive is closed: the tasks read from it.
+      return ConcurrencyUtils.waitForAll(sizeByApkPath);
     } catch (IOException e) {
       throw new UncheckedIOException(
           String.format("Error while processing the APK Set archive '%s'.", apksArchive), e);
     }
-    return sizeByApkPath.build();
+  }
+
+  /**
+   * Estimates the download size of an APK, given its content and its size on disk.
+   *
+   * <p>It's possible that the compressed size is larger than the uncompressed one, but the
+   * smallest APK is the one that is actually served.
+   */
+  public static long calculateDownloadSize(@WillNotClose InputStream apkContent, long apkSize)
+      throws IOException {
+    return Math.min(apkSize, calculateGzipCompressedSize(apkContent));
+  }
+
+  private static long calculateDownloadSize(ZipFile apksZip, String apkPath) throws IOException {
+    ZipEntry entry = checkNotNull(apksZip.getEntry(apkPath));
+    try (InputStream inputStream = apksZip.getInputStream(entry)) {
+      return calculateDownloadSize(inputStream, entry.getSize());
+    }
+  }
+
+  private static ApkSetSizes readApkSetSizes(ZipFile apksZip) throws IOException {
+    ZipEntry entry = apksZip.getEntry(APK_SET_SIZES_FILE);
+    if (entry == null) {
+      return ApkSetSizes.getDefaultInstance();
+    }
+    try (InputStream inputStream = apksZip.getInputStream(entry)) {
+      return ApkSetSizes.parseFrom(inputStream);
+    }
   }
 }
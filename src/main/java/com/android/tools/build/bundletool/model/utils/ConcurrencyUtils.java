@@ -14,9 +14,10 @@
  * limitations under the License
  */
 
-package com.android.tools.build.bundletool.io;
+package com.android.tools.build.bundletool.model.utils;
 
 import com.android.tools.build.bundletool.model.exceptions.CommandExecutionException;
+import com.android.tools.build.bundletool.model.exceptions.ValidationException;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.Futures;
@@ -29,7 +30,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
 /** Utility methods for working with concurrent code. */
-final class ConcurrencyUtils {
+public final class ConcurrencyUtils {
 
   /** Retrieves results of all futures, if they succeed. If any fails, eagerly throws. */
   public static <T> ImmutableList<T> waitForAll(Iterable<ListenableFuture<T>> futures) {
@@ -53,8 +54,16 @@ final class ConcurrencyUtils {
       } else if (e.getCause() instanceof UncheckedIOException) {
         throw new UncheckedIOException(
             e.getCause().getMessage(), ((UncheckedIOException) e.getCause()).getCause());
+      } else if (e.getCause() instanceof ValidationException) {
+        // Preserve the exact type so that invalid input is reported the same way as when the
+        // failing code runs on the calling thread.
+        throw (ValidationException) e.getCause();
       } else if (e.getCause() instanceof CommandExecutionException) {
         throw new CommandExecutionException(e.getCause().getMessage(), e.getCause());
+      } else if (e.getCause() instanceof IllegalStateException
+          || e.getCause() instanceof IllegalArgumentException) {
+        // Failed preconditions, same as above.
+        throw (RuntimeException) e.getCause();
       } else {
         throw new RuntimeException(e.getMessage(), e);
       }
@@ -25,5 +25,17 @@ public final class FileNames {
    */
   public static final String TABLE_OF_CONTENTS_FILE = "toc.pb";
 
+  /**
+   * Optional file inside of the archive produced by the build-apks command, holding the
+   * precomputed download sizes of the APKs.
+   */
+  public static final String APK_SET_SIZES_FILE = "apk_sizes.pb";
+
+  /**
+   * Optional file inside of the archive produced by the build-apks command, right after the table
+   * of contents, locating the other files of the archive.
+   */
+  public static final String APK_SET_ARCHIVE_INDEX_FILE = "toc.idx";
+
   private FileNames() {}
 }
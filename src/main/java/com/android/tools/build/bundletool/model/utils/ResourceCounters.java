@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model.utils;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.android.bundle.Metrics.ResourceUsage;
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Splitter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Snapshot of cumulative resource counters of the process or of a thread.
+ *
+ * <p>The resources used by a unit of work are the difference between the snapshots taken before
+ * and after it. Counters that the JVM or the operating system don't expose are always zero.
+ */
+@AutoValue
+public abstract class ResourceCounters {
+
+  private static final Path PROCESS_IO_FILE = Paths.get("/proc/self/io");
+  private static final Path THREAD_IO_FILE = Paths.get("/proc/thread-self/io");
+  private static final Splitter IO_LINE_SPLITTER = Splitter.on(':').trimResults().limit(2);
+
+  abstract long getWallTimeNanos();
+
+  abstract long getCpuTimeNanos();
+
+  abstract long getAllocatedBytes();
+
+  abstract long getBytesRead();
+
+  abstract long getBytesWritten();
+
+  private static ResourceCounters create(
+      long wallTimeNanos,
+      long cpuTimeNanos,
+      long allocatedBytes,
+      long bytesRead,
+      long bytesWritten) {
+    return new AutoValue_ResourceCounters(
+        wallTimeNanos, cpuTimeNanos, allocatedBytes, bytesRead, bytesWritten);
+  }
+
+  /**
+   * Takes a snapshot of the counters of the whole process, except for the allocated bytes: only
+   * those of the current thread are counted, plus {@code otherThreadsAllocatedBytes}.
+   *
+   * <p>The JVM only reports the allocations of live threads, so the allocations of other threads
+   * have to be accumulated by the caller as they happen, e.g. per task.
+   */
+  public static ResourceCounters ofProcess(long otherThreadsAllocatedBytes) {
+    long wallTimeNanos = System.nanoTime();
+    OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+    long cpuTimeNanos =
+        osBean instanceof com.sun.management.OperatingSystemMXBean
+            ? ((com.sun.management.OperatingSystemMXBean) osBean).getProcessCpuTime()
+            : 0;
+    long allocatedBytes = getCurrentThreadAllocatedBytes() + otherThreadsAllocatedBytes;
+    long[] io = readIoCounters(PROCESS_IO_FILE);
+    return create(wallTimeNanos, Math.max(cpuTimeNanos, 0), allocatedBytes, io[0], io[1]);
+  }
+
+  /** Takes a snapshot of the counters of the current thread. */
+  public static ResourceCounters ofCurrentThread() {
+    long wallTimeNanos = System.nanoTime();
+    ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    long cpuTimeNanos =
+        threadBean.isCurrentThreadCpuTimeSupported() && threadBean.isThreadCpuTimeEnabled()
+            ? threadBean.getCurrentThreadCpuTime()
+            : 0;
+    long[] io = readIoCounters(THREAD_IO_FILE);
+    return create(
+        wallTimeNanos,
+        Math.max(cpuTimeNanos, 0),
+        getCurrentThreadAllocatedBytes(),
+        io[0],
+        io[1]);
+  }
+
+  /** Returns the bytes allocated so far by the current thread, or zero if not supported. */
+  public static long getCurrentThreadAllocatedBytes() {
+    ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    return isAllocationCounterEnabled(threadBean)
+        ? ((com.sun.management.ThreadMXBean) threadBean)
+            .getThreadAllocatedBytes(Thread.currentThread().getId())
+        : 0;
+  }
+
+  /** Returns the resources used between the {@code start} snapshot and this one. */
+  public ResourceUsage usageSince(ResourceCounters start) {
+    return ResourceUsage.newBuilder()
+        .setWallTimeMicros(NANOSECONDS.toMicros(getWallTimeNanos() - start.getWallTimeNanos()))
+        .setCpuTimeMicros(NANOSECONDS.toMicros(getCpuTimeNanos() - start.getCpuTimeNanos()))
+        .setAllocatedBytes(getAllocatedBytes() - start.getAllocatedBytes())
+        .setBytesRead(getBytesRead() - start.getBytesRead())
+        .setBytesWritten(getBytesWritten() - start.getBytesWritten())
+        .build();
+  }
+
+  private static boolean isAllocationCounterEnabled(ThreadMXBean threadBean) {
+    return threadBean instanceof com.sun.management.ThreadMXBean
+        && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemoryEnabled();
+  }
+
+  /**
+   * Reads the characters read and written through system calls from a Linux "io" file in /proc.
+   *
+   * <p>Returns zeros if the file doesn't exist or can't be read.
+   */
+  private static long[] readIoCounters(Path ioFile) {
+    long[] counters = new long[2];
+    if (!Files.isReadable(ioFile)) {
+      return counters;
+    }
+    try {
+      for (String line : Files.readAllLines(ioFile, UTF_8)) {
+        List<String> keyAndValue = IO_LINE_SPLITTER.splitToList(line);
+        if (keyAndValue.size() != 2) {
+          continue;
+        }
+        if (keyAndValue.get(0).equals("rchar")) {
+          counters[0] = Long.parseLong(keyAndValue.get(1));
+        } else if (keyAndValue.get(0).equals("wchar")) {
+          counters[1] = Long.parseLong(keyAndValue.get(1));
+        }
+      }
+    } catch (IOException | NumberFormatException e) {
+      return new long[2];
+    }
+    return counters;
+  }
+}
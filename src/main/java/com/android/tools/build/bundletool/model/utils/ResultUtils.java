@@ -24,11 +24,13 @@ import com.android.bundle.Commands.ApkDescription;
 import com.android.bundle.Commands.ApkSet;
 import com.android.bundle.Commands.BuildApksResult;
 import com.android.bundle.Commands.Variant;
+import com.android.tools.build.bundletool.model.ApkSetArchiveIndex;
 import com.android.tools.build.bundletool.model.BundleModuleName;
 import com.android.tools.build.bundletool.model.utils.files.BufferedIo;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Streams;
+import com.google.common.io.MoreFiles;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -36,6 +38,7 @@ import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Optional;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -57,6 +60,19 @@ public final class ResultUtils {
 
   private static BuildApksResult readTableOfContentFromApksArchive(Path apksArchivePath)
       throws IOException {
+    // With the indexed layout, the table of contents is read without opening the whole archive.
+    Optional<ApkSetArchiveIndex.Entry> tocLocation =
+        ApkSetArchiveIndex.readFromApkSet(apksArchivePath)
+            .flatMap(index -> index.findEntry(TABLE_OF_CONTENTS_FILE));
+    if (tocLocation.isPresent()) {
+      try (InputStream tocStream =
+          MoreFiles.asByteSource(apksArchivePath)
+              .slice(tocLocation.get().getOffset(), tocLocation.get().getLength())
+              .openBufferedStream()) {
+        return BuildApksResult.parseFrom(tocStream);
+      }
+    }
+
     try (ZipFile apksArchive = new ZipFile(apksArchivePath.toFile());
         InputStream tocStream =
             BufferedIo.inputStream(apksArchive, new ZipEntry(TABLE_OF_CONTENTS_FILE))) {
@@ -130,7 +130,7 @@ public class SplitsXmlInjector {
                 .add(
                     ModuleEntry.builder()
                         .setPath(resourcePath)
-                        .setContentSupplier(InputStreamSuppliers.fromBytes(xmlNode.toByteArray()))
+                        .setContentSupplier(InputStreamSuppliers.fromProto(xmlNode))
                         .build())
                 .build())
         .setAndroidManifest(
@@ -0,0 +1,27 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model.utils;
+
+/**
+ * A {@link Runnable} that may throw a checked exception of type {@code E}.
+ *
+ * <p>Lets code that throws checked exceptions run inside helpers such as {@link
+ * com.android.tools.build.bundletool.model.MetricsRecorder#inPhase}.
+ */
+public interface ThrowingRunnable<E extends Exception> {
+  void run() throws E;
+}
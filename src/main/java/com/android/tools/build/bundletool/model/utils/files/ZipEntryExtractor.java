@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model.utils.files;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.android.tools.build.bundletool.model.utils.files.ZipHeaderReader.CentralDirectoryEntry;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Extracts entries of a zip file to disk.
+ *
+ * <p>Entries stored without compression are copied with {@link FileChannel#transferTo}, straight
+ * from their byte range in the zip file, which avoids copying the data through user space. Other
+ * entries, and all entries of zip files using features that aren't supported here (ZIP64,
+ * encryption), are decompressed through a {@link ZipFile}.
+ *
+ * <p>Extraction is thread-safe: different entries can be extracted concurrently.
+ */
+public final class ZipEntryExtractor implements Closeable {
+
+  private final ZipFile zipFile;
+  private final FileChannel zipChannel;
+  /** Uncompressed entries by name. */
+  private final ImmutableMap<String, CentralDirectoryEntry> storedEntries;
+
+  private ZipEntryExtractor(ZipFile zipFile, FileChannel zipChannel) throws IOException {
+    this.zipFile = zipFile;
+    this.zipChannel = zipChannel;
+    this.storedEntries = readStoredEntries(zipChannel);
+  }
+
+  /** Opens the given zip file. The returned extractor must be closed. */
+  public static ZipEntryExtractor open(Path zipPath) throws IOException {
+    ZipFile zipFile = new ZipFile(zipPath.toFile());
+    try {
+      return new ZipEntryExtractor(zipFile, FileChannel.open(zipPath, StandardOpenOption.READ));
+    } catch (IOException | RuntimeException e) {
+      zipFile.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Writes the uncompressed content of the given entry to the destination file, replacing it if it
+   * exists.
+   */
+  public void extract(String entryName, Path destination) throws IOException {
+    CentralDirectoryEntry storedEntry = storedEntries.get(entryName);
+    if (storedEntry != null) {
+      transferStoredEntry(storedEntry, destination);
+      return;
+    }
+
+    ZipEntry entry = zipFile.getEntry(entryName);
+    checkArgument(entry != null, "Entry '%s' not found in the zip file.", entryName);
+    try (InputStream inputStream = BufferedIo.inputStream(zipFile, entry);
+        OutputStream outputStream = BufferedIo.outputStream(destination)) {
+      ByteStreams.copy(inputStream, outputStream);
+    }
+  }
+
+  /** Returns whether the given entry is extracted without going through a decompressor. */
+  boolean isTransferredDirectly(String entryName) {
+    return storedEntries.containsKey(entryName);
+  }
+
+  private void transferStoredEntry(CentralDirectoryEntry storedEntry, Path destination)
+      throws IOException {
+    long dataOffset =
+        ZipHeaderReader.readLocalFileHeader(zipChannel, storedEntry.getLocalHeaderOffset())
+            .orElseThrow(
+                () ->
+                    new ZipException(
+                        String.format(
+                            "Invalid local file header for entry '%s'.", storedEntry.getName())))
+            .getDataOffset();
+    long size = storedEntry.getUncompressedSize();
+
+    try (FileChannel outputChannel =
+        FileChannel.open(
+            destination,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      long transferred = 0;
+      while (transferred < size) {
+        long count =
+            zipChannel.transferTo(dataOffset + transferred, size - transferred, outputChannel);
+        if (count <= 0) {
+          throw new EOFException(
+              String.format("Unexpected end of data for entry '%s'.", storedEntry.getName()));
+        }
+        transferred += count;
+      }
+    }
+  }
+
+  /**
+   * Reads the central directory and returns the entries that can be transferred directly, or no
+   * entry at all if the zip file uses a format this class doesn't handle.
+   */
+  private static ImmutableMap<String, CentralDirectoryEntry> readStoredEntries(
+      FileChannel channel) throws IOException {
+    return ImmutableMap.copyOf(
+        Maps.filterValues(
+            ZipHeaderReader.readCentralDirectory(channel),
+            entry ->
+                entry.getCompressionMethod() == ZipEntry.STORED
+                    && !entry.isEncrypted()
+                    && entry.getCompressedSize() == entry.getUncompressedSize()));
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      zipChannel.close();
+    } finally {
+      zipFile.close();
+    }
+  }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model.utils.files;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableMap;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Reads the central directory and the local file headers of a zip file, so that the data of its
+ * entries can be located without going through a {@link java.util.zip.ZipFile}.
+ *
+ * <p>ZIP64 isn't supported: zip files whose central directory needs it have no entry, and entries
+ * whose sizes or offset need it are left out of the central directory.
+ *
+ * <p>All reads are positional, so they don't change the position of the channel and can run
+ * concurrently.
+ */
+public final class ZipHeaderReader {
+
+  private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+  private static final int MAX_ZIP_COMMENT_SIZE = 0xffff;
+  private static final int CENTRAL_DIRECTORY_HEADER_SIGNATURE = 0x02014b50;
+  private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+  private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+  private static final int LOCAL_FILE_HEADER_SIZE = 30;
+  private static final int ZIP64_MARKER = 0xffffffff;
+
+  /** General purpose flag set when the entry is encrypted. */
+  public static final int ENCRYPTED_FLAG = 0x1;
+
+  /** General purpose flag set when the sizes of the entry follow its data. */
+  public static final int DATA_DESCRIPTOR_FLAG = 0x8;
+
+  /**
+   * Reads the central directory and returns its entries by name, in the order of the central
+   * directory, or no entry at all if the file isn't a zip file this class can read.
+   */
+  public static ImmutableMap<String, CentralDirectoryEntry> readCentralDirectory(
+      FileChannel channel) throws IOException {
+    long fileSize = channel.size();
+    int tailSize = (int) Math.min(fileSize, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_ZIP_COMMENT_SIZE);
+    ByteBuffer tail = readFully(channel, fileSize - tailSize, tailSize);
+
+    int eocdPosition = -1;
+    for (int i = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+      if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+        eocdPosition = i;
+        break;
+      }
+    }
+    if (eocdPosition < 0) {
+      return ImmutableMap.of();
+    }
+
+    int centralDirectorySize = tail.getInt(eocdPosition + 12);
+    int centralDirectoryOffset = tail.getInt(eocdPosition + 16);
+    if (centralDirectorySize == ZIP64_MARKER || centralDirectoryOffset == ZIP64_MARKER) {
+      return ImmutableMap.of();
+    }
+    ByteBuffer centralDirectory =
+        readFully(
+            channel,
+            Integer.toUnsignedLong(centralDirectoryOffset),
+            Integer.toUnsignedLong(centralDirectorySize));
+
+    Map<String, CentralDirectoryEntry> entries = new LinkedHashMap<>();
+    int position = 0;
+    while (position + CENTRAL_DIRECTORY_HEADER_SIZE <= centralDirectory.limit()) {
+      if (centralDirectory.getInt(position) != CENTRAL_DIRECTORY_HEADER_SIGNATURE) {
+        return ImmutableMap.of();
+      }
+      int flags = Short.toUnsignedInt(centralDirectory.getShort(position + 8));
+      int compressionMethod = Short.toUnsignedInt(centralDirectory.getShort(position + 10));
+      int compressedSize = centralDirectory.getInt(position + 20);
+      int uncompressedSize = centralDirectory.getInt(position + 24);
+      int nameLength = Short.toUnsignedInt(centralDirectory.getShort(position + 28));
+      int extraLength = Short.toUnsignedInt(centralDirectory.getShort(position + 30));
+      int commentLength = Short.toUnsignedInt(centralDirectory.getShort(position + 32));
+      int localHeaderOffset = centralDirectory.getInt(position + 42);
+
+      byte[] name = new byte[nameLength];
+      centralDirectory.position(position + CENTRAL_DIRECTORY_HEADER_SIZE);
+      centralDirectory.get(name);
+
+      if (compressedSize != ZIP64_MARKER
+          && uncompressedSize != ZIP64_MARKER
+          && localHeaderOffset != ZIP64_MARKER) {
+        String entryName = new String(name, UTF_8);
+        entries.put(
+            entryName,
+            new AutoValue_ZipHeaderReader_CentralDirectoryEntry(
+                entryName,
+                flags,
+                compressionMethod,
+                Integer.toUnsignedLong(compressedSize),
+                Integer.toUnsignedLong(uncompressedSize),
+                Integer.toUnsignedLong(localHeaderOffset)));
+      }
+      position += CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength;
+    }
+    return ImmutableMap.copyOf(entries);
+  }
+
+  /**
+   * Reads the local file header at the given offset, or returns an empty {@link Optional} if there
+   * is no local file header at that offset.
+   */
+  public static Optional<LocalFileHeader> readLocalFileHeader(FileChannel channel, long offset)
+      throws IOException {
+    if (channel.size() < offset + LOCAL_FILE_HEADER_SIZE) {
+      return Optional.empty();
+    }
+    ByteBuffer header = readFully(channel, offset, LOCAL_FILE_HEADER_SIZE);
+    int nameLength = Short.toUnsignedInt(header.getShort(26));
+    int extraLength = Short.toUnsignedInt(header.getShort(28));
+    if (header.getInt(0) != LOCAL_FILE_HEADER_SIGNATURE
+        || channel.size() < offset + LOCAL_FILE_HEADER_SIZE + nameLength + extraLength) {
+      return Optional.empty();
+    }
+    ByteBuffer name = readFully(channel, offset + LOCAL_FILE_HEADER_SIZE, nameLength);
+    return Optional.of(
+        new AutoValue_ZipHeaderReader_LocalFileHeader(
+            new String(name.array(), UTF_8),
+            Short.toUnsignedInt(header.getShort(6)),
+            Short.toUnsignedInt(header.getShort(8)),
+            header.getInt(18) == ZIP64_MARKER
+                ? Optional.empty()
+                : Optional.of(Integer.toUnsignedLong(header.getInt(18))),
+            offset + LOCAL_FILE_HEADER_SIZE + nameLength + extraLength));
+  }
+
+  /** Reads the given byte range of the channel into a little-endian buffer. */
+  public static ByteBuffer readFully(FileChannel channel, long offset, long length)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(length)).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, offset + buffer.position()) < 0) {
+        throw new EOFException("Unexpected end of the zip file.");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /** Entry of the central directory of a zip file. */
+  @AutoValue
+  public abstract static class CentralDirectoryEntry {
+    public abstract String getName();
+
+    public abstract int getFlags();
+
+    public abstract int getCompressionMethod();
+
+    public abstract long getCompressedSize();
+
+    public abstract long getUncompressedSize();
+
+    public abstract long getLocalHeaderOffset();
+
+    public boolean isEncrypted() {
+      return (getFlags() & ENCRYPTED_FLAG) != 0;
+    }
+  }
+
+  /** Local file header of an entry of a zip file. */
+  @AutoValue
+  public abstract static class LocalFileHeader {
+    public abstract String getName();
+
+    public abstract int getFlags();
+
+    public abstract int getCompressionMethod();
+
+    /**
+     * Compressed size of the entry, or an empty {@link Optional} if it is only in the ZIP64 extra
+     * field.
+     *
+     * <p>The size is 0 if the entry has a data descriptor, see {@link #DATA_DESCRIPTOR_FLAG}.
+     */
+    public abstract Optional<Long> getCompressedSize();
+
+    /** Offset of the data of the entry from the start of the zip file. */
+    public abstract long getDataOffset();
+  }
+
+  private ZipHeaderReader() {}
+}
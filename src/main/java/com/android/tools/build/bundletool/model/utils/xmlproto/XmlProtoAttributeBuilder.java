@@ -31,7 +31,7 @@ public final class XmlProtoAttributeBuilder
 
   private final XmlAttribute.Builder attribute;
 
-  XmlProtoAttributeBuilder(XmlAttribute.Builder attribute) {
+  public XmlProtoAttributeBuilder(XmlAttribute.Builder attribute) {
     this.attribute = checkNotNull(attribute);
   }
 
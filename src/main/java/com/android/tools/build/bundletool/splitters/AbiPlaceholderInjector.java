@@ -64,7 +64,7 @@ public class AbiPlaceholderInjector {
             BundleModule.LIB_DIRECTORY
                 .resolve(AbiName.fromProto(abi.getAlias()).getPlatformName())
                 .resolve("libplaceholder.so"))
-        .setContentSupplier(InputStreamSuppliers.fromBytes(new byte[0]))
+        .setContentSupplier(InputStreamSuppliers.fromBytesNoCopy(new byte[0]))
         .build();
   }
 }
@@ -16,8 +16,13 @@
 
 package com.android.tools.build.bundletool.splitters;
 
+import static com.android.tools.build.bundletool.model.utils.ConcurrencyUtils.waitForAll;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static com.google.common.util.concurrent.MoreExecutors.newDirectExecutorService;
+import static java.util.function.Function.identity;
 
 import com.android.aapt.Resources.CompoundValue;
 import com.android.aapt.Resources.ConfigValue;
@@ -30,32 +35,56 @@ import com.android.aapt.Resources.XmlElement;
 import com.android.aapt.Resources.XmlNode;
 import com.android.tools.build.bundletool.model.AppBundle;
 import com.android.tools.build.bundletool.model.BundleModule;
+import com.android.tools.build.bundletool.model.BundleModuleName;
 import com.android.tools.build.bundletool.model.ResourceId;
 import com.android.tools.build.bundletool.model.ResourceTableEntry;
 import com.android.tools.build.bundletool.model.ZipPath;
 import com.android.tools.build.bundletool.model.exceptions.ValidationException;
 import com.android.tools.build.bundletool.model.utils.ResourcesUtils;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.protobuf.InvalidProtocolBufferException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
-import java.util.ArrayDeque;
 import java.util.HashSet;
-import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Stream;
 
-/** Provides insights into resources of an app. */
+/**
+ * Provides insights into resources of an app.
+ *
+ * <p>The analysis can run in parallel on an executor. XML files referenced from the resource table
+ * are parsed at most once per analyzer, however many resources reference them.
+ */
 public class ResourceAnalyzer {
 
   private final AppBundle appBundle;
   private final ResourceIndex resourceIndex;
+  private final ListeningExecutorService executorService;
+
+  /** Resources referenced from each XML file, indexed by module name and path of the file. */
+  private final ImmutableMap<
+          BundleModuleName, ConcurrentMap<ZipPath, Supplier<ImmutableSet<ResourceId>>>>
+      xmlFileReferences;
 
   public ResourceAnalyzer(AppBundle appBundle) {
+    this(appBundle, newDirectExecutorService());
+  }
+
+  public ResourceAnalyzer(AppBundle appBundle, ListeningExecutorService executorService) {
     this.appBundle = appBundle;
     this.resourceIndex = new ResourceIndex(appBundle);
+    this.executorService = executorService;
+    this.xmlFileReferences =
+        appBundle.getFeatureModules().keySet().stream()
+            .collect(toImmutableMap(identity(), moduleName -> new ConcurrentHashMap<>()));
   }
 
   /**
@@ -75,44 +104,67 @@ public class ResourceAnalyzer {
     return transitiveClosure(resourceIdsInBaseManifest);
   }
 
-  private ImmutableSet<ResourceId> transitiveClosure(ImmutableSet<ResourceId> anchorResources)
-      throws IOException {
+  /**
+   * Explores the reference graph breadth-first, inspecting all resources discovered at the same
+   * depth in parallel.
+   */
+  private ImmutableSet<ResourceId> transitiveClosure(ImmutableSet<ResourceId> anchorResources) {
     Set<ResourceId> referencedResources = new HashSet<>();
 
-    Queue<ResourceId> resourcesToInspect = new ArrayDeque<>();
-    resourcesToInspect.addAll(anchorResources);
-
+    ImmutableSet<ResourceId> resourcesToInspect =
+        newAppResources(anchorResources.stream(), referencedResources);
     while (!resourcesToInspect.isEmpty()) {
-      ResourceId resourceId = resourcesToInspect.remove();
-      if (referencedResources.contains(resourceId)
-          || !resourceIndex.isResourceFromApp(resourceId)) {
-        continue;
-      }
-      referencedResources.add(resourceId);
-
-      ResourceTableEntry resourceEntry = resourceIndex.getEntryForResourceId(resourceId);
-      BundleModule module = resourceIndex.getModuleForResourceId(resourceId);
-      for (ConfigValue configValue : resourceEntry.getEntry().getConfigValueList()) {
-        switch (configValue.getValue().getValueCase()) {
-          case ITEM:
-            Item item = configValue.getValue().getItem();
-            resourcesToInspect.addAll(findAllReferencedAppResources(item, module));
-            break;
-
-          case COMPOUND_VALUE:
-            CompoundValue compoundValue = configValue.getValue().getCompoundValue();
-            resourcesToInspect.addAll(findAllReferencedAppResources(compoundValue, module));
-            break;
-
-          case VALUE_NOT_SET:
-            // Do nothing
-        }
-      }
+      referencedResources.addAll(resourcesToInspect);
+
+      ImmutableList<ImmutableSet<ResourceId>> referencesOfInspectedResources =
+          waitForAll(
+              resourcesToInspect.stream()
+                  .map(
+                      resourceId ->
+                          executorService.submit(() -> findAllReferencedAppResources(resourceId)))
+                  .collect(toImmutableList()));
+
+      resourcesToInspect =
+          newAppResources(
+              referencesOfInspectedResources.stream().flatMap(Set::stream), referencedResources);
     }
 
     return ImmutableSet.copyOf(referencedResources);
   }
 
+  private ImmutableSet<ResourceId> newAppResources(
+      Stream<ResourceId> resourceIds, Set<ResourceId> alreadyFound) {
+    return resourceIds
+        .filter(resourceId -> !alreadyFound.contains(resourceId))
+        .filter(resourceIndex::isResourceFromApp)
+        .collect(toImmutableSet());
+  }
+
+  private ImmutableSet<ResourceId> findAllReferencedAppResources(ResourceId resourceId)
+      throws IOException {
+    ResourceTableEntry resourceEntry = resourceIndex.getEntryForResourceId(resourceId);
+    BundleModule module = resourceIndex.getModuleForResourceId(resourceId);
+
+    ImmutableSet.Builder<ResourceId> referencedResources = ImmutableSet.builder();
+    for (ConfigValue configValue : resourceEntry.getEntry().getConfigValueList()) {
+      switch (configValue.getValue().getValueCase()) {
+        case ITEM:
+          Item item = configValue.getValue().getItem();
+          referencedResources.addAll(findAllReferencedAppResources(item, module));
+          break;
+
+        case COMPOUND_VALUE:
+          CompoundValue compoundValue = configValue.getValue().getCompoundValue();
+          referencedResources.addAll(findAllReferencedAppResources(compoundValue, module));
+          break;
+
+        case VALUE_NOT_SET:
+          // Do nothing
+      }
+    }
+    return referencedResources.build();
+  }
+
   private ImmutableSet<ResourceId> findAllReferencedAppResources(
       XmlNode xmlRoot, BundleModule module) {
     return getAllAttributesRecursively(xmlRoot.getElement())
@@ -138,22 +190,7 @@ public class ResourceAnalyzer {
         if (!fileRef.getType().equals(FileReference.Type.PROTO_XML)) {
           return ImmutableSet.of();
         }
-        ZipPath xmlResourcePath = ZipPath.create(fileRef.getPath());
-        try (InputStream is = module.getEntry(xmlResourcePath).get().getContent()) {
-          XmlNode xmlRoot = XmlNode.parseFrom(is);
-          return findAllReferencedAppResources(xmlRoot, module);
-        } catch (InvalidProtocolBufferException e) {
-          throw ValidationException.builder()
-              .withMessage("Error parsing XML file '%s'.", xmlResourcePath)
-              .withCause(e)
-              .build();
-        } catch (IOException e) {
-          throw new UncheckedIOException(
-              String.format(
-                  "Failed to parse file '%s' in module '%s'.",
-                  xmlResourcePath, module.getName().getName()),
-              e);
-        }
+        return findAllReferencedAppResources(ZipPath.create(fileRef.getPath()), module);
 
       default:
         break;
@@ -162,6 +199,37 @@ public class ResourceAnalyzer {
     return ImmutableSet.of();
   }
 
+  /** Returns the resources referenced from the given XML file, parsing the file only once. */
+  private ImmutableSet<ResourceId> findAllReferencedAppResources(
+      ZipPath xmlResourcePath, BundleModule module) {
+    ConcurrentMap<ZipPath, Supplier<ImmutableSet<ResourceId>>> referencesByPath =
+        xmlFileReferences.get(module.getName());
+    Supplier<ImmutableSet<ResourceId>> references =
+        Suppliers.memoize(() -> parseAndFindAllReferencedAppResources(xmlResourcePath, module));
+    Supplier<ImmutableSet<ResourceId>> existingReferences =
+        referencesByPath.putIfAbsent(xmlResourcePath, references);
+    return (existingReferences != null ? existingReferences : references).get();
+  }
+
+  private ImmutableSet<ResourceId> parseAndFindAllReferencedAppResources(
+      ZipPath xmlResourcePath, BundleModule module) {
+    try (InputStream is = module.getEntry(xmlResourcePath).get().getContent()) {
+      XmlNode xmlRoot = XmlNode.parseFrom(is);
+      return findAllReferencedAppResources(xmlRoot, module);
+    } catch (InvalidProtocolBufferException e) {
+      throw ValidationException.builder()
+          .withMessage("Error parsing XML file '%s'.", xmlResourcePath)
+          .withCause(e)
+          .build();
+    } catch (IOException e) {
+      throw new UncheckedIOException(
+          String.format(
+              "Failed to parse file '%s' in module '%s'.",
+              xmlResourcePath, module.getName().getName()),
+          e);
+    }
+  }
+
   private ImmutableSet<ResourceId> findAllReferencedAppResources(
       CompoundValue compoundValue, BundleModule module) throws IOException {
     switch (compoundValue.getValueCase()) {
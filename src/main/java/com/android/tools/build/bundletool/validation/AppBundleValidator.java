@@ -16,10 +16,13 @@
 
 package com.android.tools.build.bundletool.validation;
 
+import static com.google.common.util.concurrent.MoreExecutors.newDirectExecutorService;
+
 import com.android.tools.build.bundletool.model.AppBundle;
 import com.android.tools.build.bundletool.model.exceptions.ValidationException;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import java.util.zip.ZipFile;
 
 /** Validates the files and configuration for the bundle. */
@@ -93,6 +96,35 @@ public class AppBundleValidator {
     new ValidatorRunner(allBundleFileSubValidators).validateBundleZipFile(bundleFile);
   }
 
+  /**
+   * Validates the given App Bundle zip file and the App Bundle it contains.
+   *
+   * <p>Equivalent to calling {@link #validateFile(ZipFile)}, {@link AppBundle#buildFromZip(ZipFile)}
+   * and {@link #validate(AppBundle)} in sequence, except that the zip entries are validated while
+   * the modules are being read instead of in a separate pass over the bundle.
+   *
+   * @return the validated App Bundle
+   * @throws ValidationException If the bundle is invalid.
+   */
+  public AppBundle validateAndBuildFromZip(ZipFile bundleFile) {
+    return validateAndBuildFromZip(bundleFile, newDirectExecutorService());
+  }
+
+  /**
+   * Validates the given App Bundle zip file and the App Bundle it contains, building the modules
+   * in parallel on the given executor.
+   *
+   * @see #validateAndBuildFromZip(ZipFile)
+   */
+  public AppBundle validateAndBuildFromZip(
+      ZipFile bundleFile, ListeningExecutorService executorService) {
+    AppBundle bundle =
+        new ValidatorRunner(allBundleFileSubValidators)
+            .validateBundleZipFileAndBuildBundle(bundleFile, executorService);
+    validate(bundle);
+    return bundle;
+  }
+
   /**
    * Validates the given App Bundle.
    *
@@ -16,8 +16,10 @@
 
 package com.android.tools.build.bundletool.validation;
 
+import static com.android.tools.build.bundletool.model.utils.ConcurrencyUtils.waitForAll;
 import static com.google.common.base.Predicates.not;
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.util.concurrent.MoreExecutors.newDirectExecutorService;
 
 import com.android.bundle.Config.BundleConfig;
 import com.android.bundle.Config.Bundletool;
@@ -29,6 +31,7 @@ import com.android.tools.build.bundletool.model.ZipPath;
 import com.android.tools.build.bundletool.model.version.BundleToolVersion;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.util.zip.ZipEntry;
@@ -77,12 +80,29 @@ public class BundleModulesValidator {
           .build();
 
   public ImmutableList<BundleModule> validate(ImmutableList<ZipFile> moduleZips) {
-    for (ZipFile moduleZip : moduleZips) {
-      new ValidatorRunner(MODULE_FILE_SUB_VALIDATORS).validateModuleZipFile(moduleZip);
-    }
+    return validate(moduleZips, newDirectExecutorService());
+  }
 
+  /**
+   * Validates the given module zip files and builds the modules out of them.
+   *
+   * <p>Each module zip file is validated and parsed as a separate task on the given executor. The
+   * validations spanning several modules run once all the modules are built.
+   */
+  public ImmutableList<BundleModule> validate(
+      ImmutableList<ZipFile> moduleZips, ListeningExecutorService executorService) {
     ImmutableList<BundleModule> modules =
-        moduleZips.stream().map(this::toBundleModule).collect(toImmutableList());
+        waitForAll(
+            moduleZips.stream()
+                .map(
+                    moduleZip ->
+                        executorService.submit(
+                            () -> {
+                              new ValidatorRunner(MODULE_FILE_SUB_VALIDATORS)
+                                  .validateModuleZipFile(moduleZip);
+                              return toBundleModule(moduleZip);
+                            }))
+                .collect(toImmutableList()));
 
     new ValidatorRunner(MODULES_SUB_VALIDATORS).validateBundleModules(modules);
 
@@ -23,6 +23,7 @@ import com.android.tools.build.bundletool.model.BundleModule;
 import com.android.tools.build.bundletool.model.ModuleEntry;
 import com.android.tools.build.bundletool.model.ZipPath;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import java.util.Enumeration;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -48,6 +49,24 @@ public class ValidatorRunner {
     }
   }
 
+  /**
+   * Validates the given App Bundle zip file and builds the {@link AppBundle} from it.
+   *
+   * <p>Performs the same checks as {@link #validateBundleZipFile(ZipFile)}, but the zip entries are
+   * validated while the modules are being read, so that the bundle is traversed only once. The
+   * modules are built on the given executor.
+   */
+  public AppBundle validateBundleZipFileAndBuildBundle(
+      ZipFile bundleFile, ListeningExecutorService executorService) {
+    subValidators.forEach(subValidator -> subValidator.validateBundleZipFile(bundleFile));
+    return AppBundle.buildFromZip(
+        bundleFile,
+        zipEntry ->
+            subValidators.forEach(
+                subValidator -> subValidator.validateBundleZipEntry(bundleFile, zipEntry)),
+        executorService);
+  }
+
   /** Validates the given App Bundle module zip file. */
   public void validateModuleZipFile(ZipFile moduleFile) {
     subValidators.forEach(subValidator -> subValidator.validateModuleZipFile(moduleFile));
@@ -144,7 +144,7 @@ public final class XmlProtoToXmlConverter {
    * <p>Because the XML spec doesn't allow empty tags, if the tag is not set in the proto, we return
    * the resource ID if set, else "_unknown_".
    */
-  private static String getAttributeTagName(XmlProtoAttribute protoAttribute) {
+  static String getAttributeTagName(XmlProtoAttribute protoAttribute) {
     if (!protoAttribute.getName().isEmpty()) {
       return protoAttribute.getName();
     }
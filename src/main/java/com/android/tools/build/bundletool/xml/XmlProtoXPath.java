@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.xml;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static java.util.function.Function.identity;
+
+import com.android.tools.build.bundletool.model.utils.xmlproto.XmlProtoAttribute;
+import com.android.tools.build.bundletool.model.utils.xmlproto.XmlProtoElement;
+import com.android.tools.build.bundletool.model.utils.xmlproto.XmlProtoNode;
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.errorprone.annotations.Immutable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * XPath expression evaluated directly against an {@link XmlProtoNode}, without converting it to a
+ * DOM document first.
+ *
+ * <p>Only the expressions commonly used to extract attribute values are supported: absolute
+ * location paths of child ({@code /}) and descendant ({@code //}) steps selecting elements by name
+ * or with {@code *}, each optionally filtered on the value of an attribute (e.g. {@code
+ * [@android:name='key']}), and ending with an attribute step (e.g. {@code /@android:versionCode}).
+ * Other expressions must be evaluated with {@link XPathResolver}.
+ *
+ * <p>The values returned are the same as the ones {@link XPathResolver} selects in the document
+ * created by {@link XmlProtoToXmlConverter}.
+ */
+@Immutable
+public final class XmlProtoXPath {
+
+  private static final String NAME = "[A-Za-z_][\\w.-]*";
+  private static final String QUALIFIED_NAME = "(?:" + NAME + ":)?" + NAME;
+
+  private static final Pattern ELEMENT_STEP_PATTERN =
+      Pattern.compile(
+          "(?<axis>//?)(?<name>"
+              + QUALIFIED_NAME
+              + "|\\*)"
+              + "(?:\\[\\s*@(?<predicateName>"
+              + QUALIFIED_NAME
+              + ")\\s*=\\s*"
+              + "(?:\"(?<doubleQuotedValue>[^\"]*)\"|'(?<singleQuotedValue>[^']*)')\\s*])?");
+  private static final Pattern ATTRIBUTE_STEP_PATTERN =
+      Pattern.compile("/@(?<name>" + QUALIFIED_NAME + ")");
+
+  private final ImmutableList<ElementStep> elementSteps;
+  private final QualifiedName attributeName;
+
+  private XmlProtoXPath(ImmutableList<ElementStep> elementSteps, QualifiedName attributeName) {
+    this.elementSteps = elementSteps;
+    this.attributeName = attributeName;
+  }
+
+  /**
+   * Compiles the given XPath expression.
+   *
+   * @return the compiled expression, or an empty {@link Optional} if the expression is not part of
+   *     the supported subset of XPath
+   */
+  public static Optional<XmlProtoXPath> compile(String expression) {
+    ImmutableList.Builder<ElementStep> elementSteps = ImmutableList.builder();
+    Matcher elementStepMatcher = ELEMENT_STEP_PATTERN.matcher(expression);
+    int position = 0;
+    while (elementStepMatcher.region(position, expression.length()).lookingAt()) {
+      String predicateValue =
+          elementStepMatcher.group("doubleQuotedValue") != null
+              ? elementStepMatcher.group("doubleQuotedValue")
+              : elementStepMatcher.group("singleQuotedValue");
+      elementSteps.add(
+          ElementStep.create(
+              elementStepMatcher.group("axis").equals("//"),
+              elementStepMatcher.group("name").equals("*")
+                  ? Optional.empty()
+                  : Optional.of(QualifiedName.parse(elementStepMatcher.group("name"))),
+              Optional.ofNullable(elementStepMatcher.group("predicateName"))
+                  .map(QualifiedName::parse),
+              Optional.ofNullable(predicateValue)));
+      position = elementStepMatcher.end();
+    }
+
+    Matcher attributeStepMatcher =
+        ATTRIBUTE_STEP_PATTERN.matcher(expression).region(position, expression.length());
+    if (position == 0 || !attributeStepMatcher.matches()) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        new XmlProtoXPath(
+            elementSteps.build(), QualifiedName.parse(attributeStepMatcher.group("name"))));
+  }
+
+  /**
+   * Returns the values of the selected attributes, in document order.
+   *
+   * @throws com.android.tools.build.bundletool.model.exceptions.ValidationException if a namespace
+   *     prefix of the expression is not declared in the document and is not a common one
+   */
+  public ImmutableList<String> evaluate(XmlProtoNode node) {
+    if (!node.isElement()) {
+      return ImmutableList.of();
+    }
+    ImmutableMap<String, String> namespaceUriByPrefix = resolvePrefixes(node);
+    ImmutableList.Builder<String> values = ImmutableList.builder();
+    collectValues(node.getElement(), new ArrayList<>(), namespaceUriByPrefix, values);
+    return values.build();
+  }
+
+  private ImmutableMap<String, String> resolvePrefixes(XmlProtoNode node) {
+    ImmutableList<String> prefixes =
+        Stream.concat(
+                elementSteps.stream()
+                    .flatMap(step -> Stream.of(step.getName(), step.getPredicateName()))
+                    .flatMap(name -> name.map(Stream::of).orElseGet(Stream::empty)),
+                Stream.of(attributeName))
+            .map(QualifiedName::getPrefix)
+            .filter(prefix -> !prefix.isEmpty())
+            .distinct()
+            .collect(toImmutableList());
+    if (prefixes.isEmpty()) {
+      return ImmutableMap.of();
+    }
+    XmlNamespaceContext namespaceContext = new XmlNamespaceContext(node);
+    return prefixes.stream().collect(toImmutableMap(identity(), namespaceContext::getNamespaceURI));
+  }
+
+  private void collectValues(
+      XmlProtoElement element,
+      List<XmlProtoElement> path,
+      ImmutableMap<String, String> namespaceUriByPrefix,
+      ImmutableList.Builder<String> values) {
+    path.add(element);
+    if (matchesPath(path, namespaceUriByPrefix)) {
+      findAttribute(element, attributeName, namespaceUriByPrefix)
+          .ifPresent(attribute -> values.add(attribute.getDebugString()));
+    }
+    element
+        .getChildrenElements()
+        .forEach(child -> collectValues(child, path, namespaceUriByPrefix, values));
+    path.remove(path.size() - 1);
+  }
+
+  /** Returns whether the element steps select the last element of the given path from the root. */
+  private boolean matchesPath(
+      List<XmlProtoElement> path, ImmutableMap<String, String> namespaceUriByPrefix) {
+    if (elementSteps.get(0).isDescendant()) {
+      for (int depth = 0; depth < path.size(); depth++) {
+        if (matchesPathFrom(0, depth, path, namespaceUriByPrefix)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    return matchesPathFrom(0, 0, path, namespaceUriByPrefix);
+  }
+
+  private boolean matchesPathFrom(
+      int stepIndex,
+      int depth,
+      List<XmlProtoElement> path,
+      ImmutableMap<String, String> namespaceUriByPrefix) {
+    if (depth >= path.size()
+        || !elementSteps.get(stepIndex).matches(path.get(depth), namespaceUriByPrefix)) {
+      return false;
+    }
+    if (stepIndex == elementSteps.size() - 1) {
+      return depth == path.size() - 1;
+    }
+    if (!elementSteps.get(stepIndex + 1).isDescendant()) {
+      return matchesPathFrom(stepIndex + 1, depth + 1, path, namespaceUriByPrefix);
+    }
+    for (int nextDepth = depth + 1; nextDepth < path.size(); nextDepth++) {
+      if (matchesPathFrom(stepIndex + 1, nextDepth, path, namespaceUriByPrefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Optional<XmlProtoAttribute> findAttribute(
+      XmlProtoElement element,
+      QualifiedName name,
+      ImmutableMap<String, String> namespaceUriByPrefix) {
+    String namespaceUri = name.getNamespaceUri(namespaceUriByPrefix);
+    // The converter keeps the last of several attributes with the same name.
+    return element
+        .getAttributes()
+        .filter(
+            attribute ->
+                attribute.getNamespaceUri().equals(namespaceUri)
+                    && XmlProtoToXmlConverter.getAttributeTagName(attribute)
+                        .equals(name.getLocalName()))
+        .reduce((first, second) -> second);
+  }
+
+  /** Step selecting elements, optionally filtered on the value of one of their attributes. */
+  @AutoValue
+  @Immutable
+  abstract static class ElementStep {
+    abstract boolean isDescendant();
+
+    /** Name of the selected elements; any element is selected if absent. */
+    abstract Optional<QualifiedName> getName();
+
+    abstract Optional<QualifiedName> getPredicateName();
+
+    abstract Optional<String> getPredicateValue();
+
+    static ElementStep create(
+        boolean descendant,
+        Optional<QualifiedName> name,
+        Optional<QualifiedName> predicateName,
+        Optional<String> predicateValue) {
+      return new AutoValue_XmlProtoXPath_ElementStep(
+          descendant, name, predicateName, predicateValue);
+    }
+
+    boolean matches(XmlProtoElement element, ImmutableMap<String, String> namespaceUriByPrefix) {
+      if (getName().isPresent()) {
+        QualifiedName name = getName().get();
+        if (!element.getNamespaceUri().equals(name.getNamespaceUri(namespaceUriByPrefix))
+            || !element.getName().equals(name.getLocalName())) {
+          return false;
+        }
+      }
+      return !getPredicateName().isPresent()
+          || findAttribute(element, getPredicateName().get(), namespaceUriByPrefix)
+              .map(attribute -> attribute.getDebugString().equals(getPredicateValue().get()))
+              .orElse(false);
+    }
+  }
+
+  /** Name of an element or attribute, with an optional namespace prefix. */
+  @AutoValue
+  @Immutable
+  abstract static class QualifiedName {
+    /** Namespace prefix, or empty if the name is not in a namespace. */
+    abstract String getPrefix();
+
+    abstract String getLocalName();
+
+    static QualifiedName parse(String qualifiedName) {
+      int separatorIndex = qualifiedName.indexOf(':');
+      return new AutoValue_XmlProtoXPath_QualifiedName(
+          separatorIndex < 0 ? "" : qualifiedName.substring(0, separatorIndex),
+          qualifiedName.substring(separatorIndex + 1));
+    }
+
+    String getNamespaceUri(ImmutableMap<String, String> namespaceUriByPrefix) {
+      return getPrefix().isEmpty() ? "" : namespaceUriByPrefix.get(getPrefix());
+    }
+  }
+}
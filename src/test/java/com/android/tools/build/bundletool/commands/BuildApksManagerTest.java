@@ -138,6 +138,9 @@ import com.android.bundle.Config.Optimizations;
 import com.android.bundle.Config.SplitDimension.Value;
 import com.android.bundle.Config.StandaloneConfig;
 import com.android.bundle.Files.ApexImages;
+import com.android.bundle.Metrics.BuildApksMetrics;
+import com.android.bundle.Metrics.PhaseMetrics;
+import com.android.bundle.SizesOuterClass.ApkSetSizes;
 import com.android.bundle.Targeting.Abi;
 import com.android.bundle.Targeting.Abi.AbiAlias;
 import com.android.bundle.Targeting.AbiTargeting;
@@ -193,6 +196,7 @@ import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.protobuf.ExtensionRegistry;
 import com.google.protobuf.Int32Value;
+import com.google.protobuf.util.JsonFormat;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
@@ -342,6 +346,28 @@ public class BuildApksManagerTest {
     assertThat(Files.exists(outputApks)).isTrue();
   }
 
+  @Test
+  public void metricsOutputFlag_metricsWrittenAsJson() throws Exception {
+    Path bundlePath = createAndStoreBundle();
+    Path metricsPath = tmpDir.resolve("metrics.json");
+
+    ParsedFlags flags =
+        new FlagParser()
+            .parse(
+                "--bundle=" + bundlePath,
+                "--output=" + outputFilePath,
+                "--metrics-output=" + metricsPath);
+    BuildApksCommand command = BuildApksCommand.fromFlags(flags, fakeAdbServer);
+    command.execute();
+
+    assertThat(Files.exists(metricsPath)).isTrue();
+    BuildApksMetrics.Builder metrics = BuildApksMetrics.newBuilder();
+    JsonFormat.parser().merge(new String(Files.readAllBytes(metricsPath), UTF_8), metrics);
+    assertThat(metrics.getPhaseList().stream().map(PhaseMetrics::getName))
+        .containsAtLeast("validate-bundle", "generate-split-apks");
+    assertThat(metrics.getApkList()).isNotEmpty();
+  }
+
   @Test
   public void parallelExecutionSucceeds() throws Exception {
     AppBundle appBundle =
@@ -359,6 +385,39 @@ public class BuildApksManagerTest {
     execute(command);
   }
 
+  @Test
+  public void recordDownloadSizes_sizesStoredInApkSet() throws Exception {
+    AppBundle appBundle =
+        new AppBundleBuilder()
+            .addModule("base", module -> module.setManifest(androidManifest("com.app")))
+            .build();
+    Path bundlePath = createAndStoreBundle(appBundle);
+
+    Path apkSetFilePath =
+        execute(
+            BuildApksCommand.builder()
+                .setBundlePath(bundlePath)
+                .setOutputFile(outputFilePath)
+                .setAapt2Command(aapt2Command)
+                .setRecordDownloadSizes(true)
+                .build());
+
+    ZipFile apkSetFile = openZipFile(apkSetFilePath.toFile());
+    BuildApksResult result = extractTocFromApkSetFile(apkSetFile, outputDir);
+    ApkSetSizes sizes =
+        ApkSetSizes.parseFrom(apkSetFile.getInputStream(apkSetFile.getEntry("apk_sizes.pb")));
+
+    ImmutableList<String> apkPaths =
+        apkDescriptions(result.getVariantList()).stream()
+            .map(ApkDescription::getPath)
+            .collect(toImmutableList());
+    assertThat(sizes.getDownloadSizeByApkPathMap().keySet()).containsExactlyElementsIn(apkPaths);
+    for (String apkPath : apkPaths) {
+      assertThat(sizes.getDownloadSizeByApkPathMap().get(apkPath))
+          .isAtMost(apkSetFile.getEntry(apkPath).getSize());
+    }
+  }
+
   @Test
   public void selectsRightModules() throws Exception {
     AppBundle appBundle =
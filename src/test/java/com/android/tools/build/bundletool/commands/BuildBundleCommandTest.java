@@ -74,11 +74,14 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import com.google.common.truth.Truth;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.concurrent.Executors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import org.junit.Before;
@@ -234,6 +237,81 @@ public class BuildBundleCommandTest {
     assertThat(commandViaBuilder).isEqualTo(commandViaFlags);
   }
 
+  @Test
+  public void buildingViaFlagsAndBuilderHasSameResult_optionalMaxThreads() throws Exception {
+    Path baseModulePath = buildSimpleModule("base");
+    BuildBundleCommand commandViaBuilder =
+        BuildBundleCommand.builder()
+            .setOutputPath(bundlePath)
+            .setModulesPaths(ImmutableList.of(baseModulePath))
+            .setMaxThreads(8)
+            .build();
+
+    BuildBundleCommand commandViaFlags =
+        BuildBundleCommand.fromFlags(
+            new FlagParser()
+                .parse("--output=" + bundlePath, "--modules=" + baseModulePath, "--max-threads=8"));
+
+    assertThat(commandViaBuilder).isEqualTo(commandViaFlags);
+  }
+
+  @Test
+  public void severalModules_parallelProcessingProducesSameBundle() throws Exception {
+    ImmutableList.Builder<Path> modulePaths = ImmutableList.builder();
+    for (String moduleName : ImmutableList.of("base", "feature1", "feature2", "feature3")) {
+      modulePaths.add(
+          new ZipBuilder()
+              .addFileWithProtoContent(
+                  ZipPath.create("manifest/AndroidManifest.xml"),
+                  moduleName.equals("base")
+                      ? androidManifest(PKG_NAME)
+                      : androidManifest(
+                          PKG_NAME,
+                          withSplitId(moduleName),
+                          withOnDemandAttribute(false),
+                          withFusingAttribute(true)))
+              .addFileWithContent(
+                  ZipPath.create("assets/" + moduleName + "/textures#tcf_astc/texture.dat"),
+                  moduleName.getBytes(UTF_8))
+              .addFileWithContent(ZipPath.create("lib/x86/libfoo.so"), new byte[1000])
+              .writeTo(tmpDir.resolve(moduleName + ".zip")));
+    }
+    Path singleThreadBundlePath = tmpDir.resolve("single-thread.aab");
+    ListeningExecutorService executorService =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+
+    try {
+      BuildBundleCommand.builder()
+          .setOutputPath(singleThreadBundlePath)
+          .setModulesPaths(modulePaths.build())
+          .setMaxThreads(1)
+          .build()
+          .execute();
+      BuildBundleCommand.builder()
+          .setOutputPath(bundlePath)
+          .setModulesPaths(modulePaths.build())
+          .setExecutorService(executorService)
+          .build()
+          .execute();
+    } finally {
+      executorService.shutdown();
+    }
+
+    assertThat(Files.readAllBytes(bundlePath))
+        .isEqualTo(Files.readAllBytes(singleThreadBundlePath));
+    try (ZipFile bundleZip = new ZipFile(bundlePath.toFile())) {
+      AppBundle appBundle = AppBundle.buildFromZip(bundleZip);
+      assertThat(appBundle.getModules()).hasSize(4);
+      assertThat(
+              appBundle.getFeatureModules().values().stream()
+                  .allMatch(
+                      module ->
+                          module.getAssetsConfig().isPresent()
+                              && module.getNativeConfig().isPresent()))
+          .isTrue();
+    }
+  }
+
   @Test
   public void validModule() throws Exception {
     XmlNode manifest = androidManifest(PKG_NAME, withHasCode(true));
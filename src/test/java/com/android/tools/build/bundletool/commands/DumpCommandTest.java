@@ -92,6 +92,23 @@ public final class DumpCommandTest {
     assertThat(commandViaBuilder).isEqualTo(commandViaFlags);
   }
 
+  @Test
+  public void buildingViaFlagsAndBuilderHasSameResult_withMaxThreads() {
+    DumpCommand commandViaFlags =
+        DumpCommand.fromFlags(
+            new FlagParser()
+                .parse("dump", "resources", "--bundle=" + bundlePath, "--max-threads=3"));
+
+    DumpCommand commandViaBuilder =
+        DumpCommand.builder()
+            .setDumpTarget(DumpTarget.RESOURCES)
+            .setBundlePath(bundlePath)
+            .setMaxThreads(3)
+            .build();
+
+    assertThat(commandViaBuilder).isEqualTo(commandViaFlags);
+  }
+
   @Test
   public void buildingViaFlagsAndBuilderHasSameResult_resourceId() {
     DumpCommand commandViaFlags =
@@ -284,6 +301,23 @@ public final class DumpCommandTest {
         .contains("The --values flag can only be passed when dumping resources.");
   }
 
+  @Test
+  public void dumpManifest_maxThreads_throws() throws Exception {
+    createBundle(bundlePath);
+
+    DumpCommand dumpCommand =
+        DumpCommand.builder()
+            .setBundlePath(bundlePath)
+            .setDumpTarget(DumpTarget.MANIFEST)
+            .setMaxThreads(2)
+            .build();
+    ValidationException exception =
+        assertThrows(ValidationException.class, () -> dumpCommand.execute());
+    assertThat(exception)
+        .hasMessageThat()
+        .contains("The --max-threads flag can only be passed when dumping resources.");
+  }
+
   private static void createBundle(Path bundlePath) throws IOException {
     createBundleWithResourceTable(bundlePath, ResourceTable.getDefaultInstance());
   }
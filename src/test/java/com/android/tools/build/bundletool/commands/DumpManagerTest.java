@@ -422,6 +422,117 @@ public final class DumpManagerTest {
                     + "%n"));
   }
 
+  @Test
+  public void dumpResources_withMaxThreads_sameOutputAsSequential() throws Exception {
+    AppBundle appBundle =
+        new AppBundleBuilder()
+            .addModule(
+                "base",
+                module ->
+                    module
+                        .setManifest(androidManifest("com.app"))
+                        .setResourceTable(
+                            new ResourceTableBuilder()
+                                .addPackage("com.app")
+                                .addStringResource("title", "Title")
+                                .addDrawableResource("icon", "res/drawable/icon.png")
+                                .build()))
+            .addModule(
+                "foo",
+                module ->
+                    module
+                        .setManifest(androidManifest("com.app.foo"))
+                        .setResourceTable(
+                            new ResourceTableBuilder()
+                                .addPackage("com.app.foo", 0x80)
+                                .addStringResource("foo_title", "Foo")
+                                .build()))
+            .addModule(
+                "bar",
+                module ->
+                    module
+                        .setManifest(androidManifest("com.app.bar"))
+                        .setResourceTable(
+                            new ResourceTableBuilder()
+                                .addPackage("com.app", 0x81)
+                                .addStringResource("bar_title", "Bar")
+                                .build()))
+            .build();
+    new AppBundleSerializer().writeToDisk(appBundle, bundlePath);
+
+    ByteArrayOutputStream sequentialOutput = new ByteArrayOutputStream();
+    DumpCommand.builder()
+        .setBundlePath(bundlePath)
+        .setDumpTarget(DumpTarget.RESOURCES)
+        .setOutputStream(new PrintStream(sequentialOutput))
+        .setPrintValues(true)
+        .build()
+        .execute();
+    ByteArrayOutputStream parallelOutput = new ByteArrayOutputStream();
+    DumpCommand.builder()
+        .setBundlePath(bundlePath)
+        .setDumpTarget(DumpTarget.RESOURCES)
+        .setOutputStream(new PrintStream(parallelOutput))
+        .setPrintValues(true)
+        .setMaxThreads(3)
+        .build()
+        .execute();
+
+    String output = new String(sequentialOutput.toByteArray(), UTF_8);
+    assertThat(new String(parallelOutput.toByteArray(), UTF_8)).isEqualTo(output);
+    assertThat(output)
+        .isEqualTo(
+            String.format(
+                "Package 'com.app':%n"
+                    + "0x7f010000 - string/title%n"
+                    + "\t(default) - [STR] \"Title\"%n"
+                    + "0x7f020000 - drawable/icon%n"
+                    + "\t(default) - [FILE] res/drawable/icon.png%n"
+                    + "0x81010000 - string/bar_title%n"
+                    + "\t(default) - [STR] \"Bar\"%n"
+                    + "%n"
+                    + "Package 'com.app.foo':%n"
+                    + "0x80010000 - string/foo_title%n"
+                    + "\t(default) - [STR] \"Foo\"%n"
+                    + "%n"));
+  }
+
+  @Test
+  public void dumpResources_withMaxThreads_printedInUtf8() throws Exception {
+    AppBundle appBundle =
+        new AppBundleBuilder()
+            .addModule(
+                "base",
+                module ->
+                    module
+                        .setManifest(androidManifest("com.app"))
+                        .setResourceTable(
+                            new ResourceTableBuilder()
+                                .addPackage("com.app")
+                                .addStringResource("title", "T\u00edtulo \u65e5\u672c")
+                                .build()))
+            .build();
+    new AppBundleSerializer().writeToDisk(appBundle, bundlePath);
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    DumpCommand.builder()
+        .setBundlePath(bundlePath)
+        .setDumpTarget(DumpTarget.RESOURCES)
+        .setOutputStream(new PrintStream(outputStream))
+        .setPrintValues(true)
+        .setMaxThreads(2)
+        .build()
+        .execute();
+
+    assertThat(new String(outputStream.toByteArray(), UTF_8))
+        .isEqualTo(
+            String.format(
+                "Package 'com.app':%n"
+                    + "0x7f010000 - string/title%n"
+                    + "\t(default) - [STR] \"T\u00edtulo \u65e5\u672c\"%n"
+                    + "%n"));
+  }
+
   @Test
   public void printResources_withValues() throws Exception {
     createBundle(
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.commands;
+
+import static com.android.tools.build.bundletool.testing.ManifestProtoUtils.androidManifest;
+import static com.android.tools.build.bundletool.testing.ManifestProtoUtils.androidManifestForFeature;
+import static com.android.tools.build.bundletool.testing.ManifestProtoUtils.withVersionCode;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.android.tools.build.bundletool.commands.DumpCommand.DumpTarget;
+import com.android.tools.build.bundletool.flags.FlagParser;
+import com.android.tools.build.bundletool.io.AppBundleSerializer;
+import com.android.tools.build.bundletool.model.AppBundle;
+import com.android.tools.build.bundletool.model.exceptions.ValidationException;
+import com.android.tools.build.bundletool.testing.AppBundleBuilder;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class DumpManifestBatchCommandTest {
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path bundlePath1;
+  private Path bundlePath2;
+
+  @Before
+  public void setUp() throws Exception {
+    Path tmpDir = temporaryFolder.getRoot().toPath();
+    bundlePath1 = tmpDir.resolve("bundle1.aab");
+    bundlePath2 = tmpDir.resolve("bundle2.aab");
+    AppBundle appBundle1 =
+        new AppBundleBuilder()
+            .addModule(
+                "base",
+                module -> module.setManifest(androidManifest("com.app", withVersionCode(1))))
+            .addModule(
+                "feature",
+                module ->
+                    module.setManifest(androidManifestForFeature("com.app", withVersionCode(1))))
+            .build();
+    AppBundle appBundle2 =
+        new AppBundleBuilder()
+            .addModule(
+                "base",
+                module -> module.setManifest(androidManifest("com.app", withVersionCode(2))))
+            .build();
+    new AppBundleSerializer().writeToDisk(appBundle1, bundlePath1);
+    new AppBundleSerializer().writeToDisk(appBundle2, bundlePath2);
+  }
+
+  @Test
+  public void buildingViaFlagsAndBuilderHasSameResult_defaults() {
+    DumpManifestBatchCommand commandViaFlags =
+        DumpManifestBatchCommand.fromFlags(
+            new FlagParser().parse("--bundles=" + bundlePath1 + "," + bundlePath2));
+
+    DumpManifestBatchCommand commandViaBuilder =
+        DumpManifestBatchCommand.builder()
+            .setBundlePaths(ImmutableList.of(bundlePath1, bundlePath2))
+            .build();
+
+    assertThat(commandViaBuilder).isEqualTo(commandViaFlags);
+  }
+
+  @Test
+  public void buildingViaFlagsAndBuilderHasSameResult_allFlags() {
+    DumpManifestBatchCommand commandViaFlags =
+        DumpManifestBatchCommand.fromFlags(
+            new FlagParser()
+                .parse(
+                    "--bundles=" + bundlePath1,
+                    "--modules=base,feature",
+                    "--xpath=/manifest/@package",
+                    "--max-threads=2"));
+
+    DumpManifestBatchCommand commandViaBuilder =
+        DumpManifestBatchCommand.builder()
+            .setBundlePaths(ImmutableList.of(bundlePath1))
+            .setModuleNames(ImmutableList.of("base", "feature"))
+            .setXPathExpression("/manifest/@package")
+            .setMaxThreads(2)
+            .build();
+
+    assertThat(commandViaBuilder).isEqualTo(commandViaFlags);
+  }
+
+  @Test
+  public void emptyModules_throws() {
+    DumpManifestBatchCommand command =
+        DumpManifestBatchCommand.builder()
+            .setBundlePaths(ImmutableList.of(bundlePath1))
+            .setModuleNames(ImmutableList.of())
+            .build();
+
+    ValidationException exception = assertThrows(ValidationException.class, command::execute);
+    assertThat(exception).hasMessageThat().contains("The list of modules cannot be empty.");
+  }
+
+  @Test
+  public void withXPath_oneLinePerBundleAndModule() throws Exception {
+    ImmutableList<JsonObject> lines =
+        execute(
+            DumpManifestBatchCommand.builder()
+                .setBundlePaths(ImmutableList.of(bundlePath1, bundlePath2))
+                .setModuleNames(ImmutableList.of("base", "feature"))
+                .setXPathExpression("/manifest/@android:versionCode"));
+
+    assertThat(lines).hasSize(4);
+    assertLine(lines.get(0), bundlePath1, "base");
+    assertThat(lines.get(0).get("value").getAsString()).isEqualTo("1");
+    assertLine(lines.get(1), bundlePath1, "feature");
+    assertThat(lines.get(1).get("value").getAsString()).isEqualTo("1");
+    assertLine(lines.get(2), bundlePath2, "base");
+    assertThat(lines.get(2).get("value").getAsString()).isEqualTo("2");
+    assertLine(lines.get(3), bundlePath2, "feature");
+    assertThat(lines.get(3).has("value")).isFalse();
+    assertThat(lines.get(3).get("error").getAsString())
+        .isEqualTo("File 'feature/manifest/AndroidManifest.xml' not found.");
+  }
+
+  @Test
+  public void withXPathEvaluatedOnDocument_sameValueAsDump() throws Exception {
+    String xPathExpression = "/manifest[@package='com.app']/@*[local-name()='versionCode']";
+
+    ImmutableList<JsonObject> lines =
+        execute(
+            DumpManifestBatchCommand.builder()
+                .setBundlePaths(ImmutableList.of(bundlePath2))
+                .setXPathExpression(xPathExpression));
+
+    assertThat(lines).hasSize(1);
+    assertThat(lines.get(0).get("value").getAsString())
+        .isEqualTo(dumpManifest(bundlePath2, Optional.of(xPathExpression)).trim());
+  }
+
+  @Test
+  public void withoutXPath_sameManifestAsDump() throws Exception {
+    ImmutableList<JsonObject> lines =
+        execute(DumpManifestBatchCommand.builder().setBundlePaths(ImmutableList.of(bundlePath1)));
+
+    assertThat(lines).hasSize(1);
+    assertLine(lines.get(0), bundlePath1, "base");
+    assertThat(lines.get(0).get("value").getAsString())
+        .isEqualTo(dumpManifest(bundlePath1, /* xPathExpression= */ Optional.empty()).trim());
+  }
+
+  @Test
+  public void invalidZip_errorLines() throws Exception {
+    Path invalidBundlePath = temporaryFolder.getRoot().toPath().resolve("invalid.aab");
+    Files.write(invalidBundlePath, "not a zip".getBytes(UTF_8));
+
+    ImmutableList<JsonObject> lines =
+        execute(
+            DumpManifestBatchCommand.builder()
+                .setBundlePaths(ImmutableList.of(invalidBundlePath, bundlePath2))
+                .setXPathExpression("/manifest/@package"));
+
+    assertThat(lines).hasSize(2);
+    assertLine(lines.get(0), invalidBundlePath, "base");
+    assertThat(lines.get(0).get("error").getAsString())
+        .isEqualTo("The bundle is not a valid ZIP file.");
+    assertLine(lines.get(1), bundlePath2, "base");
+    assertThat(lines.get(1).get("value").getAsString()).isEqualTo("com.app");
+  }
+
+  private static ImmutableList<JsonObject> execute(DumpManifestBatchCommand.Builder command) {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    command.setOutputStream(new PrintStream(output)).build().execute();
+    return Splitter.on(System.lineSeparator())
+        .omitEmptyStrings()
+        .splitToList(new String(output.toByteArray(), UTF_8))
+        .stream()
+        .map(line -> new JsonParser().parse(line).getAsJsonObject())
+        .collect(toImmutableList());
+  }
+
+  private static void assertLine(JsonObject line, Path bundlePath, String moduleName) {
+    assertThat(line.get("bundle").getAsString()).isEqualTo(bundlePath.toString());
+    assertThat(line.get("module").getAsString()).isEqualTo(moduleName);
+  }
+
+  private static String dumpManifest(Path bundlePath, Optional<String> xPathExpression) {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    DumpCommand.Builder command =
+        DumpCommand.builder()
+            .setBundlePath(bundlePath)
+            .setDumpTarget(DumpTarget.MANIFEST)
+            .setOutputStream(new PrintStream(output));
+    xPathExpression.ifPresent(command::setXPathExpression);
+    command.build().execute();
+    return new String(output.toByteArray(), UTF_8);
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.commands;
+
+import static com.android.bundle.Targeting.Abi.AbiAlias.ARMEABI;
+import static com.android.bundle.Targeting.Abi.AbiAlias.X86;
+import static com.android.tools.build.bundletool.testing.ApksArchiveHelpers.createApksArchiveFile;
+import static com.android.tools.build.bundletool.testing.ApksArchiveHelpers.createMasterApkDescription;
+import static com.android.tools.build.bundletool.testing.ApksArchiveHelpers.createSplitApkSet;
+import static com.android.tools.build.bundletool.testing.ApksArchiveHelpers.createVariant;
+import static com.android.tools.build.bundletool.testing.ApksArchiveHelpers.splitApkDescription;
+import static com.android.tools.build.bundletool.testing.DeviceFactory.createDeviceSpecFile;
+import static com.android.tools.build.bundletool.testing.DeviceFactory.lDeviceWithAbis;
+import static com.android.tools.build.bundletool.testing.TargetingUtils.apkAbiTargeting;
+import static com.android.tools.build.bundletool.testing.TargetingUtils.sdkVersionFrom;
+import static com.android.tools.build.bundletool.testing.TargetingUtils.variantSdkTargeting;
+import static com.android.tools.build.bundletool.testing.TestUtils.expectMissingRequiredFlagException;
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.android.bundle.Commands.BuildApksResult;
+import com.android.bundle.Config.Bundletool;
+import com.android.bundle.Targeting.ApkTargeting;
+import com.android.tools.build.bundletool.flags.FlagParser;
+import com.android.tools.build.bundletool.model.ZipPath;
+import com.android.tools.build.bundletool.model.version.BundleToolVersion;
+import com.android.tools.build.bundletool.testing.DeviceFactory;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.protobuf.util.JsonFormat;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ExtractApksBatchCommandTest {
+
+  @Rule public final TemporaryFolder tmp = new TemporaryFolder();
+  private Path tmpDir;
+  private Path apksArchiveFile;
+
+  @Before
+  public void setUp() throws Exception {
+    tmpDir = tmp.getRoot().toPath();
+    apksArchiveFile = createApksArchiveFile(abiSplitsApkSet(), tmpDir.resolve("bundle.apks"));
+  }
+
+  @Test
+  public void missingDeviceSpecsFlag_throws() throws Exception {
+    expectMissingRequiredFlagException(
+        "device-specs",
+        () ->
+            ExtractApksBatchCommand.fromFlags(
+                new FlagParser().parse("--apks=" + apksArchiveFile, "--output-dir=" + tmpDir)));
+  }
+
+  @Test
+  public void deviceSpecsDirectory_sharedApksExtractedOnce() throws Exception {
+    Path deviceSpecsDir = Files.createDirectory(tmpDir.resolve("devices-in"));
+    createDeviceSpecFile(lDeviceWithAbis("x86"), deviceSpecsDir.resolve("pixel.json"));
+    createDeviceSpecFile(lDeviceWithAbis("armeabi"), deviceSpecsDir.resolve("nexus.json"));
+    Path outputDir = tmpDir.resolve("output");
+
+    ImmutableMap<String, ImmutableList<Path>> extractedApks =
+        ExtractApksBatchCommand.fromFlags(
+                new FlagParser()
+                    .parse(
+                        "--apks=" + apksArchiveFile,
+                        "--device-specs=" + deviceSpecsDir,
+                        "--output-dir=" + outputDir))
+            .execute(new PrintStream(new ByteArrayOutputStream()));
+
+    Path apksDir = outputDir.resolve("apks");
+    assertThat(extractedApks.keySet()).containsExactly("nexus", "pixel").inOrder();
+    assertThat(extractedApks.get("pixel"))
+        .containsExactly(
+            apksDir.resolve("splits/base-master.apk"), apksDir.resolve("splits/base-x86.apk"));
+    assertThat(extractedApks.get("nexus"))
+        .containsExactly(
+            apksDir.resolve("splits/base-master.apk"), apksDir.resolve("splits/base-arm.apk"));
+    try (Stream<Path> files = Files.walk(apksDir)) {
+      assertThat(files.filter(Files::isRegularFile).count()).isEqualTo(3);
+    }
+    assertThat(Files.readAllLines(outputDir.resolve("devices/pixel.txt"), UTF_8))
+        .containsExactly("apks/splits/base-master.apk", "apks/splits/base-x86.apk");
+  }
+
+  @Test
+  public void deviceSpecsJsonLines_incompatibleDeviceSkipped() throws Exception {
+    Path deviceSpecsFile = tmpDir.resolve("devices.jsonl");
+    Files.write(
+        deviceSpecsFile,
+        ImmutableList.of(
+            JsonFormat.printer().omittingInsignificantWhitespace().print(lDeviceWithAbis("x86")),
+            "",
+            JsonFormat.printer()
+                .omittingInsignificantWhitespace()
+                .print(DeviceFactory.deviceWithSdk(19))),
+        UTF_8);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    ImmutableMap<String, ImmutableList<Path>> extractedApks =
+        ExtractApksBatchCommand.builder()
+            .setApksArchivePath(apksArchiveFile)
+            .setDeviceSpecs(deviceSpecsFile)
+            .setOutputDirectory(tmpDir.resolve("output"))
+            .build()
+            .execute(new PrintStream(output));
+
+    assertThat(extractedApks.keySet()).containsExactly("device-1");
+    assertThat(new String(output.toByteArray(), UTF_8)).contains("Skipping device 'device-3'");
+  }
+
+  @Test
+  public void hardLinks_createdPerDevice() throws Exception {
+    Path outputDir = tmpDir.resolve("output");
+
+    ExtractApksBatchCommand.builder()
+        .setApksArchivePath(apksArchiveFile)
+        .setDeviceSpecs(ImmutableMap.of("pixel", lDeviceWithAbis("x86")))
+        .setOutputDirectory(outputDir)
+        .setCreateHardLinks(true)
+        .build()
+        .execute(new PrintStream(new ByteArrayOutputStream()));
+
+    assertThat(Files.exists(outputDir.resolve("devices/pixel/splits/base-master.apk"))).isTrue();
+    assertThat(Files.exists(outputDir.resolve("devices/pixel/splits/base-x86.apk"))).isTrue();
+    assertThat(Files.exists(outputDir.resolve("devices/pixel/splits/base-arm.apk"))).isFalse();
+  }
+
+  @Test
+  public void hardLinks_existingOutputDirectory_linksReplaced() throws Exception {
+    Path outputDir = tmpDir.resolve("output");
+    ExtractApksBatchCommand command =
+        ExtractApksBatchCommand.builder()
+            .setApksArchivePath(apksArchiveFile)
+            .setDeviceSpecs(ImmutableMap.of("pixel", lDeviceWithAbis("x86")))
+            .setOutputDirectory(outputDir)
+            .setCreateHardLinks(true)
+            .build();
+
+    command.execute(new PrintStream(new ByteArrayOutputStream()));
+    command.execute(new PrintStream(new ByteArrayOutputStream()));
+
+    assertThat(Files.exists(outputDir.resolve("devices/pixel/splits/base-master.apk"))).isTrue();
+    assertThat(Files.exists(outputDir.resolve("devices/pixel/splits/base-x86.apk"))).isTrue();
+  }
+
+  private static BuildApksResult abiSplitsApkSet() {
+    return BuildApksResult.newBuilder()
+        .setBundletool(
+            Bundletool.newBuilder().setVersion(BundleToolVersion.getCurrentVersion().toString()))
+        .addVariant(
+            createVariant(
+                variantSdkTargeting(sdkVersionFrom(21)),
+                createSplitApkSet(
+                    "base",
+                    createMasterApkDescription(
+                        ApkTargeting.getDefaultInstance(),
+                        ZipPath.create("splits/base-master.apk")),
+                    splitApkDescription(
+                        apkAbiTargeting(X86, ImmutableSet.of(ARMEABI)),
+                        ZipPath.create("splits/base-x86.apk")),
+                    splitApkDescription(
+                        apkAbiTargeting(ARMEABI, ImmutableSet.of(X86)),
+                        ZipPath.create("splits/base-arm.apk")))))
+        .build();
+  }
+}
@@ -901,6 +901,44 @@ public class ExtractApksCommandTest {
     }
   }
 
+  @Test
+  public void twoModules_sameApkFileName_throws() throws Exception {
+    ZipPath apkBase = ZipPath.create("base/master.apk");
+    ZipPath apkFeature = ZipPath.create("feature/master.apk");
+    BuildApksResult tableOfContentsProto =
+        BuildApksResult.newBuilder()
+            .setBundletool(
+                Bundletool.newBuilder()
+                    .setVersion(BundleToolVersion.getCurrentVersion().toString()))
+            .addVariant(
+                createVariant(
+                    VariantTargeting.getDefaultInstance(),
+                    createSplitApkSet(
+                        "base",
+                        createMasterApkDescription(ApkTargeting.getDefaultInstance(), apkBase)),
+                    createSplitApkSet(
+                        "feature",
+                        DeliveryType.ON_DEMAND,
+                        /* moduleDependencies= */ ImmutableList.of(),
+                        createMasterApkDescription(ApkTargeting.getDefaultInstance(), apkFeature))))
+            .build();
+    Path apksArchiveFile =
+        createApksArchiveFile(tableOfContentsProto, tmpDir.resolve("bundle.apks"));
+    ExtractApksCommand command =
+        ExtractApksCommand.builder()
+            .setApksArchivePath(apksArchiveFile)
+            .setDeviceSpec(deviceWithSdk(21))
+            .setOutputDirectory(tmpDir)
+            .setModules(ImmutableSet.of("feature"))
+            .build();
+
+    Throwable exception = assertThrows(CommandExecutionException.class, command::execute);
+
+    assertThat(exception)
+        .hasMessageThat()
+        .contains("Cannot extract the APKs [base/master.apk, feature/master.apk] to the same file");
+  }
+
   @Test
   public void moduleWithDependency_extractDependency() throws Exception {
     ZipPath apkBase = ZipPath.create("base-master.apk");
@@ -40,6 +40,8 @@ import static com.android.tools.build.bundletool.testing.TestUtils.expectMissing
 import static com.android.tools.build.bundletool.testing.TestUtils.expectMissingRequiredFlagException;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import com.android.bundle.Commands.AssetModuleMetadata;
@@ -55,10 +57,12 @@ import com.android.bundle.Targeting.ScreenDensity.DensityAlias;
 import com.android.bundle.Targeting.VariantTargeting;
 import com.android.ddmlib.IDevice.DeviceState;
 import com.android.tools.build.bundletool.device.AdbServer;
+import com.android.tools.build.bundletool.device.Device.InstallOptions;
 import com.android.tools.build.bundletool.flags.FlagParser;
 import com.android.tools.build.bundletool.model.ZipPath;
 import com.android.tools.build.bundletool.model.exceptions.CommandExecutionException;
 import com.android.tools.build.bundletool.model.exceptions.InstallationException;
+import com.android.tools.build.bundletool.model.exceptions.ValidationException;
 import com.android.tools.build.bundletool.model.utils.SystemEnvironmentProvider;
 import com.android.tools.build.bundletool.model.version.BundleToolVersion;
 import com.android.tools.build.bundletool.testing.FakeAdbServer;
@@ -67,7 +71,9 @@ import com.android.tools.build.bundletool.testing.FakeSystemEnvironmentProvider;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -375,6 +381,146 @@ public class InstallApksCommandTest {
     assertThat(exception).hasMessageThat().contains("Sample error message");
   }
 
+  @Test
+  public void deviceIdAndDeviceIds_throws() throws Exception {
+    Path apksFile = tmpDir.resolve("appbundle.apks");
+    Files.createFile(apksFile);
+
+    Throwable exception =
+        assertThrows(
+            ValidationException.class,
+            () ->
+                InstallApksCommand.fromFlags(
+                    new FlagParser()
+                        .parse(
+                            "--apks=" + apksFile,
+                            "--adb=" + adbPath,
+                            "--device-id=" + DEVICE_ID,
+                            "--device-ids=all"),
+                    systemEnvironmentProvider,
+                    fakeServerOneDevice(lDeviceWithLocales("en-US"))));
+    assertThat(exception)
+        .hasMessageThat()
+        .contains("Cannot install on one device and on multiple devices at the same time.");
+  }
+
+  @Test
+  public void allDevices_installsMatchingApksOnEachDevice() throws Exception {
+    Path apksFile = createApksArchiveFile(abiSplitsTableOfContent(), tmpDir.resolve("bundle.apks"));
+    List<Path> installedOnX86 = new ArrayList<>();
+    List<Path> installedOnArm = new ArrayList<>();
+    FakeDevice x86Device = fakeDeviceWithAbi("x86-device", "x86");
+    x86Device.setInstallApksSideEffect((apks, installOptions) -> installedOnX86.addAll(apks));
+    FakeDevice armDevice = fakeDeviceWithAbi("arm-device", "arm64-v8a");
+    armDevice.setInstallApksSideEffect((apks, installOptions) -> installedOnArm.addAll(apks));
+    AdbServer adbServer =
+        new FakeAdbServer(
+            /* hasInitialDeviceList= */ true, ImmutableList.of(x86Device, armDevice));
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    InstallApksCommand.builder()
+        .setApksArchivePath(apksFile)
+        .setAdbPath(adbPath)
+        .setAdbServer(adbServer)
+        .setDeviceIds(ImmutableSet.of(InstallApksCommand.ALL_DEVICES))
+        .build()
+        .execute(new PrintStream(output));
+
+    assertThat(getFileNames(installedOnX86)).containsExactly("apkL.apk", "apkL-x86.apk");
+    assertThat(getFileNames(installedOnArm)).containsExactly("apkL.apk", "apkL-arm64.apk");
+    // The master split is extracted once and shared by both devices.
+    assertThat(installedOnX86).contains(installedOnArm.get(0));
+    assertThat(new String(output.toByteArray(), UTF_8))
+        .isEqualTo(
+            "DEVICE_ID,STATUS,APKS,ERROR\r\n"
+                + "x86-device,SUCCESS,apkL.apk;apkL-x86.apk,\r\n"
+                + "arm-device,SUCCESS,apkL.apk;apkL-arm64.apk,\r\n");
+  }
+
+  @Test
+  public void deviceIds_failureOnOneDevice_otherDevicesInstalledAndThrows() throws Exception {
+    Path apksFile = createApksArchiveFile(abiSplitsTableOfContent(), tmpDir.resolve("bundle.apks"));
+    List<Path> installedOnX86 = new ArrayList<>();
+    FakeDevice x86Device = fakeDeviceWithAbi("x86-device", "x86");
+    x86Device.setInstallApksSideEffect((apks, installOptions) -> installedOnX86.addAll(apks));
+    FakeDevice armDevice = fakeDeviceWithAbi("arm-device", "arm64-v8a");
+    armDevice.setInstallApksSideEffect(
+        (apks, installOptions) -> {
+          throw InstallationException.builder().withMessage("Sample error message").build();
+        });
+    FakeDevice otherDevice = fakeDeviceWithAbi("other-device", "x86");
+    AdbServer adbServer =
+        new FakeAdbServer(
+            /* hasInitialDeviceList= */ true,
+            ImmutableList.of(x86Device, armDevice, otherDevice));
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    InstallApksCommand command =
+        InstallApksCommand.builder()
+            .setApksArchivePath(apksFile)
+            .setAdbPath(adbPath)
+            .setAdbServer(adbServer)
+            .setDeviceIds(ImmutableSet.of("arm-device", "x86-device"))
+            .build();
+
+    Throwable exception =
+        assertThrows(
+            CommandExecutionException.class, () -> command.execute(new PrintStream(output)));
+    assertThat(exception).hasMessageThat().contains("Installation failed on 1 of 2 device(s).");
+    assertThat(getFileNames(installedOnX86)).containsExactly("apkL.apk", "apkL-x86.apk");
+    assertThat(new String(output.toByteArray(), UTF_8))
+        .contains("arm-device,FAILURE,,Sample error message");
+  }
+
+  @Test
+  public void deviceIds_missingDevice_throws() throws Exception {
+    Path apksFile = createApksArchiveFile(abiSplitsTableOfContent(), tmpDir.resolve("bundle.apks"));
+    AdbServer adbServer =
+        new FakeAdbServer(
+            /* hasInitialDeviceList= */ true,
+            ImmutableList.of(fakeDeviceWithAbi("x86-device", "x86")));
+
+    InstallApksCommand command =
+        InstallApksCommand.builder()
+            .setApksArchivePath(apksFile)
+            .setAdbPath(adbPath)
+            .setAdbServer(adbServer)
+            .setDeviceIds(ImmutableSet.of("x86-device", "doesnt-exist"))
+            .build();
+
+    Throwable exception = assertThrows(CommandExecutionException.class, () -> command.execute());
+    assertThat(exception).hasMessageThat().contains("[doesnt-exist]");
+  }
+
+  @Test
+  public void skipUnchangedApks_passedToDeviceWithPackageName() throws Exception {
+    Path apksFile =
+        createApksArchiveFile(
+            createSimpleTableOfContent(ZipPath.create("base-master.apk")).toBuilder()
+                .setPackageName(PKG_NAME)
+                .build(),
+            tmpDir.resolve("bundle.apks"));
+    FakeDevice fakeDevice =
+        FakeDevice.fromDeviceSpec(DEVICE_ID, DeviceState.ONLINE, lDeviceWithLocales("en-US"));
+    AdbServer adbServer =
+        new FakeAdbServer(/* hasInitialDeviceList= */ true, ImmutableList.of(fakeDevice));
+    List<InstallOptions> installOptions = new ArrayList<>();
+    fakeDevice.setInstallApksSideEffect((apks, options) -> installOptions.add(options));
+
+    InstallApksCommand.fromFlags(
+            new FlagParser()
+                .parse("--apks=" + apksFile, "--adb=" + adbPath, "--skip-unchanged-apks"),
+            systemEnvironmentProvider,
+            adbServer)
+        .execute();
+
+    assertThat(installOptions).hasSize(1);
+    assertThat(installOptions.get(0).getSkipUnchangedApks()).isTrue();
+    assertThat(installOptions.get(0).getPackageName()).hasValue(PKG_NAME);
+    assertThat(installOptions.get(0).getSplitNameByApkFileName())
+        .containsExactly("base-master.apk", "");
+  }
+
   @Test
   public void deviceSdkIncompatible_throws() throws Exception {
     Path apksFile =
@@ -1033,6 +1179,33 @@ public class InstallApksCommandTest {
         .build();
   }
 
+  private static BuildApksResult abiSplitsTableOfContent() {
+    return BuildApksResult.newBuilder()
+        .setBundletool(
+            Bundletool.newBuilder().setVersion(BundleToolVersion.getCurrentVersion().toString()))
+        .addVariant(
+            createVariant(
+                variantSdkTargeting(sdkVersionFrom(21)),
+                createSplitApkSet(
+                    "base",
+                    createMasterApkDescription(
+                        ApkTargeting.getDefaultInstance(), ZipPath.create("splits/apkL.apk")),
+                    splitApkDescription(
+                        apkAbiTargeting(AbiAlias.X86, ImmutableSet.of(AbiAlias.ARM64_V8A)),
+                        ZipPath.create("splits/apkL-x86.apk")),
+                    splitApkDescription(
+                        apkAbiTargeting(AbiAlias.ARM64_V8A, ImmutableSet.of(AbiAlias.X86)),
+                        ZipPath.create("splits/apkL-arm64.apk")))))
+        .build();
+  }
+
+  private static FakeDevice fakeDeviceWithAbi(String deviceId, String abi) {
+    return FakeDevice.fromDeviceSpec(
+        deviceId,
+        DeviceState.ONLINE,
+        mergeSpecs(sdkVersion(21), abis(abi), locales("en-US"), density(DensityAlias.HDPI)));
+  }
+
   /** Creates a table of content matching all devices to a given apkPath. */
   private static BuildApksResult createSimpleTableOfContent(ZipPath apkPath) {
     return BuildApksResult.newBuilder()
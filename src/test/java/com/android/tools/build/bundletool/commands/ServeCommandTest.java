@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.commands;
+
+import static com.android.tools.build.bundletool.testing.ApksArchiveHelpers.createApksArchiveFile;
+import static com.android.tools.build.bundletool.testing.ApksArchiveHelpers.createMasterApkDescription;
+import static com.android.tools.build.bundletool.testing.ApksArchiveHelpers.createSplitApkSet;
+import static com.android.tools.build.bundletool.testing.ApksArchiveHelpers.createVariant;
+import static com.android.tools.build.bundletool.testing.TargetingUtils.sdkVersionFrom;
+import static com.android.tools.build.bundletool.testing.TargetingUtils.variantSdkTargeting;
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.android.bundle.Commands.BuildApksResult;
+import com.android.bundle.Config.Bundletool;
+import com.android.bundle.Targeting.ApkTargeting;
+import com.android.tools.build.bundletool.flags.FlagParser;
+import com.android.tools.build.bundletool.model.ZipPath;
+import com.android.tools.build.bundletool.model.exceptions.ValidationException;
+import com.android.tools.build.bundletool.model.version.BundleToolVersion;
+import com.android.tools.build.bundletool.testing.FakeAdbServer;
+import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ServeCommandTest {
+
+  @Rule public final TemporaryFolder tmp = new TemporaryFolder();
+  private Path tmpDir;
+
+  private final FakeAdbServer fakeAdbServer =
+      new FakeAdbServer(/* hasInitialDeviceList= */ true, /* devices= */ ImmutableList.of());
+
+  @Before
+  public void setUp() {
+    tmpDir = tmp.getRoot().toPath();
+  }
+
+  @Test
+  public void fromFlags_defaults() {
+    ServeCommand command = ServeCommand.fromFlags(new FlagParser().parse("serve"), fakeAdbServer);
+
+    assertThat(command.getMaxConcurrentCommands()).isEqualTo(4);
+    assertThat(command.getMaxThreads()).isEqualTo(4);
+  }
+
+  @Test
+  public void tokenize_quotesAndEscapes() {
+    String commandLine = "  get-size total --apks='my dir/a.apks'  --x=\"a\\\"b\" c\\ d";
+
+    assertThat(ServeCommand.tokenize(commandLine))
+        .containsExactly("get-size", "total", "--apks=my dir/a.apks", "--x=a\"b", "c d")
+        .inOrder();
+    assertThat(ServeCommand.tokenize("version ''")).containsExactly("version", "").inOrder();
+  }
+
+  @Test
+  public void tokenize_unterminatedQuote_throws() {
+    assertThrows(ValidationException.class, () -> ServeCommand.tokenize("dump --bundle='a.aab"));
+    assertThrows(ValidationException.class, () -> ServeCommand.tokenize("dump \\"));
+  }
+
+  @Test
+  public void serve_respondsToEachRequest() throws Exception {
+    Path apksArchiveFile =
+        createApksArchiveFile(
+            BuildApksResult.newBuilder()
+                .setBundletool(
+                    Bundletool.newBuilder()
+                        .setVersion(BundleToolVersion.getCurrentVersion().toString()))
+                .addVariant(
+                    createVariant(
+                        variantSdkTargeting(sdkVersionFrom(21)),
+                        createSplitApkSet(
+                            "base",
+                            createMasterApkDescription(
+                                ApkTargeting.getDefaultInstance(),
+                                ZipPath.create("base-master.apk")))))
+                .build(),
+            tmpDir.resolve("bundle.apks"));
+    String requests =
+        String.join(
+            "\n",
+            "1 version",
+            "",
+            "2 get-size total --apks=" + apksArchiveFile,
+            "3 install-apks --apks=" + apksArchiveFile,
+            "4 get-size total --apks=" + tmpDir.resolve("nonexistent.apks"));
+    ByteArrayOutputStream responses = new ByteArrayOutputStream();
+
+    ServeCommand.builder()
+        .setAdbServer(fakeAdbServer)
+        .build()
+        .serve(new ByteArrayInputStream(requests.getBytes(UTF_8)), new PrintStream(responses));
+
+    ImmutableList<String> responseLines =
+        ImmutableList.copyOf(new String(responses.toByteArray(), UTF_8).split("\n"));
+    assertThat(responseLines)
+        .containsAtLeast(
+            "1 OUT " + BundleToolVersion.getCurrentVersion(),
+            "1 OK",
+            "2 OUT MIN,MAX",
+            "2 OK",
+            "3 ERROR Command 'install-apks' is not supported by the 'serve' command.");
+    assertThat(responseLines.stream().filter(line -> line.startsWith("4 ERROR ")).count())
+        .isEqualTo(1);
+    assertThat(responseLines.indexOf("1 OK"))
+        .isGreaterThan(responseLines.indexOf("1 OUT " + BundleToolVersion.getCurrentVersion()));
+    assertThat(responseLines.indexOf("2 OK")).isGreaterThan(responseLines.indexOf("2 OUT MIN,MAX"));
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.commands;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+
+import com.android.aapt.Resources.Entry;
+import com.android.aapt.Resources.Package;
+import com.android.aapt.Resources.PackageId;
+import com.android.aapt.Resources.ResourceTable;
+import com.android.aapt.Resources.Type;
+import com.android.aapt.Resources.TypeId;
+import com.android.tools.build.bundletool.model.ResourceTableEntry;
+import com.android.tools.build.bundletool.model.utils.ResourcesUtils;
+import com.android.tools.build.bundletool.testing.ResourceTableBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class StreamingResourceTableTest {
+
+  @Test
+  public void forEachEntry_sameEntriesAsFullyParsedTable() throws Exception {
+    ResourceTable resourceTable =
+        new ResourceTableBuilder()
+            .addPackage("com.app")
+            .addStringResource("title", "Title")
+            .addStringResource("subtitle", "Subtitle")
+            .addDrawableResource("icon", "res/drawable/icon.png")
+            .addPackage("com.app.foo", 0x80)
+            .addStringResource("title", "Foo")
+            .build();
+
+    ImmutableList<ResourceTableEntry> entries = readEntries(resourceTable.toByteArray());
+
+    assertThat(entries)
+        .containsExactlyElementsIn(
+            ImmutableList.builder()
+                .addAll(fullyParsedEntries(resourceTable, "com.app"))
+                .addAll(fullyParsedEntries(resourceTable, "com.app.foo"))
+                .build())
+        .inOrder();
+  }
+
+  @Test
+  public void forEachEntry_predicateEvaluatedOnHeaders() throws Exception {
+    ResourceTable resourceTable =
+        new ResourceTableBuilder()
+            .addPackage("com.app")
+            .addStringResource("title", "Title")
+            .addStringResource("subtitle", "Subtitle")
+            .build();
+    List<ResourceTableEntry> testedEntries = new ArrayList<>();
+    List<ResourceTableEntry> matchingEntries = new ArrayList<>();
+
+    StreamingResourceTable.forEachEntry(
+        () -> new ByteArrayInputStream(resourceTable.toByteArray()),
+        entry -> {
+          testedEntries.add(entry);
+          return entry.getEntry().getName().equals("subtitle");
+        },
+        matchingEntries::add);
+
+    assertThat(testedEntries.stream().map(entry -> entry.getEntry().getName()))
+        .containsExactly("title", "subtitle");
+    assertThat(testedEntries.stream().map(entry -> entry.getEntry().getConfigValueCount()))
+        .containsExactly(0, 0);
+    assertThat(matchingEntries).hasSize(1);
+    assertThat(matchingEntries.get(0).getEntry())
+        .isEqualTo(resourceTable.getPackage(0).getType(0).getEntry(1));
+    assertThat(matchingEntries.get(0).getResourceId().getFullResourceId()).isEqualTo(0x7f010001);
+  }
+
+  @Test
+  public void forEachEntry_fieldsOutOfOrder() throws Exception {
+    Entry entry = new ResourceTableBuilder()
+        .addPackage("com.app")
+        .addStringResource("title", "Title")
+        .build()
+        .getPackage(0)
+        .getType(0)
+        .getEntry(0);
+    // Messages concatenated on the wire are merged, so these put the names and IDs last.
+    ByteString typeBytes =
+        Type.newBuilder()
+            .addEntry(entry)
+            .build()
+            .toByteString()
+            .concat(
+                Type.newBuilder()
+                    .setTypeId(TypeId.newBuilder().setId(1))
+                    .setName("string")
+                    .build()
+                    .toByteString());
+    ByteString packageBytes =
+        serializeField(Package.TYPE_FIELD_NUMBER, typeBytes)
+            .concat(
+                Package.newBuilder()
+                    .setPackageId(PackageId.newBuilder().setId(0x7f))
+                    .setPackageName("com.app")
+                    .build()
+                    .toByteString());
+    byte[] tableBytes =
+        serializeField(ResourceTable.PACKAGE_FIELD_NUMBER, packageBytes).toByteArray();
+
+    ImmutableList<ResourceTableEntry> entries = readEntries(tableBytes);
+
+    assertThat(entries).hasSize(1);
+    assertThat(entries.get(0).getType().getName()).isEqualTo("string");
+    assertThat(entries.get(0).getEntry()).isEqualTo(entry);
+    assertThat(entries.get(0).getResourceId().getFullResourceId()).isEqualTo(0x7f010000);
+  }
+
+  private static ImmutableList<ResourceTableEntry> readEntries(byte[] tableBytes) throws Exception {
+    ImmutableList.Builder<ResourceTableEntry> entries = ImmutableList.builder();
+    StreamingResourceTable.forEachEntry(
+        () -> new ByteArrayInputStream(tableBytes), entry -> true, entries::add);
+    return entries.build();
+  }
+
+  /** Entries of the fully parsed table, with the package and type reduced to IDs and names. */
+  private static ImmutableList<ResourceTableEntry> fullyParsedEntries(
+      ResourceTable resourceTable, String packageName) {
+    return ResourcesUtils.entries(resourceTable)
+        .filter(entry -> entry.getPackage().getPackageName().equals(packageName))
+        .map(
+            entry ->
+                ResourceTableEntry.create(
+                    entry.getPackage().toBuilder().clearType().build(),
+                    entry.getType().toBuilder().clearEntry().build(),
+                    entry.getEntry()))
+        .collect(toImmutableList());
+  }
+
+  private static ByteString serializeField(int fieldNumber, ByteString value) throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    CodedOutputStream codedOutput = CodedOutputStream.newInstance(output);
+    codedOutput.writeBytes(fieldNumber, value);
+    codedOutput.flush();
+    return ByteString.copyFrom(output.toByteArray());
+  }
+}
@@ -82,6 +82,7 @@ import com.android.bundle.Targeting.ApkTargeting;
 import com.android.bundle.Targeting.MultiAbiTargeting;
 import com.android.bundle.Targeting.ScreenDensity.DensityAlias;
 import com.android.bundle.Targeting.VariantTargeting;
+import com.android.tools.build.bundletool.device.ApkSetIndex.ApkTargetingDimension;
 import com.android.tools.build.bundletool.model.AndroidManifest;
 import com.android.tools.build.bundletool.model.BundleModuleName;
 import com.android.tools.build.bundletool.model.ModuleSplit;
@@ -1410,6 +1411,59 @@ public class ApkMatcherTest {
                 + "app ABIs: [x86, armeabi]");
   }
 
+  @Test
+  public void splitApks_sharedApkSetIndex_variousDevices() {
+    ZipPath baseMasterSplitApk = ZipPath.create("base-master.apk");
+    ZipPath baseX86SplitApk = ZipPath.create("base-x86.apk");
+    ZipPath baseArmSplitApk = ZipPath.create("base-arm.apk");
+    ZipPath featureMasterSplitApk = ZipPath.create("feature-master.apk");
+    ZipPath featureX86SplitApk = ZipPath.create("feature-x86.apk");
+    ZipPath featureArmSplitApk = ZipPath.create("feature-arm.apk");
+
+    // APKs of both modules share the same targeting.
+    ApkSetIndex apkSetIndex =
+        ApkSetIndex.create(
+            buildApksResult(
+                splitApkVariant(
+                    variantSdkTargeting(sdkVersionFrom(21)),
+                    splitApkSet(
+                        /* moduleName= */ "base",
+                        splitApkDescription(ApkTargeting.getDefaultInstance(), baseMasterSplitApk),
+                        splitApkDescription(
+                            apkAbiTargeting(X86, ImmutableSet.of(ARMEABI)), baseX86SplitApk),
+                        splitApkDescription(
+                            apkAbiTargeting(ARMEABI, ImmutableSet.of(X86)), baseArmSplitApk)),
+                    splitApkSet(
+                        /* moduleName= */ "feature",
+                        splitApkDescription(
+                            ApkTargeting.getDefaultInstance(), featureMasterSplitApk),
+                        splitApkDescription(
+                            apkAbiTargeting(X86, ImmutableSet.of(ARMEABI)), featureX86SplitApk),
+                        splitApkDescription(
+                            apkAbiTargeting(ARMEABI, ImmutableSet.of(X86)),
+                            featureArmSplitApk)))));
+
+    assertThat(apkSetIndex.getApkTargetingCount()).isEqualTo(3);
+    assertThat(apkSetIndex.getDimensionValues(ApkTargetingDimension.ABI)).hasSize(3);
+    assertThat(apkSetIndex.getDimensionValues(ApkTargetingDimension.LANGUAGE)).hasSize(1);
+    assertThat(new ApkMatcher(lDeviceWithAbis("x86")).getMatchingApks(apkSetIndex))
+        .containsExactly(
+            baseMasterSplitApk, baseX86SplitApk, featureMasterSplitApk, featureX86SplitApk)
+        .inOrder();
+    assertThat(new ApkMatcher(lDeviceWithAbis("armeabi")).getMatchingApks(apkSetIndex))
+        .containsExactly(
+            baseMasterSplitApk, baseArmSplitApk, featureMasterSplitApk, featureArmSplitApk)
+        .inOrder();
+    assertThat(
+            new ApkMatcher(
+                    lDeviceWithAbis("x86"),
+                    Optional.of(ImmutableSet.of("base")),
+                    /* matchInstant= */ false)
+                .getMatchingApks(apkSetIndex))
+        .containsExactly(
+            baseMasterSplitApk, baseX86SplitApk, featureMasterSplitApk, featureX86SplitApk);
+  }
+
   @Test
   public void matchesModuleSplit_incompatibleDeviceThrows() {
     // MIPS ABI is not supported by the split.
@@ -35,14 +35,19 @@ import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.Optional;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
 @RunWith(JUnit4.class)
 public class DeviceAnalyzerTest {
 
+  @Rule public final TemporaryFolder tmp = new TemporaryFolder();
+
   @Test
   public void noDeviceId_noConnectedDevices_throws() {
     FakeAdbServer fakeAdbServer =
@@ -409,6 +414,35 @@ public class DeviceAnalyzerTest {
     assertThat(spec.getSupportedLocalesList()).containsExactly("en-US");
   }
 
+  @Test
+  public void deviceSpecCache_sameBuildFingerprint_deviceNotAnalysedAgain() throws Exception {
+    FakeDevice fakeDevice =
+        FakeDevice.fromDeviceSpecWithProperties(
+            "a",
+            DeviceState.ONLINE,
+            mergeSpecs(sdkVersion(26), abis("armeabi"), locales("fr-CA"), density(480)),
+            ImmutableMap.of("ro.build.fingerprint", "google/device/26:user/release-keys"));
+    FakeAdbServer fakeAdbServer =
+        new FakeAdbServer(
+            /* hasInitialDeviceList= */ true, /* devices= */ ImmutableList.of(fakeDevice));
+    fakeAdbServer.init(Paths.get("path/to/adb"));
+    Optional<DeviceSpecCache> cache =
+        Optional.of(DeviceSpecCache.create(tmp.getRoot().toPath(), Duration.ofHours(1)));
+
+    DeviceSpec spec = new DeviceAnalyzer(fakeAdbServer, cache).getDeviceSpec(Optional.empty());
+    // Analysing the device again would now fail.
+    fakeDevice.injectShellCommandOutput(
+        "am get-config",
+        () -> {
+          throw new IllegalStateException("Device analysed twice.");
+        });
+    DeviceSpec cachedSpec =
+        new DeviceAnalyzer(fakeAdbServer, cache).getDeviceSpec(Optional.empty());
+
+    assertThat(spec.getSupportedLocalesList()).containsExactly("fr-CA");
+    assertThat(cachedSpec).isEqualTo(spec);
+  }
+
   private static Device createUsbEnabledDevice(String serialNumber) {
     return createUsbEnabledDevice(serialNumber, /* sdkVersion= */ 21, /* locale= */ "en-US");
   }
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.device;
+
+import static com.android.tools.build.bundletool.testing.DeviceFactory.lDeviceWithLocales;
+import static com.google.common.collect.MoreCollectors.onlyElement;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.android.bundle.Devices.DeviceSpec;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.stream.Stream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class DeviceSpecCacheTest {
+
+  private static final String SERIAL = "emulator-5554";
+  private static final String FINGERPRINT = "google/sdk_gphone_x86/generic_x86:10/user/test-keys";
+  private static final DeviceSpec DEVICE_SPEC = lDeviceWithLocales("en-US", "fr-FR");
+
+  @Rule public final TemporaryFolder tmp = new TemporaryFolder();
+  private Path cacheDir;
+
+  @Before
+  public void setUp() {
+    cacheDir = tmp.getRoot().toPath().resolve("cache");
+  }
+
+  @Test
+  public void put_thenGet_returnsDeviceSpec() {
+    DeviceSpecCache cache = DeviceSpecCache.create(cacheDir, Duration.ofHours(1));
+
+    cache.put(SERIAL, FINGERPRINT, DEVICE_SPEC);
+
+    assertThat(cache.get(SERIAL, FINGERPRINT)).hasValue(DEVICE_SPEC);
+  }
+
+  @Test
+  public void get_differentFingerprintOrSerial_empty() {
+    DeviceSpecCache cache = DeviceSpecCache.create(cacheDir, Duration.ofHours(1));
+
+    cache.put(SERIAL, FINGERPRINT, DEVICE_SPEC);
+
+    assertThat(cache.get(SERIAL, FINGERPRINT + "-updated")).isEmpty();
+    assertThat(cache.get("emulator-5556", FINGERPRINT)).isEmpty();
+  }
+
+  @Test
+  public void get_expired_empty() throws Exception {
+    DeviceSpecCache cache = DeviceSpecCache.create(cacheDir, Duration.ofHours(1));
+    cache.put(SERIAL, FINGERPRINT, DEVICE_SPEC);
+
+    Path cacheFile = getOnlyCacheFile();
+    Files.setLastModifiedTime(cacheFile, FileTime.from(Instant.now().minus(Duration.ofHours(2))));
+
+    assertThat(cache.get(SERIAL, FINGERPRINT)).isEmpty();
+  }
+
+  @Test
+  public void get_corruptedEntry_empty() throws Exception {
+    DeviceSpecCache cache = DeviceSpecCache.create(cacheDir, Duration.ofHours(1));
+    cache.put(SERIAL, FINGERPRINT, DEVICE_SPEC);
+
+    Files.write(getOnlyCacheFile(), "{not json".getBytes(UTF_8));
+
+    assertThat(cache.get(SERIAL, FINGERPRINT)).isEmpty();
+  }
+
+  private Path getOnlyCacheFile() throws Exception {
+    try (Stream<Path> files = Files.list(cacheDir)) {
+      return files.collect(onlyElement());
+    }
+  }
+}
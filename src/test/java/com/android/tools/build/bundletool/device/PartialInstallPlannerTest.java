@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.device;
+
+import static com.android.tools.build.bundletool.testing.DeviceFactory.lDeviceWithLocales;
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.android.ddmlib.IDevice.DeviceState;
+import com.android.tools.build.bundletool.device.PartialInstallPlanner.InstallPlan;
+import com.android.tools.build.bundletool.testing.FakeDevice;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class PartialInstallPlannerTest {
+
+  private static final String PACKAGE_NAME = "com.example.app";
+  private static final String PM_PATH_COMMAND = "pm path 'com.example.app'";
+  private static final String INSTALL_DIR = "/data/app/com.example.app-1/";
+  private static final String SHA256SUM_COMMAND =
+      "sha256sum '" + INSTALL_DIR + "base.apk' '" + INSTALL_DIR + "split_config.x86.apk'";
+  private static final ImmutableMap<String, String> SPLIT_NAME_BY_APK_FILE_NAME =
+      ImmutableMap.of(
+          "base-master.apk", "",
+          "base-x86.apk", "config.x86",
+          "base-arm.apk", "config.armeabi_v7a",
+          "base-arm64.apk", "config.arm64_v8a");
+
+  @Rule public final TemporaryFolder tmp = new TemporaryFolder();
+
+  private FakeDevice device;
+  private Path baseApk;
+  private Path x86Apk;
+
+  @Before
+  public void setUp() throws Exception {
+    device = FakeDevice.fromDeviceSpec("id1", DeviceState.ONLINE, lDeviceWithLocales("en-US"));
+    baseApk = Files.write(tmp.getRoot().toPath().resolve("base-master.apk"), bytes("base"));
+    x86Apk = Files.write(tmp.getRoot().toPath().resolve("base-x86.apk"), bytes("x86"));
+  }
+
+  @Test
+  public void appNotInstalled_fullInstall() {
+    device.injectShellCommandOutput(PM_PATH_COMMAND, () -> "");
+
+    InstallPlan plan = plan(apks());
+
+    assertThat(plan.isPartial()).isFalse();
+    assertThat(plan.getApksToInstall()).containsExactly(baseApk, x86Apk).inOrder();
+  }
+
+  @Test
+  public void allApksUnchanged_upToDate() {
+    injectInstalledApks(hash("base"), hash("x86"));
+
+    InstallPlan plan = plan(apks());
+
+    assertThat(plan.isUpToDate()).isTrue();
+  }
+
+  @Test
+  public void splitAdded_partialInstallOfAddedSplit() throws Exception {
+    Path arm64Apk = Files.write(tmp.getRoot().toPath().resolve("base-arm64.apk"), bytes("arm64"));
+    injectInstalledApks(hash("base"), hash("x86"));
+
+    InstallPlan plan = plan(ImmutableList.of(baseApk, x86Apk, arm64Apk));
+
+    assertThat(plan.isPartial()).isTrue();
+    assertThat(plan.getApksToInstall()).containsExactly(arm64Apk);
+  }
+
+  @Test
+  public void splitChanged_partialInstallOfChangedSplit() {
+    injectInstalledApks(hash("base"), hash("old x86"));
+
+    InstallPlan plan = plan(apks());
+
+    assertThat(plan.isPartial()).isTrue();
+    assertThat(plan.getApksToInstall()).containsExactly(x86Apk);
+  }
+
+  @Test
+  public void baseChanged_partialInstallOfBase() {
+    injectInstalledApks(hash("old base"), hash("x86"));
+
+    InstallPlan plan = plan(apks());
+
+    assertThat(plan.isPartial()).isTrue();
+    assertThat(plan.getApksToInstall()).containsExactly(baseApk);
+  }
+
+  @Test
+  public void splitRemoved_fullInstall() throws Exception {
+    // The installed x86 split would be kept by a partial install.
+    Path armApk = Files.write(tmp.getRoot().toPath().resolve("base-arm.apk"), bytes("arm"));
+    injectInstalledApks(hash("base"), hash("x86"));
+
+    InstallPlan plan = plan(ImmutableList.of(baseApk, armApk));
+
+    assertThat(plan.isPartial()).isFalse();
+    assertThat(plan.getApksToInstall()).containsExactly(baseApk, armApk).inOrder();
+  }
+
+  @Test
+  public void splitNameUnknown_fullInstall() {
+    injectInstalledApks(hash("base"), hash("old x86"));
+
+    InstallPlan plan =
+        new PartialInstallPlanner(device)
+            .plan(PACKAGE_NAME, apks(), ImmutableMap.of("base-master.apk", ""));
+
+    assertThat(plan.isPartial()).isFalse();
+    assertThat(plan.getApksToInstall()).containsExactly(baseApk, x86Apk).inOrder();
+  }
+
+  @Test
+  public void checksumUnavailable_fullInstall() {
+    injectInstalledPaths();
+    device.injectShellCommandOutput(
+        SHA256SUM_COMMAND, () -> "/system/bin/sh: sha256sum: not found");
+
+    InstallPlan plan = plan(apks());
+
+    assertThat(plan.isPartial()).isFalse();
+    assertThat(plan.getApksToInstall()).containsExactly(baseApk, x86Apk).inOrder();
+  }
+
+  private InstallPlan plan(ImmutableList<Path> apks) {
+    return new PartialInstallPlanner(device).plan(PACKAGE_NAME, apks, SPLIT_NAME_BY_APK_FILE_NAME);
+  }
+
+  private ImmutableList<Path> apks() {
+    return ImmutableList.of(baseApk, x86Apk);
+  }
+
+  private void injectInstalledApks(String baseHash, String x86Hash) {
+    injectInstalledPaths();
+    device.injectShellCommandOutput(
+        SHA256SUM_COMMAND,
+        () ->
+            Joiner.on('\n')
+                .join(
+                    baseHash + "  " + INSTALL_DIR + "base.apk",
+                    x86Hash + "  " + INSTALL_DIR + "split_config.x86.apk"));
+  }
+
+  private void injectInstalledPaths() {
+    device.injectShellCommandOutput(
+        PM_PATH_COMMAND,
+        () ->
+            Joiner.on('\n')
+                .join(
+                    "package:" + INSTALL_DIR + "base.apk",
+                    "package:" + INSTALL_DIR + "split_config.x86.apk"));
+  }
+
+  private static byte[] bytes(String content) {
+    return content.getBytes(UTF_8);
+  }
+
+  private static String hash(String content) {
+    return Hashing.sha256().hashBytes(bytes(content)).toString();
+  }
+}
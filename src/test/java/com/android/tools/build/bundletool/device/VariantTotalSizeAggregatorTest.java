@@ -481,6 +481,79 @@ public class VariantTotalSizeAggregatorTest {
         .containsExactly(SizeConfiguration.getDefaultInstance(), 20L);
   }
 
+  @Test
+  public void splitVariant_multipleModules_multipleTargeting_onDemandModuleNeverCounted() {
+    Variant lVariant =
+        createVariant(
+            lPlusVariantTargeting(),
+            createSplitApkSet(
+                /* moduleName= */ "base",
+                createMasterApkDescription(
+                    ApkTargeting.getDefaultInstance(), ZipPath.create("base-master.apk")),
+                createApkDescription(
+                    apkAbiTargeting(X86, ImmutableSet.of(X86_64)),
+                    ZipPath.create("base-x86.apk"),
+                    /* isMasterSplit= */ false),
+                createApkDescription(
+                    apkAbiTargeting(X86_64, ImmutableSet.of(X86)),
+                    ZipPath.create("base-x86_64.apk"),
+                    /* isMasterSplit= */ false),
+                createApkDescription(
+                    apkLanguageTargeting("en"),
+                    ZipPath.create("base-en.apk"),
+                    /* isMasterSplit= */ false),
+                createApkDescription(
+                    apkLanguageTargeting("fr"),
+                    ZipPath.create("base-fr.apk"),
+                    /* isMasterSplit= */ false)),
+            createSplitApkSet(
+                /* moduleName= */ "feature",
+                DeliveryType.ON_DEMAND,
+                /* moduleDependencies= */ ImmutableList.of(),
+                createMasterApkDescription(
+                    ApkTargeting.getDefaultInstance(), ZipPath.create("feature-master.apk")),
+                createApkDescription(
+                    apkAbiTargeting(X86, ImmutableSet.of(X86_64)),
+                    ZipPath.create("feature-x86.apk"),
+                    /* isMasterSplit= */ false),
+                createApkDescription(
+                    apkAbiTargeting(X86_64, ImmutableSet.of(X86)),
+                    ZipPath.create("feature-x86_64.apk"),
+                    /* isMasterSplit= */ false)));
+
+    ConfigurationSizes configurationSizes =
+        new VariantTotalSizeAggregator(
+                ImmutableMap.<String, Long>builder()
+                    .put("base-master.apk", 10L)
+                    .put("base-x86.apk", 4L)
+                    .put("base-x86_64.apk", 6L)
+                    .put("base-en.apk", 1L)
+                    .put("base-fr.apk", 2L)
+                    .put("feature-master.apk", 100L)
+                    .put("feature-x86.apk", 50L)
+                    .put("feature-x86_64.apk", 60L)
+                    .build(),
+                BundleToolVersion.getCurrentVersion(),
+                lVariant,
+                getSizeCommand.setDimensions(ImmutableSet.of(ABI, LANGUAGE)).build())
+            .getSize();
+
+    ImmutableMap<SizeConfiguration, Long> expectedSizes =
+        ImmutableMap.of(
+            SizeConfiguration.builder().setAbi("x86").setLocale("en").build(),
+            15L,
+            SizeConfiguration.builder().setAbi("x86").setLocale("fr").build(),
+            16L,
+            SizeConfiguration.builder().setAbi("x86_64").setLocale("en").build(),
+            17L,
+            SizeConfiguration.builder().setAbi("x86_64").setLocale("fr").build(),
+            18L);
+    assertThat(configurationSizes.getMaxSizeConfigurationMap())
+        .containsExactlyEntriesIn(expectedSizes);
+    assertThat(configurationSizes.getMinSizeConfigurationMap())
+        .containsExactlyEntriesIn(expectedSizes);
+  }
+
   @Test
   public void instantVariant_multipleModules_withInstantVariant() {
     // Instant variants only have instant split APKs.
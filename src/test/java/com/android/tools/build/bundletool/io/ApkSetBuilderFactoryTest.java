@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.io;
+
+import static com.android.bundle.Targeting.Abi.AbiAlias.ARMEABI;
+import static com.android.bundle.Targeting.Abi.AbiAlias.X86;
+import static com.android.tools.build.bundletool.testing.TargetingUtils.apkAbiTargeting;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.android.bundle.Commands.ApkDescription;
+import com.android.bundle.Commands.ApkSet;
+import com.android.bundle.Commands.BuildApksResult;
+import com.android.bundle.Commands.SplitApkMetadata;
+import com.android.bundle.Commands.Variant;
+import com.android.bundle.SizesOuterClass.ApkSetSizes;
+import com.android.bundle.Targeting.ApkTargeting;
+import com.android.tools.build.bundletool.io.ApkSetBuilderFactory.ApkSetBuilder;
+import com.android.tools.build.bundletool.model.ApkSetArchiveIndex;
+import com.android.tools.build.bundletool.model.ModuleSplit;
+import com.android.tools.build.bundletool.model.utils.ApkSizeUtils;
+import com.android.tools.build.bundletool.model.utils.ResultUtils;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.MoreFiles;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.stubbing.Answer;
+
+@RunWith(JUnit4.class)
+public class ApkSetBuilderFactoryTest {
+
+  @Rule public final TemporaryFolder tmp = new TemporaryFolder();
+  private Path tempDirectory;
+  private Path outputPath;
+
+  private final SplitApkSerializer splitApkSerializer = mock(SplitApkSerializer.class);
+  private final StandaloneApkSerializer standaloneApkSerializer =
+      mock(StandaloneApkSerializer.class);
+  private final Map<String, ModuleSplit> splitsByPath = new HashMap<>();
+
+  @Before
+  public void setUp() throws Exception {
+    tempDirectory = tmp.newFolder("temp").toPath();
+    outputPath = tmp.getRoot().toPath().resolve("output.apks");
+  }
+
+  @Test
+  public void indexedApkSet_apksLocatedByIndex() throws Exception {
+    ApkDescription master =
+        addSplitApk("splits/base-master.apk", ApkTargeting.getDefaultInstance());
+    ApkDescription x86 =
+        addSplitApk("splits/base-x86.apk", apkAbiTargeting(X86, ImmutableSet.of(ARMEABI)));
+    ApkDescription arm =
+        addSplitApk("splits/base-armeabi.apk", apkAbiTargeting(ARMEABI, ImmutableSet.of(X86)));
+    ApkSetBuilder apkSetBuilder =
+        ApkSetBuilderFactory.createApkSetBuilder(
+            splitApkSerializer,
+            standaloneApkSerializer,
+            tempDirectory,
+            ApkSerializationOptions.builder()
+                .setRecordDownloadSizes(true)
+                .setIndexedApkSet(true)
+                .build());
+    for (ApkDescription apkDescription : new ApkDescription[] {master, x86, arm}) {
+      apkSetBuilder.addSplitApk(splitFor(apkDescription));
+    }
+    BuildApksResult tableOfContents = tableOfContents(master, x86, arm);
+    apkSetBuilder.setTableOfContentsFile(tableOfContents);
+
+    apkSetBuilder.writeTo(outputPath);
+
+    ApkSetArchiveIndex index = ApkSetArchiveIndex.readFromApkSet(outputPath).get();
+    assertThat(index.getEntries().stream().map(ApkSetArchiveIndex.Entry::getPath))
+        .containsExactly(
+            "apk_sizes.pb",
+            "splits/base-armeabi.apk",
+            "splits/base-master.apk",
+            "splits/base-x86.apk",
+            "toc.pb")
+        .inOrder();
+    for (ApkDescription apkDescription : new ApkDescription[] {master, x86, arm}) {
+      ApkSetArchiveIndex.Entry entry = index.findEntry(apkDescription.getPath()).get();
+      assertThat(readRange(entry)).isEqualTo(apkContent(apkDescription.getPath()));
+      assertThat(entry.getTargetingMask())
+          .isEqualTo(ApkSetArchiveIndex.getTargetingMask(apkDescription.getTargeting()));
+    }
+    assertThat(index.findEntry("splits/base-x86.apk").get().getTargetingMask())
+        .isEqualTo(1L << (ApkSetArchiveIndex.ABI_SHIFT + X86.getNumber()));
+    assertThat(index.findEntry("splits/base-master.apk").get().getTargetingMask()).isEqualTo(0);
+    assertThat(
+            ApkSetSizes.parseFrom(readRange(index.findEntry("apk_sizes.pb").get()))
+                .getDownloadSizeByApkPathMap()
+                .keySet())
+        .containsExactly(master.getPath(), x86.getPath(), arm.getPath());
+    assertThat(index.findEntry("splits/unknown.apk")).isEmpty();
+
+    assertThat(ResultUtils.readTableOfContents(outputPath)).isEqualTo(tableOfContents);
+    try (ZipFile apkSet = new ZipFile(outputPath.toFile())) {
+      assertThat(apkSet.entries().nextElement().getName()).isEqualTo("toc.pb");
+      assertThat(apkSet.getEntry("toc.pb").getMethod()).isEqualTo(ZipEntry.STORED);
+      assertThat(apkSet.getEntry("toc.idx").getMethod()).isEqualTo(ZipEntry.STORED);
+    }
+  }
+
+  @Test
+  public void defaultApkSet_notIndexed() throws Exception {
+    ApkDescription master =
+        addSplitApk("splits/base-master.apk", ApkTargeting.getDefaultInstance());
+    ApkSetBuilder apkSetBuilder =
+        ApkSetBuilderFactory.createApkSetBuilder(
+            splitApkSerializer, standaloneApkSerializer, tempDirectory);
+    apkSetBuilder.addSplitApk(splitFor(master));
+    BuildApksResult tableOfContents = tableOfContents(master);
+    apkSetBuilder.setTableOfContentsFile(tableOfContents);
+
+    apkSetBuilder.writeTo(outputPath);
+
+    assertThat(ApkSetArchiveIndex.readFromApkSet(outputPath)).isEmpty();
+    assertThat(ResultUtils.readTableOfContents(outputPath)).isEqualTo(tableOfContents);
+  }
+
+  @Test
+  public void recordDownloadSizes_sizesStoredInArchive() throws Exception {
+    ApkDescription master =
+        addSplitApk("splits/base-master.apk", ApkTargeting.getDefaultInstance());
+    ApkDescription x86 =
+        addSplitApk("splits/base-x86.apk", apkAbiTargeting(X86, ImmutableSet.of(ARMEABI)));
+    ApkSetBuilder apkSetBuilder =
+        ApkSetBuilderFactory.createApkSetBuilder(
+            splitApkSerializer,
+            standaloneApkSerializer,
+            tempDirectory,
+            ApkSerializationOptions.builder().setRecordDownloadSizes(true).build());
+    apkSetBuilder.addSplitApk(splitFor(master));
+    apkSetBuilder.addSplitApk(splitFor(x86));
+    apkSetBuilder.setTableOfContentsFile(tableOfContents(master, x86));
+
+    apkSetBuilder.writeTo(outputPath);
+
+    try (ZipFile apkSet = new ZipFile(outputPath.toFile())) {
+      ApkSetSizes sizes;
+      try (InputStream sizesContent = apkSet.getInputStream(apkSet.getEntry("apk_sizes.pb"))) {
+        sizes = ApkSetSizes.parseFrom(sizesContent);
+      }
+      assertThat(sizes.getDownloadSizeByApkPathMap())
+          .containsExactly(
+              master.getPath(),
+              expectedDownloadSize(master.getPath()),
+              x86.getPath(),
+              expectedDownloadSize(x86.getPath()));
+    }
+  }
+
+  @Test
+  public void defaultApkSet_noDownloadSizes() throws Exception {
+    ApkDescription master =
+        addSplitApk("splits/base-master.apk", ApkTargeting.getDefaultInstance());
+    ApkSetBuilder apkSetBuilder =
+        ApkSetBuilderFactory.createApkSetBuilder(
+            splitApkSerializer, standaloneApkSerializer, tempDirectory);
+    apkSetBuilder.addSplitApk(splitFor(master));
+    apkSetBuilder.setTableOfContentsFile(tableOfContents(master));
+
+    apkSetBuilder.writeTo(outputPath);
+
+    try (ZipFile apkSet = new ZipFile(outputPath.toFile())) {
+      assertThat(apkSet.getEntry("apk_sizes.pb")).isNull();
+      assertThat(apkSet.getEntry(master.getPath())).isNotNull();
+    }
+  }
+
+  private ApkDescription addSplitApk(String path, ApkTargeting targeting) {
+    ApkDescription apkDescription =
+        ApkDescription.newBuilder()
+            .setPath(path)
+            .setTargeting(targeting)
+            .setSplitApkMetadata(SplitApkMetadata.newBuilder().setSplitId(path))
+            .build();
+    ModuleSplit split = mock(ModuleSplit.class);
+    splitsByPath.put(path, split);
+    when(splitApkSerializer.writeSplitToDisk(eq(split), eq(tempDirectory)))
+        .thenAnswer(writeApk(apkDescription));
+    return apkDescription;
+  }
+
+  private ModuleSplit splitFor(ApkDescription apkDescription) {
+    return splitsByPath.get(apkDescription.getPath());
+  }
+
+  private Answer<ApkDescription> writeApk(ApkDescription apkDescription) {
+    return invocation -> {
+      Path apkPath = tempDirectory.resolve(apkDescription.getPath());
+      Files.createDirectories(apkPath.getParent());
+      Files.write(apkPath, apkContent(apkDescription.getPath()));
+      return apkDescription;
+    };
+  }
+
+  private byte[] readRange(ApkSetArchiveIndex.Entry entry) throws Exception {
+    return MoreFiles.asByteSource(outputPath).slice(entry.getOffset(), entry.getLength()).read();
+  }
+
+  private static byte[] apkContent(String path) {
+    return ("content of " + path).getBytes(UTF_8);
+  }
+  private static long expectedDownloadSize(String apkPath) throws Exception {
+    byte[] content = apkContent(apkPath);
+    return ApkSizeUtils.calculateDownloadSize(new ByteArrayInputStream(content), content.length);
+  }
+
+
+  private static BuildApksResult tableOfContents(ApkDescription... apkDescriptions) {
+    return BuildApksResult.newBuilder()
+        .addVariant(
+            Variant.newBuilder()
+                .addApkSet(
+                    ApkSet.newBuilder()
+                        .addAllApkDescription(ImmutableList.copyOf(apkDescriptions))))
+        .build();
+  }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.io;
+
+import static com.android.tools.build.bundletool.testing.truth.zip.TruthZip.assertThat;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.android.tools.build.bundletool.io.ZipBuilder.EntryOption;
+import com.android.tools.build.bundletool.model.ZipPath;
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ZipBuilderTest {
+
+  @Rule public final TemporaryFolder tmp = new TemporaryFolder();
+  private Path tmpDir;
+
+  @Before
+  public void setUp() {
+    tmpDir = tmp.getRoot().toPath();
+  }
+
+  @Test
+  public void writeTo_entriesReadable() throws Exception {
+    byte[] content = "Hello, world!".getBytes(UTF_8);
+    Path zipPath =
+        new ZipBuilder()
+            .addDirectory(ZipPath.create("directory"))
+            .addFileWithContent(ZipPath.create("compressed.txt"), content)
+            .addFileWithContent(
+                ZipPath.create("uncompressed.txt"), content, EntryOption.UNCOMPRESSED)
+            .addFileWithContent(ZipPath.create("empty.txt"), new byte[0])
+            .writeTo(tmpDir.resolve("output.zip"));
+
+    try (ZipFile zipFile = new ZipFile(zipPath.toFile())) {
+      assertThat(zipFile.size()).isEqualTo(4);
+      assertThat(zipFile).hasFile("directory/").thatIsDirectory();
+      assertThat(zipFile).hasFile("compressed.txt").withContent(content).thatIsCompressed();
+      assertThat(zipFile).hasFile("uncompressed.txt").withContent(content).thatIsUncompressed();
+      assertThat(zipFile).hasFile("empty.txt").withContent(new byte[0]);
+      assertThat(zipFile.getEntry("compressed.txt").getTime()).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void writeTo_sequential_sameOutputAsZipOutputStream() throws Exception {
+    byte[] content = Strings.repeat("Hello, world! ", 100).getBytes(UTF_8);
+    Path expectedZip = tmpDir.resolve("expected.zip");
+    try (ZipOutputStream zipOutputStream =
+        new ZipOutputStream(Files.newOutputStream(expectedZip))) {
+      ZipEntry directory = new ZipEntry("directory/");
+      directory.setTime(0);
+      zipOutputStream.putNextEntry(directory);
+      zipOutputStream.closeEntry();
+      ZipEntry compressed = new ZipEntry("compressed.txt");
+      compressed.setTime(0);
+      zipOutputStream.putNextEntry(compressed);
+      zipOutputStream.write(content);
+      zipOutputStream.closeEntry();
+      ZipEntry uncompressed = new ZipEntry("uncompressed.txt");
+      uncompressed.setTime(0);
+      uncompressed.setMethod(ZipEntry.STORED);
+      uncompressed.setSize(content.length);
+      CRC32 crc = new CRC32();
+      crc.update(content);
+      uncompressed.setCrc(crc.getValue());
+      zipOutputStream.putNextEntry(uncompressed);
+      zipOutputStream.write(content);
+      zipOutputStream.closeEntry();
+    }
+
+    Path zipPath =
+        new ZipBuilder()
+            .addDirectory(ZipPath.create("directory"))
+            .addFileWithContent(ZipPath.create("compressed.txt"), content)
+            .addFileWithContent(
+                ZipPath.create("uncompressed.txt"), content, EntryOption.UNCOMPRESSED)
+            .writeTo(tmpDir.resolve("output.zip"));
+
+    assertThat(Files.readAllBytes(zipPath)).isEqualTo(Files.readAllBytes(expectedZip));
+  }
+
+  @Test
+  public void writeTo_withExecutorService_sameEntriesAsSequential() throws Exception {
+    ZipBuilder zipBuilder = new ZipBuilder();
+    for (int i = 1; i <= 200; i++) {
+      byte[] content = new byte[i * 100];
+      content[content.length / 2] = (byte) i;
+      zipBuilder.addFileWithContent(
+          ZipPath.create("file" + i),
+          content,
+          i % 3 == 0 ? new EntryOption[] {EntryOption.UNCOMPRESSED} : new EntryOption[0]);
+    }
+    ListeningExecutorService executorService =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+
+    Path sequentialZip = zipBuilder.writeTo(tmpDir.resolve("sequential.zip"));
+    Path parallelZip;
+    try {
+      parallelZip = zipBuilder.writeTo(tmpDir.resolve("parallel.zip"), executorService);
+    } finally {
+      executorService.shutdown();
+    }
+
+    assertSameEntries(parallelZip, sequentialZip);
+  }
+
+  @Test
+  public void writeTo_withExecutorService_sameOutputWithAnyExecutor() throws Exception {
+    ZipBuilder zipBuilder = new ZipBuilder();
+    for (int i = 1; i <= 200; i++) {
+      byte[] content = new byte[i * 100];
+      content[content.length / 2] = (byte) i;
+      zipBuilder.addFileWithContent(
+          ZipPath.create("file" + i),
+          content,
+          i % 3 == 0 ? new EntryOption[] {EntryOption.UNCOMPRESSED} : new EntryOption[0]);
+    }
+    ListeningExecutorService executorService =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+
+    Path directZip =
+        zipBuilder.writeTo(
+            tmpDir.resolve("direct.zip"), MoreExecutors.newDirectExecutorService());
+    Path parallelZip;
+    try {
+      parallelZip = zipBuilder.writeTo(tmpDir.resolve("parallel.zip"), executorService);
+    } finally {
+      executorService.shutdown();
+    }
+
+    assertThat(Files.readAllBytes(parallelZip)).isEqualTo(Files.readAllBytes(directZip));
+  }
+
+  @Test
+  public void writeTo_entriesLargerThanInMemoryLimit_writtenFromDisk() throws Exception {
+    // Random bytes don't compress, so the compressed data doesn't fit in memory either.
+    byte[] content = new byte[3 * ZipWriter.MAX_IN_MEMORY_DATA_SIZE];
+    new Random(42).nextBytes(content);
+    Path contentPath = tmpDir.resolve("content");
+    Files.write(contentPath, content);
+    ZipBuilder zipBuilder =
+        new ZipBuilder()
+            .addFileFromDisk(ZipPath.create("compressed"), contentPath.toFile())
+            .addFileFromDisk(
+                ZipPath.create("uncompressed"), contentPath.toFile(), EntryOption.UNCOMPRESSED);
+    ListeningExecutorService executorService =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(2));
+
+    Path sequentialZip = zipBuilder.writeTo(tmpDir.resolve("sequential.zip"));
+    Path parallelZip;
+    try {
+      parallelZip = zipBuilder.writeTo(tmpDir.resolve("parallel.zip"), executorService);
+    } finally {
+      executorService.shutdown();
+    }
+
+    try (ZipFile zipFile = new ZipFile(parallelZip.toFile())) {
+      assertThat(zipFile).hasFile("compressed").withContent(content).thatIsCompressed();
+      assertThat(zipFile).hasFile("uncompressed").withContent(content).thatIsUncompressed();
+    }
+    assertSameEntries(parallelZip, sequentialZip);
+  }
+
+  @Test
+  public void writeTo_tooManyEntriesForZip32_usesZip64() throws Exception {
+    ZipBuilder zipBuilder = new ZipBuilder();
+    int entryCount = 70_000;
+    for (int i = 0; i < entryCount; i++) {
+      zipBuilder.addFileWithContent(
+          ZipPath.create("file" + i), new byte[] {(byte) i}, EntryOption.UNCOMPRESSED);
+    }
+
+    Path zipPath =
+        zipBuilder.writeTo(tmpDir.resolve("output.zip"), MoreExecutors.newDirectExecutorService());
+
+    try (ZipFile zipFile = new ZipFile(zipPath.toFile())) {
+      assertThat(zipFile.size()).isEqualTo(entryCount);
+      assertThat(zipFile).hasFile("file69999").withContent(new byte[] {(byte) 69999});
+    }
+  }
+
+  @Test
+  public void writeTo_failingEntry_throwsAndDoesNotCreateOutput() throws Exception {
+    IOException readError = new IOException("Read error.");
+    ListeningExecutorService executorService =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(2));
+    ZipBuilder zipBuilder =
+        new ZipBuilder()
+            .addFileWithContent(ZipPath.create("good"), new byte[10])
+            .addFile(
+                ZipPath.create("bad"),
+                () -> {
+                  throw readError;
+                });
+    Path zipPath = tmpDir.resolve("output.zip");
+
+    IOException exception;
+    try {
+      exception =
+          assertThrows(IOException.class, () -> zipBuilder.writeTo(zipPath, executorService));
+    } finally {
+      executorService.shutdown();
+    }
+
+    assertThat(exception).isSameInstanceAs(readError);
+    assertThat(Files.exists(zipPath)).isFalse();
+  }
+
+  @Test
+  public void writeTo_copiedEntryWithSameCompression_compressedDataCopiedAsIs() throws Exception {
+    byte[] content = Strings.repeat("Hello, world! ", 1000).getBytes(UTF_8);
+    Path sourcePath = tmpDir.resolve("source.zip");
+    try (ZipOutputStream zipOutputStream =
+        new ZipOutputStream(Files.newOutputStream(sourcePath))) {
+      // Compressed differently than by the ZipBuilder, so that a recompression would be visible.
+      zipOutputStream.setLevel(Deflater.BEST_SPEED);
+      zipOutputStream.putNextEntry(new ZipEntry("dir/file.txt"));
+      zipOutputStream.write(content);
+      zipOutputStream.closeEntry();
+    }
+
+    try (ZipFile sourceZip = new ZipFile(sourcePath.toFile())) {
+      Path zipPath =
+          new ZipBuilder()
+              .copyAllContentsFromZip(ZipPath.create("copy"), sourceZip)
+              .writeTo(tmpDir.resolve("output.zip"), MoreExecutors.newDirectExecutorService());
+
+      try (ZipFile zipFile = new ZipFile(zipPath.toFile())) {
+        assertThat(zipFile).hasFile("copy/dir/file.txt").withContent(content).thatIsCompressed();
+        assertThat(zipFile.getEntry("copy/dir/file.txt").getCompressedSize())
+            .isEqualTo(sourceZip.getEntry("dir/file.txt").getCompressedSize());
+      }
+    }
+  }
+
+  @Test
+  public void writeTo_copiedEntryWithDifferentCompression_recompressed() throws Exception {
+    byte[] content = Strings.repeat("Hello, world! ", 1000).getBytes(UTF_8);
+    Path sourcePath =
+        new ZipBuilder()
+            .addFileWithContent(ZipPath.create("file.txt"), content, EntryOption.UNCOMPRESSED)
+            .writeTo(tmpDir.resolve("source.zip"));
+
+    try (ZipFile sourceZip = new ZipFile(sourcePath.toFile())) {
+      Path zipPath =
+          new ZipBuilder()
+              .copyAllContentsFromZip(ZipPath.create(""), sourceZip)
+              .writeTo(tmpDir.resolve("output.zip"));
+
+      try (ZipFile zipFile = new ZipFile(zipPath.toFile())) {
+        assertThat(zipFile).hasFile("file.txt").withContent(content).thatIsCompressed();
+      }
+    }
+  }
+
+  private static void assertSameEntries(Path actualZip, Path expectedZip) throws Exception {
+    try (ZipFile actualZipFile = new ZipFile(actualZip.toFile());
+        ZipFile expectedZipFile = new ZipFile(expectedZip.toFile())) {
+      assertThat(
+              Collections.list(actualZipFile.entries()).stream()
+                  .map(ZipEntry::getName)
+                  .collect(toImmutableList()))
+          .containsExactlyElementsIn(
+              Collections.list(expectedZipFile.entries()).stream()
+                  .map(ZipEntry::getName)
+                  .collect(toImmutableList()))
+          .inOrder();
+      for (ZipEntry expectedEntry : Collections.list(expectedZipFile.entries())) {
+        ZipEntry actualEntry = actualZipFile.getEntry(expectedEntry.getName());
+        assertThat(actualEntry.getMethod()).isEqualTo(expectedEntry.getMethod());
+        assertThat(actualEntry.getCrc()).isEqualTo(expectedEntry.getCrc());
+        assertThat(actualEntry.getTime()).isEqualTo(expectedEntry.getTime());
+        assertThat(ByteStreams.toByteArray(actualZipFile.getInputStream(actualEntry)))
+            .isEqualTo(ByteStreams.toByteArray(expectedZipFile.getInputStream(expectedEntry)));
+      }
+    }
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model;
+
+import static com.android.bundle.Targeting.Abi.AbiAlias.ARM64_V8A;
+import static com.android.bundle.Targeting.ScreenDensity.DensityAlias.XHDPI;
+import static com.android.bundle.Targeting.TextureCompressionFormat.TextureCompressionFormatAlias.ASTC;
+import static com.android.tools.build.bundletool.testing.TargetingUtils.apkAbiTargeting;
+import static com.android.tools.build.bundletool.testing.TargetingUtils.apkDensityTargeting;
+import static com.android.tools.build.bundletool.testing.TargetingUtils.apkLanguageTargeting;
+import static com.android.tools.build.bundletool.testing.TargetingUtils.apkTextureTargeting;
+import static com.android.tools.build.bundletool.testing.TargetingUtils.mergeApkTargeting;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.android.tools.build.bundletool.model.exceptions.ValidationException;
+import com.google.common.collect.ImmutableList;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ApkSetArchiveIndexTest {
+
+  private static final int LOCAL_FILE_HEADER_SIZE = 30;
+
+  @Rule public final TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void serializeAndWrap_entriesSortedAndFound() {
+    ImmutableList<ApkSetArchiveIndex.Entry> entries =
+        ImmutableList.of(
+            ApkSetArchiveIndex.Entry.create("toc.pb", 39, 120, 0),
+            ApkSetArchiveIndex.Entry.create("splits/base-master.apk", 500, 1000, 0),
+            ApkSetArchiveIndex.Entry.create("splits/base-\u00e9.apk", 1550, 20, 4),
+            ApkSetArchiveIndex.Entry.create("splits/base-arm64_v8a.apk", 1600, 300, 8));
+    byte[] serialized = ApkSetArchiveIndex.serialize(entries);
+
+    ApkSetArchiveIndex index = ApkSetArchiveIndex.wrap(ByteBuffer.wrap(serialized));
+
+    assertThat(serialized)
+        .hasLength(
+            ApkSetArchiveIndex.getSerializedSize(
+                entries.stream()
+                    .map(ApkSetArchiveIndex.Entry::getPath)
+                    .collect(toImmutableList())));
+    assertThat(index.getEntryCount()).isEqualTo(4);
+    assertThat(index.getEntries())
+        .containsExactly(entries.get(3), entries.get(1), entries.get(2), entries.get(0))
+        .inOrder();
+    for (ApkSetArchiveIndex.Entry entry : entries) {
+      assertThat(index.findEntry(entry.getPath())).hasValue(entry);
+    }
+    assertThat(index.findEntry("splits/base.apk")).isEmpty();
+    assertThat(index.findEntry("zzz")).isEmpty();
+  }
+
+  @Test
+  public void wrap_emptyIndex() {
+    ApkSetArchiveIndex index =
+        ApkSetArchiveIndex.wrap(ByteBuffer.wrap(ApkSetArchiveIndex.serialize(ImmutableList.of())));
+
+    assertThat(index.getEntries()).isEmpty();
+    assertThat(index.findEntry("toc.pb")).isEmpty();
+  }
+
+  @Test
+  public void wrap_invalidIndex_throws() {
+    byte[] serialized =
+        ApkSetArchiveIndex.serialize(
+            ImmutableList.of(ApkSetArchiveIndex.Entry.create("toc.pb", 39, 120, 0)));
+    serialized[0] = 0;
+
+    ValidationException exception =
+        assertThrows(
+            ValidationException.class, () -> ApkSetArchiveIndex.wrap(ByteBuffer.wrap(serialized)));
+
+    assertThat(exception).hasMessageThat().contains("Invalid APK Set index");
+  }
+
+  @Test
+  public void readFromApkSet_indexedLayout_roundTrip() throws Exception {
+    byte[] tableOfContents = "table of contents".getBytes(UTF_8);
+    byte[] apk = "apk".getBytes(UTF_8);
+    String apkPath = "splits/base-master.apk";
+    // Without extra fields, the data of a stored entry follows its name in the local header.
+    long tableOfContentsOffset = LOCAL_FILE_HEADER_SIZE + "toc.pb".length();
+    long indexOffset =
+        tableOfContentsOffset
+            + tableOfContents.length
+            + LOCAL_FILE_HEADER_SIZE
+            + "toc.idx".length();
+    int indexSize = ApkSetArchiveIndex.getSerializedSize(ImmutableList.of("toc.pb", apkPath));
+    long apkOffset = indexOffset + indexSize + LOCAL_FILE_HEADER_SIZE + apkPath.length();
+    ImmutableList<ApkSetArchiveIndex.Entry> entries =
+        ImmutableList.of(
+            ApkSetArchiveIndex.Entry.create(apkPath, apkOffset, apk.length, 8),
+            ApkSetArchiveIndex.Entry.create(
+                "toc.pb", tableOfContentsOffset, tableOfContents.length, 0));
+    Path apkSetPath = tmp.getRoot().toPath().resolve("app.apks");
+    try (ZipOutputStream zipOutputStream =
+        new ZipOutputStream(Files.newOutputStream(apkSetPath))) {
+      putStoredEntry(zipOutputStream, "toc.pb", tableOfContents);
+      putStoredEntry(zipOutputStream, "toc.idx", ApkSetArchiveIndex.serialize(entries));
+      putStoredEntry(zipOutputStream, apkPath, apk);
+    }
+
+    Optional<ApkSetArchiveIndex> index = ApkSetArchiveIndex.readFromApkSet(apkSetPath);
+
+    assertThat(index).isPresent();
+    assertThat(index.get().getEntries()).containsExactlyElementsIn(entries).inOrder();
+    byte[] apkSet = Files.readAllBytes(apkSetPath);
+    ApkSetArchiveIndex.Entry apkEntry = index.get().findEntry(apkPath).get();
+    assertThat(
+            Arrays.copyOfRange(
+                apkSet,
+                (int) apkEntry.getOffset(),
+                (int) (apkEntry.getOffset() + apkEntry.getLength())))
+        .isEqualTo(apk);
+  }
+
+  @Test
+  public void readFromApkSet_compressedTableOfContents_noIndex() throws Exception {
+    Path apkSetPath = tmp.getRoot().toPath().resolve("app.apks");
+    try (ZipOutputStream zipOutputStream =
+        new ZipOutputStream(Files.newOutputStream(apkSetPath))) {
+      zipOutputStream.putNextEntry(new ZipEntry("toc.pb"));
+      zipOutputStream.write("table of contents".getBytes(UTF_8));
+      zipOutputStream.closeEntry();
+      putStoredEntry(
+          zipOutputStream, "toc.idx", ApkSetArchiveIndex.serialize(ImmutableList.of()));
+    }
+
+    assertThat(ApkSetArchiveIndex.readFromApkSet(apkSetPath)).isEmpty();
+  }
+
+  @Test
+  public void readFromApkSet_indexNotSecondEntry_noIndex() throws Exception {
+    Path apkSetPath = tmp.getRoot().toPath().resolve("app.apks");
+    try (ZipOutputStream zipOutputStream =
+        new ZipOutputStream(Files.newOutputStream(apkSetPath))) {
+      putStoredEntry(zipOutputStream, "toc.pb", "table of contents".getBytes(UTF_8));
+      putStoredEntry(zipOutputStream, "splits/base-master.apk", "apk".getBytes(UTF_8));
+      putStoredEntry(
+          zipOutputStream, "toc.idx", ApkSetArchiveIndex.serialize(ImmutableList.of()));
+    }
+
+    assertThat(ApkSetArchiveIndex.readFromApkSet(apkSetPath)).isEmpty();
+  }
+
+  @Test
+  public void getTargetingMask_enumerableDimensionsOnly() {
+    long mask =
+        ApkSetArchiveIndex.getTargetingMask(
+            mergeApkTargeting(
+                apkAbiTargeting(ARM64_V8A),
+                apkDensityTargeting(XHDPI),
+                apkTextureTargeting(ASTC),
+                apkLanguageTargeting("fr")));
+
+    assertThat(mask)
+        .isEqualTo(
+            (1L << (ApkSetArchiveIndex.ABI_SHIFT + ARM64_V8A.getNumber()))
+                | (1L << (ApkSetArchiveIndex.SCREEN_DENSITY_SHIFT + XHDPI.getNumber()))
+                | (1L << (ApkSetArchiveIndex.TEXTURE_COMPRESSION_FORMAT_SHIFT + ASTC.getNumber())));
+    assertThat(ApkSetArchiveIndex.getTargetingMask(apkLanguageTargeting("fr"))).isEqualTo(0);
+  }
+
+  private static void putStoredEntry(ZipOutputStream zipOutputStream, String name, byte[] content)
+      throws Exception {
+    ZipEntry entry = new ZipEntry(name);
+    entry.setMethod(ZipEntry.STORED);
+    entry.setSize(content.length);
+    CRC32 crc = new CRC32();
+    crc.update(content);
+    entry.setCrc(crc.getValue());
+    zipOutputStream.putNextEntry(entry);
+    zipOutputStream.write(content);
+    zipOutputStream.closeEntry();
+  }
+}
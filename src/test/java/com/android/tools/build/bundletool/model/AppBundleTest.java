@@ -35,8 +35,12 @@ import com.android.tools.build.bundletool.io.ZipBuilder;
 import com.android.tools.build.bundletool.testing.AppBundleBuilder;
 import com.android.tools.build.bundletool.testing.BundleConfigBuilder;
 import com.android.tools.build.bundletool.testing.TestUtils;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.nio.file.Path;
 import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.zip.ZipFile;
 import org.junit.Before;
 import org.junit.Rule;
@@ -94,6 +98,38 @@ public class AppBundleTest {
     }
   }
 
+  @Test
+  public void buildFromZip_withExecutor_loadsEachModuleOnExecutor() throws Exception {
+    createBasicZipBuilder(BUNDLE_CONFIG)
+        .addFileWithProtoContent(ZipPath.create("base/manifest/AndroidManifest.xml"), MANIFEST)
+        .addFileWithContent(ZipPath.create("base/dex/classes.dex"), DUMMY_CONTENT)
+        .addFileWithContent(ZipPath.create("base/dex/classes1.dex"), DUMMY_CONTENT)
+        .addFileWithProtoContent(ZipPath.create("detail/manifest/AndroidManifest.xml"), MANIFEST)
+        .addFileWithContent(ZipPath.create("detail/assets/file.txt"), DUMMY_CONTENT)
+        .writeTo(bundleFile);
+
+    ThreadPoolExecutor threadPool = (ThreadPoolExecutor) Executors.newFixedThreadPool(2);
+    ListeningExecutorService executorService = MoreExecutors.listeningDecorator(threadPool);
+    try (ZipFile appBundleZip = new ZipFile(bundleFile.toFile())) {
+      AppBundle appBundle = AppBundle.buildFromZip(appBundleZip, zipEntry -> {}, executorService);
+
+      // One task per module.
+      assertThat(threadPool.getTaskCount()).isEqualTo(2);
+      assertThat(appBundle.getFeatureModules().keySet())
+          .containsExactly(BundleModuleName.create("base"), BundleModuleName.create("detail"));
+      // Modules are still sanitized.
+      assertThat(appBundle.getBaseModule().getEntry(ZipPath.create("dex/classes2.dex")))
+          .isPresent();
+      assertThat(
+              appBundle
+                  .getModule(BundleModuleName.create("detail"))
+                  .getEntry(ZipPath.create("assets/file.txt")))
+          .isPresent();
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
   @Test
   public void classFilesNotAddedToModule() throws Exception {
     createBasicZipBuilderWithManifest()
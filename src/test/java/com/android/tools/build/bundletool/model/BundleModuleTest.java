@@ -46,6 +46,7 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import com.android.aapt.Resources.Package;
 import com.android.aapt.Resources.ResourceTable;
+import com.android.aapt.Resources.StringPool;
 import com.android.aapt.Resources.XmlNode;
 import com.android.bundle.Config.BundleConfig;
 import com.android.bundle.Files.ApexImages;
@@ -57,8 +58,10 @@ import com.android.bundle.Files.TargetedNativeDirectory;
 import com.android.bundle.Targeting.ModuleTargeting;
 import com.android.tools.build.bundletool.model.BundleModule.ModuleDeliveryType;
 import com.android.tools.build.bundletool.model.BundleModule.ModuleType;
+import com.android.tools.build.bundletool.model.exceptions.ValidationException;
 import com.android.tools.build.bundletool.testing.BundleConfigBuilder;
-import java.io.IOException;
+import com.google.common.primitives.Bytes;
+import com.google.protobuf.ByteString;
 import java.util.Arrays;
 import org.junit.Before;
 import org.junit.Test;
@@ -103,11 +106,12 @@ public class BundleModuleTest {
   public void incorrectAssetsProtoFile_throws() throws Exception {
     byte[] badAssetsFile = new byte[] {'b', 'a', 'd'};
 
-    assertThrows(
-        IOException.class,
-        () ->
-            createMinimalModuleBuilder()
-                .addEntry(createModuleEntryForFile("assets.pb", badAssetsFile)));
+    BundleModule bundleModule =
+        createMinimalModuleBuilder()
+            .addEntry(createModuleEntryForFile("assets.pb", badAssetsFile))
+            .build();
+
+    assertThrows(ValidationException.class, () -> bundleModule.getAssetsConfig());
   }
 
   @Test
@@ -136,11 +140,12 @@ public class BundleModuleTest {
   public void incorrectNativeProtoFile_throws() throws Exception {
     byte[] badNativeFile = new byte[] {'b', 'a', 'd'};
 
-    assertThrows(
-        IOException.class,
-        () ->
-            createMinimalModuleBuilder()
-                .addEntry(createModuleEntryForFile("native.pb", badNativeFile)));
+    BundleModule bundleModule =
+        createMinimalModuleBuilder()
+            .addEntry(createModuleEntryForFile("native.pb", badNativeFile))
+            .build();
+
+    assertThrows(ValidationException.class, () -> bundleModule.getNativeConfig());
   }
 
   @Test
@@ -163,15 +168,77 @@ public class BundleModuleTest {
     assertThat(bundleModule.getResourceTable()).hasValue(resourceTable);
   }
 
+  @Test
+  public void resourceTableProtoFile_parsedOnlyOnce() throws Exception {
+    ResourceTable resourceTable =
+        ResourceTable.newBuilder().addPackage(Package.getDefaultInstance()).build();
+
+    BundleModule bundleModule =
+        createMinimalModuleBuilder()
+            .addEntry(createModuleEntryForFile("resources.pb", resourceTable.toByteArray()))
+            .build();
+
+    assertThat(bundleModule.getResourceTable().get())
+        .isSameInstanceAs(bundleModule.getResourceTable().get());
+  }
+
+  @Test
+  public void resourceTableProtoFile_equalToParsedTable() throws Exception {
+    ResourceTable resourceTable =
+        ResourceTable.newBuilder().addPackage(Package.getDefaultInstance()).build();
+
+    BundleModule lazyModule =
+        createMinimalModuleBuilder()
+            .addEntry(createModuleEntryForFile("resources.pb", resourceTable.toByteArray()))
+            .build();
+    BundleModule parsedModule =
+        createMinimalModuleBuilder()
+            .addEntry(createModuleEntryForFile("resources.pb", resourceTable.toByteArray()))
+            .setResourceTable(resourceTable)
+            .build();
+
+    assertThat(lazyModule).isEqualTo(parsedModule);
+    assertThat(lazyModule.hashCode()).isEqualTo(parsedModule.hashCode());
+  }
+
+  @Test
+  public void resourceTableSerializedInAnotherFieldOrder_equalToParsedTable() throws Exception {
+    StringPool sourcePool =
+        StringPool.newBuilder().setData(ByteString.copyFrom(new byte[] {'x'})).build();
+    Package resourcePackage = Package.newBuilder().setPackageName("com.test.app").build();
+    ResourceTable resourceTable =
+        ResourceTable.newBuilder().setSourcePool(sourcePool).addPackage(resourcePackage).build();
+    // Concatenated messages are merged, so this is the same table with its fields reordered.
+    byte[] reorderedResourcesFile =
+        Bytes.concat(
+            ResourceTable.newBuilder().addPackage(resourcePackage).build().toByteArray(),
+            ResourceTable.newBuilder().setSourcePool(sourcePool).build().toByteArray());
+
+    BundleModule lazyModule =
+        createMinimalModuleBuilder()
+            .addEntry(createModuleEntryForFile("resources.pb", reorderedResourcesFile))
+            .build();
+    BundleModule parsedModule =
+        createMinimalModuleBuilder()
+            .addEntry(createModuleEntryForFile("resources.pb", reorderedResourcesFile))
+            .setResourceTable(resourceTable)
+            .build();
+
+    assertThat(reorderedResourcesFile).isNotEqualTo(resourceTable.toByteArray());
+    assertThat(lazyModule).isEqualTo(parsedModule);
+    assertThat(lazyModule.hashCode()).isEqualTo(parsedModule.hashCode());
+  }
+
   @Test
   public void incorrectResourceTable_throws() throws Exception {
     byte[] badResourcesFile = new byte[] {'b', 'a', 'd'};
 
-    assertThrows(
-        IOException.class,
-        () ->
-            createMinimalModuleBuilder()
-                .addEntry(createModuleEntryForFile("resources.pb", badResourcesFile)));
+    BundleModule bundleModule =
+        createMinimalModuleBuilder()
+            .addEntry(createModuleEntryForFile("resources.pb", badResourcesFile))
+            .build();
+
+    assertThrows(ValidationException.class, () -> bundleModule.getResourceTable());
   }
 
   @Test
@@ -206,15 +273,14 @@ public class BundleModuleTest {
   @Test
   public void incorrectProtoManifest_throws() throws Exception {
     byte[] badManifestFile = new byte[] {'b', 'a', 'd'};
-    BundleModule.Builder minimalModuleWithoutManifest =
+    BundleModule bundleModule =
         BundleModule.builder()
-            .setName(BundleModuleName.create("testModule"));
+            .setName(BundleModuleName.create("testModule"))
+            .setBundleConfig(DEFAULT_BUNDLE_CONFIG)
+            .addEntry(createModuleEntryForFile("manifest/AndroidManifest.xml", badManifestFile))
+            .build();
 
-    assertThrows(
-        IOException.class,
-        () ->
-            minimalModuleWithoutManifest.addEntry(
-                createModuleEntryForFile("manifest/AndroidManifest.xml", badManifestFile)));
+    assertThrows(ValidationException.class, () -> bundleModule.getAndroidManifest());
   }
 
   @Test
@@ -243,11 +309,12 @@ public class BundleModuleTest {
   public void incorrectApexProtoFile_throws() throws Exception {
     byte[] badApexFile = new byte[] {'b', 'a', 'd'};
 
-    assertThrows(
-        IOException.class,
-        () ->
-            createMinimalModuleBuilder()
-                .addEntry(createModuleEntryForFile("apex.pb", badApexFile)));
+    BundleModule bundleModule =
+        createMinimalModuleBuilder()
+            .addEntry(createModuleEntryForFile("apex.pb", badApexFile))
+            .build();
+
+    assertThrows(ValidationException.class, () -> bundleModule.getApexConfig());
   }
 
   @Test
@@ -312,6 +379,32 @@ public class BundleModuleTest {
         .containsExactly(entry1, entry2);
   }
 
+  @Test
+  public void entriesUnderPath_nestedDirectoriesFileAndRoot() throws Exception {
+    ModuleEntry entry1 = createModuleEntryForFile("res/drawable/icon.png", DUMMY_CONTENT);
+    ModuleEntry entry2 = createModuleEntryForFile("assets/file.txt", DUMMY_CONTENT);
+    ModuleEntry entry3 = createModuleEntryForFile("res/layout/main.xml", DUMMY_CONTENT);
+
+    BundleModule bundleModule =
+        createMinimalModuleBuilder().addEntries(Arrays.asList(entry1, entry2, entry3)).build();
+
+    assertThat(bundleModule.findEntriesUnderPath(ZipPath.create("res")).collect(toList()))
+        .containsExactly(entry1, entry3)
+        .inOrder();
+    assertThat(bundleModule.findEntriesUnderPath(ZipPath.create("res/layout")).collect(toList()))
+        .containsExactly(entry3);
+    assertThat(
+            bundleModule
+                .findEntriesUnderPath(ZipPath.create("assets/file.txt"))
+                .collect(toList()))
+        .containsExactly(entry2);
+    assertThat(bundleModule.findEntriesUnderPath(ZipPath.create("lib")).collect(toList()))
+        .isEmpty();
+    assertThat(bundleModule.findEntriesUnderPath(ZipPath.ROOT).collect(toList()))
+        .containsExactly(entry1, entry2, entry3)
+        .inOrder();
+  }
+
   @Test
   public void getEntry_existing_found() throws Exception {
     ModuleEntry entry = createModuleEntryForFile("dir/entry", DUMMY_CONTENT);
@@ -19,8 +19,13 @@ package com.android.tools.build.bundletool.model;
 import static com.android.tools.build.bundletool.testing.TestUtils.toByteArray;
 import static com.google.common.truth.Truth.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
+import com.android.aapt.Resources.XmlNode;
+import com.google.protobuf.MessageLite;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
@@ -93,6 +98,36 @@ public class InputStreamSuppliersTest {
     assertThat(toByteArray(inputStreamSupplier::get)).isEqualTo(content);
   }
 
+  @Test
+  public void fromBytesNoCopy() throws Exception {
+    final byte[] content = {1, 34, 123};
+    InputStreamSupplier inputStreamSupplier = InputStreamSuppliers.fromBytesNoCopy(content);
+    assertThat(toByteArray(inputStreamSupplier::get)).isEqualTo(content);
+  }
+
+  @Test
+  public void fromProto() throws Exception {
+    XmlNode message = XmlNode.newBuilder().setText("hello").build();
+    InputStreamSupplier inputStreamSupplier = InputStreamSuppliers.fromProto(message);
+    assertThat(toByteArray(inputStreamSupplier::get)).isEqualTo(message.toByteArray());
+  }
+
+  @Test
+  public void fromProto_sameMessage_serializedOnce() throws Exception {
+    final byte[] content = {1, 34, 123};
+    when(message.toByteArray()).thenReturn(content);
+
+    InputStreamSupplier inputStreamSupplier1 = InputStreamSuppliers.fromProto(message);
+    InputStreamSupplier inputStreamSupplier2 = InputStreamSuppliers.fromProto(message);
+
+    assertThat(toByteArray(inputStreamSupplier1::get)).isEqualTo(content);
+    assertThat(toByteArray(inputStreamSupplier1::get)).isEqualTo(content);
+    assertThat(toByteArray(inputStreamSupplier2::get)).isEqualTo(content);
+    verify(message, times(1)).toByteArray();
+  }
+
+  @Mock MessageLite message;
+
   @Mock ZipFile zipFile;
 
   @Test
@@ -39,10 +39,12 @@ import static com.android.tools.build.bundletool.model.AndroidManifest.VERSION_C
 import static com.android.tools.build.bundletool.testing.ManifestProtoUtils.androidManifest;
 import static com.android.tools.build.bundletool.testing.ManifestProtoUtils.withCustomThemeActivity;
 import static com.android.tools.build.bundletool.testing.ManifestProtoUtils.withMainActivity;
+import static com.android.tools.build.bundletool.testing.ManifestProtoUtils.withMinSdkVersion;
 import static com.android.tools.build.bundletool.testing.ManifestProtoUtils.withOnDemandAttribute;
 import static com.android.tools.build.bundletool.testing.ManifestProtoUtils.withSplitNameActivity;
 import static com.android.tools.build.bundletool.testing.ManifestProtoUtils.withSplitNameProvider;
 import static com.android.tools.build.bundletool.testing.ManifestProtoUtils.withSplitNameService;
+import static com.android.tools.build.bundletool.testing.ManifestProtoUtils.withVersionCode;
 import static com.android.tools.build.bundletool.testing.ManifestProtoUtils.xmlAttribute;
 import static com.android.tools.build.bundletool.testing.ManifestProtoUtils.xmlBooleanAttribute;
 import static com.android.tools.build.bundletool.testing.ManifestProtoUtils.xmlDecimalIntegerAttribute;
@@ -779,6 +781,41 @@ public class ManifestEditorTest {
         .hasSize(1);
   }
 
+  @Test
+  public void edit_unmodifiedElementsShared() throws Exception {
+    AndroidManifest androidManifest =
+        AndroidManifest.create(
+            androidManifest(
+                "com.test.app",
+                withSplitNameActivity("FooActivity", "foo"),
+                withMinSdkVersion(21)));
+    XmlElement originalApplication = getApplicationElementProto(androidManifest);
+
+    AndroidManifest editedManifest = androidManifest.toEditor().setMinSdkVersion(23).save();
+
+    assertThat(editedManifest.getMinSdkVersion()).hasValue(23);
+    assertThat(getApplicationElementProto(editedManifest)).isSameInstanceAs(originalApplication);
+  }
+
+  @Test
+  public void noOpEdits_manifestShared() throws Exception {
+    AndroidManifest androidManifest =
+        AndroidManifest.create(
+            androidManifest("com.test.app", withMainActivity("MainActivity"), withVersionCode(1)));
+
+    AndroidManifest editedManifest =
+        androidManifest
+            .toEditor()
+            .removeSplitName()
+            .setVersionCode(1)
+            .setSplitIdForFeatureSplit("")
+            .removeUnknownSplitComponents(ImmutableSet.of("base"))
+            .save();
+
+    assertThat(editedManifest.getManifestRoot().getProto())
+        .isSameInstanceAs(androidManifest.getManifestRoot().getProto());
+  }
+
   private static void assertOnlyMetadataElement(
       AndroidManifest manifest, String name, XmlAttribute valueAttr) {
     XmlElement applicationElement = getApplicationElement(manifest);
@@ -791,6 +828,10 @@ public class ManifestEditorTest {
             xmlAttribute(ANDROID_NAMESPACE_URI, "name", NAME_RESOURCE_ID, name), valueAttr);
   }
 
+  private static XmlElement getApplicationElementProto(AndroidManifest manifest) {
+    return manifest.getManifestElement().getChildElement(APPLICATION_ELEMENT_NAME).getProto();
+  }
+
   private static XmlElement getApplicationElement(AndroidManifest manifest) {
     XmlNode manifestRoot = manifest.getManifestRoot().getProto();
     XmlElement manifestElement = manifestRoot.getElement();
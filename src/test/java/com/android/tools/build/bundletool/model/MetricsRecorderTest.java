@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.android.bundle.Commands.ApkDescription;
+import com.android.bundle.Metrics.ApkMetrics;
+import com.android.bundle.Metrics.BuildApksMetrics;
+import com.android.bundle.Metrics.PhaseMetrics;
+import com.android.tools.build.bundletool.model.utils.ResourceCounters;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.util.JsonFormat;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class MetricsRecorderTest {
+
+  @Rule public final TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void phasesAndApks_recordedAndPassedToListener() throws Exception {
+    List<String> notifications = new ArrayList<>();
+    MetricsRecorder metricsRecorder =
+        MetricsRecorder.create(
+            new MetricsListener() {
+              @Override
+              public void onPhaseFinished(PhaseMetrics phaseMetrics) {
+                notifications.add(phaseMetrics.getName());
+              }
+
+              @Override
+              public void onApksSerialized(ApkMetrics apkMetrics) {
+                notifications.addAll(apkMetrics.getPathList());
+              }
+            });
+
+    metricsRecorder.inPhase("first", () -> Thread.sleep(5));
+    byte[] allocated =
+        metricsRecorder.inPhase(
+            "second",
+            () -> {
+              MetricsRecorder.ApkSerialization apkSerialization =
+                  metricsRecorder.startApkSerialization();
+              byte[] apkBytes = new byte[1 << 20];
+              apkSerialization.finish(
+                  ImmutableList.of(
+                      ApkDescription.newBuilder().setPath("splits/base-master.apk").build(),
+                      ApkDescription.newBuilder().setPath("splits/base-master_2.apk").build()));
+              return apkBytes;
+            });
+
+    BuildApksMetrics metrics = metricsRecorder.getMetrics();
+    assertThat(allocated).hasLength(1 << 20);
+    assertThat(notifications)
+        .containsExactly("first", "splits/base-master.apk", "splits/base-master_2.apk", "second")
+        .inOrder();
+    assertThat(metrics.getPhaseList().stream().map(PhaseMetrics::getName))
+        .containsExactly("first", "second")
+        .inOrder();
+    assertThat(metrics.getPhase(0).getUsage().getWallTimeMicros()).isAtLeast(5_000L);
+    assertThat(metrics.getApkList()).hasSize(1);
+    assertThat(metrics.getApk(0).getPathList())
+        .containsExactly("splits/base-master.apk", "splits/base-master_2.apk");
+    assertThat(metrics.getApk(0).getUsage().getWallTimeMicros()).isAtLeast(0L);
+  }
+
+  @Test
+  public void measuredTasks_allocationsCountedAfterThreadDies() throws Exception {
+    MetricsRecorder metricsRecorder = MetricsRecorder.create(MetricsListener.NO_OP);
+    ListeningExecutorService executorService =
+        metricsRecorder.measureTasks(
+            MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor()));
+
+    boolean terminated =
+        metricsRecorder.inPhase(
+            "phase",
+            () -> {
+              executorService.submit(() -> new byte[4 << 20]).get();
+              executorService.shutdown();
+              return executorService.awaitTermination(10, SECONDS);
+            });
+
+    assertThat(terminated).isTrue();
+    long allocatedBytes = metricsRecorder.getMetrics().getPhase(0).getUsage().getAllocatedBytes();
+    if (ResourceCounters.getCurrentThreadAllocatedBytes() > 0) {
+      assertThat(allocatedBytes).isAtLeast(4L << 20);
+    } else {
+      assertThat(allocatedBytes).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void failingPhase_recordedAndExceptionRethrown() {
+    MetricsRecorder metricsRecorder = MetricsRecorder.create(MetricsListener.NO_OP);
+
+    IOException exception =
+        assertThrows(
+            IOException.class,
+            () ->
+                metricsRecorder.inPhase(
+                    "phase",
+                    () -> {
+                      throw new IOException("Failed.");
+                    }));
+
+    assertThat(exception).hasMessageThat().isEqualTo("Failed.");
+    assertThat(metricsRecorder.getMetrics().getPhase(0).getName()).isEqualTo("phase");
+  }
+
+  @Test
+  public void writeMetrics_writesReportAsJson() throws Exception {
+    MetricsRecorder metricsRecorder = MetricsRecorder.create(MetricsListener.NO_OP);
+    metricsRecorder.inPhase("phase", () -> {});
+    metricsRecorder
+        .startApkSerialization()
+        .finish(ImmutableList.of(ApkDescription.newBuilder().setPath("base.apk").build()));
+    Path metricsFile = tmp.getRoot().toPath().resolve("metrics.json");
+
+    metricsRecorder.writeMetrics(metricsFile);
+
+    BuildApksMetrics.Builder writtenMetrics = BuildApksMetrics.newBuilder();
+    JsonFormat.parser().merge(new String(Files.readAllBytes(metricsFile), UTF_8), writtenMetrics);
+    assertThat(writtenMetrics.build()).isEqualTo(metricsRecorder.getMetrics());
+    assertThat(writtenMetrics.getPhase(0).getName()).isEqualTo("phase");
+    assertThat(writtenMetrics.getApk(0).getPathList()).containsExactly("base.apk");
+  }
+
+  @Test
+  public void disabled_recordsNothing() {
+    MetricsRecorder metricsRecorder = MetricsRecorder.disabled();
+
+    metricsRecorder.inPhase(
+        "phase", () -> metricsRecorder.startApkSerialization().finish(ImmutableList.of()));
+
+    assertThat(metricsRecorder.getMetrics()).isEqualTo(BuildApksMetrics.getDefaultInstance());
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.android.bundle.Metrics.Trace;
+import com.android.bundle.Metrics.TraceEvent;
+import com.google.common.base.Ticker;
+import com.google.protobuf.util.JsonFormat;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TraceRecorderTest {
+
+  @Rule public final TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void spans_recordedWithThreadAndTimes() throws Exception {
+    FakeTicker ticker = new FakeTicker();
+    TraceRecorder traceRecorder = TraceRecorder.create(ticker);
+    long threadId = Thread.currentThread().getId();
+
+    ticker.advanceMicros(10);
+    try (TraceRecorder.Span apkSpan = traceRecorder.startSpan("serialize-apk")) {
+      traceRecorder.inSpan("aapt2-convert", () -> ticker.advanceMicros(3));
+      ticker.advanceMicros(2);
+      apkSpan.putArg("module", "base");
+    }
+
+    Trace trace = traceRecorder.getTrace();
+    assertThat(trace.getTraceEventsList())
+        .containsExactly(
+            TraceEvent.newBuilder()
+                .setName("thread_name")
+                .setPh("M")
+                .setTid((int) threadId)
+                .putArgs("name", Thread.currentThread().getName())
+                .build(),
+            TraceEvent.newBuilder()
+                .setName("aapt2-convert")
+                .setPh("X")
+                .setTs(10)
+                .setDur(3)
+                .setTid((int) threadId)
+                .build(),
+            TraceEvent.newBuilder()
+                .setName("serialize-apk")
+                .setPh("X")
+                .setTs(10)
+                .setDur(5)
+                .setTid((int) threadId)
+                .putArgs("module", "base")
+                .build())
+        .inOrder();
+  }
+
+  @Test
+  public void spansOnSeveralThreads_eachThreadNamedOnce() throws Exception {
+    TraceRecorder traceRecorder = TraceRecorder.create(new FakeTicker());
+
+    Thread thread =
+        new Thread(
+            () -> {
+              traceRecorder.inSpan("first", () -> {});
+              traceRecorder.inSpan("second", () -> {});
+            },
+            "worker");
+    thread.start();
+    thread.join();
+    traceRecorder.inSpan("third", () -> {});
+
+    Trace trace = traceRecorder.getTrace();
+    assertThat(
+            trace.getTraceEventsList().stream()
+                .filter(event -> event.getPh().equals("M"))
+                .map(event -> event.getArgsOrThrow("name"))
+                .collect(toImmutableList()))
+        .containsExactly("worker", Thread.currentThread().getName());
+    assertThat(
+            trace.getTraceEventsList().stream().filter(event -> event.getPh().equals("X")).count())
+        .isEqualTo(3);
+  }
+
+  @Test
+  public void inSpan_returnsResultAndRethrowsException() {
+    TraceRecorder traceRecorder = TraceRecorder.create(new FakeTicker());
+
+    String result = traceRecorder.inSpan("first", () -> "result");
+    IOException exception =
+        assertThrows(
+            IOException.class,
+            () ->
+                traceRecorder.inSpan(
+                    "second",
+                    () -> {
+                      throw new IOException("Failed.");
+                    }));
+
+    assertThat(result).isEqualTo("result");
+    assertThat(exception).hasMessageThat().isEqualTo("Failed.");
+    assertThat(
+            traceRecorder.getTrace().getTraceEventsList().stream()
+                .filter(event -> event.getPh().equals("X"))
+                .map(TraceEvent::getName)
+                .collect(toImmutableList()))
+        .containsExactly("first", "second")
+        .inOrder();
+  }
+
+  @Test
+  public void writeTrace_writesEventsAsJsonWithDefaultFields() throws Exception {
+    TraceRecorder traceRecorder = TraceRecorder.create(new FakeTicker());
+    traceRecorder.inSpan("span", () -> {});
+    Path traceFile = tmp.getRoot().toPath().resolve("trace.json");
+
+    traceRecorder.writeTrace(traceFile);
+
+    String json = new String(Files.readAllBytes(traceFile), UTF_8);
+    Trace.Builder writtenTrace = Trace.newBuilder();
+    JsonFormat.parser().merge(json, writtenTrace);
+    assertThat(writtenTrace.build()).isEqualTo(traceRecorder.getTrace());
+    // The span starts at time zero and lasts zero microseconds.
+    assertThat(json).contains("\"ts\": 0.0");
+    assertThat(json).contains("\"dur\": 0.0");
+  }
+
+  @Test
+  public void disabled_recordsNothing() {
+    TraceRecorder traceRecorder = TraceRecorder.disabled();
+
+    traceRecorder.inSpan("span", () -> {});
+    traceRecorder.startSpan("span").putArg("key", "value").close();
+
+    assertThat(traceRecorder.getTrace()).isEqualTo(Trace.getDefaultInstance());
+  }
+
+  private static class FakeTicker extends Ticker {
+    private long nanos = 0;
+
+    void advanceMicros(long micros) {
+      nanos += TimeUnit.MICROSECONDS.toNanos(micros);
+    }
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+  }
+}
@@ -52,6 +52,23 @@ public final class ZipPathTest {
     assertThat((Object) path).isNotEqualTo(ZipPath.create("foo/bar/hello"));
   }
 
+  @Test
+  public void testHashCode_sameAsForNames() {
+    ZipPath path = ZipPath.create("foo/bar");
+
+    assertThat(path.hashCode()).isEqualTo(ZipPath.create("foo/bar").hashCode());
+    assertThat(path.hashCode())
+        .isEqualTo(ZipPath.create(ImmutableList.of("foo", "bar")).hashCode());
+  }
+
+  @Test
+  public void testCreate_namesAreShared() {
+    ZipPath path1 = ZipPath.create("res/drawable/icon.png");
+    ZipPath path2 = ZipPath.create(new StringBuilder("res/layout/main.xml").toString());
+
+    assertThat(path1.getNames().get(0)).isSameInstanceAs(path2.getNames().get(0));
+  }
+
   @Test
   public void testCreate_normalized() {
     ZipPath path1 = ZipPath.create("foo/bar");
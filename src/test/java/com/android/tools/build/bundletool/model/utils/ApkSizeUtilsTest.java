@@ -31,6 +31,7 @@ import static com.google.common.truth.Truth.assertThat;
 
 import com.android.bundle.Commands.BuildApksResult;
 import com.android.bundle.Commands.Variant;
+import com.android.bundle.SizesOuterClass.ApkSetSizes;
 import com.android.bundle.Targeting.ApkTargeting;
 import com.android.tools.build.bundletool.io.ZipBuilder;
 import com.android.tools.build.bundletool.io.ZipBuilder.EntryOption;
@@ -38,7 +39,11 @@ import com.android.tools.build.bundletool.model.ZipPath;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Range;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.nio.file.Path;
+import java.util.concurrent.Executors;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -210,4 +215,42 @@ public class ApkSizeUtilsTest {
 
     assertThat(sizeByApkPaths.get("apk_one.apk")).isAtLeast(1L);
   }
+
+  @Test
+  public void recordedSizes_usedAndMissingSizesEstimatedInParallel() throws Exception {
+    ZipPath apkOne = ZipPath.create("apk_one.apk");
+    ZipPath apkTwo = ZipPath.create("apk_two.apk");
+    ImmutableList<Variant> variants =
+        ImmutableList.of(
+            createVariant(
+                variantSdkTargeting(sdkVersionFrom(21)),
+                createSplitApkSet(
+                    "base",
+                    createMasterApkDescription(ApkTargeting.getDefaultInstance(), apkOne),
+                    createApkDescription(apkAbiTargeting(X86), apkTwo, false))));
+
+    Path apksArchiveFile =
+        new ZipBuilder()
+            .addFileWithContent(apkOne, DUMMY_BYTES, EntryOption.UNCOMPRESSED)
+            .addFileWithContent(apkTwo, DUMMY_BYTES, EntryOption.UNCOMPRESSED)
+            .addFileWithProtoContent(
+                ZipPath.create("toc.pb"),
+                BuildApksResult.newBuilder().addAllVariant(variants).build())
+            .addFileWithProtoContent(
+                ZipPath.create("apk_sizes.pb"),
+                ApkSetSizes.newBuilder().putDownloadSizeByApkPath("apk_one.apk", 42L).build())
+            .writeTo(tmpDir.resolve("bundle.apks"));
+
+    ListeningExecutorService executorService =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(2));
+    ImmutableMap<String, Long> sizeByApkPaths;
+    try {
+      sizeByApkPaths = getCompressedSizeByApkPaths(variants, apksArchiveFile, executorService);
+    } finally {
+      executorService.shutdown();
+    }
+
+    assertThat(sizeByApkPaths).containsEntry("apk_one.apk", 42L);
+    assertThat(sizeByApkPaths.get("apk_two.apk")).isIn(Range.closed(1L, (long) DUMMY_BYTES.length));
+  }
 }
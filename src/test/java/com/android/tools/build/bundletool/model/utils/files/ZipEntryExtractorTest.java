@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model.utils.files;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.android.tools.build.bundletool.io.ZipBuilder;
+import com.android.tools.build.bundletool.io.ZipBuilder.EntryOption;
+import com.android.tools.build.bundletool.model.ZipPath;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ZipEntryExtractor}. */
+@RunWith(JUnit4.class)
+public class ZipEntryExtractorTest {
+
+  private static final byte[] STORED_CONTENT = "stored content".getBytes(UTF_8);
+  private static final byte[] DEFLATED_CONTENT = "deflated, deflated, deflated".getBytes(UTF_8);
+
+  @Rule public final TemporaryFolder tmp = new TemporaryFolder();
+  private Path tmpDir;
+  private Path zipPath;
+
+  @Before
+  public void setUp() throws Exception {
+    tmpDir = tmp.getRoot().toPath();
+    zipPath =
+        new ZipBuilder()
+            .addFileWithContent(ZipPath.create("deflated.txt"), DEFLATED_CONTENT)
+            .addFileWithContent(
+                ZipPath.create("dir/stored.txt"), STORED_CONTENT, EntryOption.UNCOMPRESSED)
+            .addFileWithContent(
+                ZipPath.create("empty.txt"), new byte[0], EntryOption.UNCOMPRESSED)
+            .writeTo(tmpDir.resolve("archive.zip"));
+  }
+
+  @Test
+  public void storedEntry_transferredDirectly() throws Exception {
+    Path destination = tmpDir.resolve("stored.txt");
+
+    try (ZipEntryExtractor extractor = ZipEntryExtractor.open(zipPath)) {
+      assertThat(extractor.isTransferredDirectly("dir/stored.txt")).isTrue();
+      extractor.extract("dir/stored.txt", destination);
+    }
+
+    assertThat(Files.readAllBytes(destination)).isEqualTo(STORED_CONTENT);
+  }
+
+  @Test
+  public void storedEntry_replacesExistingFile() throws Exception {
+    Path destination = tmpDir.resolve("stored.txt");
+    Files.write(destination, new byte[1024]);
+
+    try (ZipEntryExtractor extractor = ZipEntryExtractor.open(zipPath)) {
+      extractor.extract("dir/stored.txt", destination);
+    }
+
+    assertThat(Files.readAllBytes(destination)).isEqualTo(STORED_CONTENT);
+  }
+
+  @Test
+  public void emptyStoredEntry() throws Exception {
+    Path destination = tmpDir.resolve("empty.txt");
+
+    try (ZipEntryExtractor extractor = ZipEntryExtractor.open(zipPath)) {
+      extractor.extract("empty.txt", destination);
+    }
+
+    assertThat(Files.size(destination)).isEqualTo(0);
+  }
+
+  @Test
+  public void deflatedEntry_decompressed() throws Exception {
+    Path destination = tmpDir.resolve("deflated.txt");
+
+    try (ZipEntryExtractor extractor = ZipEntryExtractor.open(zipPath)) {
+      assertThat(extractor.isTransferredDirectly("deflated.txt")).isFalse();
+      extractor.extract("deflated.txt", destination);
+    }
+
+    assertThat(Files.readAllBytes(destination)).isEqualTo(DEFLATED_CONTENT);
+  }
+
+  @Test
+  public void unknownEntry_throws() throws Exception {
+    try (ZipEntryExtractor extractor = ZipEntryExtractor.open(zipPath)) {
+      IllegalArgumentException exception =
+          assertThrows(
+              IllegalArgumentException.class,
+              () -> extractor.extract("unknown.txt", tmpDir.resolve("unknown.txt")));
+
+      assertThat(exception).hasMessageThat().contains("'unknown.txt' not found");
+    }
+  }
+}
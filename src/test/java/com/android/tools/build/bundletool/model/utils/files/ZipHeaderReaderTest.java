@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.model.utils.files;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.android.tools.build.bundletool.model.utils.files.ZipHeaderReader.CentralDirectoryEntry;
+import com.android.tools.build.bundletool.model.utils.files.ZipHeaderReader.LocalFileHeader;
+import com.google.common.collect.ImmutableMap;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ZipHeaderReader}. */
+@RunWith(JUnit4.class)
+public class ZipHeaderReaderTest {
+
+  private static final byte[] STORED_CONTENT = "stored content".getBytes(UTF_8);
+  private static final byte[] DEFLATED_CONTENT = "deflated, deflated, deflated".getBytes(UTF_8);
+
+  @Rule public final TemporaryFolder tmp = new TemporaryFolder();
+  private Path zipPath;
+
+  @Before
+  public void setUp() throws Exception {
+    zipPath = tmp.getRoot().toPath().resolve("archive.zip");
+    try (ZipOutputStream zipOutputStream = new ZipOutputStream(Files.newOutputStream(zipPath))) {
+      zipOutputStream.setComment("comment");
+      ZipEntry storedEntry = new ZipEntry("dir/stored.txt");
+      storedEntry.setMethod(ZipEntry.STORED);
+      storedEntry.setSize(STORED_CONTENT.length);
+      CRC32 crc = new CRC32();
+      crc.update(STORED_CONTENT);
+      storedEntry.setCrc(crc.getValue());
+      storedEntry.setExtra(new byte[] {(byte) 0xca, (byte) 0xfe, 2, 0, 0, 0});
+      zipOutputStream.putNextEntry(storedEntry);
+      zipOutputStream.write(STORED_CONTENT);
+      zipOutputStream.closeEntry();
+      zipOutputStream.putNextEntry(new ZipEntry("deflated.txt"));
+      zipOutputStream.write(DEFLATED_CONTENT);
+      zipOutputStream.closeEntry();
+    }
+  }
+
+  @Test
+  public void readCentralDirectory() throws Exception {
+    ImmutableMap<String, CentralDirectoryEntry> entries;
+    try (FileChannel channel = FileChannel.open(zipPath, StandardOpenOption.READ)) {
+      entries = ZipHeaderReader.readCentralDirectory(channel);
+    }
+
+    assertThat(entries.keySet()).containsExactly("dir/stored.txt", "deflated.txt").inOrder();
+    CentralDirectoryEntry storedEntry = entries.get("dir/stored.txt");
+    assertThat(storedEntry.getCompressionMethod()).isEqualTo(ZipEntry.STORED);
+    assertThat(storedEntry.getCompressedSize()).isEqualTo(STORED_CONTENT.length);
+    assertThat(storedEntry.getUncompressedSize()).isEqualTo(STORED_CONTENT.length);
+    assertThat(storedEntry.getLocalHeaderOffset()).isEqualTo(0);
+    assertThat(storedEntry.isEncrypted()).isFalse();
+    CentralDirectoryEntry deflatedEntry = entries.get("deflated.txt");
+    assertThat(deflatedEntry.getCompressionMethod()).isEqualTo(ZipEntry.DEFLATED);
+    assertThat(deflatedEntry.getUncompressedSize()).isEqualTo(DEFLATED_CONTENT.length);
+    assertThat(deflatedEntry.getLocalHeaderOffset()).isGreaterThan(0L);
+  }
+
+  @Test
+  public void readCentralDirectory_notAZipFile_noEntry() throws Exception {
+    Path textFile = tmp.newFile("file.txt").toPath();
+    try (OutputStream outputStream = Files.newOutputStream(textFile)) {
+      outputStream.write(DEFLATED_CONTENT);
+    }
+
+    try (FileChannel channel = FileChannel.open(textFile, StandardOpenOption.READ)) {
+      assertThat(ZipHeaderReader.readCentralDirectory(channel)).isEmpty();
+    }
+  }
+
+  @Test
+  public void readLocalFileHeader_locatesDataAfterNameAndExtraField() throws Exception {
+    try (FileChannel channel = FileChannel.open(zipPath, StandardOpenOption.READ)) {
+      LocalFileHeader header =
+          ZipHeaderReader.readLocalFileHeader(channel, /* offset= */ 0).get();
+
+      assertThat(header.getName()).isEqualTo("dir/stored.txt");
+      assertThat(header.getCompressionMethod()).isEqualTo(ZipEntry.STORED);
+      assertThat(header.getFlags() & ZipHeaderReader.DATA_DESCRIPTOR_FLAG).isEqualTo(0);
+      assertThat(header.getCompressedSize()).hasValue((long) STORED_CONTENT.length);
+      assertThat(
+              ZipHeaderReader.readFully(channel, header.getDataOffset(), STORED_CONTENT.length)
+                  .array())
+          .isEqualTo(STORED_CONTENT);
+    }
+  }
+
+  @Test
+  public void readLocalFileHeader_noHeaderAtOffset_empty() throws Exception {
+    try (FileChannel channel = FileChannel.open(zipPath, StandardOpenOption.READ)) {
+      assertThat(ZipHeaderReader.readLocalFileHeader(channel, /* offset= */ 1)).isEmpty();
+      assertThat(ZipHeaderReader.readLocalFileHeader(channel, channel.size() - 10)).isEmpty();
+    }
+  }
+}
@@ -51,10 +51,19 @@ import com.android.aapt.Resources.Value;
 import com.android.aapt.Resources.XmlNode;
 import com.android.tools.build.bundletool.model.AndroidManifest;
 import com.android.tools.build.bundletool.model.AppBundle;
+import com.android.tools.build.bundletool.model.BundleModule;
+import com.android.tools.build.bundletool.model.ModuleEntry;
 import com.android.tools.build.bundletool.model.ResourceId;
+import com.android.tools.build.bundletool.model.ZipPath;
 import com.android.tools.build.bundletool.testing.AppBundleBuilder;
+import com.android.tools.build.bundletool.testing.BundleModuleBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 import org.junit.Test;
 import org.junit.experimental.theories.Theories;
@@ -301,6 +310,100 @@ public class ResourceAnalyzerTest {
         .containsExactly(ResourceId.create(0x7f010001), ResourceId.create(0x7f020002));
   }
 
+  @Test
+  public void transitive_xmlFileReferencedTwice_parsedOnceInParallel() throws Exception {
+    // AndroidManifest --> 0x7f010001 (xml file) --> 0x7f020002 (string)
+    //                 --> 0x7f010002 (same xml file)
+    XmlNode manifest =
+        AndroidManifest.create(
+                xmlNode(
+                    xmlElement(
+                        "manifest",
+                        xmlNode(
+                            xmlElement(
+                                "application",
+                                ImmutableList.of(
+                                    xmlResourceReferenceAttribute(
+                                        NO_NAMESPACE_URI,
+                                        "first_attr",
+                                        /* attrResourceId= */ 0x999999,
+                                        /* valueResourceId= */ 0x7f010001),
+                                    xmlResourceReferenceAttribute(
+                                        NO_NAMESPACE_URI,
+                                        "second_attr",
+                                        /* attrResourceId= */ 0x999998,
+                                        /* valueResourceId= */ 0x7f010002)))))))
+            .getManifestRoot()
+            .getProto();
+    XmlNode embeddedXmlFile =
+        AndroidManifest.create(
+                xmlNode(
+                    xmlElement(
+                        "root",
+                        xmlResourceReferenceAttribute(
+                            ANDROID_NAMESPACE_URI,
+                            "name",
+                            /* attrResourceId= */ 0x999999,
+                            /* valueResourceId= */ 0x7f020002))))
+            .getManifestRoot()
+            .getProto();
+    ResourceTable resourceTable =
+        resourceTable(
+            pkg(
+                0x7f,
+                "com.test.app",
+                type(
+                    0x01,
+                    "file",
+                    entry(
+                        0x0001,
+                        "xml_file",
+                        fileReference(
+                            "res/xml/embedded.xml", FileReference.Type.PROTO_XML, DEFAULT_CONFIG)),
+                    entry(
+                        0x0002,
+                        "xml_file_alias",
+                        fileReference(
+                            "res/xml/embedded.xml", FileReference.Type.PROTO_XML, DEFAULT_CONFIG))),
+                type(0x02, "string", entry(0x0002, "name_str", value("hello", DEFAULT_CONFIG)))));
+    AtomicInteger xmlFileReads = new AtomicInteger();
+    BundleModule baseModule =
+        new BundleModuleBuilder("base")
+            .setManifest(manifest)
+            .setResourceTable(resourceTable)
+            .build()
+            .toBuilder()
+            .addEntry(
+                ModuleEntry.builder()
+                    .setPath(ZipPath.create("res/xml/embedded.xml"))
+                    .setContentSupplier(
+                        () -> {
+                          xmlFileReads.incrementAndGet();
+                          return new ByteArrayInputStream(embeddedXmlFile.toByteArray());
+                        })
+                    .build())
+            .build();
+    AppBundle appBundle = new AppBundleBuilder().addModule(baseModule).build();
+
+    ListeningExecutorService executorService =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+    ImmutableSet<ResourceId> resourceIds;
+    try {
+      resourceIds =
+          new ResourceAnalyzer(appBundle, executorService)
+              .findAllAppResourcesReachableFromBaseManifest();
+    } finally {
+      executorService.shutdownNow();
+    }
+
+    assertThat(resourceIds)
+        .containsExactly(
+            ResourceId.create(0x7f010001),
+            ResourceId.create(0x7f010002),
+            ResourceId.create(0x7f020002));
+    assertThat(xmlFileReads.get()).isEqualTo(1);
+  }
+
   @Test
   public void transitive_compoundValue_attribute() throws Exception {
     // AndroidManifest --> 0x7f01000 (attr) --> 0x7f020002 (string)
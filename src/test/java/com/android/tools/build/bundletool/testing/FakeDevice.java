@@ -228,19 +228,23 @@ public class FakeDevice extends Device {
   }
 
   @Override
-  public void installApks(ImmutableList<Path> apks, InstallOptions installOptions) {
+  public ImmutableList<Path> installApks(ImmutableList<Path> apks, InstallOptions installOptions) {
     for (Path apk : apks) {
       checkState(Files.exists(apk));
     }
     installApksSideEffect.ifPresent(val -> val.apply(apks, installOptions));
+    return apks;
   }
 
   @Override
-  public void pushApks(ImmutableList<Path> apks, PushOptions pushOptions) {
+  public ImmutableList<String> pushApks(ImmutableList<Path> apks, PushOptions pushOptions) {
     for (Path apk : apks) {
       checkState(Files.exists(apk));
     }
     pushApksSideEffect.ifPresent(val -> val.apply(apks, pushOptions));
+    return apks.stream()
+        .map(apk -> pushOptions.getDestinationPath() + "/" + apk.getFileName())
+        .collect(toImmutableList());
   }
 
   public void setInstallApksSideEffect(SideEffect<InstallOptions> sideEffect) {
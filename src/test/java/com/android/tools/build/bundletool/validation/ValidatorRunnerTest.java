@@ -20,6 +20,7 @@ import static com.android.tools.build.bundletool.testing.ManifestProtoUtils.andr
 import static com.android.tools.build.bundletool.testing.ManifestProtoUtils.withSplitId;
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth8.assertThat;
+import static com.google.common.util.concurrent.MoreExecutors.newDirectExecutorService;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
@@ -34,6 +35,7 @@ import com.android.bundle.Files.NativeLibraries;
 import com.android.tools.build.bundletool.io.ZipBuilder;
 import com.android.tools.build.bundletool.model.AppBundle;
 import com.android.tools.build.bundletool.model.BundleModule;
+import com.android.tools.build.bundletool.model.BundleModuleName;
 import com.android.tools.build.bundletool.model.ZipPath;
 import com.android.tools.build.bundletool.testing.BundleConfigBuilder;
 import com.google.common.collect.ImmutableList;
@@ -93,6 +95,44 @@ public class ValidatorRunnerTest {
     }
   }
 
+  @Test
+  public void validateBundleZipFileAndBuildBundle_invokesRightSubValidatorMethods()
+      throws Exception {
+    Path bundlePath =
+        new ZipBuilder()
+            .addFileWithContent(ZipPath.create("BundleConfig.pb"), BUNDLE_CONFIG.toByteArray())
+            .addFileWithProtoContent(
+                ZipPath.create("moduleX/manifest/AndroidManifest.xml"),
+                androidManifest("com.test.app", withSplitId("moduleX")))
+            .addFileWithContent(ZipPath.create("moduleX/assets/file.txt"), DUMMY_CONTENT)
+            .addFileWithContent(ZipPath.create("BUNDLE-METADATA/some.id/file"), DUMMY_CONTENT)
+            .writeTo(tempFolder.resolve("bundle.aab"));
+
+    try (ZipFile bundleZip = new ZipFile(bundlePath.toFile())) {
+      AppBundle bundle =
+          new ValidatorRunner(ImmutableList.of(validator))
+              .validateBundleZipFileAndBuildBundle(bundleZip, newDirectExecutorService());
+
+      ArgumentCaptor<ZipEntry> zipEntryArgs = ArgumentCaptor.forClass(ZipEntry.class);
+
+      verify(validator).validateBundleZipFile(eq(bundleZip));
+      verify(validator, atLeastOnce())
+          .validateBundleZipEntry(eq(bundleZip), zipEntryArgs.capture());
+      verifyNoMoreInteractions(validator);
+
+      assertThat(zipEntryArgs.getAllValues().stream().map(ZipEntry::getName))
+          .containsExactly(
+              "BundleConfig.pb",
+              "moduleX/manifest/AndroidManifest.xml",
+              "moduleX/assets/file.txt",
+              "BUNDLE-METADATA/some.id/file");
+      assertThat(bundle.getModules().keySet().stream().map(BundleModuleName::getName))
+          .containsExactly("moduleX");
+      assertThat(bundle.getBundleMetadata().getFileDataMap().keySet())
+          .containsExactly(ZipPath.create("some.id/file"));
+    }
+  }
+
   @Test
   public void validateBundle_invokesRightSubValidatorMethods() throws Exception {
     Path bundlePath =
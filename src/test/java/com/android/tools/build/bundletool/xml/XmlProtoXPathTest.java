@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tools.build.bundletool.xml;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static com.google.common.truth.Truth8.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.android.tools.build.bundletool.model.exceptions.ValidationException;
+import com.android.tools.build.bundletool.model.utils.xmlproto.XmlProtoAttributeBuilder;
+import com.android.tools.build.bundletool.model.utils.xmlproto.XmlProtoElementBuilder;
+import com.android.tools.build.bundletool.model.utils.xmlproto.XmlProtoNode;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class XmlProtoXPathTest {
+
+  private static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
+  private static final String DIST_NS = "http://schemas.android.com/apk/distribution";
+
+  private static final XmlProtoNode MANIFEST =
+      XmlProtoNode.createElementNode(
+          XmlProtoElementBuilder.create("manifest")
+              .addNamespaceDeclaration("android", ANDROID_NS)
+              .addNamespaceDeclaration("dist", DIST_NS)
+              .addAttribute(XmlProtoAttributeBuilder.create("package").setValueAsString("com.app"))
+              .addAttribute(
+                  XmlProtoAttributeBuilder.create(ANDROID_NS, "versionCode")
+                      .setValueAsDecimalInteger(123))
+              .addChildElement(
+                  XmlProtoElementBuilder.create(DIST_NS, "module")
+                      .addAttribute(
+                          XmlProtoAttributeBuilder.create(DIST_NS, "onDemand")
+                              .setValueAsBoolean(true)))
+              .addChildElement(
+                  XmlProtoElementBuilder.create("application")
+                      .addChildElement(metadata("key1", "value1"))
+                      .addChildElement(metadata("key2", "value2"))
+                      .addChildElement(
+                          XmlProtoElementBuilder.create("activity")
+                              .addAttribute(
+                                  XmlProtoAttributeBuilder.create(ANDROID_NS, "name")
+                                      .setValueAsString(".MainActivity"))
+                              .addChildElement(metadata("key3", "value3"))
+                              .addChildText("text"))
+                      .addChildElement(
+                          XmlProtoElementBuilder.create("activity")
+                              .addAttribute(
+                                  XmlProtoAttributeBuilder.create(ANDROID_NS, "")
+                                      .setResourceId(0x01010003)
+                                      .setValueAsString(".OtherActivity"))))
+              .build());
+
+  @Test
+  public void compile_unsupportedExpressions() {
+    assertThat(XmlProtoXPath.compile("/manifest/application")).isEmpty();
+    assertThat(XmlProtoXPath.compile("manifest/@package")).isEmpty();
+    assertThat(XmlProtoXPath.compile("/@package")).isEmpty();
+    assertThat(XmlProtoXPath.compile("//@package")).isEmpty();
+    assertThat(XmlProtoXPath.compile("/manifest/@*")).isEmpty();
+    assertThat(XmlProtoXPath.compile("/manifest/application/meta-data[1]/@android:value"))
+        .isEmpty();
+    assertThat(XmlProtoXPath.compile("count(/manifest/application)")).isEmpty();
+    assertThat(XmlProtoXPath.compile("/manifest/@package | /manifest/@android:versionCode"))
+        .isEmpty();
+  }
+
+  @Test
+  public void evaluate_sameValuesAsDocument() throws Exception {
+    ImmutableList<String> expressions =
+        ImmutableList.of(
+            "/manifest/@package",
+            "/manifest/@android:versionCode",
+            "/manifest/@versionCode",
+            "/manifest/@nothing",
+            "/manifest/dist:module/@dist:onDemand",
+            "/manifest/module/@dist:onDemand",
+            "/manifest/application/meta-data/@android:value",
+            "/manifest/application/meta-data[@android:name='key2']/@android:value",
+            "/manifest/application/meta-data[ @android:name = \"key1\" ]/@android:value",
+            "/manifest/application/meta-data[@android:name='key3']/@android:value",
+            "//meta-data/@android:value",
+            "/manifest//meta-data/@android:name",
+            "//application//meta-data/@android:value",
+            "/manifest/*/activity/@android:name",
+            "/manifest/application/activity/@_0x01010003_",
+            "//*/@android:onDemand",
+            "/application/@android:name");
+
+    for (String expression : expressions) {
+      assertWithMessage(expression)
+          .that(XmlProtoXPath.compile(expression).get().evaluate(MANIFEST))
+          .containsExactlyElementsIn(evaluateOnDocument(expression))
+          .inOrder();
+    }
+  }
+
+  @Test
+  public void evaluate_descendantSteps_valuesInDocumentOrder() {
+    assertThat(XmlProtoXPath.compile("//meta-data/@android:value").get().evaluate(MANIFEST))
+        .containsExactly("value1", "value2", "value3")
+        .inOrder();
+  }
+
+  @Test
+  public void evaluate_commonPrefixNotDeclared() {
+    XmlProtoNode manifest =
+        XmlProtoNode.createElementNode(
+            XmlProtoElementBuilder.create("manifest")
+                .addAttribute(
+                    XmlProtoAttributeBuilder.create(ANDROID_NS, "versionCode")
+                        .setValueAsDecimalInteger(123))
+                .build());
+
+    assertThat(XmlProtoXPath.compile("/manifest/@android:versionCode").get().evaluate(manifest))
+        .containsExactly("123");
+  }
+
+  @Test
+  public void evaluate_unknownPrefix_throws() {
+    XmlProtoXPath xPath = XmlProtoXPath.compile("/manifest/@unknown:versionCode").get();
+
+    ValidationException exception =
+        assertThrows(ValidationException.class, () -> xPath.evaluate(MANIFEST));
+
+    assertThat(exception).hasMessageThat().contains("Namespace prefix 'unknown' not found.");
+  }
+
+  private static ImmutableList<String> evaluateOnDocument(String expression) throws Exception {
+    XPath xPath = XPathFactory.newInstance().newXPath();
+    xPath.setNamespaceContext(new XmlNamespaceContext(MANIFEST));
+    String result =
+        XPathResolver.resolve(XmlProtoToXmlConverter.convert(MANIFEST), xPath.compile(expression))
+            .toString();
+    return result.isEmpty()
+        ? ImmutableList.of()
+        : ImmutableList.copyOf(Splitter.on(System.lineSeparator()).split(result));
+  }
+
+  private static XmlProtoElementBuilder metadata(String name, String value) {
+    return XmlProtoElementBuilder.create("meta-data")
+        .addAttribute(XmlProtoAttributeBuilder.create(ANDROID_NS, "name").setValueAsString(name))
+        .addAttribute(XmlProtoAttributeBuilder.create(ANDROID_NS, "value").setValueAsString(value));
+  }
+}